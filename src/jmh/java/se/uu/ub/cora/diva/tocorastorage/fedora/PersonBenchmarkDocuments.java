@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+public final class PersonBenchmarkDocuments {
+	private static final int NUMBER_OF_ALTERNATIVE_NAMES_IN_HEAVY_DOCUMENT = 100;
+
+	private PersonBenchmarkDocuments() {
+	}
+
+	public static String getPersonXMLForDocumentSize(String documentSize) {
+		if ("small".equals(documentSize)) {
+			return DivaFedoraToCoraPersonConverterTestData.person10000XML;
+		}
+		if ("typical".equals(documentSize)) {
+			return DivaFedoraToCoraPersonConverterTestData.person11685XML;
+		}
+		if ("alternativeNameHeavy".equals(documentSize)) {
+			return createPersonXMLWithManyAlternativeNames();
+		}
+		throw new IllegalArgumentException("Unknown document size: " + documentSize);
+	}
+
+	private static String createPersonXMLWithManyAlternativeNames() {
+		StringBuilder nameForms = new StringBuilder("<alternativeNames>\n");
+		for (int i = 0; i < NUMBER_OF_ALTERNATIVE_NAMES_IN_HEAVY_DOCUMENT; i++) {
+			nameForms.append("    <nameForm>\n");
+			nameForms.append("      <lastname>Lastname").append(i).append("</lastname>\n");
+			nameForms.append("      <firstname>Firstname").append(i).append("</firstname>\n");
+			nameForms.append("      <addition/>\n      <number/>\n");
+			nameForms.append("    </nameForm>\n");
+		}
+		return DivaFedoraToCoraPersonConverterTestData.person10000XML
+				.replace("<alternativeNames>\n", nameForms.toString());
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import se.uu.ub.cora.bookkeeper.data.DataAtomic;
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+
+/**
+ * Run with -prof gc to also get the allocation rate per conversion. The GET of the source xml in
+ * toXML is answered by a local stub, so only conversion cost is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PersonToXMLBenchmark {
+
+	@Param({ "small", "typical", "alternativeNameHeavy" })
+	public String documentSize;
+
+	private String sourceXML;
+	private DataGroup person;
+	private DivaCoraToFedoraConverter converter;
+
+	@Setup
+	public void setUp() {
+		sourceXML = PersonBenchmarkDocuments.getPersonXMLForDocumentSize(documentSize);
+		converter = DivaCoraToFedoraPersonConverter.usingHttpHandlerFactoryAndFedoraUrl(
+				new StubHttpHandlerFactory(sourceXML), "http://localhost/fedora/");
+		person = createPerson();
+	}
+
+	private DataGroup createPerson() {
+		DataGroup record = DataGroup.withNameInData("authorityPerson");
+		DataGroup recordInfo = DataGroup.withNameInData("recordInfo");
+		recordInfo.addChild(DataAtomic.withNameInDataAndValue("id", "authority-person:10000"));
+		record.addChild(recordInfo);
+		DataGroup authorizedName = DataGroup.withNameInData("authorizedName");
+		authorizedName.addChild(DataAtomic.withNameInDataAndValue("familyName", "Andersson"));
+		authorizedName.addChild(DataAtomic.withNameInDataAndValue("givenName", "Karl"));
+		record.addChild(authorizedName);
+		return record;
+	}
+
+	@Benchmark
+	public String toXML() {
+		return converter.toXML(person);
+	}
+
+	@Benchmark
+	public String toXMLUsingSourceXML() {
+		return converter.toXMLUsingSourceXML(person, sourceXML);
+	}
+}
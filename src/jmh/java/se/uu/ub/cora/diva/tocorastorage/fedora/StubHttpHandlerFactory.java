@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.io.InputStream;
+
+import se.uu.ub.cora.httphandler.HttpHandler;
+import se.uu.ub.cora.httphandler.HttpHandlerFactory;
+import se.uu.ub.cora.httphandler.HttpMultiPartUploader;
+
+public final class StubHttpHandlerFactory implements HttpHandlerFactory {
+	private String responseText;
+
+	public StubHttpHandlerFactory(String responseText) {
+		this.responseText = responseText;
+	}
+
+	@Override
+	public HttpHandler factor(String url) {
+		return new StubHttpHandler(responseText);
+	}
+
+	@Override
+	public HttpMultiPartUploader factorHttpMultiPartUploader(String url) {
+		throw new UnsupportedOperationException();
+	}
+
+	private static final class StubHttpHandler implements HttpHandler {
+		private String responseText;
+
+		StubHttpHandler(String responseText) {
+			this.responseText = responseText;
+		}
+
+		@Override
+		public void setRequestMethod(String requestMetod) {
+			// nothing to set in stub
+		}
+
+		@Override
+		public String getResponseText() {
+			return responseText;
+		}
+
+		@Override
+		public int getResponseCode() {
+			return 200;
+		}
+
+		@Override
+		public void setOutput(String outputString) {
+			// nothing is sent from stub
+		}
+
+		@Override
+		public void setRequestProperty(String key, String value) {
+			// nothing to set in stub
+		}
+
+		@Override
+		public String getErrorText() {
+			return "";
+		}
+
+		@Override
+		public void setStreamOutput(InputStream stream) {
+			// nothing is sent from stub
+		}
+
+		@Override
+		public String getHeaderField(String name) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares compiling an XPath expression for every lookup, as XMLXPathParser used to do, with
+ * the per thread cache of compiled expressions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class XPathCompileBenchmark {
+	private static final String XPATH = "/authorityPerson/defaultName/lastname/text()";
+	private XMLXPathParser parser;
+
+	@Setup
+	public void setUp() {
+		parser = XMLXPathParser.forXML(DivaFedoraToCoraPersonConverterTestData.person10000XML);
+	}
+
+	@Benchmark
+	public XPathExpression compileForEachLookup() throws XPathExpressionException {
+		return XPathFactory.newInstance().newXPath().compile(XPATH);
+	}
+
+	@Benchmark
+	public XPathExpression compileUsingCache() throws XPathExpressionException {
+		return parser.compileUsingCache(XPATH);
+	}
+
+	@Benchmark
+	public String lookupUsingCachedExpression() {
+		return parser.getStringFromDocumentUsingXPath(XPATH);
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import java.util.Collections;
+import java.util.List;
+
+public final class CacheWarmUpResult {
+	private long numberOfReadRecords;
+	private long numberOfFailedReads;
+	private List<String> failedTypes;
+	private long durationInMillis;
+
+	CacheWarmUpResult(long numberOfReadRecords, long numberOfFailedReads, List<String> failedTypes,
+			long durationInMillis) {
+		this.numberOfReadRecords = numberOfReadRecords;
+		this.numberOfFailedReads = numberOfFailedReads;
+		this.failedTypes = Collections.unmodifiableList(failedTypes);
+		this.durationInMillis = durationInMillis;
+	}
+
+	public long getNumberOfReadRecords() {
+		return numberOfReadRecords;
+	}
+
+	public long getNumberOfFailedReads() {
+		return numberOfFailedReads;
+	}
+
+	/**
+	 * getFailedTypes returns the types for which the ids could not be listed, so that some or all
+	 * records of the type were not warmed up.
+	 */
+	public List<String> getFailedTypes() {
+		return failedTypes;
+	}
+
+	public boolean hasFailures() {
+		return numberOfFailedReads > 0 || !failedTypes.isEmpty();
+	}
+
+	public long getDurationInMillis() {
+		return durationInMillis;
+	}
+
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * CacheWarmer reads records into the caches of the storages before they are requested, so that a
+ * newly started node does not send its first requests to fedora and the db at full cost. Records
+ * are added per type as a source of ids and a read of one id, and each id is read with at most
+ * maxNumberOfParallelReads reads in progress and at most maxReadsPerSecond reads started per
+ * second, so that the warm up does not overload backends that also serve live traffic.
+ * <p>
+ * Each type is warmed up into a cache, and at most as many ids as the cache holds are read. The
+ * warm up of a type stops when the cache is full, as reading more records would only evict the
+ * records that were warmed up first.
+ * <p>
+ * A failed read is counted and does not stop the warm up. If the source of ids fails, the rest of
+ * that type is skipped. The warm up is ready when all types have been read, with or without
+ * failures, which can be checked using isReady or awaited using the future returned by start.
+ */
+public final class CacheWarmer {
+	private static final AtomicInteger WARMER_NUMBER = new AtomicInteger();
+	private final int maxNumberOfParallelReads;
+	private final int maxReadsPerSecond;
+	private final Clock clock;
+	private final LongConsumer sleeper;
+	private final List<WarmUpSource> sources = new ArrayList<>();
+	private final CompletableFuture<CacheWarmUpResult> readiness = new CompletableFuture<>();
+	private final AtomicBoolean started = new AtomicBoolean();
+	private final AtomicLong numberOfReadRecords = new AtomicLong();
+	private final AtomicLong numberOfFailedReads = new AtomicLong();
+	private double nextReadAtMillis = 0;
+
+	public static CacheWarmer usingMaxNumberOfParallelReadsAndMaxReadsPerSecond(
+			int maxNumberOfParallelReads, int maxReadsPerSecond) {
+		return usingMaxNumberOfParallelReadsAndMaxReadsPerSecondAndClockAndSleeper(
+				maxNumberOfParallelReads, maxReadsPerSecond, Clock.systemUTC(),
+				CacheWarmer::sleep);
+	}
+
+	public static CacheWarmer usingMaxNumberOfParallelReadsAndMaxReadsPerSecondAndClockAndSleeper(
+			int maxNumberOfParallelReads, int maxReadsPerSecond, Clock clock,
+			LongConsumer sleeper) {
+		throwErrorIfLessThanOne("maxNumberOfParallelReads", maxNumberOfParallelReads);
+		throwErrorIfLessThanOne("maxReadsPerSecond", maxReadsPerSecond);
+		return new CacheWarmer(maxNumberOfParallelReads, maxReadsPerSecond, clock, sleeper);
+	}
+
+	private static void throwErrorIfLessThanOne(String name, int value) {
+		if (value < 1) {
+			throw new IllegalArgumentException(name + " must be at least 1, was: " + value);
+		}
+	}
+
+	private static void sleep(long delayInMillis) {
+		try {
+			Thread.sleep(delayInMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private CacheWarmer(int maxNumberOfParallelReads, int maxReadsPerSecond, Clock clock,
+			LongConsumer sleeper) {
+		this.maxNumberOfParallelReads = maxNumberOfParallelReads;
+		this.maxReadsPerSecond = maxReadsPerSecond;
+		this.clock = clock;
+		this.sleeper = sleeper;
+	}
+
+	/**
+	 * addRecordsToWarmUp adds a type to warm up into cache. The ids are fetched from idSource when
+	 * the warm up of the type starts, and read is called once for each id, for at most
+	 * {@link RecordCache#getMaxSize()} ids and until the cache is full. Types are warmed up one at
+	 * a time, in the order they are added. If the iterator from idSource is AutoCloseable it is
+	 * closed when the warm up of the type ends, so a lazy source of ids is not read to its end.
+	 */
+	public synchronized void addRecordsToWarmUp(String type, Supplier<Iterator<String>> idSource,
+			Consumer<String> read, RecordCache cache) {
+		sources.add(new WarmUpSource(type, idSource, read, cache));
+	}
+
+	/**
+	 * startInBackground starts the warm up in a new daemon thread and returns at once. The
+	 * returned future is completed when the warm up is ready.
+	 */
+	public CompletableFuture<CacheWarmUpResult> startInBackground() {
+		ThreadFactory threadFactory = createDaemonThreadFactory();
+		return startUsingExecutor(runnable -> threadFactory.newThread(runnable).start());
+	}
+
+	/**
+	 * startUsingExecutor starts the warm up using the executor. The warm up is only started once,
+	 * later calls return the same future without starting it again.
+	 */
+	public CompletableFuture<CacheWarmUpResult> startUsingExecutor(Executor executor) {
+		if (started.compareAndSet(false, true)) {
+			executor.execute(this::warmUpAllSources);
+		}
+		return readiness;
+	}
+
+	private static ThreadFactory createDaemonThreadFactory() {
+		String namePrefix = "diva-cache-warm-up-" + WARMER_NUMBER.incrementAndGet() + "-";
+		AtomicInteger threadNumber = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	private void warmUpAllSources() {
+		long startedAt = clock.millis();
+		ExecutorService readers = createReadersIfMoreThanOneParallelRead();
+		try {
+			for (WarmUpSource source : getSources()) {
+				possiblyWarmUpSource(readers, source);
+			}
+			readiness.complete(createResult(startedAt));
+		} catch (RuntimeException | Error e) {
+			readiness.completeExceptionally(e);
+			throw e;
+		} finally {
+			shutdownReaders(readers);
+		}
+	}
+
+	private ExecutorService createReadersIfMoreThanOneParallelRead() {
+		if (maxNumberOfParallelReads > 1) {
+			return Executors.newFixedThreadPool(maxNumberOfParallelReads,
+					createDaemonThreadFactory());
+		}
+		return null;
+	}
+
+	private synchronized List<WarmUpSource> getSources() {
+		return new ArrayList<>(sources);
+	}
+
+	private void possiblyWarmUpSource(ExecutorService readers, WarmUpSource source) {
+		if (Thread.currentThread().isInterrupted()) {
+			return;
+		}
+		try {
+			readUsingReadersUntilNoMoreIds(readers, source);
+		} finally {
+			source.closeIds();
+		}
+	}
+
+	private void readUsingReadersUntilNoMoreIds(ExecutorService readers, WarmUpSource source) {
+		if (readers == null) {
+			readUntilNoMoreIds(source);
+		} else {
+			readInParallelUntilNoMoreIds(readers, source);
+		}
+	}
+
+	private void readUntilNoMoreIds(WarmUpSource source) {
+		String id = nextIdUnlessInterrupted(source);
+		while (id != null) {
+			waitForTurnToRead();
+			readAndCount(source, id);
+			id = nextIdUnlessInterrupted(source);
+		}
+	}
+
+	private String nextIdUnlessInterrupted(WarmUpSource source) {
+		if (Thread.currentThread().isInterrupted()) {
+			return null;
+		}
+		return source.nextIdOrNull();
+	}
+
+	private void waitForTurnToRead() {
+		long delayInMillis = reserveNextRead();
+		if (delayInMillis > 0) {
+			sleeper.accept(delayInMillis);
+		}
+	}
+
+	private synchronized long reserveNextRead() {
+		double now = clock.millis();
+		double readAt = Math.max(now, nextReadAtMillis);
+		nextReadAtMillis = readAt + 1000.0 / maxReadsPerSecond;
+		return (long) Math.ceil(readAt - now);
+	}
+
+	private void readAndCount(WarmUpSource source, String id) {
+		if (Thread.currentThread().isInterrupted()) {
+			return;
+		}
+		try {
+			source.read.accept(id);
+			numberOfReadRecords.incrementAndGet();
+		} catch (RuntimeException e) {
+			numberOfFailedReads.incrementAndGet();
+		}
+	}
+
+	private void readInParallelUntilNoMoreIds(ExecutorService readers, WarmUpSource source) {
+		List<Future<?>> futures = new ArrayList<>(maxNumberOfParallelReads);
+		for (int i = 0; i < maxNumberOfParallelReads; i++) {
+			futures.add(readers.submit(() -> readUntilNoMoreIds(source)));
+		}
+		waitForAllReaders(futures);
+	}
+
+	private void waitForAllReaders(List<Future<?>> futures) {
+		for (Future<?> future : futures) {
+			waitForReader(future);
+		}
+	}
+
+	private void waitForReader(Future<?> future) {
+		try {
+			future.get();
+		} catch (ExecutionException e) {
+			throwCause(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void throwCause(Throwable cause) {
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		throw (RuntimeException) cause;
+	}
+
+	private void shutdownReaders(ExecutorService readers) {
+		if (readers != null) {
+			readers.shutdownNow();
+		}
+	}
+
+	private CacheWarmUpResult createResult(long startedAt) {
+		List<String> failedTypes = new ArrayList<>();
+		for (WarmUpSource source : getSources()) {
+			if (source.failed) {
+				failedTypes.add(source.type);
+			}
+		}
+		return new CacheWarmUpResult(numberOfReadRecords.get(), numberOfFailedReads.get(),
+				failedTypes, clock.millis() - startedAt);
+	}
+
+	public boolean isReady() {
+		return readiness.isDone();
+	}
+
+	public CompletableFuture<CacheWarmUpResult> getReadiness() {
+		return readiness;
+	}
+
+	public long getNumberOfReadRecords() {
+		return numberOfReadRecords.get();
+	}
+
+	public int getMaxNumberOfParallelReads() {
+		return maxNumberOfParallelReads;
+	}
+
+	public int getMaxReadsPerSecond() {
+		return maxReadsPerSecond;
+	}
+
+	private static final class WarmUpSource {
+		private final String type;
+		private final Supplier<Iterator<String>> idSource;
+		private final Consumer<String> read;
+		private final RecordCache cache;
+		private Iterator<String> ids;
+		private int numberOfTakenIds = 0;
+		private boolean failed = false;
+
+		private WarmUpSource(String type, Supplier<Iterator<String>> idSource,
+				Consumer<String> read, RecordCache cache) {
+			this.type = type;
+			this.idSource = idSource;
+			this.read = read;
+			this.cache = cache;
+		}
+
+		private synchronized String nextIdOrNull() {
+			if (failed || cacheIsFilled()) {
+				return null;
+			}
+			try {
+				return tryToGetNextId();
+			} catch (RuntimeException e) {
+				failed = true;
+				return null;
+			}
+		}
+
+		private String tryToGetNextId() {
+			if (ids == null) {
+				ids = idSource.get();
+			}
+			if (ids.hasNext()) {
+				numberOfTakenIds++;
+				return ids.next();
+			}
+			return null;
+		}
+
+		private boolean cacheIsFilled() {
+			int maxSize = cache.getMaxSize();
+			return numberOfTakenIds >= maxSize || cache.getStatistics().getSize() >= maxSize;
+		}
+
+		private synchronized void closeIds() {
+			if (ids instanceof AutoCloseable) {
+				tryToCloseIds((AutoCloseable) ids);
+			}
+		}
+
+		private void tryToCloseIds(AutoCloseable closeableIds) {
+			try {
+				closeableIds.close();
+			} catch (Exception e) {
+				// all ids that are going to be read have been taken, so nothing is lost
+			}
+		}
+	}
+
+}
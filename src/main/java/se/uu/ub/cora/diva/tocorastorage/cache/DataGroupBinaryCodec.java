@@ -0,0 +1,152 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import se.uu.ub.cora.bookkeeper.data.DataAtomic;
+import se.uu.ub.cora.bookkeeper.data.DataElement;
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+
+/**
+ * DataGroupBinaryCodec writes a DataGroup in a compact binary form and reads it back. Each element
+ * is written as a type byte followed by its name, and for atomics the value and repeatId, for
+ * groups the repeatId, attributes and children. Strings are written as a length followed by the
+ * UTF-8 bytes, with length -1 for null.
+ */
+final class DataGroupBinaryCodec {
+	private static final byte ATOMIC = 1;
+	private static final byte GROUP = 2;
+
+	private DataGroupBinaryCodec() {
+	}
+
+	static void writeDataGroup(DataOutputStream out, DataGroup dataGroup) throws IOException {
+		writeElement(out, dataGroup);
+	}
+
+	private static void writeElement(DataOutputStream out, DataElement element)
+			throws IOException {
+		if (element instanceof DataAtomic) {
+			writeAtomic(out, (DataAtomic) element);
+		} else {
+			writeGroup(out, (DataGroup) element);
+		}
+	}
+
+	private static void writeAtomic(DataOutputStream out, DataAtomic atomic) throws IOException {
+		out.writeByte(ATOMIC);
+		writeString(out, atomic.getNameInData());
+		writeString(out, atomic.getValue());
+		writeString(out, atomic.getRepeatId());
+	}
+
+	private static void writeGroup(DataOutputStream out, DataGroup group) throws IOException {
+		out.writeByte(GROUP);
+		writeString(out, group.getNameInData());
+		writeString(out, group.getRepeatId());
+		writeAttributes(out, group.getAttributes());
+		out.writeInt(group.getChildren().size());
+		for (DataElement child : group.getChildren()) {
+			writeElement(out, child);
+		}
+	}
+
+	private static void writeAttributes(DataOutputStream out, Map<String, String> attributes)
+			throws IOException {
+		out.writeInt(attributes.size());
+		for (Entry<String, String> attribute : attributes.entrySet()) {
+			writeString(out, attribute.getKey());
+			writeString(out, attribute.getValue());
+		}
+	}
+
+	static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	static DataGroup readDataGroup(DataInputStream in) throws IOException {
+		byte elementType = in.readByte();
+		if (elementType != GROUP) {
+			throw new IOException("Expected a group but found element type: " + elementType);
+		}
+		return readGroup(in);
+	}
+
+	private static DataElement readElement(DataInputStream in) throws IOException {
+		byte elementType = in.readByte();
+		if (elementType == ATOMIC) {
+			return readAtomic(in);
+		}
+		if (elementType == GROUP) {
+			return readGroup(in);
+		}
+		throw new IOException("Unknown element type: " + elementType);
+	}
+
+	private static DataAtomic readAtomic(DataInputStream in) throws IOException {
+		String nameInData = readString(in);
+		DataAtomic atomic = DataAtomic.withNameInDataAndValue(nameInData, readString(in));
+		atomic.setRepeatId(readString(in));
+		return atomic;
+	}
+
+	private static DataGroup readGroup(DataInputStream in) throws IOException {
+		DataGroup group = DataGroup.withNameInData(readString(in));
+		group.setRepeatId(readString(in));
+		readAttributes(in, group);
+		int numberOfChildren = in.readInt();
+		for (int i = 0; i < numberOfChildren; i++) {
+			group.addChild(readElement(in));
+		}
+		return group;
+	}
+
+	private static void readAttributes(DataInputStream in, DataGroup group) throws IOException {
+		int numberOfAttributes = in.readInt();
+		for (int i = 0; i < numberOfAttributes; i++) {
+			String id = readString(in);
+			group.addAttributeByIdWithValue(id, readString(in));
+		}
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length == -1) {
+			return null;
+		}
+		if (length < -1) {
+			throw new IOException("Invalid string length: " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import java.util.Map.Entry;
+
+import se.uu.ub.cora.bookkeeper.data.DataAtomic;
+import se.uu.ub.cora.bookkeeper.data.DataElement;
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+
+/**
+ * DataGroupCopier makes deep copies of DataGroups, with the same name, repeatId, attributes and
+ * children as the original. Caches use it so that a record handed out to one caller can be
+ * changed without changing the cached record or the record handed out to other callers.
+ */
+public final class DataGroupCopier {
+
+	private DataGroupCopier() {
+	}
+
+	public static DataGroup copy(DataGroup dataGroup) {
+		if (dataGroup == null) {
+			return null;
+		}
+		return copyGroup(dataGroup);
+	}
+
+	private static DataElement copyElement(DataElement element) {
+		if (element instanceof DataAtomic) {
+			return copyAtomic((DataAtomic) element);
+		}
+		return copyGroup((DataGroup) element);
+	}
+
+	private static DataAtomic copyAtomic(DataAtomic atomic) {
+		DataAtomic copy = DataAtomic.withNameInDataAndValue(atomic.getNameInData(),
+				atomic.getValue());
+		copy.setRepeatId(atomic.getRepeatId());
+		return copy;
+	}
+
+	private static DataGroup copyGroup(DataGroup group) {
+		DataGroup copy = DataGroup.withNameInData(group.getNameInData());
+		copy.setRepeatId(group.getRepeatId());
+		for (Entry<String, String> attribute : group.getAttributes().entrySet()) {
+			copy.addAttributeByIdWithValue(attribute.getKey(), attribute.getValue());
+		}
+		for (DataElement child : group.getChildren()) {
+			copy.addChild(copyElement(child));
+		}
+		return copy;
+	}
+
+}
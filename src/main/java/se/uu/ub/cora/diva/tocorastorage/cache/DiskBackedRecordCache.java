@@ -0,0 +1,185 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import java.time.Clock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+
+/**
+ * DiskBackedRecordCache keeps the records of one type in a DiskRecordStore as well as in the
+ * wrapped cache, so that a restarted node can read its records from local disk instead of from
+ * the backend.
+ * <p>
+ * Records read using a RecordLoader are revalidated lazily. A record found on disk is passed to
+ * the loader as the stale record, so the loader only checks its version with the backend, and
+ * the record is only reloaded if the version has changed. Only records with a version are
+ * stored, as other records can not be revalidated. Records read using a Function are stored
+ * without version and are used from disk until they are older than maxAgeInMillis.
+ * <p>
+ * As in RecordCacheImp, a loaded record is not written to disk if any record was invalidated
+ * while it was being loaded, as it could otherwise overwrite the invalidation with old data that
+ * would then be read from disk, also after a restart.
+ */
+public final class DiskBackedRecordCache implements RecordCache {
+	private final String type;
+	private final DiskRecordStore diskRecordStore;
+	private final RecordCache cache;
+	private final long maxAgeInMillis;
+	private final Clock clock;
+	private final AtomicLong diskHitCount = new AtomicLong();
+	private final AtomicLong invalidationCount = new AtomicLong();
+
+	public static DiskBackedRecordCache usingTypeAndDiskRecordStoreAndCacheAndMaxAgeInMillis(
+			String type, DiskRecordStore diskRecordStore, RecordCache cache, long maxAgeInMillis) {
+		return new DiskBackedRecordCache(type, diskRecordStore, cache, maxAgeInMillis,
+				Clock.systemUTC());
+	}
+
+	public static DiskBackedRecordCache usingTypeAndDiskRecordStoreAndCacheAndMaxAgeInMillisAndClock(
+			String type, DiskRecordStore diskRecordStore, RecordCache cache, long maxAgeInMillis,
+			Clock clock) {
+		return new DiskBackedRecordCache(type, diskRecordStore, cache, maxAgeInMillis, clock);
+	}
+
+	private DiskBackedRecordCache(String type, DiskRecordStore diskRecordStore, RecordCache cache,
+			long maxAgeInMillis, Clock clock) {
+		this.type = type;
+		this.diskRecordStore = diskRecordStore;
+		this.cache = cache;
+		this.maxAgeInMillis = maxAgeInMillis;
+		this.clock = clock;
+	}
+
+	@Override
+	public DataGroup read(String id, Function<String, DataGroup> loader) {
+		return cache.read(id, recordId -> readFromDiskUnlessTooOldOrLoad(recordId, loader));
+	}
+
+	private DataGroup readFromDiskUnlessTooOldOrLoad(String id,
+			Function<String, DataGroup> loader) {
+		long invalidationCountBeforeLoad = invalidationCount.get();
+		StoredRecord storedRecord = diskRecordStore.read(type, id);
+		if (storedRecord != null && isYoungerThanMaxAge(storedRecord)) {
+			diskHitCount.incrementAndGet();
+			return storedRecord.getVersionedRecord().getRecord();
+		}
+		DataGroup record = loader.apply(id);
+		possiblyWriteToDisk(id, VersionedRecord.usingRecordWithoutVersion(record),
+				invalidationCountBeforeLoad);
+		return record;
+	}
+
+	private synchronized void possiblyWriteToDisk(String id, VersionedRecord record,
+			long invalidationCountBeforeLoad) {
+		if (invalidationCount.get() == invalidationCountBeforeLoad) {
+			diskRecordStore.write(type, id, record);
+		}
+	}
+
+	private boolean isYoungerThanMaxAge(StoredRecord storedRecord) {
+		return clock.millis() - storedRecord.getStoredAtMillis() < maxAgeInMillis;
+	}
+
+	@Override
+	public DataGroup read(String id, RecordLoader loader) {
+		return cache.read(id,
+				(recordId, staleRecord) -> loadUsingStoredRecordIfNotStale(recordId, staleRecord,
+						loader));
+	}
+
+	private VersionedRecord loadUsingStoredRecordIfNotStale(String id, VersionedRecord staleRecord,
+			RecordLoader loader) {
+		long invalidationCountBeforeLoad = invalidationCount.get();
+		if (staleRecord != null) {
+			return loadAndPossiblyStore(id, staleRecord, loader, invalidationCountBeforeLoad);
+		}
+		VersionedRecord storedRecord = readVersionedRecordFromDiskOrNull(id);
+		VersionedRecord record = loadAndPossiblyStore(id, storedRecord, loader,
+				invalidationCountBeforeLoad);
+		if (storedRecord != null && record == storedRecord) {
+			diskHitCount.incrementAndGet();
+		}
+		return record;
+	}
+
+	private VersionedRecord readVersionedRecordFromDiskOrNull(String id) {
+		StoredRecord storedRecord = diskRecordStore.read(type, id);
+		return storedRecord == null ? null : storedRecord.getVersionedRecord();
+	}
+
+	private VersionedRecord loadAndPossiblyStore(String id, VersionedRecord knownRecord,
+			RecordLoader loader, long invalidationCountBeforeLoad) {
+		VersionedRecord record = loader.load(id, knownRecord);
+		if (record != knownRecord && hasVersion(record)) {
+			possiblyWriteToDisk(id, record, invalidationCountBeforeLoad);
+		}
+		return record;
+	}
+
+	private boolean hasVersion(VersionedRecord record) {
+		return record.getVersion() != null && !"".equals(record.getVersion());
+	}
+
+	@Override
+	public synchronized void invalidate(String id) {
+		invalidationCount.incrementAndGet();
+		cache.invalidate(id);
+		diskRecordStore.remove(type, id);
+	}
+
+	@Override
+	public synchronized void invalidateAll() {
+		invalidationCount.incrementAndGet();
+		cache.invalidateAll();
+		diskRecordStore.removeAllOfType(type);
+	}
+
+	@Override
+	public RecordCacheStatistics getStatistics() {
+		return cache.getStatistics();
+	}
+
+	@Override
+	public int getMaxSize() {
+		return cache.getMaxSize();
+	}
+
+	public long getDiskHitCount() {
+		return diskHitCount.get();
+	}
+
+	public DiskRecordStore getDiskRecordStore() {
+		// needed for tests
+		return diskRecordStore;
+	}
+
+	public RecordCache getCache() {
+		// needed for tests
+		return cache;
+	}
+
+	public String getType() {
+		// needed for tests
+		return type;
+	}
+
+}
@@ -0,0 +1,474 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+
+/**
+ * DiskRecordStore keeps converted records in a memory mapped file, so that they can be read again
+ * after a restart without asking fedora or the db. Records are stored per type and id together
+ * with their version, if any, and the time they were stored.
+ * <p>
+ * The file is append only. Each entry starts with its length and a CRC32 checksum, and when the
+ * store is opened the entries are read from the start of the file until an entry is missing or
+ * has a checksum that does not match, so an entry that was only partly written when the process
+ * stopped is ignored. Removed records are written as removal entries. When the file is full the
+ * records still in use are copied to a new file, which is written to disk and then atomically
+ * renamed to replace the file, so a crash while compacting leaves either the old or the compacted
+ * file and never a mix of both. If a record still does not fit it is not stored.
+ */
+public final class DiskRecordStore implements Closeable {
+	private static final int MIN_CAPACITY_IN_BYTES = 64;
+	private static final int ENTRY_HEADER_SIZE = 8;
+	private static final int END_MARKER_SIZE = 4;
+	private static final byte RECORD = 1;
+	private static final byte REMOVED = 2;
+	private final Path path;
+	private final Clock clock;
+	private final Map<String, Integer> offsetsForKeys = new HashMap<>();
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	private int endOfEntries = 0;
+	private long rejectedWriteCount = 0;
+	private long compactionCount = 0;
+	private boolean closed = false;
+
+	public static DiskRecordStore openUsingPathAndCapacityInBytes(Path path, int capacityInBytes) {
+		return openUsingPathAndCapacityInBytesAndClock(path, capacityInBytes, Clock.systemUTC());
+	}
+
+	public static DiskRecordStore openUsingPathAndCapacityInBytesAndClock(Path path,
+			int capacityInBytes, Clock clock) {
+		throwErrorIfCapacityIsTooSmall(capacityInBytes);
+		DiskRecordStore diskRecordStore = new DiskRecordStore(path, clock);
+		diskRecordStore.open(capacityInBytes);
+		return diskRecordStore;
+	}
+
+	private static void throwErrorIfCapacityIsTooSmall(int capacityInBytes) {
+		if (capacityInBytes < MIN_CAPACITY_IN_BYTES) {
+			throw new IllegalArgumentException("capacityInBytes must be at least "
+					+ MIN_CAPACITY_IN_BYTES + ", was: " + capacityInBytes);
+		}
+	}
+
+	private DiskRecordStore(Path path, Clock clock) {
+		this.path = path;
+		this.clock = clock;
+	}
+
+	private void open(int capacityInBytes) {
+		try {
+			channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			long mappedSize = Math.max(capacityInBytes,
+					Math.min(channel.size(), Integer.MAX_VALUE));
+			buffer = channel.map(MapMode.READ_WRITE, 0, mappedSize);
+			indexEntries();
+		} catch (IOException e) {
+			closeChannelAfterFailedOpen();
+			throw DiskRecordStoreException
+					.withMessageAndException("Unable to open disk record store: " + path, e);
+		}
+	}
+
+	private void closeChannelAfterFailedOpen() {
+		try {
+			if (channel != null) {
+				channel.close();
+			}
+		} catch (IOException e) {
+			// the open has already failed
+		}
+	}
+
+	private void indexEntries() throws IOException {
+		int offset = 0;
+		byte[] payload = readValidPayloadOrNull(offset);
+		while (payload != null) {
+			indexEntry(offset, payload);
+			offset += ENTRY_HEADER_SIZE + payload.length;
+			payload = readValidPayloadOrNull(offset);
+		}
+		endOfEntries = offset;
+	}
+
+	private byte[] readValidPayloadOrNull(int offset) {
+		if (offset + ENTRY_HEADER_SIZE > buffer.capacity()) {
+			return null;
+		}
+		int length = buffer.getInt(offset);
+		if (length <= 0 || length > buffer.capacity() - offset - ENTRY_HEADER_SIZE) {
+			return null;
+		}
+		byte[] payload = readPayload(offset, length);
+		return checksum(payload) == buffer.getInt(offset + 4) ? payload : null;
+	}
+
+	private byte[] readPayload(int offset, int length) {
+		byte[] payload = new byte[length];
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset + ENTRY_HEADER_SIZE);
+		view.get(payload);
+		return payload;
+	}
+
+	private int checksum(byte[] payload) {
+		CRC32 crc = new CRC32();
+		crc.update(payload, 0, payload.length);
+		return (int) crc.getValue();
+	}
+
+	private void indexEntry(int offset, byte[] payload) throws IOException {
+		DataInputStream in = createInput(payload);
+		byte entryType = in.readByte();
+		String key = createKey(DataGroupBinaryCodec.readString(in),
+				DataGroupBinaryCodec.readString(in));
+		if (entryType == RECORD) {
+			offsetsForKeys.put(key, offset);
+		} else {
+			offsetsForKeys.remove(key);
+		}
+	}
+
+	private DataInputStream createInput(byte[] payload) {
+		return new DataInputStream(new ByteArrayInputStream(payload));
+	}
+
+	private String createKey(String type, String id) {
+		return type + "/" + id;
+	}
+
+	/**
+	 * read returns the stored record for the type and id, or null if no record is stored.
+	 */
+	public synchronized StoredRecord read(String type, String id) {
+		throwErrorIfClosed();
+		Integer offset = offsetsForKeys.get(createKey(type, id));
+		if (offset == null) {
+			return null;
+		}
+		return decodeRecord(type, id, readPayload(offset, buffer.getInt(offset)));
+	}
+
+	private void throwErrorIfClosed() {
+		if (closed) {
+			throw DiskRecordStoreException.withMessage("Disk record store is closed: " + path);
+		}
+	}
+
+	private StoredRecord decodeRecord(String type, String id, byte[] payload) {
+		try {
+			return tryToDecodeRecord(payload);
+		} catch (IOException e) {
+			throw DiskRecordStoreException.withMessageAndException(
+					"Unable to read stored record for type: " + type + " and id: " + id, e);
+		}
+	}
+
+	private StoredRecord tryToDecodeRecord(byte[] payload) throws IOException {
+		DataInputStream in = createInput(payload);
+		in.readByte();
+		DataGroupBinaryCodec.readString(in);
+		DataGroupBinaryCodec.readString(in);
+		long storedAtMillis = in.readLong();
+		String version = DataGroupBinaryCodec.readString(in);
+		DataGroup record = DataGroupBinaryCodec.readDataGroup(in);
+		return new StoredRecord(VersionedRecord.usingRecordAndVersion(record, version),
+				storedAtMillis);
+	}
+
+	/**
+	 * write stores the record for the type and id, replacing any record stored earlier. If the
+	 * record does not fit in the file it is not stored, and any earlier record is removed.
+	 */
+	public synchronized void write(String type, String id, VersionedRecord record) {
+		throwErrorIfClosed();
+		String key = createKey(type, id);
+		offsetsForKeys.remove(key);
+		byte[] payload = encodeRecordEntry(type, id, record);
+		int offset = appendEntryOrReturnMinusOne(payload);
+		if (offset != -1) {
+			offsetsForKeys.put(key, offset);
+		}
+	}
+
+	private byte[] encodeRecordEntry(String type, String id, VersionedRecord record) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			writeEntryStart(out, RECORD, type, id);
+			DataGroupBinaryCodec.writeString(out, record.getVersion());
+			DataGroupBinaryCodec.writeDataGroup(out, record.getRecord());
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw DiskRecordStoreException.withMessageAndException(
+					"Unable to write record for type: " + type + " and id: " + id, e);
+		}
+	}
+
+	private void writeEntryStart(DataOutputStream out, byte entryType, String type, String id)
+			throws IOException {
+		out.writeByte(entryType);
+		DataGroupBinaryCodec.writeString(out, type);
+		DataGroupBinaryCodec.writeString(out, id);
+		out.writeLong(clock.millis());
+	}
+
+	private int appendEntryOrReturnMinusOne(byte[] payload) {
+		int entrySize = ENTRY_HEADER_SIZE + payload.length;
+		if (!fitsAtEndOfEntries(entrySize)) {
+			compact();
+		}
+		if (!fitsAtEndOfEntries(entrySize)) {
+			rejectedWriteCount++;
+			return -1;
+		}
+		return appendEntry(payload);
+	}
+
+	private int appendEntry(byte[] payload) {
+		int offset = endOfEntries;
+		writeEntryAt(offset, payload);
+		endOfEntries += ENTRY_HEADER_SIZE + payload.length;
+		possiblyWriteEndMarker();
+		return offset;
+	}
+
+	private boolean fitsAtEndOfEntries(int entrySize) {
+		return entrySize <= buffer.capacity() - endOfEntries;
+	}
+
+	private void writeEntryAt(int offset, byte[] payload) {
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset + ENTRY_HEADER_SIZE);
+		view.put(payload);
+		buffer.putInt(offset + 4, checksum(payload));
+		buffer.putInt(offset, payload.length);
+	}
+
+	private void possiblyWriteEndMarker() {
+		if (endOfEntries + END_MARKER_SIZE <= buffer.capacity()) {
+			buffer.putInt(endOfEntries, 0);
+		}
+	}
+
+	private void compact() {
+		Path compactedPath = path.resolveSibling(path.getFileName() + ".compacting");
+		FileChannel channelBeforeCompaction = channel;
+		try {
+			writeCompactedFileAndReplaceFileWithIt(compactedPath);
+		} catch (IOException e) {
+			deleteCompactedFileAfterFailure(compactedPath);
+			throw DiskRecordStoreException
+					.withMessageAndException("Unable to compact disk record store: " + path, e);
+		}
+		closeChannelBeforeCompaction(channelBeforeCompaction);
+		compactionCount++;
+	}
+
+	private void writeCompactedFileAndReplaceFileWithIt(Path compactedPath) throws IOException {
+		FileChannel compactedChannel = FileChannel.open(compactedPath, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			MappedByteBuffer compactedBuffer = compactedChannel.map(MapMode.READ_WRITE, 0,
+					buffer.capacity());
+			Map<String, Integer> compactedOffsetsForKeys = new HashMap<>();
+			int compactedEndOfEntries = copyEntriesInUse(compactedBuffer, compactedOffsetsForKeys);
+			compactedBuffer.force();
+			Files.move(compactedPath, path, StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			channel = compactedChannel;
+			buffer = compactedBuffer;
+			offsetsForKeys.clear();
+			offsetsForKeys.putAll(compactedOffsetsForKeys);
+			endOfEntries = compactedEndOfEntries;
+		} catch (IOException e) {
+			compactedChannel.close();
+			throw e;
+		}
+	}
+
+	private int copyEntriesInUse(MappedByteBuffer compactedBuffer,
+			Map<String, Integer> compactedOffsetsForKeys) {
+		TreeMap<Integer, String> keysInFileOrder = new TreeMap<>();
+		for (Entry<String, Integer> entry : offsetsForKeys.entrySet()) {
+			keysInFileOrder.put(entry.getValue(), entry.getKey());
+		}
+		int newOffset = 0;
+		for (Entry<Integer, String> entry : keysInFileOrder.entrySet()) {
+			byte[] entryBytes = readEntry(entry.getKey());
+			ByteBuffer view = compactedBuffer.duplicate();
+			view.position(newOffset);
+			view.put(entryBytes);
+			compactedOffsetsForKeys.put(entry.getValue(), newOffset);
+			newOffset += entryBytes.length;
+		}
+		return newOffset;
+	}
+
+	private byte[] readEntry(int offset) {
+		byte[] entry = new byte[ENTRY_HEADER_SIZE + buffer.getInt(offset)];
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset);
+		view.get(entry);
+		return entry;
+	}
+
+	private void deleteCompactedFileAfterFailure(Path compactedPath) {
+		try {
+			Files.deleteIfExists(compactedPath);
+		} catch (IOException e) {
+			// the compaction has already failed, and the file is truncated by the next compaction
+		}
+	}
+
+	private void closeChannelBeforeCompaction(FileChannel channelBeforeCompaction) {
+		try {
+			channelBeforeCompaction.close();
+		} catch (IOException e) {
+			// the compacted file is already in use, and nothing is written to the replaced file
+		}
+	}
+
+	/**
+	 * remove removes the record for the type and id, if one is stored. If the removal entry does
+	 * not fit in the file, the file is compacted instead, as the compacted file does not contain
+	 * the removed record.
+	 */
+	public synchronized void remove(String type, String id) {
+		throwErrorIfClosed();
+		if (offsetsForKeys.remove(createKey(type, id)) != null) {
+			appendRemovedEntryOrCompact(type, id);
+		}
+	}
+
+	private void appendRemovedEntryOrCompact(String type, String id) {
+		byte[] payload = encodeRemovedEntry(type, id);
+		if (fitsAtEndOfEntries(ENTRY_HEADER_SIZE + payload.length)) {
+			appendEntry(payload);
+		} else {
+			compact();
+		}
+	}
+
+	private byte[] encodeRemovedEntry(String type, String id) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			writeEntryStart(new DataOutputStream(bytes), REMOVED, type, id);
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw DiskRecordStoreException.withMessageAndException(
+					"Unable to remove record for type: " + type + " and id: " + id, e);
+		}
+	}
+
+	/**
+	 * removeAllOfType removes all records stored for the type.
+	 */
+	public synchronized void removeAllOfType(String type) {
+		throwErrorIfClosed();
+		String keyPrefix = createKey(type, "");
+		List<String> idsToRemove = new ArrayList<>();
+		for (String key : offsetsForKeys.keySet()) {
+			if (key.startsWith(keyPrefix)) {
+				idsToRemove.add(key.substring(keyPrefix.length()));
+			}
+		}
+		for (String id : idsToRemove) {
+			remove(type, id);
+		}
+	}
+
+	/**
+	 * flush writes all changes to the file on disk. Changes are otherwise written by the operating
+	 * system when it sees fit.
+	 */
+	public synchronized void flush() {
+		throwErrorIfClosed();
+		buffer.force();
+	}
+
+	@Override
+	public synchronized void close() {
+		if (!closed) {
+			buffer.force();
+			closed = true;
+			closeChannel();
+		}
+	}
+
+	private void closeChannel() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			throw DiskRecordStoreException
+					.withMessageAndException("Unable to close disk record store: " + path, e);
+		}
+	}
+
+	public synchronized int getNumberOfRecords() {
+		return offsetsForKeys.size();
+	}
+
+	public synchronized int getUsedBytes() {
+		return endOfEntries;
+	}
+
+	public synchronized int getCapacityInBytes() {
+		return buffer.capacity();
+	}
+
+	public synchronized long getRejectedWriteCount() {
+		return rejectedWriteCount;
+	}
+
+	public synchronized long getCompactionCount() {
+		return compactionCount;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * NotFoundCache remembers ids that were not found in a backend, so that repeated reads of missing
+ * ids can be answered without calling the backend. Ids are forgotten after timeToLiveInMillis, and
+ * when more than maxSize ids are remembered the least recently used is forgotten. A cache with max
+ * size 0 remembers nothing.
+ * <p>
+ * An id must be invalidated when a record with the id is created or updated through the storage.
+ * Records created by other systems are found again once the id has expired, so the time to live
+ * should be short.
+ */
+public final class NotFoundCache {
+	private final int maxSize;
+	private final long timeToLiveInMillis;
+	private final Clock clock;
+	private final Map<String, Long> expiresAtForIds;
+	private long hitCount = 0;
+
+	public static NotFoundCache usingMaxSizeAndTimeToLiveInMillis(int maxSize,
+			long timeToLiveInMillis) {
+		return new NotFoundCache(maxSize, timeToLiveInMillis, Clock.systemUTC());
+	}
+
+	public static NotFoundCache usingMaxSizeAndTimeToLiveInMillisAndClock(int maxSize,
+			long timeToLiveInMillis, Clock clock) {
+		return new NotFoundCache(maxSize, timeToLiveInMillis, clock);
+	}
+
+	private NotFoundCache(int maxSize, long timeToLiveInMillis, Clock clock) {
+		this.maxSize = maxSize;
+		this.timeToLiveInMillis = timeToLiveInMillis;
+		this.clock = clock;
+		expiresAtForIds = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+				return size() > NotFoundCache.this.maxSize;
+			}
+		};
+	}
+
+	public synchronized boolean isKnownToBeMissing(String id) {
+		Long expiresAt = expiresAtForIds.get(id);
+		if (expiresAt == null) {
+			return false;
+		}
+		if (clock.millis() >= expiresAt) {
+			expiresAtForIds.remove(id);
+			return false;
+		}
+		hitCount++;
+		return true;
+	}
+
+	public synchronized void rememberMissing(String id) {
+		if (maxSize > 0) {
+			expiresAtForIds.put(id, clock.millis() + timeToLiveInMillis);
+		}
+	}
+
+	public synchronized void invalidate(String id) {
+		expiresAtForIds.remove(id);
+	}
+
+	public synchronized void invalidateAll() {
+		expiresAtForIds.clear();
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized int getSize() {
+		return expiresAtForIds.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getTimeToLiveInMillis() {
+		return timeToLiveInMillis;
+	}
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import java.util.function.Function;
+
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+
+public final class PassThroughRecordCache implements RecordCache {
+	private static final RecordCacheStatistics EMPTY_STATISTICS = new RecordCacheStatistics(0, 0,
+			0, 0, 0, 0, 0, 0);
+
+	@Override
+	public DataGroup read(String id, Function<String, DataGroup> loader) {
+		return loader.apply(id);
+	}
+
+	@Override
+	public DataGroup read(String id, RecordLoader loader) {
+		return loader.load(id, null).getRecord();
+	}
+
+	@Override
+	public void invalidate(String id) {
+		// nothing is cached
+	}
+
+	@Override
+	public void invalidateAll() {
+		// nothing is cached
+	}
+
+	@Override
+	public RecordCacheStatistics getStatistics() {
+		return EMPTY_STATISTICS;
+	}
+
+	@Override
+	public int getMaxSize() {
+		return 0;
+	}
+
+}
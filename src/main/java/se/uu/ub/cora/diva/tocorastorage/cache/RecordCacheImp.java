@@ -0,0 +1,201 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+
+/**
+ * RecordCacheImp is a bounded read through cache. When more than maxSize records are cached the
+ * least recently used record is evicted, and records older than timeToLiveInMillis are reloaded.
+ * Expired records are kept until they are evicted so that the loader can revalidate them instead
+ * of loading them again.
+ * <p>
+ * The loader is called outside of the cache lock, so a slow backend does not block reads of
+ * other cached records. A loaded record is not cached if any record was invalidated while it was
+ * being loaded, as it could otherwise overwrite the invalidation with old data.
+ * <p>
+ * Each read returns a deep copy of the cached record, so callers can change the returned record
+ * without changing the cached record or the records returned to other callers.
+ */
+public final class RecordCacheImp implements RecordCache {
+	private final int maxSize;
+	private final long timeToLiveInMillis;
+	private final Clock clock;
+	private final Map<String, CachedRecord> records;
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong revalidationCount = new AtomicLong();
+	private final AtomicLong loadFailureCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private final AtomicLong expirationCount = new AtomicLong();
+	private final AtomicLong invalidationCount = new AtomicLong();
+
+	public static RecordCacheImp usingMaxSizeAndTimeToLiveInMillis(int maxSize,
+			long timeToLiveInMillis) {
+		return new RecordCacheImp(maxSize, timeToLiveInMillis, Clock.systemUTC());
+	}
+
+	public static RecordCacheImp usingMaxSizeAndTimeToLiveInMillisAndClock(int maxSize,
+			long timeToLiveInMillis, Clock clock) {
+		return new RecordCacheImp(maxSize, timeToLiveInMillis, clock);
+	}
+
+	private RecordCacheImp(int maxSize, long timeToLiveInMillis, Clock clock) {
+		this.maxSize = maxSize;
+		this.timeToLiveInMillis = timeToLiveInMillis;
+		this.clock = clock;
+		records = createLeastRecentlyUsedMap();
+	}
+
+	private Map<String, CachedRecord> createLeastRecentlyUsedMap() {
+		return new LinkedHashMap<String, CachedRecord>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedRecord> eldest) {
+				boolean evict = size() > maxSize;
+				if (evict) {
+					evictionCount.incrementAndGet();
+				}
+				return evict;
+			}
+		};
+	}
+
+	@Override
+	public DataGroup read(String id, Function<String, DataGroup> loader) {
+		return read(id, (recordId, staleRecord) -> VersionedRecord
+				.usingRecordWithoutVersion(loader.apply(recordId)));
+	}
+
+	@Override
+	public DataGroup read(String id, RecordLoader loader) {
+		CachedRecord cachedRecord = getCachedRecord(id);
+		if (cachedRecord != null && !cachedRecord.isExpiredAt(clock.millis())) {
+			hitCount.incrementAndGet();
+			return DataGroupCopier.copy(cachedRecord.versionedRecord.getRecord());
+		}
+		missCount.incrementAndGet();
+		VersionedRecord staleRecord = getStaleRecordAndCountExpiration(cachedRecord);
+		return loadAndPossiblyCacheRecord(id, loader, staleRecord);
+	}
+
+	private synchronized CachedRecord getCachedRecord(String id) {
+		return records.get(id);
+	}
+
+	private VersionedRecord getStaleRecordAndCountExpiration(CachedRecord cachedRecord) {
+		if (cachedRecord == null) {
+			return null;
+		}
+		expirationCount.incrementAndGet();
+		return cachedRecord.versionedRecord;
+	}
+
+	private DataGroup loadAndPossiblyCacheRecord(String id, RecordLoader loader,
+			VersionedRecord staleRecord) {
+		long invalidationCountBeforeLoad = invalidationCount.get();
+		VersionedRecord loadedRecord = tryToLoad(id, loader, staleRecord);
+		countRevalidationIfStaleRecordIsStillCurrent(staleRecord, loadedRecord);
+		possiblyCacheRecord(id, loadedRecord, invalidationCountBeforeLoad);
+		return DataGroupCopier.copy(loadedRecord.getRecord());
+	}
+
+	private VersionedRecord tryToLoad(String id, RecordLoader loader,
+			VersionedRecord staleRecord) {
+		try {
+			return loader.load(id, staleRecord);
+		} catch (RuntimeException e) {
+			loadFailureCount.incrementAndGet();
+			throw e;
+		}
+	}
+
+	private void countRevalidationIfStaleRecordIsStillCurrent(VersionedRecord staleRecord,
+			VersionedRecord loadedRecord) {
+		if (staleRecord != null && staleRecord == loadedRecord) {
+			revalidationCount.incrementAndGet();
+		}
+	}
+
+	private synchronized void possiblyCacheRecord(String id, VersionedRecord loadedRecord,
+			long invalidationCountBeforeLoad) {
+		if (noInvalidationsSince(invalidationCountBeforeLoad)) {
+			long expiresAt = clock.millis() + timeToLiveInMillis;
+			records.put(id, new CachedRecord(loadedRecord, expiresAt));
+		}
+	}
+
+	private boolean noInvalidationsSince(long invalidationCountBeforeLoad) {
+		return invalidationCount.get() == invalidationCountBeforeLoad;
+	}
+
+	@Override
+	public synchronized void invalidate(String id) {
+		invalidationCount.incrementAndGet();
+		records.remove(id);
+	}
+
+	@Override
+	public synchronized void invalidateAll() {
+		invalidationCount.incrementAndGet();
+		records.clear();
+	}
+
+	@Override
+	public RecordCacheStatistics getStatistics() {
+		return new RecordCacheStatistics(hitCount.get(), missCount.get(), revalidationCount.get(),
+				loadFailureCount.get(), evictionCount.get(), expirationCount.get(),
+				invalidationCount.get(), getSize());
+	}
+
+	private synchronized int getSize() {
+		return records.size();
+	}
+
+	@Override
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getTimeToLiveInMillis() {
+		return timeToLiveInMillis;
+	}
+
+	private static final class CachedRecord {
+		private final VersionedRecord versionedRecord;
+		private final long expiresAt;
+
+		CachedRecord(VersionedRecord versionedRecord, long expiresAt) {
+			this.versionedRecord = versionedRecord;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean isExpiredAt(long now) {
+			return now >= expiresAt;
+		}
+	}
+
+}
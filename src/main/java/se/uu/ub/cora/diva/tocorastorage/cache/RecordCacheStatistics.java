@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+public final class RecordCacheStatistics {
+	private long hitCount;
+	private long missCount;
+	private long revalidationCount;
+	private long loadFailureCount;
+	private long evictionCount;
+	private long expirationCount;
+	private long invalidationCount;
+	private int size;
+
+	RecordCacheStatistics(long hitCount, long missCount, long revalidationCount,
+			long loadFailureCount, long evictionCount, long expirationCount,
+			long invalidationCount, int size) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.revalidationCount = revalidationCount;
+		this.loadFailureCount = loadFailureCount;
+		this.evictionCount = evictionCount;
+		this.expirationCount = expirationCount;
+		this.invalidationCount = invalidationCount;
+		this.size = size;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	public long getRequestCount() {
+		return hitCount + missCount;
+	}
+
+	public double getHitRatio() {
+		long requestCount = getRequestCount();
+		return requestCount == 0 ? 0 : (double) hitCount / requestCount;
+	}
+
+	public long getRevalidationCount() {
+		return revalidationCount;
+	}
+
+	public long getLoadFailureCount() {
+		return loadFailureCount;
+	}
+
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	public long getExpirationCount() {
+		return expirationCount;
+	}
+
+	public long getInvalidationCount() {
+		return invalidationCount;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "hits: " + hitCount + ", misses: " + missCount + ", revalidations: "
+				+ revalidationCount + ", loadFailures: " + loadFailureCount + ", evictions: "
+				+ evictionCount + ", expirations: " + expirationCount + ", invalidations: "
+				+ invalidationCount + ", size: " + size;
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * SingleFlight merges concurrent calls for the same key into one call. The first caller for a key
+ * runs the call, and callers arriving while it is in progress wait for it and get the same result,
+ * or the same exception. Results are not kept after the call is done, caching is left to a
+ * RecordCache.
+ * <p>
+ * A SingleFlight created usingResultCopier gives each caller, the one running the call included,
+ * its own copy of the result, so that callers can change their result without changing the
+ * result other callers copy from. Without a copier all callers get the same result.
+ * <p>
+ * forget makes callers arriving after it start a new call, even if a call for the key is still in
+ * progress. It should be used when the data for a key is changed, so that no caller gets a result
+ * read before the change.
+ */
+public final class SingleFlight<K, V> {
+	private final ConcurrentMap<K, CompletableFuture<V>> callsInProgress = new ConcurrentHashMap<>();
+	private final AtomicLong callCount = new AtomicLong();
+	private final AtomicLong sharedResultCount = new AtomicLong();
+	private final UnaryOperator<V> resultCopier;
+
+	public static <K, V> SingleFlight<K, V> usingResultCopier(UnaryOperator<V> resultCopier) {
+		return new SingleFlight<>(resultCopier);
+	}
+
+	public SingleFlight() {
+		this(result -> result);
+	}
+
+	private SingleFlight(UnaryOperator<V> resultCopier) {
+		this.resultCopier = resultCopier;
+	}
+
+	public V call(K key, Supplier<V> call) {
+		CompletableFuture<V> newCall = new CompletableFuture<>();
+		CompletableFuture<V> callInProgress = callsInProgress.putIfAbsent(key, newCall);
+		if (callInProgress != null) {
+			sharedResultCount.incrementAndGet();
+			return resultCopier.apply(waitForResult(callInProgress));
+		}
+		return runCall(key, call, newCall);
+	}
+
+	private V waitForResult(CompletableFuture<V> callInProgress) {
+		try {
+			return callInProgress.join();
+		} catch (CompletionException e) {
+			throw rethrowCause(e.getCause());
+		}
+	}
+
+	private RuntimeException rethrowCause(Throwable cause) {
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return (RuntimeException) cause;
+	}
+
+	private V runCall(K key, Supplier<V> call, CompletableFuture<V> newCall) {
+		callCount.incrementAndGet();
+		try {
+			V result = call.get();
+			newCall.complete(result);
+			return resultCopier.apply(result);
+		} catch (RuntimeException | Error e) {
+			newCall.completeExceptionally(e);
+			throw e;
+		} finally {
+			callsInProgress.remove(key, newCall);
+		}
+	}
+
+	public void forget(K key) {
+		callsInProgress.remove(key);
+	}
+
+	public long getCallCount() {
+		return callCount.get();
+	}
+
+	public long getSharedResultCount() {
+		return sharedResultCount.get();
+	}
+
+	public int getNumberOfCallsInProgress() {
+		return callsInProgress.size();
+	}
+
+}
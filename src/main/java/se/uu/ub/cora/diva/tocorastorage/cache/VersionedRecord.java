@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+
+public final class VersionedRecord {
+	private final DataGroup record;
+	private final String version;
+
+	public static VersionedRecord usingRecordAndVersion(DataGroup record, String version) {
+		return new VersionedRecord(record, version);
+	}
+
+	public static VersionedRecord usingRecordWithoutVersion(DataGroup record) {
+		return new VersionedRecord(record, null);
+	}
+
+	private VersionedRecord(DataGroup record, String version) {
+		this.record = record;
+		this.version = version;
+	}
+
+	public DataGroup getRecord() {
+		return record;
+	}
+
+	public String getVersion() {
+		return version;
+	}
+
+	public boolean hasVersion(String otherVersion) {
+		return version != null && !"".equals(version) && version.equals(otherVersion);
+	}
+
+}
@@ -19,21 +19,43 @@
 package se.uu.ub.cora.diva.tocorastorage.db;
 
 import se.uu.ub.cora.diva.tocorastorage.NotImplementedException;
+import se.uu.ub.cora.diva.tocorastorage.metrics.Metrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
 
 public class DivaDbToCoraConverterFactoryImp implements DivaDbToCoraConverterFactory {
+	private Metrics metrics;
+	private DivaDbToCoraConverter organisationConverter;
+	private DivaDbToCoraConverter predecessorConverter;
+	private DivaDbToCoraConverter successorConverter;
+
+	public DivaDbToCoraConverterFactoryImp() {
+		this(new NoOpMetrics());
+	}
+
+	public DivaDbToCoraConverterFactoryImp(Metrics metrics) {
+		this.metrics = metrics;
+		organisationConverter = new DivaDbToCoraOrganisationConverter(metrics);
+		predecessorConverter = new DivaDbToCoraOrganisationPredecessorConverter(metrics);
+		successorConverter = new DivaDbToCoraOrganisationSuccessorConverter(metrics);
+	}
 
 	@Override
 	public DivaDbToCoraConverter factor(String type) {
 		if ("divaOrganisation".equals(type)) {
-			return new DivaDbToCoraOrganisationConverter();
+			return organisationConverter;
 		}
 		if ("divaOrganisationPredecessor".equals(type)) {
-			return new DivaDbToCoraOrganisationPredecessorConverter();
+			return predecessorConverter;
 		}
 		if ("divaOrganisationSuccessor".equals(type)) {
-			return new DivaDbToCoraOrganisationSuccessorConverter();
+			return successorConverter;
 		}
 		throw NotImplementedException.withMessage("No converter implemented for: " + type);
 	}
 
+	public Metrics getMetrics() {
+		// needed for tests
+		return metrics;
+	}
+
 }
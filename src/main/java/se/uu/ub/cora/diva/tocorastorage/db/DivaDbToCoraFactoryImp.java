@@ -19,24 +19,33 @@
 package se.uu.ub.cora.diva.tocorastorage.db;
 
 import se.uu.ub.cora.diva.tocorastorage.NotImplementedException;
+import se.uu.ub.cora.diva.tocorastorage.metrics.Metrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
 import se.uu.ub.cora.sqldatabase.RecordReaderFactory;
 
 public class DivaDbToCoraFactoryImp implements DivaDbToCoraFactory {
 
 	private RecordReaderFactory readerFactory;
 	private DivaDbToCoraConverterFactory converterFactory;
+	private Metrics metrics;
 
 	public DivaDbToCoraFactoryImp(RecordReaderFactory readerFactory,
 			DivaDbToCoraConverterFactory converterFactory) {
+		this(readerFactory, converterFactory, new NoOpMetrics());
+	}
+
+	public DivaDbToCoraFactoryImp(RecordReaderFactory readerFactory,
+			DivaDbToCoraConverterFactory converterFactory, Metrics metrics) {
 		this.readerFactory = readerFactory;
 		this.converterFactory = converterFactory;
+		this.metrics = metrics;
 	}
 
 	@Override
 	public DivaDbToCora factor(String type) {
 		if ("divaOrganisation".equals(type)) {
-			return DivaDbToCoraOrganisation
-					.usingRecordReaderFactoryAndConverterFactory(readerFactory, converterFactory);
+			return DivaDbToCoraOrganisation.usingRecordReaderFactoryAndConverterFactoryAndMetrics(
+					readerFactory, converterFactory, metrics);
 		}
 		throw NotImplementedException.withMessage("No implementation found for: " + type);
 	}
@@ -51,4 +60,9 @@ public class DivaDbToCoraFactoryImp implements DivaDbToCoraFactory {
 		return converterFactory;
 	}
 
+	public Metrics getMetrics() {
+		// for testing
+		return metrics;
+	}
+
 }
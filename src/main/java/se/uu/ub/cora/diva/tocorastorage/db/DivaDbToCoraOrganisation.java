@@ -5,6 +5,10 @@ import java.util.List;
 import java.util.Map;
 
 import se.uu.ub.cora.bookkeeper.data.DataGroup;
+import se.uu.ub.cora.diva.tocorastorage.metrics.Metrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.MetricsTimer;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
+import se.uu.ub.cora.spider.record.storage.RecordNotFoundException;
 import se.uu.ub.cora.sqldatabase.RecordReader;
 import se.uu.ub.cora.sqldatabase.RecordReaderFactory;
 
@@ -16,11 +20,18 @@ public class DivaDbToCoraOrganisation implements DivaDbToCora {
 	private DivaDbToCoraConverterFactory converterFactory;
 	private RecordReader recordReader;
 	private String organisationClosedDate = null;
+	private Metrics metrics;
 
 	public DivaDbToCoraOrganisation(RecordReaderFactory recordReaderFactory,
 			DivaDbToCoraConverterFactory converterFactory) {
+		this(recordReaderFactory, converterFactory, new NoOpMetrics());
+	}
+
+	private DivaDbToCoraOrganisation(RecordReaderFactory recordReaderFactory,
+			DivaDbToCoraConverterFactory converterFactory, Metrics metrics) {
 		this.recordReaderFactory = recordReaderFactory;
 		this.converterFactory = converterFactory;
+		this.metrics = metrics;
 	}
 
 	public static DivaDbToCoraOrganisation usingRecordReaderFactoryAndConverterFactory(
@@ -29,6 +40,12 @@ public class DivaDbToCoraOrganisation implements DivaDbToCora {
 		return new DivaDbToCoraOrganisation(recordReaderFactory, converterFactory);
 	}
 
+	public static DivaDbToCoraOrganisation usingRecordReaderFactoryAndConverterFactoryAndMetrics(
+			RecordReaderFactory recordReaderFactory, DivaDbToCoraConverterFactory converterFactory,
+			Metrics metrics) {
+		return new DivaDbToCoraOrganisation(recordReaderFactory, converterFactory, metrics);
+	}
+
 	@Override
 	public DataGroup convertOneRowData(String type, String id) {
 		recordReader = getRecordReaderFactory().factor();
@@ -39,15 +56,35 @@ public class DivaDbToCoraOrganisation implements DivaDbToCora {
 	}
 
 	private DataGroup readAndConvertOrganisationFromDb(String type, String id) {
-		Map<String, String> readRow = readOneRowFromDbUsingTypeAndId(type, id);
+		List<Map<String, String>> readRows = readRowsFromDbUsingTypeAndId(type, id);
+		throwErrorIfNoRowWasFound(type, id, readRows);
+		Map<String, String> readRow = readRows.get(0);
 		saveClosedDateIfItExists(readRow);
 		return convertOneMapFromDbToDataGroup(type, readRow);
 	}
 
-	private Map<String, String> readOneRowFromDbUsingTypeAndId(String type, String id) {
+	/**
+	 * readRowsFromDbUsingTypeAndId reads the rows for the id using readFromTableUsingConditions,
+	 * which returns an empty list when there is no row for the id. A missing row can then be told
+	 * apart from a db that can not be read, which throws a SqlStorageException.
+	 */
+	private List<Map<String, String>> readRowsFromDbUsingTypeAndId(String type, String id) {
 		Map<String, String> conditions = new HashMap<>();
 		conditions.put("id", id);
-		return recordReader.readOneRowFromDbUsingTableAndConditions(type, conditions);
+		MetricsTimer timer = metrics.startTimer("db.readFromTableUsingConditions." + type);
+		try {
+			return recordReader.readFromTableUsingConditions(type, conditions);
+		} finally {
+			timer.stop();
+		}
+	}
+
+	private void throwErrorIfNoRowWasFound(String type, String id,
+			List<Map<String, String>> readRows) {
+		if (!collectionContainsData(readRows)) {
+			throw new RecordNotFoundException(
+					"Record not found in db for type: " + type + " and id: " + id);
+		}
 	}
 
 	private void saveClosedDateIfItExists(Map<String, String> readRow) {
@@ -64,8 +101,8 @@ public class DivaDbToCoraOrganisation implements DivaDbToCora {
 	private void tryToReadAndConvertPredecessors(String id, DataGroup organisation) {
 		Map<String, String> conditions = new HashMap<>();
 		conditions.put("organisation_id", id);
-		List<Map<String, String>> predecessors = recordReader
-				.readFromTableUsingConditions(DIVA_ORGANISATION_PREDECESSOR, conditions);
+		List<Map<String, String>> predecessors = readFromTableUsingConditions(
+				DIVA_ORGANISATION_PREDECESSOR, conditions);
 
 		possiblyConvertPredecessors(organisation, predecessors);
 	}
@@ -102,12 +139,22 @@ public class DivaDbToCoraOrganisation implements DivaDbToCora {
 	private void tryToReadAndConvertSuccessors(String id, DataGroup organisation) {
 		Map<String, String> conditions = new HashMap<>();
 		conditions.put("predecessor_id", id);
-		List<Map<String, String>> successors = recordReader
-				.readFromTableUsingConditions(DIVA_ORGANISATION_PREDECESSOR, conditions);
+		List<Map<String, String>> successors = readFromTableUsingConditions(
+				DIVA_ORGANISATION_PREDECESSOR, conditions);
 
 		possiblyConvertSuccessors(organisation, successors);
 	}
 
+	private List<Map<String, String>> readFromTableUsingConditions(String tableName,
+			Map<String, String> conditions) {
+		MetricsTimer timer = metrics.startTimer("db.readFromTable." + tableName);
+		try {
+			return recordReader.readFromTableUsingConditions(tableName, conditions);
+		} finally {
+			timer.stop();
+		}
+	}
+
 	private void possiblyConvertSuccessors(DataGroup organisation,
 			List<Map<String, String>> successors) {
 		if (collectionContainsData(successors)) {
@@ -150,4 +197,9 @@ public class DivaDbToCoraOrganisation implements DivaDbToCora {
 		// for testing
 		return converterFactory;
 	}
+
+	public Metrics getMetrics() {
+		// for testing
+		return metrics;
+	}
 }
@@ -22,26 +22,31 @@ import java.util.Map;
 
 import se.uu.ub.cora.bookkeeper.data.DataAtomic;
 import se.uu.ub.cora.bookkeeper.data.DataGroup;
+import se.uu.ub.cora.diva.tocorastorage.metrics.Metrics;
 
 public class DivaDbToCoraOrganisationAncestryConverter {
 	protected static final String PREDECESSOR_ID = "predecessor_id";
 	protected static final String ORGANISATION_ID = "organisation_id";
-	protected Map<String, String> dbRow;
+	protected Metrics metrics;
 
-	protected boolean mandatoryValuesAreMissing() {
-		return organisationIdIsMissing() || predecessorIdIsMissing();
+	public DivaDbToCoraOrganisationAncestryConverter(Metrics metrics) {
+		this.metrics = metrics;
 	}
 
-	private boolean organisationIdIsMissing() {
-		return !dbRowHasValueForKey(ORGANISATION_ID);
+	protected boolean mandatoryValuesAreMissing(Map<String, String> dbRow) {
+		return organisationIdIsMissing(dbRow) || predecessorIdIsMissing(dbRow);
 	}
 
-	protected boolean dbRowHasValueForKey(String key) {
+	private boolean organisationIdIsMissing(Map<String, String> dbRow) {
+		return !dbRowHasValueForKey(dbRow, ORGANISATION_ID);
+	}
+
+	protected boolean dbRowHasValueForKey(Map<String, String> dbRow, String key) {
 		return dbRow.containsKey(key) && !"".equals(dbRow.get(key));
 	}
 
-	private boolean predecessorIdIsMissing() {
-		return !dbRowHasValueForKey(PREDECESSOR_ID);
+	private boolean predecessorIdIsMissing(Map<String, String> dbRow) {
+		return !dbRowHasValueForKey(dbRow, PREDECESSOR_ID);
 	}
 
 	protected DataGroup createOrganisationLinkUsingLinkedRecordId(String organisationId) {
@@ -51,4 +56,9 @@ public class DivaDbToCoraOrganisationAncestryConverter {
 		predecessor.addChild(DataAtomic.withNameInDataAndValue("linkedRecordId", organisationId));
 		return predecessor;
 	}
-}
\ No newline at end of file
+
+	public Metrics getMetrics() {
+		// needed for tests
+		return metrics;
+	}
+}
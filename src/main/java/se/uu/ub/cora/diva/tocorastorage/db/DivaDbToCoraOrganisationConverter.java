@@ -6,51 +6,70 @@ import java.util.Map;
 
 import se.uu.ub.cora.bookkeeper.data.DataAtomic;
 import se.uu.ub.cora.bookkeeper.data.DataGroup;
+import se.uu.ub.cora.diva.tocorastorage.metrics.Metrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.MetricsTimer;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
 
 public class DivaDbToCoraOrganisationConverter implements DivaDbToCoraConverter {
 
 	private static final String ORGANISATION_PARENTID = "organisation_parentid";
 	private static final String ORGANISATION_ID = "id";
 	private static final String ALTERNATIVE_NAME = "alternative_name";
-	private Map<String, String> dbRow;
-	private DataGroup organisation;
+	private Metrics metrics;
+
+	public DivaDbToCoraOrganisationConverter() {
+		this(new NoOpMetrics());
+	}
+
+	public DivaDbToCoraOrganisationConverter(Metrics metrics) {
+		this.metrics = metrics;
+	}
 
 	@Override
 	public DataGroup fromMap(Map<String, String> dbRow) {
-		this.dbRow = dbRow;
-		if (organisationIsEmpty()) {
+		MetricsTimer timer = metrics.startTimer("converter.divaOrganisation.fromMap");
+		try {
+			throwErrorIfOrganisationIsEmpty(dbRow);
+			return createDataGroup(dbRow);
+		} finally {
+			timer.stop();
+		}
+	}
+
+	private void throwErrorIfOrganisationIsEmpty(Map<String, String> dbRow) {
+		if (organisationIsEmpty(dbRow)) {
 			throw ConversionException.withMessageAndException(
 					"Error converting organisation to Cora organisation: Map does not contain value for "
 							+ ORGANISATION_ID,
 					null);
 		}
-		return createDataGroup();
 	}
 
-	private boolean organisationIsEmpty() {
+	private boolean organisationIsEmpty(Map<String, String> dbRow) {
 		return !dbRow.containsKey(ORGANISATION_ID) || "".equals(dbRow.get(ORGANISATION_ID));
 	}
 
-	private DataGroup createDataGroup() {
-		createAndAddOrganisationWithRecordInfo();
-		createAndAddName();
-		createAndAddAlternativeName();
-		createAndAddOrganisationType();
-		createAndAddEligibility();
-		possiblyCeateAndAddAddress();
-		possiblyCreateAndAddOrganisationNumber();
-		possiblyCreateAndAddOrganisationCode();
-		possiblyCreateAndAddURL();
-		possiblyAddParentOrganisation();
+	private DataGroup createDataGroup(Map<String, String> dbRow) {
+		DataGroup organisation = createOrganisationWithRecordInfo(dbRow);
+		createAndAddName(dbRow, organisation);
+		createAndAddAlternativeName(dbRow, organisation);
+		createAndAddOrganisationType(organisation);
+		createAndAddEligibility(dbRow, organisation);
+		possiblyCeateAndAddAddress(dbRow, organisation);
+		possiblyCreateAndAddOrganisationNumber(dbRow, organisation);
+		possiblyCreateAndAddOrganisationCode(dbRow, organisation);
+		possiblyCreateAndAddURL(dbRow, organisation);
+		possiblyAddParentOrganisation(dbRow, organisation);
 
 		return organisation;
 	}
 
-	private void createAndAddOrganisationWithRecordInfo() {
-		organisation = DataGroup.withNameInData("organisation");
+	private DataGroup createOrganisationWithRecordInfo(Map<String, String> dbRow) {
+		DataGroup organisation = DataGroup.withNameInData("organisation");
 		String id = dbRow.get(ORGANISATION_ID);
 		DataGroup recordInfo = createRecordInfo(id);
 		organisation.addChild(recordInfo);
+		return organisation;
 	}
 
 	private DataGroup createRecordInfo(String id) {
@@ -117,13 +136,14 @@ public class DivaDbToCoraOrganisationConverter implements DivaDbToCoraConverter
 		return localDateTime.format(formatter);
 	}
 
-	private void createAndAddName() {
+	private void createAndAddName(Map<String, String> dbRow, DataGroup organisation) {
 		String divaOrganisationName = dbRow.get("defaultname");
 		organisation.addChild(
 				DataAtomic.withNameInDataAndValue("organisationName", divaOrganisationName));
 	}
 
-	private void createAndAddAlternativeName() {
+	private void createAndAddAlternativeName(Map<String, String> dbRow,
+			DataGroup organisation) {
 		DataGroup alternativeNameDataGroup = DataGroup.withNameInData("alternativeName");
 		alternativeNameDataGroup.addChild(DataAtomic.withNameInDataAndValue("language", "en"));
 		String alternativeName = dbRow.get(ALTERNATIVE_NAME);
@@ -132,11 +152,11 @@ public class DivaDbToCoraOrganisationConverter implements DivaDbToCoraConverter
 		organisation.addChild(alternativeNameDataGroup);
 	}
 
-	private void createAndAddOrganisationType() {
+	private void createAndAddOrganisationType(DataGroup organisation) {
 		organisation.addChild(DataAtomic.withNameInDataAndValue("organisationType", "unit"));
 	}
 
-	private void createAndAddEligibility() {
+	private void createAndAddEligibility(Map<String, String> dbRow, DataGroup organisation) {
 		String eligible = dbRow.get("not_eligible");
 		String coraEligible = isEligible(eligible) ? "yes" : "no";
 		organisation.addChild(DataAtomic.withNameInDataAndValue("eligible", coraEligible));
@@ -146,61 +166,76 @@ public class DivaDbToCoraOrganisationConverter implements DivaDbToCoraConverter
 		return "f".equals(eligible);
 	}
 
-	private void possiblyCeateAndAddAddress() {
-		possiblyAddAtomicValueUsingKeyAndNameInData("city", "city");
-		possiblyAddAtomicValueUsingKeyAndNameInData("street", "street");
-		possiblyAddAtomicValueUsingKeyAndNameInData("box", "box");
-		possiblyAddAtomicValueUsingKeyAndNameInData("postnumber", "postcode");
-		possiblyAddCountryConvertedToUpperCase();
+	private void possiblyCeateAndAddAddress(Map<String, String> dbRow, DataGroup organisation) {
+		possiblyAddAtomicValueUsingKeyAndNameInData(dbRow, organisation, "city", "city");
+		possiblyAddAtomicValueUsingKeyAndNameInData(dbRow, organisation, "street", "street");
+		possiblyAddAtomicValueUsingKeyAndNameInData(dbRow, organisation, "box", "box");
+		possiblyAddAtomicValueUsingKeyAndNameInData(dbRow, organisation, "postnumber",
+				"postcode");
+		possiblyAddCountryConvertedToUpperCase(dbRow, organisation);
 	}
 
-	private void possiblyAddAtomicValueUsingKeyAndNameInData(String key, String nameInData) {
-		if (valueExistsForKey(key)) {
+	private void possiblyAddAtomicValueUsingKeyAndNameInData(Map<String, String> dbRow,
+			DataGroup organisation, String key, String nameInData) {
+		if (valueExistsForKey(dbRow, key)) {
 			String value = dbRow.get(key);
 			organisation.addChild(DataAtomic.withNameInDataAndValue(nameInData, value));
 		}
 	}
 
-	private boolean valueExistsForKey(String key) {
-		return dbRow.containsKey(key) && valueForKeyHoldsNonEmptyData(key);
+	private boolean valueExistsForKey(Map<String, String> dbRow, String key) {
+		return dbRow.containsKey(key) && valueForKeyHoldsNonEmptyData(dbRow, key);
 	}
 
-	private boolean valueForKeyHoldsNonEmptyData(String key) {
+	private boolean valueForKeyHoldsNonEmptyData(Map<String, String> dbRow, String key) {
 		return dbRow.get(key) != null && !"".equals(dbRow.get(key));
 	}
 
-	private void possiblyAddCountryConvertedToUpperCase() {
-		if (valueExistsForKey("country_code")) {
+	private void possiblyAddCountryConvertedToUpperCase(Map<String, String> dbRow,
+			DataGroup organisation) {
+		if (valueExistsForKey(dbRow, "country_code")) {
 			String uppercaseValue = dbRow.get("country_code").toUpperCase();
 			organisation.addChild(DataAtomic.withNameInDataAndValue("country", uppercaseValue));
 		}
 	}
 
-	private void possiblyCreateAndAddOrganisationNumber() {
-		possiblyAddAtomicValueUsingKeyAndNameInData("orgnumber", "organisationNumber");
+	private void possiblyCreateAndAddOrganisationNumber(Map<String, String> dbRow,
+			DataGroup organisation) {
+		possiblyAddAtomicValueUsingKeyAndNameInData(dbRow, organisation, "orgnumber",
+				"organisationNumber");
 	}
 
-	private void possiblyCreateAndAddOrganisationCode() {
-		possiblyAddAtomicValueUsingKeyAndNameInData("organisation_code", "organisationCode");
+	private void possiblyCreateAndAddOrganisationCode(Map<String, String> dbRow,
+			DataGroup organisation) {
+		possiblyAddAtomicValueUsingKeyAndNameInData(dbRow, organisation, "organisation_code",
+				"organisationCode");
 	}
 
-	private void possiblyCreateAndAddURL() {
-		possiblyAddAtomicValueUsingKeyAndNameInData("organisation_homepage", "URL");
+	private void possiblyCreateAndAddURL(Map<String, String> dbRow, DataGroup organisation) {
+		possiblyAddAtomicValueUsingKeyAndNameInData(dbRow, organisation, "organisation_homepage",
+				"URL");
 	}
 
-	private void possiblyAddParentOrganisation() {
-		if (valueExistsForKey(ORGANISATION_PARENTID)) {
+	private void possiblyAddParentOrganisation(Map<String, String> dbRow,
+			DataGroup organisation) {
+		if (valueExistsForKey(dbRow, ORGANISATION_PARENTID)) {
 			DataGroup parentOrg = DataGroup.withNameInData("parentOrganisation");
-			createAndAddLinkToParentOrganisation(parentOrg);
+			createAndAddLinkToParentOrganisation(dbRow, parentOrg);
 			organisation.addChild(parentOrg);
 		}
 	}
 
-	private void createAndAddLinkToParentOrganisation(DataGroup parentOrg) {
+	private void createAndAddLinkToParentOrganisation(Map<String, String> dbRow,
+			DataGroup parentOrg) {
 		String parentId = dbRow.get(ORGANISATION_PARENTID);
 		DataGroup parentOrgLink = createLinkUsingNameInDataRecordTypeAndRecordId("organisationLink",
 				"divaOrganisation", parentId);
 		parentOrg.addChild(parentOrgLink);
 	}
 
-}
\ No newline at end of file
+	public Metrics getMetrics() {
+		// needed for tests
+		return metrics;
+	}
+
+}
@@ -22,45 +22,64 @@ import java.util.Map;
 
 import se.uu.ub.cora.bookkeeper.data.DataAtomic;
 import se.uu.ub.cora.bookkeeper.data.DataGroup;
+import se.uu.ub.cora.diva.tocorastorage.metrics.Metrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.MetricsTimer;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
 
 public class DivaDbToCoraOrganisationPredecessorConverter
 		extends DivaDbToCoraOrganisationAncestryConverter implements DivaDbToCoraConverter {
 
 	private static final String DESCRIPTION = "description";
 
+	public DivaDbToCoraOrganisationPredecessorConverter() {
+		this(new NoOpMetrics());
+	}
+
+	public DivaDbToCoraOrganisationPredecessorConverter(Metrics metrics) {
+		super(metrics);
+	}
+
 	@Override
 	public DataGroup fromMap(Map<String, String> dbRow) {
-		this.dbRow = dbRow;
-		if (mandatoryValuesAreMissing()) {
+		MetricsTimer timer = metrics.startTimer("converter.divaOrganisationPredecessor.fromMap");
+		try {
+			throwErrorIfMandatoryValuesAreMissing(dbRow);
+			return createDataGroup(dbRow);
+		} finally {
+			timer.stop();
+		}
+	}
+
+	private void throwErrorIfMandatoryValuesAreMissing(Map<String, String> dbRow) {
+		if (mandatoryValuesAreMissing(dbRow)) {
 			throw ConversionException.withMessageAndException(
 					"Error converting organisation predecessor to Cora organisation predecessor: Map does not "
 							+ "contain mandatory values for organisation id and predecessor id",
 					null);
 		}
-		return createDataGroup();
 	}
 
-	private DataGroup createDataGroup() {
+	private DataGroup createDataGroup(Map<String, String> dbRow) {
 		DataGroup formerName = DataGroup.withNameInData("formerName");
-		addPredecessorLink(formerName);
-		possiblyAddDescription(formerName);
+		addPredecessorLink(dbRow, formerName);
+		possiblyAddDescription(dbRow, formerName);
 		return formerName;
 	}
 
-	private void addPredecessorLink(DataGroup formerName) {
+	private void addPredecessorLink(Map<String, String> dbRow, DataGroup formerName) {
 		DataGroup predecessor = createOrganisationLinkUsingLinkedRecordId(
 				dbRow.get(PREDECESSOR_ID));
 		formerName.addChild(predecessor);
 	}
 
-	private void possiblyAddDescription(DataGroup formerName) {
-		if (predecessorHasDescription()) {
+	private void possiblyAddDescription(Map<String, String> dbRow, DataGroup formerName) {
+		if (predecessorHasDescription(dbRow)) {
 			formerName.addChild(DataAtomic.withNameInDataAndValue("organisationComment",
 					dbRow.get(DESCRIPTION)));
 		}
 	}
 
-	private boolean predecessorHasDescription() {
-		return dbRowHasValueForKey(DESCRIPTION);
+	private boolean predecessorHasDescription(Map<String, String> dbRow) {
+		return dbRowHasValueForKey(dbRow, DESCRIPTION);
 	}
 }
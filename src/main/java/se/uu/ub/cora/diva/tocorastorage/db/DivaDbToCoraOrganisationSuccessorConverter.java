@@ -22,43 +22,62 @@ import java.util.Map;
 
 import se.uu.ub.cora.bookkeeper.data.DataAtomic;
 import se.uu.ub.cora.bookkeeper.data.DataGroup;
+import se.uu.ub.cora.diva.tocorastorage.metrics.Metrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.MetricsTimer;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
 
 public class DivaDbToCoraOrganisationSuccessorConverter
 		extends DivaDbToCoraOrganisationAncestryConverter implements DivaDbToCoraConverter {
 
+	public DivaDbToCoraOrganisationSuccessorConverter() {
+		this(new NoOpMetrics());
+	}
+
+	public DivaDbToCoraOrganisationSuccessorConverter(Metrics metrics) {
+		super(metrics);
+	}
+
 	@Override
 	public DataGroup fromMap(Map<String, String> dbRow) {
-		this.dbRow = dbRow;
-		if (mandatoryValuesAreMissing()) {
+		MetricsTimer timer = metrics.startTimer("converter.divaOrganisationSuccessor.fromMap");
+		try {
+			throwErrorIfMandatoryValuesAreMissing(dbRow);
+			return createDataGroup(dbRow);
+		} finally {
+			timer.stop();
+		}
+	}
+
+	private void throwErrorIfMandatoryValuesAreMissing(Map<String, String> dbRow) {
+		if (mandatoryValuesAreMissing(dbRow)) {
 			throw ConversionException.withMessageAndException(
 					"Error converting organisation successor to Cora organisation successor: Map does not "
 							+ "co" + "ntain mandatory values for organisation id and prdecessor id",
 					null);
 		}
-		return createDataGroup();
 	}
 
-	private DataGroup createDataGroup() {
+	private DataGroup createDataGroup(Map<String, String> dbRow) {
 		DataGroup closed = DataGroup.withNameInData("closed");
-		addSuccessorLink(closed);
-		possiblyAddClosedDate(closed);
+		addSuccessorLink(dbRow, closed);
+		possiblyAddClosedDate(dbRow, closed);
 		return closed;
 	}
 
-	private void addSuccessorLink(DataGroup closed) {
+	private void addSuccessorLink(Map<String, String> dbRow, DataGroup closed) {
 		DataGroup successor = createOrganisationLinkUsingLinkedRecordId(dbRow.get(ORGANISATION_ID));
 		closed.addChild(successor);
 	}
 
-	private void possiblyAddClosedDate(DataGroup closed) {
-		if (successorHasClosedDate()) {
+	private void possiblyAddClosedDate(Map<String, String> dbRow, DataGroup closed) {
+		if (successorHasClosedDate(dbRow)) {
 			closed.addChild(
 					DataAtomic.withNameInDataAndValue("closedDate", dbRow.get("closed_date")));
 		}
 	}
 
-	private boolean successorHasClosedDate() {
-		return dbRowHasValueForKey("closed_date");
+	private boolean successorHasClosedDate(Map<String, String> dbRow) {
+		return dbRowHasValueForKey(dbRow, "closed_date");
 	}
 
 }
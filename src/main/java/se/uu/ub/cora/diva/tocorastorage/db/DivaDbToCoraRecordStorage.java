@@ -20,21 +20,42 @@ package se.uu.ub.cora.diva.tocorastorage.db;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import se.uu.ub.cora.bookkeeper.data.DataGroup;
 import se.uu.ub.cora.diva.tocorastorage.NotImplementedException;
+import se.uu.ub.cora.diva.tocorastorage.cache.CacheWarmer;
+import se.uu.ub.cora.diva.tocorastorage.cache.DataGroupCopier;
+import se.uu.ub.cora.diva.tocorastorage.cache.NotFoundCache;
+import se.uu.ub.cora.diva.tocorastorage.cache.PassThroughRecordCache;
+import se.uu.ub.cora.diva.tocorastorage.cache.RecordCache;
+import se.uu.ub.cora.diva.tocorastorage.cache.SingleFlight;
+import se.uu.ub.cora.diva.tocorastorage.metrics.Metrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.MetricsTimer;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
 import se.uu.ub.cora.spider.data.SpiderReadResult;
+import se.uu.ub.cora.spider.record.storage.RecordNotFoundException;
 import se.uu.ub.cora.spider.record.storage.RecordStorage;
 import se.uu.ub.cora.sqldatabase.RecordReader;
 import se.uu.ub.cora.sqldatabase.RecordReaderFactory;
 
 public class DivaDbToCoraRecordStorage implements RecordStorage {
 
+	private static final String DIVA_ORGANISATION = "divaOrganisation";
 	private RecordReaderFactory recordReaderFactory;
 	private DivaDbToCoraConverterFactory converterFactory;
 	private DivaDbToCoraFactory divaDbToCoraFactory;
+	private Metrics metrics = new NoOpMetrics();
+	private Executor asyncExecutor = Runnable::run;
+	private SingleFlight<String, DataGroup> organisationReads = SingleFlight
+			.usingResultCopier(DataGroupCopier::copy);
+	private RecordCache organisationCache = new PassThroughRecordCache();
+	private NotFoundCache missingOrganisations = NotFoundCache
+			.usingMaxSizeAndTimeToLiveInMillis(0, 0);
 
 	private DivaDbToCoraRecordStorage(RecordReaderFactory recordReaderFactory,
 			DivaDbToCoraConverterFactory converterFactory,
@@ -53,13 +74,44 @@ public class DivaDbToCoraRecordStorage implements RecordStorage {
 
 	@Override
 	public DataGroup read(String type, String id) {
-		if ("divaOrganisation".equals(type)) {
-			DivaDbToCora divaDbToCora = divaDbToCoraFactory.factor(type);
-			return divaDbToCora.convertOneRowData(type, id);
+		if (DIVA_ORGANISATION.equals(type)) {
+			return organisationReads.call(id,
+					() -> readOrganisationUnlessKnownToBeMissing(type, id));
 		}
 		throw NotImplementedException.withMessage("read is not implemented for type: " + type);
 	}
 
+	private DataGroup readOrganisationUnlessKnownToBeMissing(String type, String id) {
+		if (missingOrganisations.isKnownToBeMissing(id)) {
+			throw new RecordNotFoundException(
+					"Record not found in db for type: " + type + " and id: " + id);
+		}
+		try {
+			return organisationCache.read(id,
+					organisationId -> readOrganisationFromDb(type, organisationId));
+		} catch (RecordNotFoundException e) {
+			missingOrganisations.rememberMissing(id);
+			throw e;
+		}
+	}
+
+	private DataGroup readOrganisationFromDb(String type, String id) {
+		DivaDbToCora divaDbToCora = divaDbToCoraFactory.factor(type);
+		return divaDbToCora.convertOneRowData(type, id);
+	}
+
+	/**
+	 * readAsync and readListAsync run read and readList using the async executor. Unless an
+	 * executor is set with setAsyncExecutor they run in the calling thread.
+	 */
+	public CompletableFuture<DataGroup> readAsync(String type, String id) {
+		return CompletableFuture.supplyAsync(() -> read(type, id), asyncExecutor);
+	}
+
+	public CompletableFuture<SpiderReadResult> readListAsync(String type, DataGroup filter) {
+		return CompletableFuture.supplyAsync(() -> readList(type, filter), asyncExecutor);
+	}
+
 	@Override
 	public void create(String type, String id, DataGroup record, DataGroup collectedTerms,
 			DataGroup linkList, String dataDivider) {
@@ -85,7 +137,7 @@ public class DivaDbToCoraRecordStorage implements RecordStorage {
 
 	@Override
 	public SpiderReadResult readList(String type, DataGroup filter) {
-		if ("divaOrganisation".equals(type)) {
+		if (DIVA_ORGANISATION.equals(type)) {
 			List<Map<String, String>> rowsFromDb = readAllFromDb(type);
 			return createSpiderReadResultFromDbData(type, rowsFromDb);
 		}
@@ -94,7 +146,12 @@ public class DivaDbToCoraRecordStorage implements RecordStorage {
 
 	private List<Map<String, String>> readAllFromDb(String type) {
 		RecordReader recordReader = recordReaderFactory.factor();
-		return recordReader.readAllFromTable(type);
+		MetricsTimer timer = metrics.startTimer("db.readAllFromTable." + type);
+		try {
+			return recordReader.readAllFromTable(type);
+		} finally {
+			timer.stop();
+		}
 	}
 
 	private SpiderReadResult createSpiderReadResultFromDbData(String type,
@@ -119,6 +176,25 @@ public class DivaDbToCoraRecordStorage implements RecordStorage {
 		return dbToCoraConverter.fromMap(readRow);
 	}
 
+	/**
+	 * addOrganisationsToCacheWarmUp adds organisations in the db to the cache warmer, until the
+	 * organisation cache set when this is called is full. The ids are read from the organisation
+	 * table, and each organisation is then read as by read, so that it ends up in the organisation
+	 * cache. Nothing is read unless an organisation cache is set.
+	 */
+	public void addOrganisationsToCacheWarmUp(CacheWarmer cacheWarmer) {
+		cacheWarmer.addRecordsToWarmUp(DIVA_ORGANISATION, this::readOrganisationIdsFromDb,
+				id -> read(DIVA_ORGANISATION, id), organisationCache);
+	}
+
+	private Iterator<String> readOrganisationIdsFromDb() {
+		List<String> ids = new ArrayList<>();
+		for (Map<String, String> row : readAllFromDb(DIVA_ORGANISATION)) {
+			ids.add(row.get("id"));
+		}
+		return ids.iterator();
+	}
+
 	@Override
 	public SpiderReadResult readAbstractList(String type, DataGroup filter) {
 		throw NotImplementedException.withMessage("readAbstractList is not implemented");
@@ -147,4 +223,51 @@ public class DivaDbToCoraRecordStorage implements RecordStorage {
 				"recordExistsForAbstractOrImplementingRecordTypeAndRecordId is not implemented");
 	}
 
+	public void setAsyncExecutor(Executor asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+	}
+
+	public Executor getAsyncExecutor() {
+		// needed for tests
+		return asyncExecutor;
+	}
+
+	/**
+	 * setMissingOrganisations sets the cache of organisation ids that were not found in the db.
+	 * Reads of ids in the cache throw a RecordNotFoundException without querying the db. As
+	 * organisations are created outside of this storage, ids are only forgotten when they expire
+	 * or are invalidated in the cache. By default no ids are remembered.
+	 */
+	public void setMissingOrganisations(NotFoundCache missingOrganisations) {
+		this.missingOrganisations = missingOrganisations;
+	}
+
+	public NotFoundCache getMissingOrganisations() {
+		// needed for tests
+		return missingOrganisations;
+	}
+
+	public void setOrganisationCache(RecordCache organisationCache) {
+		this.organisationCache = organisationCache;
+	}
+
+	public RecordCache getOrganisationCache() {
+		// needed for tests
+		return organisationCache;
+	}
+
+	public SingleFlight<String, DataGroup> getOrganisationReads() {
+		// needed for tests
+		return organisationReads;
+	}
+
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public Metrics getMetrics() {
+		// needed for tests
+		return metrics;
+	}
+
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.util.Map;
+import java.util.Map.Entry;
+
+import se.uu.ub.cora.bookkeeper.data.DataAtomic;
+import se.uu.ub.cora.bookkeeper.data.DataElement;
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+
+/**
+ * DataGroupJsonWriter writes a DataGroup as compact json on a single line, using the same
+ * structure as Cora json, with name, value or children, attributes and repeatId. A missing value
+ * is written as json null.
+ */
+final class DataGroupJsonWriter {
+
+	private DataGroupJsonWriter() {
+	}
+
+	static String toJson(DataGroup dataGroup) {
+		StringBuilder json = new StringBuilder();
+		appendElement(json, dataGroup);
+		return json.toString();
+	}
+
+	private static void appendElement(StringBuilder json, DataElement element) {
+		json.append("{");
+		appendNameAndValue(json, "name", element.getNameInData());
+		if (element instanceof DataAtomic) {
+			appendAtomicContent(json, (DataAtomic) element);
+		} else {
+			appendGroupContent(json, (DataGroup) element);
+		}
+		json.append("}");
+	}
+
+	private static void appendAtomicContent(StringBuilder json, DataAtomic atomic) {
+		json.append(",");
+		appendNameAndValue(json, "value", atomic.getValue());
+		possiblyAppendRepeatId(json, atomic.getRepeatId());
+	}
+
+	private static void appendGroupContent(StringBuilder json, DataGroup group) {
+		json.append(",\"children\":[");
+		String separator = "";
+		for (DataElement child : group.getChildren()) {
+			json.append(separator);
+			appendElement(json, child);
+			separator = ",";
+		}
+		json.append("]");
+		possiblyAppendAttributes(json, group.getAttributes());
+		possiblyAppendRepeatId(json, group.getRepeatId());
+	}
+
+	private static void possiblyAppendAttributes(StringBuilder json,
+			Map<String, String> attributes) {
+		if (!attributes.isEmpty()) {
+			json.append(",\"attributes\":{");
+			String separator = "";
+			for (Entry<String, String> attribute : attributes.entrySet()) {
+				json.append(separator);
+				appendNameAndValue(json, attribute.getKey(), attribute.getValue());
+				separator = ",";
+			}
+			json.append("}");
+		}
+	}
+
+	private static void possiblyAppendRepeatId(StringBuilder json, String repeatId) {
+		if (repeatId != null && !repeatId.isEmpty()) {
+			json.append(",");
+			appendNameAndValue(json, "repeatId", repeatId);
+		}
+	}
+
+	private static void appendNameAndValue(StringBuilder json, String name, String value) {
+		appendString(json, name);
+		json.append(":");
+		appendString(json, value);
+	}
+
+	private static void appendString(StringBuilder json, String value) {
+		if (value == null) {
+			json.append("null");
+			return;
+		}
+		json.append("\"");
+		for (char character : value.toCharArray()) {
+			appendEscapedCharacter(json, character);
+		}
+		json.append("\"");
+	}
+
+	private static void appendEscapedCharacter(StringBuilder json, char character) {
+		if (character == '"' || character == '\\') {
+			json.append('\\').append(character);
+		} else if (character == '\n') {
+			json.append("\\n");
+		} else if (character == '\r') {
+			json.append("\\r");
+		} else if (character == '\t') {
+			json.append("\\t");
+		} else if (character < 0x20) {
+			json.append(String.format("\\u%04x", (int) character));
+		} else {
+			json.append(character);
+		}
+	}
+}
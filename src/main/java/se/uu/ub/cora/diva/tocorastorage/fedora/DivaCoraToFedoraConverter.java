@@ -24,4 +24,6 @@ public interface DivaCoraToFedoraConverter {
 
 	String toXML(DataGroup record);
 
+	String toXMLUsingSourceXML(DataGroup record, String sourceXML);
+
 }
@@ -19,32 +19,53 @@
 package se.uu.ub.cora.diva.tocorastorage.fedora;
 
 import se.uu.ub.cora.bookkeeper.data.DataGroup;
+import se.uu.ub.cora.diva.tocorastorage.metrics.Metrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.MetricsTimer;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
 import se.uu.ub.cora.httphandler.HttpHandler;
 import se.uu.ub.cora.httphandler.HttpHandlerFactory;
 
 public class DivaCoraToFedoraPersonConverter implements DivaCoraToFedoraConverter {
 	private HttpHandlerFactory httpHandlerFactory;
 	private String fedoraURL;
-	private XMLXPathParser parser;
+	private Metrics metrics;
+	private FedoraRetrier retrier = new NoRetryFedoraRetrier();
 
 	public static DivaCoraToFedoraPersonConverter usingHttpHandlerFactoryAndFedoraUrl(
 			HttpHandlerFactory httpHandlerFactory, String fedoraURL) {
-		return new DivaCoraToFedoraPersonConverter(httpHandlerFactory, fedoraURL);
+		return new DivaCoraToFedoraPersonConverter(httpHandlerFactory, fedoraURL,
+				new NoOpMetrics());
+	}
+
+	public static DivaCoraToFedoraPersonConverter usingHttpHandlerFactoryAndFedoraUrlAndMetrics(
+			HttpHandlerFactory httpHandlerFactory, String fedoraURL, Metrics metrics) {
+		return new DivaCoraToFedoraPersonConverter(httpHandlerFactory, fedoraURL, metrics);
 	}
 
 	private DivaCoraToFedoraPersonConverter(HttpHandlerFactory httpHandlerFactory,
-			String fedoraURL) {
+			String fedoraURL, Metrics metrics) {
 		this.httpHandlerFactory = httpHandlerFactory;
 		this.fedoraURL = fedoraURL;
+		this.metrics = metrics;
 	}
 
 	@Override
 	public String toXML(DataGroup record) {
 		String recordId = getIdFromRecord(record);
 		String fedoraXML = getXMLForRecordFromFedora(recordId);
-		parser = XMLXPathParser.forXML(fedoraXML);
-		convertNames(record);
-		return parser.getDocumentAsString("/");
+		return toXMLUsingSourceXML(record, fedoraXML);
+	}
+
+	@Override
+	public String toXMLUsingSourceXML(DataGroup record, String sourceXML) {
+		MetricsTimer timer = metrics.startTimer("converter.person.toXML");
+		try {
+			XMLXPathParser parser = XMLXPathParser.forXMLUsingMetrics(sourceXML, metrics);
+			convertNames(parser, record);
+			return parser.getDocumentAsString("/");
+		} finally {
+			timer.stop();
+		}
 	}
 
 	private String getIdFromRecord(DataGroup record) {
@@ -53,34 +74,45 @@ public class DivaCoraToFedoraPersonConverter implements DivaCoraToFedoraConverte
 	}
 
 	private String getXMLForRecordFromFedora(String recordId) {
+		return retrier.callUsingMetricsAndOperation(() -> readXMLForRecordFromFedora(recordId),
+				metrics, "readPersonForUpdate");
+	}
+
+	private String readXMLForRecordFromFedora(String recordId) {
 		String url = fedoraURL + "objects/" + recordId + "/datastreams/METADATA/content";
 		HttpHandler httpHandler = httpHandlerFactory.factor(url);
 		httpHandler.setRequestMethod("GET");
-		return httpHandler.getResponseText();
+		return FedoraCallMetrics.getResponseTextUsingMetricsAndOperation(httpHandler, metrics,
+				"readPersonForUpdate");
 	}
 
-	private void convertNames(DataGroup record) {
+	private void convertNames(XMLXPathParser parser, DataGroup record) {
 		DataGroup authorizedNameGroup = record.getFirstGroupWithNameInData("authorizedName");
-		updateFamilyName(authorizedNameGroup);
-		updateGivenName(authorizedNameGroup);
+		updateFamilyName(parser, authorizedNameGroup);
+		updateGivenName(parser, authorizedNameGroup);
 	}
 
-	private void updateFamilyName(DataGroup authorizedNameGroup) {
+	private void updateFamilyName(XMLXPathParser parser, DataGroup authorizedNameGroup) {
 		String familyNameFromPersonRecord = authorizedNameGroup
 				.getFirstAtomicValueWithNameInData("familyName");
-		setStringFromDocumentUsingXPath("/authorityPerson/defaultName/lastname",
+		parser.setStringInDocumentUsingXPath("/authorityPerson/defaultName/lastname",
 				familyNameFromPersonRecord);
 	}
 
-	private void updateGivenName(DataGroup authorizedNameGroup) {
+	private void updateGivenName(XMLXPathParser parser, DataGroup authorizedNameGroup) {
 		String givenNameFromPersonRecord = authorizedNameGroup
 				.getFirstAtomicValueWithNameInData("givenName");
-		setStringFromDocumentUsingXPath("/authorityPerson/defaultName/firstname",
+		parser.setStringInDocumentUsingXPath("/authorityPerson/defaultName/firstname",
 				givenNameFromPersonRecord);
 	}
 
-	private void setStringFromDocumentUsingXPath(String xpathString, String newValue) {
-		parser.setStringInDocumentUsingXPath(xpathString, newValue);
+	public void setRetrier(FedoraRetrier retrier) {
+		this.retrier = retrier;
+	}
+
+	public FedoraRetrier getRetrier() {
+		// needed for tests
+		return retrier;
 	}
 
 	public HttpHandlerFactory getHttpHandlerFactory() {
@@ -93,4 +125,9 @@ public class DivaCoraToFedoraPersonConverter implements DivaCoraToFedoraConverte
 		return fedoraURL;
 	}
 
+	public Metrics getMetrics() {
+		// needed for tests
+		return metrics;
+	}
+
 }
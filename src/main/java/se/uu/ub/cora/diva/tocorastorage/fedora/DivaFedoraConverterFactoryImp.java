@@ -20,41 +20,106 @@
 package se.uu.ub.cora.diva.tocorastorage.fedora;
 
 import se.uu.ub.cora.diva.tocorastorage.NotImplementedException;
+import se.uu.ub.cora.diva.tocorastorage.metrics.Metrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
+import se.uu.ub.cora.httphandler.HttpHandlerFactory;
 import se.uu.ub.cora.httphandler.HttpHandlerFactoryImp;
 
 public class DivaFedoraConverterFactoryImp implements DivaFedoraConverterFactory {
 
 	private String fedoraURL;
+	private boolean useStreamingPersonConverter = false;
+	private Metrics metrics;
+	private HttpHandlerFactory httpHandlerFactory;
+	private DivaFedoraToCoraConverter toCoraPersonConverter;
+	private DivaFedoraToCoraConverter toCoraPersonStreamingConverter;
+	private DivaCoraToFedoraPersonConverter toFedoraPersonConverter;
 
 	public static DivaFedoraConverterFactoryImp usingFedoraURL(String fedoraURL) {
-		return new DivaFedoraConverterFactoryImp(fedoraURL);
+		return new DivaFedoraConverterFactoryImp(new HttpHandlerFactoryImp(), fedoraURL,
+				new NoOpMetrics());
 	}
 
-	private DivaFedoraConverterFactoryImp(String fedoraURL) {
+	public static DivaFedoraConverterFactoryImp usingFedoraURLAndMetrics(String fedoraURL,
+			Metrics metrics) {
+		return new DivaFedoraConverterFactoryImp(new HttpHandlerFactoryImp(), fedoraURL, metrics);
+	}
+
+	/**
+	 * usingHttpHandlerFactoryAndFedoraURLAndMetrics lets the converters share the
+	 * HttpHandlerFactory used by the record storage, so that the reads made when converting to
+	 * fedora use the same connections and timeouts.
+	 */
+	public static DivaFedoraConverterFactoryImp usingHttpHandlerFactoryAndFedoraURLAndMetrics(
+			HttpHandlerFactory httpHandlerFactory, String fedoraURL, Metrics metrics) {
+		return new DivaFedoraConverterFactoryImp(httpHandlerFactory, fedoraURL, metrics);
+	}
+
+	private DivaFedoraConverterFactoryImp(HttpHandlerFactory httpHandlerFactory, String fedoraURL,
+			Metrics metrics) {
+		this.httpHandlerFactory = httpHandlerFactory;
 		this.fedoraURL = fedoraURL;
+		this.metrics = metrics;
+		toCoraPersonConverter = new DivaFedoraToCoraPersonConverter(metrics);
+		toCoraPersonStreamingConverter = new DivaFedoraToCoraPersonStreamingConverter(metrics);
+		toFedoraPersonConverter = DivaCoraToFedoraPersonConverter
+				.usingHttpHandlerFactoryAndFedoraUrlAndMetrics(httpHandlerFactory, fedoraURL,
+						metrics);
 	}
 
 	@Override
 	public DivaFedoraToCoraConverter factorToCoraConverter(String type) {
 		if ("person".equals(type)) {
-			return new DivaFedoraToCoraPersonConverter();
+			return factorToCoraPersonConverter();
 		}
 		throw NotImplementedException.withMessage("No converter implemented for: " + type);
 	}
 
+	private DivaFedoraToCoraConverter factorToCoraPersonConverter() {
+		if (useStreamingPersonConverter) {
+			return toCoraPersonStreamingConverter;
+		}
+		return toCoraPersonConverter;
+	}
+
 	@Override
 	public DivaCoraToFedoraConverter factorToFedoraConverter(String type) {
 		if ("person".equals(type)) {
-			HttpHandlerFactoryImp httpHandlerFactory = new HttpHandlerFactoryImp();
-			return DivaCoraToFedoraPersonConverter
-					.usingHttpHandlerFactoryAndFedoraUrl(httpHandlerFactory, fedoraURL);
+			return toFedoraPersonConverter;
 		}
 		throw NotImplementedException.withMessage("No converter implemented for: " + type);
 	}
 
+	public void setUseStreamingPersonConverter(boolean useStreamingPersonConverter) {
+		this.useStreamingPersonConverter = useStreamingPersonConverter;
+	}
+
+	/**
+	 * setRetrier sets the retrier used by the person converter when it reads the current person
+	 * from fedora before an update.
+	 */
+	public void setRetrier(FedoraRetrier retrier) {
+		toFedoraPersonConverter.setRetrier(retrier);
+	}
+
+	public FedoraRetrier getRetrier() {
+		// needed for tests
+		return toFedoraPersonConverter.getRetrier();
+	}
+
 	public String getFedoraURL() {
 		// needed for tests
 		return fedoraURL;
 	}
 
+	public Metrics getMetrics() {
+		// needed for tests
+		return metrics;
+	}
+
+	public HttpHandlerFactory getHttpHandlerFactory() {
+		// needed for tests
+		return httpHandlerFactory;
+	}
+
 }
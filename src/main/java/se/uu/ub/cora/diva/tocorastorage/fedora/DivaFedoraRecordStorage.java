@@ -18,40 +18,80 @@
  */
 package se.uu.ub.cora.diva.tocorastorage.fedora;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.List;
-
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.IntSupplier;
 
 import se.uu.ub.cora.bookkeeper.data.DataGroup;
 import se.uu.ub.cora.diva.tocorastorage.FedoraException;
 import se.uu.ub.cora.diva.tocorastorage.NotImplementedException;
+import se.uu.ub.cora.diva.tocorastorage.ParseException;
+import se.uu.ub.cora.diva.tocorastorage.cache.CacheWarmer;
+import se.uu.ub.cora.diva.tocorastorage.cache.DataGroupCopier;
+import se.uu.ub.cora.diva.tocorastorage.cache.NotFoundCache;
+import se.uu.ub.cora.diva.tocorastorage.cache.PassThroughRecordCache;
+import se.uu.ub.cora.diva.tocorastorage.cache.RecordCache;
+import se.uu.ub.cora.diva.tocorastorage.cache.RecordCacheStatistics;
+import se.uu.ub.cora.diva.tocorastorage.cache.SingleFlight;
+import se.uu.ub.cora.diva.tocorastorage.cache.VersionedRecord;
+import se.uu.ub.cora.diva.tocorastorage.metrics.Metrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
 import se.uu.ub.cora.httphandler.HttpHandler;
 import se.uu.ub.cora.httphandler.HttpHandlerFactory;
 import se.uu.ub.cora.spider.data.SpiderReadResult;
+import se.uu.ub.cora.spider.record.storage.RecordNotFoundException;
 import se.uu.ub.cora.spider.record.storage.RecordStorage;
 
 public final class DivaFedoraRecordStorage implements RecordStorage {
 
 	private static final String PERSON = "person";
+	private static final String PERSON_PID_QUERY = "pid%7Eauthority-person:*";
+	private static final String FROM_NO = "fromNo";
+	private static final String TO_NO = "toNo";
+	private static final int OK = 200;
+	private static final int NOT_FOUND = 404;
+	private static final int CONFLICT = 409;
 	private HttpHandlerFactory httpHandlerFactory;
+	private StreamingHttpHandlerFactory streamingHttpHandlerFactory;
 	private String baseURL;
 	private DivaFedoraConverterFactory converterFactory;
-	private String username;
-	private String password;
+	private String authorizationHeader;
+	private ParallelFedoraExecutor parallelExecutor = ParallelFedoraExecutor
+			.usingMaxNumberOfParallelCalls(1);
+	private int personListPageSize = 100;
+	private RecordCache personCache = new PassThroughRecordCache();
+	private FedoraSourceXMLCache sourceXMLCache = FedoraSourceXMLCache.usingMaxSize(0);
+	private Metrics metrics = new NoOpMetrics();
+	private Executor asyncExecutor = Runnable::run;
+	private FedoraCircuitBreaker circuitBreaker = new PassThroughFedoraCircuitBreaker();
+	private FedoraRetrier retrier = new NoRetryFedoraRetrier();
+	private SingleFlight<String, DataGroup> personReads = SingleFlight
+			.usingResultCopier(DataGroupCopier::copy);
+	private NotFoundCache missingPersons = NotFoundCache.usingMaxSizeAndTimeToLiveInMillis(0, 0);
 
 	private DivaFedoraRecordStorage(HttpHandlerFactory httpHandlerFactory,
 			DivaFedoraConverterFactory converterFactory, String baseURL, String username,
 			String password) {
 		this.httpHandlerFactory = httpHandlerFactory;
+		streamingHttpHandlerFactory = TextResponseStreamingHttpHandlerFactory
+				.usingHttpHandlerFactory(httpHandlerFactory);
 		this.converterFactory = converterFactory;
 		this.baseURL = baseURL;
-		this.username = username;
-		this.password = password;
+		authorizationHeader = createBasicAuthorizationHeader(username, password);
+	}
+
+	private static String createBasicAuthorizationHeader(String username, String password) {
+		String encoded = Base64.getEncoder()
+				.encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+		return "Basic " + encoded;
 	}
 
 	public static DivaFedoraRecordStorage usingHttpHandlerFactoryAndConverterFactoryAndBaseURLAndUsernameAndPassword(
@@ -64,20 +104,198 @@ public final class DivaFedoraRecordStorage implements RecordStorage {
 	@Override
 	public DataGroup read(String type, String id) {
 		if (PERSON.equals(type)) {
-			return readAndConvertPersonFromFedora(id);
+			return personReads.call(id, () -> readPersonUnlessKnownToBeMissing(id));
 		}
 		throw NotImplementedException.withMessage("read is not implemented for type: " + type);
 	}
 
-	private DataGroup readAndConvertPersonFromFedora(String id) {
-		HttpHandler httpHandler = createHttpHandlerForPerson(id);
+	private DataGroup readPersonUnlessKnownToBeMissing(String id) {
+		if (missingPersons.isKnownToBeMissing(id)) {
+			throw createPersonNotFoundException(id, null);
+		}
+		try {
+			return readPersonUsingCache(id);
+		} catch (RecordNotFoundException e) {
+			missingPersons.rememberMissing(id);
+			throw e;
+		}
+	}
+
+	/**
+	 * readPersonBypassingCache reads a person from fedora through the circuit breaker and the
+	 * retrier, without using or filling the person cache, the source xml cache or the cache of
+	 * missing persons. It is meant for bulk reads such as exports, which would otherwise evict
+	 * the persons that normal reads need from the cache.
+	 */
+	public DataGroup readPersonBypassingCache(String id) {
+		return circuitBreaker.call(() -> readAndConvertPersonStreamFromFedora(id));
+	}
+
+	private RecordNotFoundException createPersonNotFoundException(String id, Exception e) {
+		return new RecordNotFoundException(
+				"Record not found in fedora for type: person and id: " + id, e);
+	}
+
+	private DataGroup readPersonUsingCache(String id) {
+		return personCache.read(id, (personId, stalePerson) -> circuitBreaker
+				.call(() -> readOrRevalidatePersonFromFedora(personId, stalePerson)));
+	}
+
+	/**
+	 * readOrRevalidatePersonFromFedora only revalidates a stale person that has a version, using
+	 * the datastream profile. A person without a version can not be revalidated, so it is read
+	 * again using one request instead of a profile request followed by a read.
+	 */
+	private VersionedRecord readOrRevalidatePersonFromFedora(String id,
+			VersionedRecord stalePerson) {
+		if (stalePerson == null || !hasVersion(stalePerson)) {
+			return readPersonUsingOneRequest(id);
+		}
+		FedoraDatastreamProfile profile = readMetadataProfileFromFedora(id);
+		if (stalePerson.hasVersion(profile.getVersion())) {
+			return stalePerson;
+		}
+		return readPersonUsingProfile(id, profile);
+	}
+
+	private boolean hasVersion(VersionedRecord person) {
+		return person.getVersion() != null && !"".equals(person.getVersion());
+	}
+
+	/**
+	 * readPersonUsingOneRequest reads a person with one request to fedora. When the source xml is
+	 * cached the person is read as text and versioned by the checksum of the text, which is the
+	 * version fedora reports in the datastream profile when it calculates SHA-512 checksums.
+	 */
+	private VersionedRecord readPersonUsingOneRequest(String id) {
+		if (sourceXMLCache.isEnabled()) {
+			String personXML = readPersonXMLAndCacheSourceXML(id);
+			return VersionedRecord.usingRecordAndVersion(convertPerson(personXML),
+					FedoraDatastreamProfile.calculateVersionForContent(personXML));
+		}
+		return VersionedRecord.usingRecordWithoutVersion(readAndConvertPersonStreamFromFedora(id));
+	}
+
+	private String readPersonXMLAndCacheSourceXML(String id) {
+		String personXML = readPersonXMLFromFedora(id);
+		sourceXMLCache.put(id, FedoraSourceXML.usingXML(personXML));
+		return personXML;
+	}
+
+	private DataGroup readAndConvertPersonStreamFromFedora(String id) {
+		return retrier.callUsingMetricsAndOperation(
+				() -> tryToReadAndConvertPersonStreamFromFedora(id), metrics, "readPerson");
+	}
+
+	private DataGroup tryToReadAndConvertPersonStreamFromFedora(String id) {
+		StreamingHttpHandler httpHandler = streamingHttpHandlerFactory
+				.factor(createUrlForPerson(id));
+		httpHandler.setRequestMethod("GET");
+		try (FedoraResponseBody personXML = getResponseBodyOrThrowNotFound(httpHandler, id)) {
+			throwErrorIfNotFound(httpHandler::getResponseCode, id, null);
+			return convertPersonFromResponseBody(id, personXML);
+		} catch (IOException e) {
+			throw FedoraException.withMessageAndException(
+					"Unable to close response from fedora for record: " + id, e);
+		}
+	}
+
+	private DataGroup convertPersonFromResponseBody(String id, FedoraResponseBody personXML) {
+		try {
+			return converterFactory.factorToCoraConverter(PERSON).fromXML(personXML);
+		} catch (ParseException e) {
+			throwFedoraExceptionIfResponseBroke(id, e);
+			throw e;
+		}
+	}
+
+	private void throwFedoraExceptionIfResponseBroke(String id, ParseException e) {
+		Throwable cause = e.getCause();
+		while (cause != null) {
+			if (cause instanceof IOException) {
+				throw FedoraException.withMessageAndException(
+						"Unable to read response from fedora for record: " + id, e);
+			}
+			cause = cause.getCause();
+		}
+	}
+
+	private FedoraResponseBody getResponseBodyOrThrowNotFound(StreamingHttpHandler httpHandler,
+			String id) {
+		try {
+			return FedoraCallMetrics.getResponseBodyUsingMetricsAndOperation(httpHandler,
+					metrics, "readPerson");
+		} catch (RuntimeException e) {
+			throwErrorIfNotFound(httpHandler::getResponseCode, id, e);
+			throw e;
+		}
+	}
+
+	private void throwErrorIfNotFound(IntSupplier responseCode, String id, Exception e) {
+		if (getResponseCodeOrMinusOne(responseCode) == NOT_FOUND) {
+			throw createPersonNotFoundException(id, e);
+		}
+	}
+
+	private int getResponseCodeOrMinusOne(IntSupplier responseCode) {
+		try {
+			return responseCode.getAsInt();
+		} catch (RuntimeException e) {
+			return -1;
+		}
+	}
+
+	private String getResponseTextOrThrowNotFound(HttpHandler httpHandler, String id,
+			String operation) {
+		String responseText;
+		try {
+			responseText = FedoraCallMetrics.getResponseTextUsingMetricsAndOperation(httpHandler,
+					metrics, operation);
+		} catch (RuntimeException e) {
+			throwErrorIfNotFound(httpHandler::getResponseCode, id, e);
+			throw e;
+		}
+		throwErrorIfNotFound(httpHandler::getResponseCode, id, null);
+		return responseText;
+	}
+
+	private FedoraDatastreamProfile readMetadataProfileFromFedora(String id) {
+		String profileXML = retrier.callUsingMetricsAndOperation(
+				() -> readMetadataProfileXMLFromFedora(id), metrics, "readProfile");
+		return FedoraDatastreamProfile.fromXML(profileXML);
+	}
+
+	private String readMetadataProfileXMLFromFedora(String id) {
+		String url = baseURL + "objects/" + id + "/datastreams/METADATA?format=xml";
+		HttpHandler httpHandler = httpHandlerFactory.factor(url);
+		httpHandler.setRequestMethod("GET");
+		return getResponseTextOrThrowNotFound(httpHandler, id, "readProfile");
+	}
+
+	private VersionedRecord readPersonUsingProfile(String id, FedoraDatastreamProfile profile) {
+		String personXML = readPersonXMLAndCacheSourceXML(id);
+		return VersionedRecord.usingRecordAndVersion(convertPerson(personXML),
+				profile.getVersion());
+	}
+
+	private String readPersonXMLFromFedora(String id) {
+		return retrier.callUsingMetricsAndOperation(() -> {
+			HttpHandler httpHandler = createHttpHandlerForPerson(id);
+			return getResponseTextOrThrowNotFound(httpHandler, id, "readPerson");
+		}, metrics, "readPerson");
+	}
+
+	private DataGroup convertPerson(String personXML) {
 		DivaFedoraToCoraConverter toCoraConverter = converterFactory.factorToCoraConverter(PERSON);
-		return toCoraConverter.fromXML(httpHandler.getResponseText());
+		return toCoraConverter.fromXML(personXML);
+	}
+
+	private String createUrlForPerson(String id) {
+		return baseURL + "objects/" + id + "/datastreams/METADATA/content";
 	}
 
 	private HttpHandler createHttpHandlerForPerson(String id) {
-		String url = baseURL + "objects/" + id + "/datastreams/METADATA/content";
-		HttpHandler httpHandler = httpHandlerFactory.factor(url);
+		HttpHandler httpHandler = httpHandlerFactory.factor(createUrlForPerson(id));
 		httpHandler.setRequestMethod("GET");
 		return httpHandler;
 	}
@@ -111,24 +329,69 @@ public final class DivaFedoraRecordStorage implements RecordStorage {
 
 	private void convertAndWritePlaceToFedora(String type, String id, DataGroup record) {
 		try {
-			tryToConvertAndWritePlaceToFedora(type, id, record);
+			int responseCode = convertAndWritePlaceToFedoraUsingCircuitBreaker(type, id, record);
+			throwErrorIfNotOkFromFedora(id, responseCode);
 		} catch (Exception e) {
 			throw FedoraException
 					.withMessageAndException("update to fedora failed for record: " + id, e);
+		} finally {
+			invalidateCachedPerson(id);
 		}
 	}
 
-	private void tryToConvertAndWritePlaceToFedora(String type, String id, DataGroup record) {
+	private void invalidateCachedPerson(String id) {
+		sourceXMLCache.invalidate(id);
+		personCache.invalidate(id);
+		personReads.forget(id);
+		missingPersons.invalidate(id);
+	}
+
+	private int convertAndWritePlaceToFedoraUsingCircuitBreaker(String type, String id,
+			DataGroup record) {
+		return circuitBreaker.call(() -> tryToConvertAndWritePlaceToFedora(type, id, record),
+				this::isNotOkFromFedora);
+	}
+
+	private boolean isNotOkFromFedora(int responseCode) {
+		return OK != responseCode;
+	}
+
+	private int tryToConvertAndWritePlaceToFedora(String type, String id, DataGroup record) {
+		DivaCoraToFedoraConverter converter = converterFactory.factorToFedoraConverter(type);
+		FedoraSourceXML sourceXML = sourceXMLCache.get(id);
+		if (sourceXML != null) {
+			FedoraDatastreamProfile profile = readMetadataProfileFromFedora(id);
+			if (profile.isProfileForContent(sourceXML.getXML())) {
+				int responseCode = writeUsingCachedSourceXML(id, record, converter, sourceXML,
+						profile);
+				if (CONFLICT != responseCode) {
+					return responseCode;
+				}
+			}
+			sourceXMLCache.invalidate(id);
+		}
 		String url = createUrlForWritingMetadataStreamToFedora(id);
+		return writeToFedora(url, converter.toXML(record));
+	}
+
+	private int writeUsingCachedSourceXML(String id, DataGroup record,
+			DivaCoraToFedoraConverter converter, FedoraSourceXML sourceXML,
+			FedoraDatastreamProfile profile) {
+		String url = createUrlForWritingMetadataStreamToFedora(id) + "&lastModifiedDate="
+				+ profile.getCreateDate();
+		String fedoraXML = converter.toXMLUsingSourceXML(record, sourceXML.getXML());
+		return writeToFedora(url, fedoraXML);
+	}
+
+	private int writeToFedora(String url, String fedoraXML) {
 		HttpHandler httpHandler = createHttpHandlerForUpdatingDatastreamUsingURL(url);
-		String fedoraXML = convertRecordToFedoraXML(type, record);
 		httpHandler.setOutput(fedoraXML);
-		int responseCode = httpHandler.getResponseCode();
-		throwErrorIfNotOkFromFedora(id, responseCode);
+		return FedoraCallMetrics.getResponseCodeUsingMetricsAndOperation(httpHandler, metrics,
+				"writePerson");
 	}
 
 	private void throwErrorIfNotOkFromFedora(String id, int responseCode) {
-		if (200 != responseCode) {
+		if (isNotOkFromFedora(responseCode)) {
 			throw FedoraException.withMessage("update to fedora failed for record: " + id
 					+ ", with response code: " + responseCode);
 		}
@@ -151,72 +414,186 @@ public final class DivaFedoraRecordStorage implements RecordStorage {
 	}
 
 	private void setAutorizationInHttpHandler(HttpHandler httpHandler) {
-		String encoded = Base64.getEncoder()
-				.encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
-		httpHandler.setRequestProperty("Authorization", "Basic " + encoded);
+		httpHandler.setRequestProperty("Authorization", authorizationHeader);
 	}
 
-	private String convertRecordToFedoraXML(String type, DataGroup record) {
-		DivaCoraToFedoraConverter converter = converterFactory.factorToFedoraConverter(type);
-		return converter.toXML(record);
+	/**
+	 * updateAll updates all records in recordsById, using the parallel executor so that several
+	 * records can be read, converted and written to fedora at the same time. A failing record does
+	 * not stop the update of the others, instead an outcome is returned for each record, in the
+	 * same order as in recordsById. As for update, each write goes through the circuit breaker and
+	 * a response code other than 200 counts as a failed call.
+	 */
+	public List<FedoraUpdateOutcome> updateAll(String type, Map<String, DataGroup> recordsById) {
+		if (PERSON.equals(type)) {
+			return updatePersonsInFedora(type, recordsById);
+		}
+		throw NotImplementedException.withMessage("updateAll is not implemented for type: " + type);
+	}
+
+	private List<FedoraUpdateOutcome> updatePersonsInFedora(String type,
+			Map<String, DataGroup> recordsById) {
+		List<String> ids = new ArrayList<>(recordsById.keySet());
+		ParallelResult<FedoraUpdateOutcome> result = parallelExecutor.executeForAllIds(ids,
+				id -> updateAndCreateOutcome(type, id, recordsById.get(id)));
+		return result.getResults();
+	}
+
+	private FedoraUpdateOutcome updateAndCreateOutcome(String type, String id, DataGroup record) {
+		try {
+			int responseCode = convertAndWritePlaceToFedoraUsingCircuitBreaker(type, id, record);
+			return FedoraUpdateOutcome.usingIdAndResponseCode(id, responseCode);
+		} catch (Exception e) {
+			return FedoraUpdateOutcome.usingIdAndException(id, e);
+		} finally {
+			invalidateCachedPerson(id);
+		}
+	}
+
+	/**
+	 * readAsync reads the record using the async executor, so that several reads can be started
+	 * and awaited together. The default executor runs the read in the calling thread, which means
+	 * that the returned future is already completed, set an executor using setAsyncExecutor to
+	 * run reads concurrently. A failed read completes the future exceptionally.
+	 */
+	public CompletableFuture<DataGroup> readAsync(String type, String id) {
+		return CompletableFuture.supplyAsync(() -> read(type, id), asyncExecutor);
+	}
+
+	public CompletableFuture<SpiderReadResult> readListAsync(String type, DataGroup filter) {
+		return CompletableFuture.supplyAsync(() -> readList(type, filter), asyncExecutor);
 	}
 
 	@Override
 	public SpiderReadResult readList(String type, DataGroup filter) {
 		if (PERSON.equals(type)) {
-			return readAndConvertPersonListFromFedora();
+			return readAndConvertPersonListFromFedora(filter);
 		}
 		throw NotImplementedException.withMessage("readList is not implemented for type: " + type);
 	}
 
-	private SpiderReadResult readAndConvertPersonListFromFedora() {
+	private SpiderReadResult readAndConvertPersonListFromFedora(DataGroup filter) {
 		try {
-			return tryGetSpiderReadResultFromFedoraPersonListConversion();
+			return tryGetSpiderReadResultFromFedoraPersonListConversion(filter);
 		} catch (Exception e) {
 			throw FedoraException.withMessageAndException(
 					"Unable to read list of persons: " + e.getMessage(), e);
 		}
 	}
 
-	private SpiderReadResult tryGetSpiderReadResultFromFedoraPersonListConversion() {
+	private SpiderReadResult tryGetSpiderReadResultFromFedoraPersonListConversion(
+			DataGroup filter) {
 		SpiderReadResult spiderReadResult = new SpiderReadResult();
-		spiderReadResult.listOfDataGroups = (List<DataGroup>) tryReadAndConvertPersonListFromFedora();
+		spiderReadResult.listOfDataGroups = tryReadAndConvertPersonListFromFedora(filter);
 		return spiderReadResult;
 	}
 
-	private Collection<DataGroup> tryReadAndConvertPersonListFromFedora() {
-		String personListXML = getPersonListXMLFromFedora();
-		NodeList list = extractNodeListWithPidsFromXML(personListXML);
-		return constructCollectionOfPersonFromFedora(list);
+	private List<DataGroup> tryReadAndConvertPersonListFromFedora(DataGroup filter) {
+		int fromNo = getFilterValueOrDefault(filter, FROM_NO, 1);
+		int toNo = getFilterValueOrDefault(filter, TO_NO, fromNo + personListPageSize - 1);
+		List<String> pids = readPidsInWindowFromFedora(fromNo, toNo);
+		return constructCollectionOfPersonFromFedora(pids);
 	}
 
-	private String getPersonListXMLFromFedora() {
-		HttpHandler httpHandler = createHttpHandlerForPersonList();
-		return httpHandler.getResponseText();
+	private int getFilterValueOrDefault(DataGroup filter, String nameInData, int defaultValue) {
+		if (filter != null && filter.containsChildWithNameInData(nameInData)) {
+			return Integer.parseInt(filter.getFirstAtomicValueWithNameInData(nameInData));
+		}
+		return defaultValue;
 	}
 
-	private HttpHandler createHttpHandlerForPersonList() {
-		String url = baseURL
-				+ "objects?pid=true&maxResults=100&resultFormat=xml&query=pid%7Eauthority-person:*";
-		HttpHandler httpHandler = httpHandlerFactory.factor(url);
-		httpHandler.setRequestMethod("GET");
-		return httpHandler;
+	private List<String> readPidsInWindowFromFedora(int fromNo, int toNo) {
+		try (FedoraPidIterator pidIterator = createPersonPidIteratorForWindow(toNo)) {
+			skipPidsBeforeFromNo(pidIterator, fromNo);
+			return collectPidsUpToToNo(pidIterator, fromNo, toNo);
+		}
+	}
+
+	private FedoraPidIterator createPersonPidIteratorForWindow(int toNo) {
+		int pageSizeForWindow = Math.max(1, Math.min(personListPageSize, toNo));
+		return createPersonPidIteratorUsingPageSize(pageSizeForWindow);
+	}
+
+	/**
+	 * createPersonPidIterator creates an iterator over all person pids in fedora. The caller must
+	 * close the iterator.
+	 */
+	public FedoraPidIterator createPersonPidIterator() {
+		return createPersonPidIteratorUsingPageSize(personListPageSize);
 	}
 
-	private NodeList extractNodeListWithPidsFromXML(String personListXML) {
-		XMLXPathParser parser = XMLXPathParser.forXML(personListXML);
-		return parser
-				.getNodeListFromDocumentUsingXPath("/result/resultList/objectFields/pid/text()");
+	private FedoraPidIterator createPersonPidIteratorUsingPageSize(int pageSize) {
+		FedoraPidIterator pidIterator = FedoraPidIterator
+				.usingStreamingHttpHandlerFactoryAndBaseURLAndQueryAndPageSize(
+						streamingHttpHandlerFactory, baseURL, PERSON_PID_QUERY, pageSize);
+		pidIterator.setMetrics(metrics);
+		pidIterator.setCircuitBreaker(circuitBreaker);
+		pidIterator.setRetrier(retrier);
+		return pidIterator;
 	}
 
-	private Collection<DataGroup> constructCollectionOfPersonFromFedora(NodeList list) {
-		Collection<DataGroup> personList = new ArrayList<>();
-		for (int i = 0; i < list.getLength(); i++) {
-			Node node = list.item(i);
-			String pid = node.getTextContent();
-			personList.add(readAndConvertPersonFromFedora(pid));
+	/**
+	 * addPersonsToCacheWarmUp adds persons in fedora to the cache warmer, until the person cache set
+	 * when this is called is full. The pids are listed page by page while the warm up proceeds, so
+	 * no more pages are listed than the persons read need, and each person is then read as by
+	 * read, so that it ends up in the person cache. Nothing is read unless a person cache is set.
+	 */
+	public void addPersonsToCacheWarmUp(CacheWarmer cacheWarmer) {
+		cacheWarmer.addRecordsToWarmUp(PERSON, this::createPersonPidIterator,
+				id -> read(PERSON, id), personCache);
+	}
+
+	private void skipPidsBeforeFromNo(FedoraPidIterator pidIterator, int fromNo) {
+		int position = 1;
+		while (position < fromNo && pidIterator.hasNext()) {
+			pidIterator.next();
+			position++;
+		}
+	}
+
+	private List<String> collectPidsUpToToNo(FedoraPidIterator pidIterator, int fromNo,
+			int toNo) {
+		List<String> pids = new ArrayList<>();
+		int position = fromNo;
+		while (position <= toNo && pidIterator.hasNext()) {
+			pids.add(pidIterator.next());
+			position++;
+		}
+		return pids;
+	}
+
+	private List<DataGroup> constructCollectionOfPersonFromFedora(List<String> pids) {
+		ParallelResult<DataGroup> result = parallelExecutor.executeForAllIds(pids,
+				this::readPersonUsingCache);
+		throwErrorIfAnyPersonFailedToBeRead(result);
+		return result.getResults();
+	}
+
+	private void throwErrorIfAnyPersonFailedToBeRead(ParallelResult<DataGroup> result) {
+		if (result.hasFailures()) {
+			FedoraException exception = FedoraException
+					.withMessage(createMessageForFailedPersons(result));
+			addFailuresAsSuppressed(result, exception);
+			throw exception;
+		}
+	}
+
+	private String createMessageForFailedPersons(ParallelResult<DataGroup> result) {
+		StringBuilder message = new StringBuilder();
+		message.append("Failed to read ").append(result.getFailures().size()).append(" of ")
+				.append(result.getNumberOfCalls()).append(" persons:");
+		for (Entry<String, Exception> failure : result.getFailures().entrySet()) {
+			message.append(" ").append(failure.getKey()).append(" (")
+					.append(failure.getValue().getMessage()).append(")");
+		}
+		return message.toString();
+	}
+
+	private void addFailuresAsSuppressed(ParallelResult<DataGroup> result,
+			FedoraException exception) {
+		for (Exception failure : result.getFailures().values()) {
+			exception.addSuppressed(failure);
 		}
-		return personList;
 	}
 
 	@Override
@@ -247,4 +624,144 @@ public final class DivaFedoraRecordStorage implements RecordStorage {
 				"recordExistsForAbstractOrImplementingRecordTypeAndRecordId is not implemented");
 	}
 
+	/**
+	 * setParallelExecutor sets the executor used for reading persons in readList and for
+	 * updateAll. The storage takes ownership of the executor, and closes it in close. The executor
+	 * it replaces is closed, as it is owned by the storage as well.
+	 */
+	public void setParallelExecutor(ParallelFedoraExecutor parallelExecutor) {
+		ParallelFedoraExecutor replacedExecutor = this.parallelExecutor;
+		this.parallelExecutor = parallelExecutor;
+		if (replacedExecutor != parallelExecutor) {
+			replacedExecutor.close();
+		}
+	}
+
+	public ParallelFedoraExecutor getParallelExecutor() {
+		// needed for tests
+		return parallelExecutor;
+	}
+
+	/**
+	 * setStreamingHttpHandlerFactory sets the factory used for reading persons and pid pages as
+	 * streams. By default the responses from the HttpHandlerFactory are used, which reads each
+	 * response into a String first.
+	 */
+	public void setStreamingHttpHandlerFactory(
+			StreamingHttpHandlerFactory streamingHttpHandlerFactory) {
+		this.streamingHttpHandlerFactory = streamingHttpHandlerFactory;
+	}
+
+	public StreamingHttpHandlerFactory getStreamingHttpHandlerFactory() {
+		// needed for tests
+		return streamingHttpHandlerFactory;
+	}
+
+	public void setAsyncExecutor(Executor asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+	}
+
+	public Executor getAsyncExecutor() {
+		// needed for tests
+		return asyncExecutor;
+	}
+
+	/**
+	 * setPersonListPageSize sets the number of pids asked for in each call to list pids in fedora.
+	 * It is also the number of persons returned by readList when the filter has no toNo.
+	 */
+	public void setPersonListPageSize(int personListPageSize) {
+		this.personListPageSize = personListPageSize;
+	}
+
+	public void setPersonCache(RecordCache personCache) {
+		this.personCache = personCache;
+	}
+
+	public RecordCache getPersonCache() {
+		// needed for tests
+		return personCache;
+	}
+
+	public void setSourceXMLCache(FedoraSourceXMLCache sourceXMLCache) {
+		this.sourceXMLCache = sourceXMLCache;
+	}
+
+	public FedoraSourceXMLCache getSourceXMLCache() {
+		// needed for tests
+		return sourceXMLCache;
+	}
+
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public Metrics getMetrics() {
+		// needed for tests
+		return metrics;
+	}
+
+	/**
+	 * setMissingPersons sets the cache of person ids that were not found in fedora. Reads of ids
+	 * in the cache throw a RecordNotFoundException without calling fedora. An update removes the
+	 * id from the cache. By default no ids are remembered.
+	 */
+	public void setMissingPersons(NotFoundCache missingPersons) {
+		this.missingPersons = missingPersons;
+	}
+
+	public NotFoundCache getMissingPersons() {
+		// needed for tests
+		return missingPersons;
+	}
+
+	public SingleFlight<String, DataGroup> getPersonReads() {
+		// needed for tests
+		return personReads;
+	}
+
+	public RecordCacheStatistics getPersonCacheStatistics() {
+		return personCache.getStatistics();
+	}
+
+	/**
+	 * setCircuitBreaker sets the circuit breaker that all calls to fedora go through. By default
+	 * calls are passed straight through to fedora.
+	 */
+	public void setCircuitBreaker(FedoraCircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	public FedoraCircuitBreaker getCircuitBreaker() {
+		// needed for tests
+		return circuitBreaker;
+	}
+
+	public FedoraCircuitBreakerStatistics getCircuitBreakerStatistics() {
+		return circuitBreaker.getStatistics();
+	}
+
+	/**
+	 * setRetrier sets the retrier used for the GET requests made when reading persons and pid
+	 * pages. Updates are never retried. By default no call is retried. The read made by the
+	 * converter before an update uses the retrier set in the converter factory, setting the same
+	 * retrier in both makes them share one retry budget.
+	 */
+	public void setRetrier(FedoraRetrier retrier) {
+		this.retrier = retrier;
+	}
+
+	public FedoraRetrier getRetrier() {
+		// needed for tests
+		return retrier;
+	}
+
+	/**
+	 * close releases the threads held by the storage. It should be called by the code that
+	 * created the storage, when the storage is no longer used.
+	 */
+	public void close() {
+		parallelExecutor.close();
+	}
+
 }
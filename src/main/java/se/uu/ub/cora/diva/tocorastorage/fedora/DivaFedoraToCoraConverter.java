@@ -24,4 +24,10 @@ public interface DivaFedoraToCoraConverter {
 
 	DataGroup fromXML(String xml);
 
+	/**
+	 * fromXML converts xml read directly from the response body, without first reading it into a
+	 * String. Closing the body is left to the caller.
+	 */
+	DataGroup fromXML(FedoraResponseBody xml);
+
 }
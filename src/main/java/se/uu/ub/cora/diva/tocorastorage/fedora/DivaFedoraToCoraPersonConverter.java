@@ -24,44 +24,68 @@ import org.w3c.dom.NodeList;
 import se.uu.ub.cora.bookkeeper.data.DataAtomic;
 import se.uu.ub.cora.bookkeeper.data.DataGroup;
 import se.uu.ub.cora.diva.tocorastorage.ParseException;
+import se.uu.ub.cora.diva.tocorastorage.metrics.Metrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.MetricsTimer;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
 
 public class DivaFedoraToCoraPersonConverter implements DivaFedoraToCoraConverter {
+	private Metrics metrics;
 
-	private XMLXPathParser parser;
+	public DivaFedoraToCoraPersonConverter() {
+		this(new NoOpMetrics());
+	}
+
+	public DivaFedoraToCoraPersonConverter(Metrics metrics) {
+		this.metrics = metrics;
+	}
 
 	@Override
 	public DataGroup fromXML(String xml) {
+		MetricsTimer timer = metrics.startTimer("converter.person.fromXML");
+		try {
+			XMLXPathParser parser = XMLXPathParser.forXMLUsingMetrics(xml, metrics);
+			return tryToCreateDataGroupFromDocument(parser);
+		} catch (Exception e) {
+			throw ParseException.withMessageAndException(
+					"Error converting person to Cora person: " + e.getMessage(), e);
+		} finally {
+			timer.stop();
+		}
+	}
+
+	@Override
+	public DataGroup fromXML(FedoraResponseBody xml) {
+		MetricsTimer timer = metrics.startTimer("converter.person.fromXML");
 		try {
-			parser = XMLXPathParser.forXML(xml);
-			return tryToCreateDataGroupFromDocument();
+			XMLXPathParser parser = XMLXPathParser
+					.forInputSourceUsingMetrics(xml.createInputSource(), metrics);
+			return tryToCreateDataGroupFromDocument(parser);
 		} catch (Exception e) {
 			throw ParseException.withMessageAndException(
 					"Error converting person to Cora person: " + e.getMessage(), e);
+		} finally {
+			timer.stop();
 		}
 	}
 
-	private DataGroup tryToCreateDataGroupFromDocument() {
+	private DataGroup tryToCreateDataGroupFromDocument(XMLXPathParser parser) {
 		DataGroup person = DataGroup.withNameInData("person");
-		createRecordInfoAndAddToPerson(person);
+		createRecordInfoAndAddToPerson(parser, person);
 
-		createDefaultNameAndAddToPerson(person);
-		createAlternativeNamesAndAddToPerson(person);
+		createDefaultNameAndAddToPerson(parser, person);
+		createAlternativeNamesAndAddToPerson(parser, person);
 
 		return person;
 	}
 
-	private void createRecordInfoAndAddToPerson(DataGroup place) {
+	private void createRecordInfoAndAddToPerson(XMLXPathParser parser, DataGroup place) {
 		DataGroup recordInfo = DivaFedoraToCoraRecordInfoConverter.createRecordInfo(parser);
 		place.addChild(recordInfo);
 	}
 
-	private String getStringFromDocumentUsingXPath(String xpathString) {
-		return parser.getStringFromDocumentUsingXPath(xpathString);
-	}
-
-	private void createDefaultNameAndAddToPerson(DataGroup person) {
+	private void createDefaultNameAndAddToPerson(XMLXPathParser parser, DataGroup person) {
 		DataGroup defaultName = DataGroup.withNameInData("authorizedName");
-		createName(defaultName);
+		createName(parser, defaultName);
 		if (dataGroupHasChildren(defaultName)) {
 			person.addChild(defaultName);
 		}
@@ -71,10 +95,10 @@ public class DivaFedoraToCoraPersonConverter implements DivaFedoraToCoraConverte
 		return !dataGroup.getChildren().isEmpty();
 	}
 
-	private void createName(DataGroup nameGroup) {
-		String lastName = getDefaultNamePartFromXML("lastname");
+	private void createName(XMLXPathParser parser, DataGroup nameGroup) {
+		String lastName = getDefaultNamePartFromXML(parser, "lastname");
 		possiblyAddChildToGroupUsingNameInDataAndValue(nameGroup, "familyName", lastName);
-		String firstName = getDefaultNamePartFromXML("firstname");
+		String firstName = getDefaultNamePartFromXML(parser, "firstname");
 		possiblyAddChildToGroupUsingNameInDataAndValue(nameGroup, "givenName", firstName);
 	}
 
@@ -85,8 +109,8 @@ public class DivaFedoraToCoraPersonConverter implements DivaFedoraToCoraConverte
 		}
 	}
 
-	private String getDefaultNamePartFromXML(String xmlTagName) {
-		return getStringFromDocumentUsingXPath(
+	private String getDefaultNamePartFromXML(XMLXPathParser parser, String xmlTagName) {
+		return parser.getStringFromDocumentUsingXPath(
 				"/authorityPerson/defaultName/" + xmlTagName + "/text()");
 	}
 
@@ -94,25 +118,25 @@ public class DivaFedoraToCoraPersonConverter implements DivaFedoraToCoraConverte
 		return !"".equals(value);
 	}
 
-	private void createAlternativeNamesAndAddToPerson(DataGroup person) {
+	private void createAlternativeNamesAndAddToPerson(XMLXPathParser parser, DataGroup person) {
 		NodeList list = parser
 				.getNodeListFromDocumentUsingXPath("/authorityPerson/alternativeNames/nameForm");
-		createAndAddAllAlternativeNamesToPersonUsingNodeListAndPerson(list, person);
+		createAndAddAllAlternativeNamesToPersonUsingNodeListAndPerson(parser, list, person);
 	}
 
-	private void createAndAddAllAlternativeNamesToPersonUsingNodeListAndPerson(NodeList list,
-			DataGroup person) {
+	private void createAndAddAllAlternativeNamesToPersonUsingNodeListAndPerson(
+			XMLXPathParser parser, NodeList list, DataGroup person) {
 		for (int i = 0; i < list.getLength(); i++) {
 			Node nameForm = list.item(i);
-			addAlternativeNameToPersonUsingNodeAndPersonAndRepeatId(nameForm, person,
+			addAlternativeNameToPersonUsingNodeAndPersonAndRepeatId(parser, nameForm, person,
 					String.valueOf(i));
 		}
 	}
 
-	private void addAlternativeNameToPersonUsingNodeAndPersonAndRepeatId(Node nameForm,
-			DataGroup person, String repeatId) {
+	private void addAlternativeNameToPersonUsingNodeAndPersonAndRepeatId(XMLXPathParser parser,
+			Node nameForm, DataGroup person, String repeatId) {
 		DataGroup alternativeName = DataGroup.withNameInData("alternativeName");
-		addChildrenToAlternativeName(nameForm, alternativeName);
+		addChildrenToAlternativeName(parser, nameForm, alternativeName);
 
 		if (dataGroupHasChildren(alternativeName)) {
 			alternativeName.setRepeatId(repeatId);
@@ -121,18 +145,26 @@ public class DivaFedoraToCoraPersonConverter implements DivaFedoraToCoraConverte
 
 	}
 
-	private void addChildrenToAlternativeName(Node nameForm, DataGroup alternativeName) {
-		String lastName = getAlternativeNamePartFromXMLUsingNodeAndXPathPart(nameForm, "lastname");
+	private void addChildrenToAlternativeName(XMLXPathParser parser, Node nameForm,
+			DataGroup alternativeName) {
+		String lastName = getAlternativeNamePartFromXMLUsingNodeAndXPathPart(parser, nameForm,
+				"lastname");
 		possiblyAddChildToGroupUsingNameInDataAndValue(alternativeName, "familyName", lastName);
 
-		String firstName = getAlternativeNamePartFromXMLUsingNodeAndXPathPart(nameForm,
+		String firstName = getAlternativeNamePartFromXMLUsingNodeAndXPathPart(parser, nameForm,
 				"firstname");
 		possiblyAddChildToGroupUsingNameInDataAndValue(alternativeName, "givenName", firstName);
 	}
 
-	private String getAlternativeNamePartFromXMLUsingNodeAndXPathPart(Node nameForm,
-			String xmlTagName) {
+	private String getAlternativeNamePartFromXMLUsingNodeAndXPathPart(XMLXPathParser parser,
+			Node nameForm, String xmlTagName) {
 		return parser.getStringFromDocumentUsingNodeAndXPath(nameForm,
 				"./" + xmlTagName + "/text()");
 	}
+
+	public Metrics getMetrics() {
+		// needed for tests
+		return metrics;
+	}
+
 }
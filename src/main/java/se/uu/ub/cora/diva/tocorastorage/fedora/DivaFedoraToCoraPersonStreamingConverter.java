@@ -0,0 +1,290 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import se.uu.ub.cora.bookkeeper.data.DataAtomic;
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+import se.uu.ub.cora.diva.tocorastorage.ParseException;
+import se.uu.ub.cora.diva.tocorastorage.metrics.Metrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.MetricsTimer;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
+
+/**
+ * DivaFedoraToCoraPersonStreamingConverter creates the same person DataGroup as
+ * {@link DivaFedoraToCoraPersonConverter} in one forward pass over the xml, without building a
+ * DOM or evaluating any XPath expressions. Values are read with the same rules as the XPath
+ * expressions in the DOM based converter, the first text node of the first matching element is
+ * used, and tsUpdated is the last timestamp text node.
+ */
+public final class DivaFedoraToCoraPersonStreamingConverter implements DivaFedoraToCoraConverter {
+	private static final String PID = "/authorityPerson/pid";
+	private static final String DEFAULT_LASTNAME = "/authorityPerson/defaultName/lastname";
+	private static final String DEFAULT_FIRSTNAME = "/authorityPerson/defaultName/firstname";
+	private static final String NAME_FORM = "/authorityPerson/alternativeNames/nameForm";
+	private static final String NAME_FORM_LASTNAME = NAME_FORM + "/lastname";
+	private static final String NAME_FORM_FIRSTNAME = NAME_FORM + "/firstname";
+	private static final String TIMESTAMP = "/authorityPerson/recordInfo/events/event/timestamp";
+	private static final Set<String> PATHS_WITH_TEXT = new HashSet<>(
+			Arrays.asList(PID, DEFAULT_LASTNAME, DEFAULT_FIRSTNAME, NAME_FORM_LASTNAME,
+					NAME_FORM_FIRSTNAME, TIMESTAMP));
+	private Metrics metrics;
+
+	public DivaFedoraToCoraPersonStreamingConverter() {
+		this(new NoOpMetrics());
+	}
+
+	public DivaFedoraToCoraPersonStreamingConverter(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public DataGroup fromXML(String xml) {
+		MetricsTimer timer = metrics.startTimer("converter.person.fromXML");
+		try {
+			return createPersonUsingReader(XMLStreamReaderFactory.forXML(xml));
+		} catch (Exception e) {
+			throw ParseException.withMessageAndException(
+					"Error converting person to Cora person: " + e.getMessage(), e);
+		} finally {
+			timer.stop();
+		}
+	}
+
+	@Override
+	public DataGroup fromXML(FedoraResponseBody xml) {
+		MetricsTimer timer = metrics.startTimer("converter.person.fromXML");
+		try {
+			return createPersonUsingReader(xml.createXMLStreamReader());
+		} catch (Exception e) {
+			throw ParseException.withMessageAndException(
+					"Error converting person to Cora person: " + e.getMessage(), e);
+		} finally {
+			timer.stop();
+		}
+	}
+
+	private DataGroup createPersonUsingReader(XMLStreamReader reader) throws XMLStreamException {
+		try {
+			PersonValues personValues = readPersonValuesUsingReader(reader);
+			return createPersonFromValues(personValues);
+		} finally {
+			reader.close();
+		}
+	}
+
+	private PersonValues readPersonValuesUsingReader(XMLStreamReader reader)
+			throws XMLStreamException {
+		PersonValues personValues = new PersonValues();
+		Deque<ElementText> openElements = new ArrayDeque<>();
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				startElement(reader.getLocalName(), openElements, personValues);
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				personValues.addTextFromElement(openElements.pop());
+			} else if (isText(event)) {
+				addTextToCurrentElement(reader.getText(), openElements);
+			} else if (event == XMLStreamConstants.DTD) {
+				throw XMLStreamReaderFactory.createDoctypeNotAllowedException();
+			} else {
+				endTextInCurrentElement(openElements);
+			}
+		}
+		return personValues;
+	}
+
+	private void startElement(String name, Deque<ElementText> openElements,
+			PersonValues personValues) {
+		endTextInCurrentElement(openElements);
+		String parentPath = openElements.isEmpty() ? "" : openElements.peek().path;
+		String path = parentPath + "/" + XMLStreamReaderFactory.removePrefix(name);
+		openElements.push(new ElementText(path));
+		if (NAME_FORM.equals(path)) {
+			personValues.startNameForm();
+		}
+	}
+
+	private boolean isText(int event) {
+		return event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+				|| event == XMLStreamConstants.SPACE;
+	}
+
+	private void addTextToCurrentElement(String text, Deque<ElementText> openElements) {
+		if (!openElements.isEmpty()) {
+			openElements.peek().addText(text);
+		}
+	}
+
+	private void endTextInCurrentElement(Deque<ElementText> openElements) {
+		if (!openElements.isEmpty()) {
+			openElements.peek().endText();
+		}
+	}
+
+	private DataGroup createPersonFromValues(PersonValues personValues) {
+		DataGroup person = DataGroup.withNameInData("person");
+		person.addChild(createRecordInfo(personValues));
+		possiblyAddNameToPersonUsingNameInData(person, "authorizedName",
+				personValues.defaultName);
+		addAlternativeNamesToPerson(person, personValues.alternativeNames);
+		return person;
+	}
+
+	private DataGroup createRecordInfo(PersonValues personValues) {
+		List<String> timestamps = personValues.timestamps;
+		if (timestamps.isEmpty()) {
+			throw ParseException.withMessage("No timestamp found in person xml");
+		}
+		return DivaFedoraToCoraRecordInfoConverter.createRecordInfoUsingPidAndTsCreatedAndTsUpdated(
+				personValues.pid.getValue(), timestamps.get(0),
+				timestamps.get(timestamps.size() - 1));
+	}
+
+	private void addAlternativeNamesToPerson(DataGroup person, List<NameValues> alternativeNames) {
+		for (int i = 0; i < alternativeNames.size(); i++) {
+			DataGroup alternativeName = possiblyAddNameToPersonUsingNameInData(person,
+					"alternativeName", alternativeNames.get(i));
+			if (alternativeName != null) {
+				alternativeName.setRepeatId(String.valueOf(i));
+			}
+		}
+	}
+
+	private DataGroup possiblyAddNameToPersonUsingNameInData(DataGroup person, String nameInData,
+			NameValues nameValues) {
+		DataGroup name = DataGroup.withNameInData(nameInData);
+		possiblyAddChildToGroupUsingNameInDataAndValue(name, "familyName",
+				nameValues.lastName.getValue());
+		possiblyAddChildToGroupUsingNameInDataAndValue(name, "givenName",
+				nameValues.firstName.getValue());
+		if (name.getChildren().isEmpty()) {
+			return null;
+		}
+		person.addChild(name);
+		return name;
+	}
+
+	private void possiblyAddChildToGroupUsingNameInDataAndValue(DataGroup group,
+			String childNameInData, String value) {
+		if (!"".equals(value)) {
+			group.addChild(DataAtomic.withNameInDataAndValue(childNameInData, value));
+		}
+	}
+
+	public Metrics getMetrics() {
+		// needed for tests
+		return metrics;
+	}
+
+	private static final class ElementText {
+		private final String path;
+		private final boolean collectText;
+		private final List<String> textNodes = new ArrayList<>();
+		private final StringBuilder currentText = new StringBuilder();
+
+		ElementText(String path) {
+			this.path = path;
+			collectText = PATHS_WITH_TEXT.contains(path);
+		}
+
+		void addText(String text) {
+			if (collectText) {
+				currentText.append(text);
+			}
+		}
+
+		void endText() {
+			if (currentText.length() > 0) {
+				textNodes.add(currentText.toString());
+				currentText.setLength(0);
+			}
+		}
+	}
+
+	private static final class FirstText {
+		private String value;
+
+		void setIfNotSet(List<String> textNodes) {
+			if (value == null && !textNodes.isEmpty()) {
+				value = textNodes.get(0);
+			}
+		}
+
+		String getValue() {
+			return value == null ? "" : value;
+		}
+	}
+
+	private static final class NameValues {
+		private final FirstText lastName = new FirstText();
+		private final FirstText firstName = new FirstText();
+	}
+
+	private static final class PersonValues {
+		private final FirstText pid = new FirstText();
+		private final NameValues defaultName = new NameValues();
+		private final List<NameValues> alternativeNames = new ArrayList<>();
+		private final List<String> timestamps = new ArrayList<>();
+
+		void startNameForm() {
+			alternativeNames.add(new NameValues());
+		}
+
+		void addTextFromElement(ElementText element) {
+			element.endText();
+			List<String> textNodes = element.textNodes;
+			if (textNodes.isEmpty()) {
+				return;
+			}
+			addTextNodesForPath(element.path, textNodes);
+		}
+
+		private void addTextNodesForPath(String path, List<String> textNodes) {
+			if (PID.equals(path)) {
+				pid.setIfNotSet(textNodes);
+			} else if (DEFAULT_LASTNAME.equals(path)) {
+				defaultName.lastName.setIfNotSet(textNodes);
+			} else if (DEFAULT_FIRSTNAME.equals(path)) {
+				defaultName.firstName.setIfNotSet(textNodes);
+			} else if (NAME_FORM_LASTNAME.equals(path)) {
+				currentNameForm().lastName.setIfNotSet(textNodes);
+			} else if (NAME_FORM_FIRSTNAME.equals(path)) {
+				currentNameForm().firstName.setIfNotSet(textNodes);
+			} else {
+				timestamps.addAll(textNodes);
+			}
+		}
+
+		private NameValues currentNameForm() {
+			return alternativeNames.get(alternativeNames.size() - 1);
+		}
+	}
+}
@@ -27,24 +27,49 @@ import se.uu.ub.cora.bookkeeper.data.DataGroup;
 public class DivaFedoraToCoraRecordInfoConverter {
 	private XMLXPathParser parser;
 	private DataGroup recordInfo;
+	private String pid;
+	private String tsCreatedWithLetters;
+	private String tsUpdatedWithLetters;
 
 	public DivaFedoraToCoraRecordInfoConverter(XMLXPathParser parser) {
 		this.parser = parser;
 	}
 
+	private DivaFedoraToCoraRecordInfoConverter(String pid, String tsCreatedWithLetters,
+			String tsUpdatedWithLetters) {
+		this.pid = pid;
+		this.tsCreatedWithLetters = tsCreatedWithLetters;
+		this.tsUpdatedWithLetters = tsUpdatedWithLetters;
+	}
+
 	public static DataGroup createRecordInfo(XMLXPathParser parser) {
 		DivaFedoraToCoraRecordInfoConverter alvinToCoraRecordInfoConverter = new DivaFedoraToCoraRecordInfoConverter(
 				parser);
-		return alvinToCoraRecordInfoConverter.createRecordInfoAsDataGroup();
+		return alvinToCoraRecordInfoConverter.parseAndCreateRecordInfoAsDataGroup();
+	}
+
+	public static DataGroup createRecordInfoUsingPidAndTsCreatedAndTsUpdated(String pid,
+			String tsCreatedWithLetters, String tsUpdatedWithLetters) {
+		DivaFedoraToCoraRecordInfoConverter recordInfoConverter = new DivaFedoraToCoraRecordInfoConverter(
+				pid, tsCreatedWithLetters, tsUpdatedWithLetters);
+		return recordInfoConverter.createRecordInfoAsDataGroup();
+	}
+
+	private DataGroup parseAndCreateRecordInfoAsDataGroup() {
+		pid = parser.getStringFromDocumentUsingXPath("/authorityPerson/pid/text()");
+		tsCreatedWithLetters = parser.getStringFromDocumentUsingXPath(
+				"/authorityPerson/recordInfo/events/event/timestamp/text()");
+		tsUpdatedWithLetters = getLastTsUpdatedFromDocument();
+		return createRecordInfoAsDataGroup();
 	}
 
 	private DataGroup createRecordInfoAsDataGroup() {
 		recordInfo = DataGroup.withNameInData("recordInfo");
 		addType();
-		parseAndAddId();
+		addId();
 		addDataDivider();
 		addCreatedBy();
-		parseAndAddTsCreated();
+		addTsCreated();
 		addUpdated();
 		return recordInfo;
 	}
@@ -62,8 +87,7 @@ public class DivaFedoraToCoraRecordInfoConverter {
 		return type;
 	}
 
-	private void parseAndAddId() {
-		String pid = parser.getStringFromDocumentUsingXPath("/authorityPerson/pid/text()");
+	private void addId() {
 		recordInfo.addChild(DataAtomic.withNameInDataAndValue("id", pid));
 	}
 
@@ -78,9 +102,7 @@ public class DivaFedoraToCoraRecordInfoConverter {
 		recordInfo.addChild(createdBy);
 	}
 
-	private void parseAndAddTsCreated() {
-		String tsCreatedWithLetters = parser.getStringFromDocumentUsingXPath(
-				"/authorityPerson/recordInfo/events/event/timestamp/text()");
+	private void addTsCreated() {
 		String tsCreated = removeTAndZFromTimestamp(tsCreatedWithLetters);
 		recordInfo.addChild(DataAtomic.withNameInDataAndValue("tsCreated", tsCreated));
 	}
@@ -94,7 +116,7 @@ public class DivaFedoraToCoraRecordInfoConverter {
 		recordInfo.addChild(updatedGroup);
 		updatedGroup.setRepeatId("0");
 		addUpdatedBy(updatedGroup);
-		parseAndAddTsUpdated(updatedGroup);
+		addTsUpdated(updatedGroup);
 	}
 
 	private void addUpdatedBy(DataGroup updatedGroup) {
@@ -102,8 +124,7 @@ public class DivaFedoraToCoraRecordInfoConverter {
 		updatedGroup.addChild(updatedBy);
 	}
 
-	private void parseAndAddTsUpdated(DataGroup updatedGroup) {
-		String tsUpdatedWithLetters = getLastTsUpdatedFromDocument();
+	private void addTsUpdated(DataGroup updatedGroup) {
 		String tsUpdated = removeTAndZFromTimestamp(tsUpdatedWithLetters);
 
 		updatedGroup.addChild(DataAtomic.withNameInDataAndValue("tsUpdated", tsUpdated));
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import se.uu.ub.cora.diva.tocorastorage.metrics.Metrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.MetricsTimer;
+import se.uu.ub.cora.httphandler.HttpHandler;
+
+/**
+ * FedoraCallMetrics times http calls to fedora as "fedora.http.&lt;operation&gt;" and counts them
+ * by response code as "fedora.http.&lt;operation&gt;.&lt;responseCode&gt;", or as
+ * "fedora.http.&lt;operation&gt;.failed" if the call throws an exception. For streamed responses
+ * the time is measured until the response stream is available, not until it is read.
+ */
+final class FedoraCallMetrics {
+	private static final String FEDORA_HTTP = "fedora.http.";
+
+	private FedoraCallMetrics() {
+	}
+
+	static String getResponseTextUsingMetricsAndOperation(HttpHandler httpHandler,
+			Metrics metrics, String operation) {
+		MetricsTimer timer = metrics.startTimer(FEDORA_HTTP + operation);
+		try {
+			String responseText = httpHandler.getResponseText();
+			countResponseCode(metrics, operation, httpHandler.getResponseCode());
+			return responseText;
+		} catch (RuntimeException e) {
+			metrics.incrementCounter(FEDORA_HTTP + operation + ".failed");
+			throw e;
+		} finally {
+			timer.stop();
+		}
+	}
+
+	private static void countResponseCode(Metrics metrics, String operation, int responseCode) {
+		metrics.incrementCounter(FEDORA_HTTP + operation + "." + responseCode);
+	}
+
+	static int getResponseCodeUsingMetricsAndOperation(HttpHandler httpHandler, Metrics metrics,
+			String operation) {
+		MetricsTimer timer = metrics.startTimer(FEDORA_HTTP + operation);
+		try {
+			int responseCode = httpHandler.getResponseCode();
+			countResponseCode(metrics, operation, responseCode);
+			return responseCode;
+		} catch (RuntimeException e) {
+			metrics.incrementCounter(FEDORA_HTTP + operation + ".failed");
+			throw e;
+		} finally {
+			timer.stop();
+		}
+	}
+
+	static FedoraResponseBody getResponseBodyUsingMetricsAndOperation(
+			StreamingHttpHandler httpHandler, Metrics metrics, String operation) {
+		MetricsTimer timer = metrics.startTimer(FEDORA_HTTP + operation);
+		try {
+			FedoraResponseBody responseBody = httpHandler.getResponseBody();
+			countResponseCode(metrics, operation, httpHandler.getResponseCode());
+			return responseBody;
+		} catch (RuntimeException e) {
+			metrics.incrementCounter(FEDORA_HTTP + operation + ".failed");
+			throw e;
+		} finally {
+			timer.stop();
+		}
+	}
+
+}
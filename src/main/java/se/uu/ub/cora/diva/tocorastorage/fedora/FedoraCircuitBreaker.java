@@ -0,0 +1,42 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+public interface FedoraCircuitBreaker {
+
+	/**
+	 * call runs the fedora call, or throws a FedoraException without running it if fedora is
+	 * considered unavailable or if too many calls to fedora are already in progress.
+	 */
+	<T> T call(Supplier<T> fedoraCall);
+
+	/**
+	 * call runs the fedora call as call above, and also counts the call as failed if
+	 * isFailedResult is true for the returned result. The result is returned either way, so that
+	 * an answer from fedora that is not ok can be handled by the caller while it still counts
+	 * towards opening the circuit.
+	 */
+	<T> T call(Supplier<T> fedoraCall, Predicate<T> isFailedResult);
+
+	FedoraCircuitBreakerStatistics getStatistics();
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.time.Clock;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import se.uu.ub.cora.diva.tocorastorage.FedoraException;
+import se.uu.ub.cora.spider.record.storage.RecordNotFoundException;
+
+/**
+ * FedoraCircuitBreakerImp limits the number of concurrent calls to fedora with a bulkhead, and
+ * stops calling fedora for a while when it fails or is slow.
+ * <p>
+ * A call fails if it throws an exception or if its result is a failed result, and is slow if it
+ * takes longer than the slow call duration. A RecordNotFoundException means that fedora answered,
+ * so it is not a failure. When failureThreshold calls in a row have failed or been slow, the
+ * circuit opens and all calls are rejected until the open duration has passed. The circuit is
+ * then half open and lets one trial call through, if it succeeds the circuit closes again,
+ * otherwise it opens for another open duration. Calls that were let through before the circuit
+ * opened and finish after it did are counted, but do not change the state of the circuit.
+ * <p>
+ * When maxConcurrentCalls calls are already in progress, a new call waits for one of them to
+ * finish, but at most maxWaitForBulkheadInMillis, which by default is the slow call duration. If
+ * no call finishes in that time the call is rejected by the bulkhead. This lets callers, such as
+ * a ParallelFedoraExecutor with more parallel calls than maxConcurrentCalls, queue up behind the
+ * bulkhead instead of failing. Rejected calls throw a FedoraException and are not counted as
+ * failures.
+ */
+public final class FedoraCircuitBreakerImp implements FedoraCircuitBreaker {
+	private int maxConcurrentCalls;
+	private int failureThreshold;
+	private long slowCallDurationInMillis;
+	private long openDurationInMillis;
+	private Clock clock;
+	private long maxWaitForBulkheadInMillis;
+	private Semaphore bulkhead;
+	private FedoraCircuitState state = FedoraCircuitState.CLOSED;
+	private int consecutiveFailures = 0;
+	private long openedAtMillis;
+	private boolean trialCallInProgress = false;
+	private long successCount = 0;
+	private long failureCount = 0;
+	private long slowCallCount = 0;
+	private long openCircuitRejectionCount = 0;
+	private long bulkheadRejectionCount = 0;
+
+	public static FedoraCircuitBreakerImp usingMaxConcurrentCallsAndFailureThresholdAndSlowCallAndOpenDurationInMillis(
+			int maxConcurrentCalls, int failureThreshold, long slowCallDurationInMillis,
+			long openDurationInMillis) {
+		return usingMaxConcurrentCallsAndFailureThresholdAndSlowCallAndOpenDurationInMillisAndClock(
+				maxConcurrentCalls, failureThreshold, slowCallDurationInMillis,
+				openDurationInMillis, Clock.systemUTC());
+	}
+
+	public static FedoraCircuitBreakerImp usingMaxConcurrentCallsAndFailureThresholdAndSlowCallAndOpenDurationInMillisAndClock(
+			int maxConcurrentCalls, int failureThreshold, long slowCallDurationInMillis,
+			long openDurationInMillis, Clock clock) {
+		throwErrorIfLessThanOne("maxConcurrentCalls", maxConcurrentCalls);
+		throwErrorIfLessThanOne("failureThreshold", failureThreshold);
+		return new FedoraCircuitBreakerImp(maxConcurrentCalls, failureThreshold,
+				slowCallDurationInMillis, openDurationInMillis, clock);
+	}
+
+	private static void throwErrorIfLessThanOne(String name, int value) {
+		if (value < 1) {
+			throw new IllegalArgumentException(name + " must be at least 1, was: " + value);
+		}
+	}
+
+	private FedoraCircuitBreakerImp(int maxConcurrentCalls, int failureThreshold,
+			long slowCallDurationInMillis, long openDurationInMillis, Clock clock) {
+		this.maxConcurrentCalls = maxConcurrentCalls;
+		this.failureThreshold = failureThreshold;
+		this.slowCallDurationInMillis = slowCallDurationInMillis;
+		this.openDurationInMillis = openDurationInMillis;
+		this.clock = clock;
+		maxWaitForBulkheadInMillis = slowCallDurationInMillis;
+		bulkhead = new Semaphore(maxConcurrentCalls);
+	}
+
+	@Override
+	public <T> T call(Supplier<T> fedoraCall) {
+		return call(fedoraCall, result -> false);
+	}
+
+	@Override
+	public <T> T call(Supplier<T> fedoraCall, Predicate<T> isFailedResult) {
+		enterBulkhead();
+		try {
+			boolean trialCall = enterCircuit();
+			return callAndRecordOutcome(fedoraCall, isFailedResult, trialCall);
+		} finally {
+			bulkhead.release();
+		}
+	}
+
+	private void enterBulkhead() {
+		if (!tryToAcquireBulkheadWithinMaxWait()) {
+			countBulkheadRejection();
+			throw FedoraException.withMessage(
+					"Too many concurrent calls to fedora, max is: " + maxConcurrentCalls);
+		}
+	}
+
+	private boolean tryToAcquireBulkheadWithinMaxWait() {
+		try {
+			return bulkhead.tryAcquire(maxWaitForBulkheadInMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private synchronized void countBulkheadRejection() {
+		bulkheadRejectionCount++;
+	}
+
+	private synchronized boolean enterCircuit() {
+		possiblyHalfOpenCircuit();
+		if (state == FedoraCircuitState.OPEN
+				|| (state == FedoraCircuitState.HALF_OPEN && trialCallInProgress)) {
+			openCircuitRejectionCount++;
+			throw FedoraException.withMessage(
+					"Circuit breaker for fedora is open, calls are rejected until fedora recovers");
+		}
+		if (state == FedoraCircuitState.HALF_OPEN) {
+			trialCallInProgress = true;
+			return true;
+		}
+		return false;
+	}
+
+	private void possiblyHalfOpenCircuit() {
+		if (state == FedoraCircuitState.OPEN
+				&& clock.millis() - openedAtMillis >= openDurationInMillis) {
+			state = FedoraCircuitState.HALF_OPEN;
+		}
+	}
+
+	private <T> T callAndRecordOutcome(Supplier<T> fedoraCall, Predicate<T> isFailedResult,
+			boolean trialCall) {
+		long startMillis = clock.millis();
+		try {
+			T result = fedoraCall.get();
+			recordCompletedCallUnlessFailedResult(isFailedResult.test(result),
+					clock.millis() - startMillis, trialCall);
+			return result;
+		} catch (RecordNotFoundException e) {
+			recordCompletedCall(clock.millis() - startMillis, trialCall);
+			throw e;
+		} catch (Throwable e) {
+			recordFailedCall(trialCall);
+			throw e;
+		}
+	}
+
+	private void recordCompletedCallUnlessFailedResult(boolean failedResult,
+			long durationInMillis, boolean trialCall) {
+		if (failedResult) {
+			recordFailedCall(trialCall);
+		} else {
+			recordCompletedCall(durationInMillis, trialCall);
+		}
+	}
+
+	private synchronized void recordCompletedCall(long durationInMillis, boolean trialCall) {
+		if (durationInMillis > slowCallDurationInMillis) {
+			slowCallCount++;
+			recordFailureInCircuit(trialCall);
+		} else {
+			successCount++;
+			recordSuccessInCircuit(trialCall);
+		}
+	}
+
+	private synchronized void recordFailedCall(boolean trialCall) {
+		failureCount++;
+		recordFailureInCircuit(trialCall);
+	}
+
+	/**
+	 * Only the trial call decides the state of a half open circuit, a call that was let through
+	 * before the circuit opened and finishes after it did is counted but does not change the
+	 * state.
+	 */
+	private void recordFailureInCircuit(boolean trialCall) {
+		if (trialCall) {
+			openCircuit();
+		} else if (state == FedoraCircuitState.CLOSED) {
+			consecutiveFailures++;
+			possiblyOpenCircuit();
+		}
+	}
+
+	private void possiblyOpenCircuit() {
+		if (consecutiveFailures >= failureThreshold) {
+			openCircuit();
+		}
+	}
+
+	private void recordSuccessInCircuit(boolean trialCall) {
+		if (trialCall || state == FedoraCircuitState.CLOSED) {
+			closeCircuit();
+		}
+	}
+
+	private void openCircuit() {
+		state = FedoraCircuitState.OPEN;
+		openedAtMillis = clock.millis();
+		trialCallInProgress = false;
+	}
+
+	private void closeCircuit() {
+		state = FedoraCircuitState.CLOSED;
+		consecutiveFailures = 0;
+		trialCallInProgress = false;
+	}
+
+	@Override
+	public synchronized FedoraCircuitBreakerStatistics getStatistics() {
+		possiblyHalfOpenCircuit();
+		return new FedoraCircuitBreakerStatistics(state, successCount, failureCount,
+				slowCallCount, openCircuitRejectionCount, bulkheadRejectionCount,
+				maxConcurrentCalls - bulkhead.availablePermits());
+	}
+
+	/**
+	 * setMaxWaitForBulkheadInMillis sets how long a call waits for a call in progress to finish
+	 * when maxConcurrentCalls calls are already in progress, before it is rejected. Zero rejects
+	 * calls without waiting.
+	 */
+	public void setMaxWaitForBulkheadInMillis(long maxWaitForBulkheadInMillis) {
+		this.maxWaitForBulkheadInMillis = maxWaitForBulkheadInMillis;
+	}
+
+	public long getMaxWaitForBulkheadInMillis() {
+		// needed for tests
+		return maxWaitForBulkheadInMillis;
+	}
+
+	public int getMaxConcurrentCalls() {
+		// needed for tests
+		return maxConcurrentCalls;
+	}
+
+	public int getFailureThreshold() {
+		// needed for tests
+		return failureThreshold;
+	}
+
+	public long getSlowCallDurationInMillis() {
+		// needed for tests
+		return slowCallDurationInMillis;
+	}
+
+	public long getOpenDurationInMillis() {
+		// needed for tests
+		return openDurationInMillis;
+	}
+
+}
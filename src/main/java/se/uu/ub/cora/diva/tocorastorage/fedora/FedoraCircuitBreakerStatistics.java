@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+public final class FedoraCircuitBreakerStatistics {
+	private FedoraCircuitState state;
+	private long successCount;
+	private long failureCount;
+	private long slowCallCount;
+	private long openCircuitRejectionCount;
+	private long bulkheadRejectionCount;
+	private int callsInProgress;
+
+	FedoraCircuitBreakerStatistics(FedoraCircuitState state, long successCount,
+			long failureCount, long slowCallCount, long openCircuitRejectionCount,
+			long bulkheadRejectionCount, int callsInProgress) {
+		this.state = state;
+		this.successCount = successCount;
+		this.failureCount = failureCount;
+		this.slowCallCount = slowCallCount;
+		this.openCircuitRejectionCount = openCircuitRejectionCount;
+		this.bulkheadRejectionCount = bulkheadRejectionCount;
+		this.callsInProgress = callsInProgress;
+	}
+
+	public FedoraCircuitState getState() {
+		return state;
+	}
+
+	public long getSuccessCount() {
+		return successCount;
+	}
+
+	/**
+	 * getFailureCount returns the number of calls that threw an exception, slow calls are counted
+	 * separately by getSlowCallCount.
+	 */
+	public long getFailureCount() {
+		return failureCount;
+	}
+
+	public long getSlowCallCount() {
+		return slowCallCount;
+	}
+
+	public long getOpenCircuitRejectionCount() {
+		return openCircuitRejectionCount;
+	}
+
+	public long getBulkheadRejectionCount() {
+		return bulkheadRejectionCount;
+	}
+
+	public long getRejectionCount() {
+		return openCircuitRejectionCount + bulkheadRejectionCount;
+	}
+
+	public int getCallsInProgress() {
+		return callsInProgress;
+	}
+
+	@Override
+	public String toString() {
+		return "state: " + state + ", successes: " + successCount + ", failures: " + failureCount
+				+ ", slowCalls: " + slowCallCount + ", openCircuitRejections: "
+				+ openCircuitRejectionCount + ", bulkheadRejections: " + bulkheadRejectionCount
+				+ ", callsInProgress: " + callsInProgress;
+	}
+
+}
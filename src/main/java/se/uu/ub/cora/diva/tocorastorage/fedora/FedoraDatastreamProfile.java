@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+import se.uu.ub.cora.diva.tocorastorage.FedoraException;
+
+final class FedoraDatastreamProfile {
+	private static final String SHA_512 = "SHA-512";
+	private String createDate;
+	private String checksumType;
+	private String checksum;
+
+	static FedoraDatastreamProfile fromXML(String profileXML) {
+		return new FedoraDatastreamProfile(profileXML);
+	}
+
+	private FedoraDatastreamProfile(String profileXML) {
+		XMLXPathParser parser = XMLXPathParser.forXML(profileXML);
+		createDate = parser
+				.getStringFromDocumentUsingXPath("/datastreamProfile/dsCreateDate/text()");
+		checksumType = parser
+				.getStringFromDocumentUsingXPath("/datastreamProfile/dsChecksumType/text()");
+		checksum = parser.getStringFromDocumentUsingXPath("/datastreamProfile/dsChecksum/text()");
+	}
+
+	String getCreateDate() {
+		return createDate;
+	}
+
+	/**
+	 * getVersion returns the SHA-512 checksum of the datastream when fedora calculates one, so that
+	 * it is the same version as {@link #calculateVersionForContent(String)} returns for the content
+	 * of the datastream. For other checksum types the version is the create date and checksum.
+	 */
+	String getVersion() {
+		if (usesSHA512Checksum()) {
+			return checksum.toLowerCase(Locale.ROOT);
+		}
+		if ("".equals(createDate)) {
+			return "";
+		}
+		return createDate + " " + checksum;
+	}
+
+	private boolean usesSHA512Checksum() {
+		return SHA_512.equals(checksumType) && !"".equals(checksum);
+	}
+
+	/**
+	 * isProfileForContent returns true if the SHA-512 checksum of the datastream is the checksum of
+	 * the UTF-8 bytes of xml, that is if xml is the current content of the datastream. A datastream
+	 * with another checksum type is never matched.
+	 */
+	boolean isProfileForContent(String xml) {
+		return usesSHA512Checksum() && getVersion().equals(calculateVersionForContent(xml));
+	}
+
+	static String calculateVersionForContent(String xml) {
+		byte[] digest = createSHA512Digest().digest(xml.getBytes(StandardCharsets.UTF_8));
+		StringBuilder hex = new StringBuilder(digest.length * 2);
+		for (byte digestByte : digest) {
+			hex.append(Character.forDigit((digestByte >> 4) & 0xF, 16));
+			hex.append(Character.forDigit(digestByte & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	private static MessageDigest createSHA512Digest() {
+		try {
+			return MessageDigest.getInstance(SHA_512);
+		} catch (NoSuchAlgorithmException e) {
+			throw FedoraException.withMessageAndException("Unable to calculate checksum", e);
+		}
+	}
+
+}
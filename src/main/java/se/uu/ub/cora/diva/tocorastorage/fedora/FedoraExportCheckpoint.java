@@ -0,0 +1,177 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import se.uu.ub.cora.diva.tocorastorage.FedoraException;
+
+/**
+ * FedoraExportCheckpoint holds how far an export has come. The last processed pid is kept so that
+ * a resumed export can skip the pids before it, and the pids that failed to be exported are kept
+ * so that they can be retried. The length of the export file is kept so that lines written after
+ * the last checkpoint can be removed when the export is resumed.
+ */
+final class FedoraExportCheckpoint {
+	private static final String LAST_PROCESSED_PID = "lastProcessedPid";
+	private static final String FAILED_PIDS = "failedPids";
+	private static final String EXPORTED_RECORDS = "numberOfExportedRecords";
+	private static final String EXPORT_FILE_LENGTH = "exportFileLength";
+	private static final String PID_SEPARATOR = ",";
+	private String lastProcessedPid;
+	private Set<String> failedPids;
+	private int numberOfExportedRecords;
+	private long exportFileLength;
+
+	static FedoraExportCheckpoint readFromFileOrStartNew(Path checkpointFile) {
+		if (Files.exists(checkpointFile)) {
+			return readFromFile(checkpointFile);
+		}
+		return new FedoraExportCheckpoint(null, Collections.emptySet(), 0, 0);
+	}
+
+	private static FedoraExportCheckpoint readFromFile(Path checkpointFile) {
+		try (Reader reader = Files.newBufferedReader(checkpointFile, StandardCharsets.UTF_8)) {
+			Properties properties = new Properties();
+			properties.load(reader);
+			return new FedoraExportCheckpoint(properties.getProperty(LAST_PROCESSED_PID),
+					readPids(properties), readInt(properties, EXPORTED_RECORDS),
+					Long.parseLong(readValue(properties, EXPORT_FILE_LENGTH)));
+		} catch (IOException | NumberFormatException e) {
+			throw FedoraException.withMessageAndException(
+					"Unable to read export checkpoint: " + checkpointFile, e);
+		}
+	}
+
+	private static Set<String> readPids(Properties properties) {
+		String pids = readValue(properties, FAILED_PIDS);
+		if (pids.isEmpty()) {
+			return Collections.emptySet();
+		}
+		return new LinkedHashSet<>(Arrays.asList(pids.split(PID_SEPARATOR)));
+	}
+
+	private static int readInt(Properties properties, String key) {
+		return Integer.parseInt(readValue(properties, key));
+	}
+
+	private static String readValue(Properties properties, String key) {
+		String value = properties.getProperty(key);
+		if (value == null) {
+			throw new NumberFormatException("No value for: " + key);
+		}
+		return value;
+	}
+
+	private FedoraExportCheckpoint(String lastProcessedPid, Set<String> failedPids,
+			int numberOfExportedRecords, long exportFileLength) {
+		this.lastProcessedPid = lastProcessedPid;
+		this.failedPids = failedPids;
+		this.numberOfExportedRecords = numberOfExportedRecords;
+		this.exportFileLength = exportFileLength;
+	}
+
+	/**
+	 * afterBatch returns a checkpoint for when the pids in a batch have been processed. Pids that
+	 * were exported are no longer failed, even if they failed in an earlier batch, and pids in
+	 * failedPidsInBatch are added to the failed pids.
+	 */
+	FedoraExportCheckpoint afterBatch(String lastProcessedPidAfterBatch, List<String> pidsInBatch,
+			Set<String> failedPidsInBatch, long exportFileLengthAfterBatch) {
+		Set<String> failedPidsAfterBatch = new LinkedHashSet<>(failedPids);
+		int numberOfExportedRecordsInBatch = 0;
+		for (String pid : pidsInBatch) {
+			if (failedPidsInBatch.contains(pid)) {
+				failedPidsAfterBatch.add(pid);
+			} else {
+				failedPidsAfterBatch.remove(pid);
+				numberOfExportedRecordsInBatch++;
+			}
+		}
+		return new FedoraExportCheckpoint(lastProcessedPidAfterBatch, failedPidsAfterBatch,
+				numberOfExportedRecords + numberOfExportedRecordsInBatch,
+				exportFileLengthAfterBatch);
+	}
+
+	/**
+	 * writeToFile writes the checkpoint to a temporary file that is then moved into place, so that
+	 * an interrupted write never leaves a broken checkpoint behind.
+	 */
+	void writeToFile(Path checkpointFile) {
+		Path temporaryFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+		try {
+			writePropertiesToFile(temporaryFile);
+			Files.move(temporaryFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw FedoraException.withMessageAndException(
+					"Unable to write export checkpoint: " + checkpointFile, e);
+		}
+	}
+
+	private void writePropertiesToFile(Path file) throws IOException {
+		Properties properties = new Properties();
+		if (lastProcessedPid != null) {
+			properties.setProperty(LAST_PROCESSED_PID, lastProcessedPid);
+		}
+		properties.setProperty(FAILED_PIDS, String.join(PID_SEPARATOR, failedPids));
+		properties.setProperty(EXPORTED_RECORDS, String.valueOf(numberOfExportedRecords));
+		properties.setProperty(EXPORT_FILE_LENGTH, String.valueOf(exportFileLength));
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			properties.store(writer, "fedora export checkpoint");
+		}
+	}
+
+	String getLastProcessedPid() {
+		return lastProcessedPid;
+	}
+
+	Set<String> getFailedPids() {
+		return Collections.unmodifiableSet(failedPids);
+	}
+
+	boolean hasFailedPids() {
+		return !failedPids.isEmpty();
+	}
+
+	int getNumberOfExportedRecords() {
+		return numberOfExportedRecords;
+	}
+
+	int getNumberOfFailedRecords() {
+		return failedPids.size();
+	}
+
+	long getExportFileLength() {
+		return exportFileLength;
+	}
+
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.util.Map;
+
+public interface FedoraExportListener {
+
+	/**
+	 * batchExported is called each time a batch of records has been written to the export file and
+	 * the checkpoint has been saved. The failures map holds the ids in the batch that could not be
+	 * read, these are not retried if the export is resumed.
+	 */
+	void batchExported(FedoraExportProgress progress, Map<String, Exception> failures);
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.util.Locale;
+
+public final class FedoraExportProgress {
+	private static final double MILLIS_PER_SECOND = 1000;
+	private int numberOfExportedRecords;
+	private int numberOfFailedRecords;
+	private int numberOfRecordsInThisRun;
+	private long elapsedMillis;
+
+	static FedoraExportProgress usingCheckpointAndRecordsInThisRunAndElapsedMillis(
+			FedoraExportCheckpoint checkpoint, int numberOfRecordsInThisRun, long elapsedMillis) {
+		return new FedoraExportProgress(checkpoint, numberOfRecordsInThisRun, elapsedMillis);
+	}
+
+	private FedoraExportProgress(FedoraExportCheckpoint checkpoint, int numberOfRecordsInThisRun,
+			long elapsedMillis) {
+		numberOfExportedRecords = checkpoint.getNumberOfExportedRecords();
+		numberOfFailedRecords = checkpoint.getNumberOfFailedRecords();
+		this.numberOfRecordsInThisRun = numberOfRecordsInThisRun;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * getNumberOfExportedRecords returns the number of records in the export file, including
+	 * records written before the export was resumed.
+	 */
+	public int getNumberOfExportedRecords() {
+		return numberOfExportedRecords;
+	}
+
+	public int getNumberOfFailedRecords() {
+		return numberOfFailedRecords;
+	}
+
+	public int getNumberOfRecordsInThisRun() {
+		return numberOfRecordsInThisRun;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * getRecordsPerSecond returns the throughput of this run, counting both exported and failed
+	 * records, as all of them have been read from fedora.
+	 */
+	public double getRecordsPerSecond() {
+		if (elapsedMillis == 0) {
+			return 0;
+		}
+		return numberOfRecordsInThisRun * MILLIS_PER_SECOND / elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "exported: " + numberOfExportedRecords + ", failed: " + numberOfFailedRecords
+				+ ", records/s: " + String.format(Locale.ROOT, "%.1f", getRecordsPerSecond());
+	}
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+import se.uu.ub.cora.diva.tocorastorage.FedoraException;
+
+/**
+ * FedoraPersonExporter writes all persons in fedora to a file, as one json record per line. Pids
+ * are read page by page and the persons in each batch are read in parallel using the parallel
+ * executor of the record storage. Persons are read past the caches of the record storage, so an
+ * export does not evict the records that normal reads need.
+ * <p>
+ * A checkpoint with the last processed pid and the pids that failed is saved after each batch. If
+ * an export is started with an existing checkpoint, the failed pids are retried first and the
+ * export then continues after the last processed pid, which relies on fedora listing the pids in
+ * the same order as in the earlier run. The checkpoint is removed when the export is done without
+ * failed pids, so that the next export starts from the beginning. If pids are still failing it is
+ * kept, so that the next export only retries them and exports pids added since.
+ */
+public final class FedoraPersonExporter {
+	private DivaFedoraRecordStorage recordStorage;
+	private Path exportFile;
+	private Path checkpointFile;
+	private int batchSize = 100;
+	private FedoraExportListener listener = (progress, failures) -> {
+	};
+	private Clock clock = Clock.systemUTC();
+	private FedoraExportCheckpoint checkpoint;
+	private long startMillis;
+	private int numberOfRecordsInThisRun;
+
+	public static FedoraPersonExporter usingRecordStorageAndExportFileAndCheckpointFile(
+			DivaFedoraRecordStorage recordStorage, Path exportFile, Path checkpointFile) {
+		return new FedoraPersonExporter(recordStorage, exportFile, checkpointFile);
+	}
+
+	private FedoraPersonExporter(DivaFedoraRecordStorage recordStorage, Path exportFile,
+			Path checkpointFile) {
+		this.recordStorage = recordStorage;
+		this.exportFile = exportFile;
+		this.checkpointFile = checkpointFile;
+	}
+
+	public FedoraExportProgress export() {
+		startMillis = clock.millis();
+		numberOfRecordsInThisRun = 0;
+		checkpoint = FedoraExportCheckpoint.readFromFileOrStartNew(checkpointFile);
+		try {
+			tryToExport();
+			removeCheckpointUnlessPidsFailed();
+		} catch (IOException e) {
+			throw FedoraException.withMessageAndException(
+					"Unable to write export file: " + exportFile, e);
+		}
+		return createProgress();
+	}
+
+	private void tryToExport() throws IOException {
+		removeRecordsWrittenAfterCheckpoint();
+		try (Writer writer = Files.newBufferedWriter(exportFile, StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+			retryFailedPids(writer);
+			exportPidsAfterLastProcessedPid(writer);
+		}
+	}
+
+	private void removeRecordsWrittenAfterCheckpoint() throws IOException {
+		try (FileChannel channel = FileChannel.open(exportFile, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE)) {
+			channel.truncate(checkpoint.getExportFileLength());
+		}
+	}
+
+	private void retryFailedPids(Writer writer) throws IOException {
+		Iterator<String> failedPids = new ArrayList<>(checkpoint.getFailedPids()).iterator();
+		while (failedPids.hasNext()) {
+			exportBatch(writer, readNextBatchOfPids(failedPids), checkpoint.getLastProcessedPid());
+		}
+	}
+
+	private void exportPidsAfterLastProcessedPid(Writer writer) throws IOException {
+		try (FedoraPidIterator pidIterator = recordStorage.createPersonPidIterator()) {
+			skipProcessedPids(pidIterator);
+			while (pidIterator.hasNext()) {
+				List<String> pids = readNextBatchOfPids(pidIterator);
+				exportBatch(writer, pids, pids.get(pids.size() - 1));
+			}
+		}
+	}
+
+	private void skipProcessedPids(FedoraPidIterator pidIterator) {
+		String lastProcessedPid = checkpoint.getLastProcessedPid();
+		if (lastProcessedPid == null) {
+			return;
+		}
+		while (pidIterator.hasNext()) {
+			if (lastProcessedPid.equals(pidIterator.next())) {
+				return;
+			}
+		}
+		throw FedoraException.withMessage("Unable to resume export, last processed pid: "
+				+ lastProcessedPid + " is no longer listed by fedora");
+	}
+
+	private List<String> readNextBatchOfPids(Iterator<String> pidIterator) {
+		List<String> pids = new ArrayList<>(batchSize);
+		while (pids.size() < batchSize && pidIterator.hasNext()) {
+			pids.add(pidIterator.next());
+		}
+		return pids;
+	}
+
+	private void exportBatch(Writer writer, List<String> pids, String lastProcessedPid)
+			throws IOException {
+		ParallelResult<DataGroup> result = recordStorage.getParallelExecutor()
+				.executeForAllIds(pids, recordStorage::readPersonBypassingCache);
+		writeRecords(writer, result.getResults());
+		writer.flush();
+		numberOfRecordsInThisRun += result.getNumberOfCalls();
+		checkpoint = checkpoint.afterBatch(lastProcessedPid, pids,
+				result.getFailures().keySet(), Files.size(exportFile));
+		checkpoint.writeToFile(checkpointFile);
+		listener.batchExported(createProgress(), result.getFailures());
+	}
+
+	private void writeRecords(Writer writer, List<DataGroup> records) throws IOException {
+		for (DataGroup dataGroup : records) {
+			writer.write(DataGroupJsonWriter.toJson(dataGroup));
+			writer.write('\n');
+		}
+	}
+
+	private void removeCheckpointUnlessPidsFailed() throws IOException {
+		if (!checkpoint.hasFailedPids()) {
+			Files.deleteIfExists(checkpointFile);
+		}
+	}
+
+	private FedoraExportProgress createProgress() {
+		return FedoraExportProgress.usingCheckpointAndRecordsInThisRunAndElapsedMillis(checkpoint,
+				numberOfRecordsInThisRun, clock.millis() - startMillis);
+	}
+
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be at least 1, was: " + batchSize);
+		}
+		this.batchSize = batchSize;
+	}
+
+	public void setListener(FedoraExportListener listener) {
+		this.listener = listener;
+	}
+
+	public void setClock(Clock clock) {
+		this.clock = clock;
+	}
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import se.uu.ub.cora.diva.tocorastorage.FedoraException;
+import se.uu.ub.cora.diva.tocorastorage.metrics.Metrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
+import se.uu.ub.cora.httphandler.HttpHandlerFactory;
+
+/**
+ * FedoraPidIterator iterates over the pids matching a query in Fedora. Result pages are fetched
+ * one at a time when needed, and the listSession token returned by Fedora is used to continue to
+ * the next page. Each page is parsed from the response stream without building a document tree
+ * for it.
+ * <p>
+ * Pids are not returned while a page is read. A page is read and parsed to its end within the
+ * call made through the circuit breaker and the retrier, so that a response that breaks while it
+ * is read is retried and counted as a failed call, and so that the response is closed before the
+ * pids are returned. The pids of one page, at most pageSize, are buffered at a time, and the first
+ * pid of a page is returned when the whole page has been read. The iterator should be closed if it
+ * is not read to its end.
+ */
+public final class FedoraPidIterator implements Iterator<String>, AutoCloseable {
+	private StreamingHttpHandlerFactory httpHandlerFactory;
+	private String baseURL;
+	private String query;
+	private int pageSize;
+	private PidPage currentPage;
+	private String nextPid;
+	private String sessionToken;
+	private boolean morePagesExist = true;
+	private int numberOfFetchedPages = 0;
+	private Metrics metrics = new NoOpMetrics();
+	private FedoraCircuitBreaker circuitBreaker = new PassThroughFedoraCircuitBreaker();
+	private FedoraRetrier retrier = new NoRetryFedoraRetrier();
+
+	public static FedoraPidIterator usingHttpHandlerFactoryAndBaseURLAndQueryAndPageSize(
+			HttpHandlerFactory httpHandlerFactory, String baseURL, String query, int pageSize) {
+		return new FedoraPidIterator(
+				TextResponseStreamingHttpHandlerFactory.usingHttpHandlerFactory(httpHandlerFactory),
+				baseURL, query, pageSize);
+	}
+
+	public static FedoraPidIterator usingStreamingHttpHandlerFactoryAndBaseURLAndQueryAndPageSize(
+			StreamingHttpHandlerFactory httpHandlerFactory, String baseURL, String query,
+			int pageSize) {
+		return new FedoraPidIterator(httpHandlerFactory, baseURL, query, pageSize);
+	}
+
+	private FedoraPidIterator(StreamingHttpHandlerFactory httpHandlerFactory, String baseURL,
+			String query, int pageSize) {
+		this.httpHandlerFactory = httpHandlerFactory;
+		this.baseURL = baseURL;
+		this.query = query;
+		this.pageSize = pageSize;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (nextPid == null && (currentPageHasMorePids() || morePagesExist)) {
+			readNextPidOrFetchNextPage();
+		}
+		return nextPid != null;
+	}
+
+	private boolean currentPageHasMorePids() {
+		return currentPage != null && currentPage.hasMorePids();
+	}
+
+	private void readNextPidOrFetchNextPage() {
+		if (currentPageHasMorePids()) {
+			nextPid = currentPage.nextPid();
+		} else {
+			fetchNextPage();
+		}
+	}
+
+	@Override
+	public String next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException("No more pids in fedora for query: " + query);
+		}
+		String pid = nextPid;
+		nextPid = null;
+		return pid;
+	}
+
+	private void fetchNextPage() {
+		currentPage = circuitBreaker.call(() -> retrier
+				.callUsingMetricsAndOperation(this::readPageFromFedora, metrics, "listPids"));
+		numberOfFetchedPages++;
+		sessionToken = currentPage.sessionToken;
+		morePagesExist = !"".equals(sessionToken);
+	}
+
+	private PidPage readPageFromFedora() {
+		StreamingHttpHandler httpHandler = httpHandlerFactory.factor(createUrlForNextPage());
+		httpHandler.setRequestMethod("GET");
+		try (FedoraResponseBody pageXML = FedoraCallMetrics
+				.getResponseBodyUsingMetricsAndOperation(httpHandler, metrics, "listPids")) {
+			return readAllPidsInPage(FedoraPidPageReader.forResponseBody(pageXML));
+		} catch (IOException e) {
+			throw FedoraException.withMessageAndException(
+					"Unable to close page of pids from fedora for query: " + query, e);
+		}
+	}
+
+	private PidPage readAllPidsInPage(FedoraPidPageReader pageReader) {
+		Deque<String> pids = new ArrayDeque<>(pageSize);
+		String pid = pageReader.readNextPid();
+		while (pid != null) {
+			pids.add(pid);
+			pid = pageReader.readNextPid();
+		}
+		return new PidPage(pids, pageReader.getSessionToken());
+	}
+
+	private String createUrlForNextPage() {
+		String url = baseURL + "objects?pid=true&maxResults=" + pageSize
+				+ "&resultFormat=xml&query=" + query;
+		if (sessionToken != null) {
+			url += "&sessionToken=" + urlEncode(sessionToken);
+		}
+		return url;
+	}
+
+	private String urlEncode(String value) {
+		try {
+			return URLEncoder.encode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw FedoraException.withMessageAndException("Unable to encode: " + value, e);
+		}
+	}
+
+	/**
+	 * close drops the pids of the current page, and no more pids are returned after that.
+	 */
+	@Override
+	public void close() {
+		morePagesExist = false;
+		nextPid = null;
+		currentPage = null;
+	}
+
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public void setCircuitBreaker(FedoraCircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	public FedoraCircuitBreaker getCircuitBreaker() {
+		// needed for tests
+		return circuitBreaker;
+	}
+
+	public void setRetrier(FedoraRetrier retrier) {
+		this.retrier = retrier;
+	}
+
+	public FedoraRetrier getRetrier() {
+		// needed for tests
+		return retrier;
+	}
+
+	public int getNumberOfFetchedPages() {
+		return numberOfFetchedPages;
+	}
+
+	public int getPageSize() {
+		// needed for tests
+		return pageSize;
+	}
+
+	private static final class PidPage {
+		private final Deque<String> pids;
+		private final String sessionToken;
+
+		private PidPage(Deque<String> pids, String sessionToken) {
+			this.pids = pids;
+			this.sessionToken = sessionToken;
+		}
+
+		private boolean hasMorePids() {
+			return !pids.isEmpty();
+		}
+
+		private String nextPid() {
+			return pids.poll();
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import se.uu.ub.cora.diva.tocorastorage.FedoraException;
+import se.uu.ub.cora.diva.tocorastorage.ParseException;
+
+/**
+ * FedoraPidPageReader reads pids from one page of findObjects results while scanning the page, so
+ * that the first pid is available before the rest of the page is read. The listSession token is
+ * known when the page has been read to its end, and the xml source is closed at that point.
+ * FedoraPidIterator reads each page to its end before it returns any of the pids in it.
+ * <p>
+ * A response that breaks while it is read is reported as a FedoraException, so that it can be
+ * retried, while xml that can not be parsed is reported as a ParseException.
+ */
+final class FedoraPidPageReader {
+	private static final String PID = "/result/resultList/objectFields/pid";
+	private static final String TOKEN = "/result/listSession/token";
+	private FedoraResponseBody xml;
+	private XMLStreamReader reader;
+	private Deque<String> openElements = new ArrayDeque<>();
+	private Deque<String> readPids = new ArrayDeque<>();
+	private StringBuilder currentText = new StringBuilder();
+	private String sessionToken;
+	private boolean endOfPageReached = false;
+
+	static FedoraPidPageReader forXML(String xml) {
+		return forResponseBody(FedoraResponseBody.usingText(xml));
+	}
+
+	static FedoraPidPageReader forResponseBody(FedoraResponseBody xml) {
+		return new FedoraPidPageReader(xml);
+	}
+
+	private FedoraPidPageReader(FedoraResponseBody xml) {
+		this.xml = xml;
+		try {
+			reader = xml.createXMLStreamReader();
+		} catch (XMLStreamException e) {
+			closeXML();
+			throw createExceptionForFailedRead(e);
+		}
+	}
+
+	private void closeXML() {
+		try {
+			xml.close();
+		} catch (IOException e) {
+			// nothing more will be read from the xml, so a failed close does not lose any data
+		}
+	}
+
+	private RuntimeException createExceptionForFailedRead(XMLStreamException e) {
+		Throwable cause = e.getNestedException();
+		if (cause instanceof IOException) {
+			return FedoraException.withMessageAndException(
+					"Unable to read page of pids from fedora: " + cause.getMessage(), e);
+		}
+		return ParseException.withMessageAndException(
+				"Can not read xml: " + XMLStreamReaderFactory.getMessageWithoutLocation(e), e);
+	}
+
+	String readNextPid() {
+		try {
+			return tryToReadNextPid();
+		} catch (XMLStreamException e) {
+			closeXML();
+			throw createExceptionForFailedRead(e);
+		} catch (RuntimeException e) {
+			closeXML();
+			throw e;
+		}
+	}
+
+	private String tryToReadNextPid() throws XMLStreamException {
+		while (readPids.isEmpty() && !endOfPageReached) {
+			readNextEvent();
+		}
+		return readPids.poll();
+	}
+
+	private void readNextEvent() throws XMLStreamException {
+		if (!reader.hasNext()) {
+			endOfPageReached = true;
+			reader.close();
+			closeXML();
+			return;
+		}
+		handleEvent(reader.next());
+	}
+
+	private void handleEvent(int event) throws XMLStreamException {
+		if (event == XMLStreamConstants.START_ELEMENT) {
+			endCurrentText();
+			openElements.push(getCurrentPath() + "/"
+					+ XMLStreamReaderFactory.removePrefix(reader.getLocalName()));
+		} else if (event == XMLStreamConstants.END_ELEMENT) {
+			endCurrentText();
+			openElements.pop();
+		} else if (isText(event)) {
+			possiblyAddToCurrentText(reader.getText());
+		} else if (event == XMLStreamConstants.DTD) {
+			throw XMLStreamReaderFactory.createDoctypeNotAllowedException();
+		} else {
+			endCurrentText();
+		}
+	}
+
+	private String getCurrentPath() {
+		return openElements.isEmpty() ? "" : openElements.peek();
+	}
+
+	private boolean isText(int event) {
+		return event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+				|| event == XMLStreamConstants.SPACE;
+	}
+
+	private void possiblyAddToCurrentText(String text) {
+		String currentPath = getCurrentPath();
+		if (PID.equals(currentPath) || TOKEN.equals(currentPath)) {
+			currentText.append(text);
+		}
+	}
+
+	private void endCurrentText() {
+		if (currentText.length() > 0) {
+			addCurrentText();
+			currentText.setLength(0);
+		}
+	}
+
+	private void addCurrentText() {
+		if (PID.equals(getCurrentPath())) {
+			readPids.add(currentText.toString());
+		} else if (sessionToken == null) {
+			sessionToken = currentText.toString();
+		}
+	}
+
+	String getSessionToken() {
+		return sessionToken == null ? "" : sessionToken;
+	}
+
+	boolean isEndOfPageReached() {
+		return endOfPageReached;
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.InputSource;
+
+/**
+ * FedoraResponseBody is the body of a response from fedora, either as the bytes of the response
+ * or as text that has already been read into a String. Bytes are decoded by the xml parser using
+ * the encoding declared in the xml, while text is parsed as it is, so that a body read as text is
+ * not decoded a second time. The body must be closed when it has been read.
+ */
+public final class FedoraResponseBody implements Closeable {
+	private InputStream stream;
+	private Reader text;
+
+	public static FedoraResponseBody usingStream(InputStream stream) {
+		return new FedoraResponseBody(stream, null);
+	}
+
+	public static FedoraResponseBody usingText(String text) {
+		return new FedoraResponseBody(null, new StringReader(text));
+	}
+
+	private FedoraResponseBody(InputStream stream, Reader text) {
+		this.stream = stream;
+		this.text = text;
+	}
+
+	public InputSource createInputSource() {
+		if (isText()) {
+			return new InputSource(text);
+		}
+		return new InputSource(stream);
+	}
+
+	XMLStreamReader createXMLStreamReader() throws XMLStreamException {
+		if (isText()) {
+			return XMLStreamReaderFactory.forReader(text);
+		}
+		return XMLStreamReaderFactory.forInputStream(stream);
+	}
+
+	public boolean isText() {
+		return text != null;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (isText()) {
+			text.close();
+		} else {
+			stream.close();
+		}
+	}
+
+}
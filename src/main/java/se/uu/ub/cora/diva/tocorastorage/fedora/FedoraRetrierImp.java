@@ -0,0 +1,220 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+import se.uu.ub.cora.diva.tocorastorage.FedoraException;
+import se.uu.ub.cora.diva.tocorastorage.ParseException;
+import se.uu.ub.cora.diva.tocorastorage.metrics.Metrics;
+import se.uu.ub.cora.spider.record.storage.RecordNotFoundException;
+
+/**
+ * FedoraRetrierImp retries failed fedora calls with exponential backoff and full jitter. Before
+ * retry n the retrier waits a random time between zero and baseDelay * 2^(n-1), but never more
+ * than maxDelay. Calls failing with a ParseException or a RecordNotFoundException are not retried,
+ * as fedora will give the same answer the next time.
+ * <p>
+ * Retries are limited by a retry budget, so that retries do not multiply the load on fedora when
+ * it is down. Each retry uses one retry token, and each call adds retryTokensPerCall tokens up to
+ * maxRetryTokens. With the default budget of 10 tokens and 0.1 tokens per call, retries are at
+ * most about one tenth of the calls once the first 10 tokens are used.
+ * <p>
+ * Each attempt is counted as "fedora.retry.&lt;operation&gt;.attempt.&lt;n&gt;", calls that
+ * succeed after retrying as "fedora.retry.&lt;operation&gt;.recovered", calls that fail after
+ * maxAttempts as "fedora.retry.&lt;operation&gt;.exhausted" and retries denied by the retry
+ * budget as "fedora.retry.&lt;operation&gt;.budgetExhausted".
+ */
+public final class FedoraRetrierImp implements FedoraRetrier {
+	private static final String FEDORA_RETRY = "fedora.retry.";
+	private int maxAttempts;
+	private long baseDelayInMillis;
+	private long maxDelayInMillis;
+	private LongConsumer sleeper;
+	private DoubleSupplier jitter;
+	private int maxRetryTokens = 10;
+	private double retryTokensPerCall = 0.1;
+	private double retryTokens = maxRetryTokens;
+
+	public static FedoraRetrierImp usingMaxAttemptsAndBaseDelayAndMaxDelayInMillis(int maxAttempts,
+			long baseDelayInMillis, long maxDelayInMillis) {
+		return usingMaxAttemptsAndBaseDelayAndMaxDelayInMillisAndSleeperAndJitter(maxAttempts,
+				baseDelayInMillis, maxDelayInMillis, FedoraRetrierImp::sleep,
+				() -> ThreadLocalRandom.current().nextDouble());
+	}
+
+	/**
+	 * usingMaxAttemptsAndBaseDelayAndMaxDelayInMillisAndSleeperAndJitter lets the waiting between
+	 * attempts and the jitter be replaced. The jitter must return a value from 0 (inclusive) to 1
+	 * (exclusive) that the backoff delay is multiplied with.
+	 */
+	public static FedoraRetrierImp usingMaxAttemptsAndBaseDelayAndMaxDelayInMillisAndSleeperAndJitter(
+			int maxAttempts, long baseDelayInMillis, long maxDelayInMillis, LongConsumer sleeper,
+			DoubleSupplier jitter) {
+		throwErrorIfLessThan("maxAttempts", maxAttempts, 1);
+		throwErrorIfLessThan("baseDelayInMillis", baseDelayInMillis, 0);
+		throwErrorIfLessThan("maxDelayInMillis", maxDelayInMillis, baseDelayInMillis);
+		return new FedoraRetrierImp(maxAttempts, baseDelayInMillis, maxDelayInMillis, sleeper,
+				jitter);
+	}
+
+	private static void throwErrorIfLessThan(String name, double value, double minValue) {
+		if (value < minValue) {
+			throw new IllegalArgumentException(
+					name + " must be at least " + format(minValue) + ", was: " + format(value));
+		}
+	}
+
+	private static String format(double value) {
+		if (value == Math.rint(value)) {
+			return String.valueOf((long) value);
+		}
+		return String.valueOf(value);
+	}
+
+	private static void sleep(long delayInMillis) {
+		try {
+			Thread.sleep(delayInMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw FedoraException.withMessageAndException("Interrupted while waiting to retry", e);
+		}
+	}
+
+	private FedoraRetrierImp(int maxAttempts, long baseDelayInMillis, long maxDelayInMillis,
+			LongConsumer sleeper, DoubleSupplier jitter) {
+		this.maxAttempts = maxAttempts;
+		this.baseDelayInMillis = baseDelayInMillis;
+		this.maxDelayInMillis = maxDelayInMillis;
+		this.sleeper = sleeper;
+		this.jitter = jitter;
+	}
+
+	@Override
+	public <T> T callUsingMetricsAndOperation(Supplier<T> fedoraCall, Metrics metrics,
+			String operation) {
+		depositRetryTokens();
+		int attempt = 1;
+		while (true) {
+			metrics.incrementCounter(FEDORA_RETRY + operation + ".attempt." + attempt);
+			try {
+				T result = fedoraCall.get();
+				possiblyCountRecovered(metrics, operation, attempt);
+				return result;
+			} catch (ParseException | RecordNotFoundException e) {
+				throw e;
+			} catch (RuntimeException e) {
+				throwErrorIfNoMoreRetries(metrics, operation, attempt, e);
+			}
+			waitBeforeRetry(attempt);
+			attempt++;
+		}
+	}
+
+	private synchronized void depositRetryTokens() {
+		retryTokens = Math.min(maxRetryTokens, retryTokens + retryTokensPerCall);
+	}
+
+	private void possiblyCountRecovered(Metrics metrics, String operation, int attempt) {
+		if (attempt > 1) {
+			metrics.incrementCounter(FEDORA_RETRY + operation + ".recovered");
+		}
+	}
+
+	private void throwErrorIfNoMoreRetries(Metrics metrics, String operation, int attempt,
+			RuntimeException e) {
+		if (attempt >= maxAttempts) {
+			metrics.incrementCounter(FEDORA_RETRY + operation + ".exhausted");
+			throw e;
+		}
+		if (!tryToWithdrawRetryToken()) {
+			metrics.incrementCounter(FEDORA_RETRY + operation + ".budgetExhausted");
+			throw e;
+		}
+	}
+
+	private synchronized boolean tryToWithdrawRetryToken() {
+		if (retryTokens < 1) {
+			return false;
+		}
+		retryTokens--;
+		return true;
+	}
+
+	private void waitBeforeRetry(int attempt) {
+		long delayInMillis = (long) (jitter.getAsDouble() * calculateBackoffInMillis(attempt));
+		if (delayInMillis > 0) {
+			sleeper.accept(delayInMillis);
+		}
+	}
+
+	private long calculateBackoffInMillis(int attempt) {
+		int shift = Math.min(attempt - 1, 62);
+		long maxBaseDelayBeforeOverflow = Long.MAX_VALUE >> shift;
+		if (baseDelayInMillis > maxBaseDelayBeforeOverflow) {
+			return maxDelayInMillis;
+		}
+		return Math.min(maxDelayInMillis, baseDelayInMillis << shift);
+	}
+
+	/**
+	 * setRetryBudget sets the maximum number of retry tokens and the number of tokens each call
+	 * adds. The retrier starts with the maximum number of tokens.
+	 */
+	public synchronized void setRetryBudget(int maxRetryTokens, double retryTokensPerCall) {
+		throwErrorIfLessThan("maxRetryTokens", maxRetryTokens, 0);
+		throwErrorIfLessThan("retryTokensPerCall", retryTokensPerCall, 0);
+		this.maxRetryTokens = maxRetryTokens;
+		this.retryTokensPerCall = retryTokensPerCall;
+		retryTokens = maxRetryTokens;
+	}
+
+	public synchronized double getRetryTokens() {
+		return retryTokens;
+	}
+
+	public int getMaxAttempts() {
+		// needed for tests
+		return maxAttempts;
+	}
+
+	public long getBaseDelayInMillis() {
+		// needed for tests
+		return baseDelayInMillis;
+	}
+
+	public long getMaxDelayInMillis() {
+		// needed for tests
+		return maxDelayInMillis;
+	}
+
+	public int getMaxRetryTokens() {
+		// needed for tests
+		return maxRetryTokens;
+	}
+
+	public double getRetryTokensPerCall() {
+		// needed for tests
+		return retryTokensPerCall;
+	}
+
+}
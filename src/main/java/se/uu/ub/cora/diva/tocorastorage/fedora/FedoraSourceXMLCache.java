@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * FedoraSourceXMLCache keeps the most recently read METADATA source xml for records, so that an
+ * update can be converted without reading and parsing the record from fedora again. Before the
+ * cached xml is used, the update checks that it is still the content of the datastream using the
+ * checksum in the datastream profile. A cache with max size 0 keeps nothing.
+ */
+public final class FedoraSourceXMLCache {
+	private int maxSize;
+	private Map<String, FedoraSourceXML> entries;
+
+	public static FedoraSourceXMLCache usingMaxSize(int maxSize) {
+		return new FedoraSourceXMLCache(maxSize);
+	}
+
+	private FedoraSourceXMLCache(int maxSize) {
+		this.maxSize = maxSize;
+		entries = new LinkedHashMap<String, FedoraSourceXML>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, FedoraSourceXML> eldest) {
+				return size() > FedoraSourceXMLCache.this.maxSize;
+			}
+		};
+	}
+
+	boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	synchronized void put(String id, FedoraSourceXML sourceXML) {
+		if (isEnabled()) {
+			entries.put(id, sourceXML);
+		}
+	}
+
+	synchronized FedoraSourceXML get(String id) {
+		return entries.get(id);
+	}
+
+	public synchronized void invalidate(String id) {
+		entries.remove(id);
+	}
+
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+/**
+ * FedoraUpdateOutcome holds the result of updating one record as part of a batch update. An
+ * outcome is ok if fedora answered with response code 200, otherwise it holds the response code
+ * from fedora or the exception thrown while updating the record.
+ */
+public final class FedoraUpdateOutcome {
+	private static final int OK = 200;
+	private static final int NO_RESPONSE_CODE = -1;
+	private String id;
+	private int responseCode;
+	private Exception exception;
+
+	static FedoraUpdateOutcome usingIdAndResponseCode(String id, int responseCode) {
+		return new FedoraUpdateOutcome(id, responseCode, null);
+	}
+
+	static FedoraUpdateOutcome usingIdAndException(String id, Exception exception) {
+		return new FedoraUpdateOutcome(id, NO_RESPONSE_CODE, exception);
+	}
+
+	private FedoraUpdateOutcome(String id, int responseCode, Exception exception) {
+		this.id = id;
+		this.responseCode = responseCode;
+		this.exception = exception;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public boolean isOk() {
+		return OK == responseCode;
+	}
+
+	public int getResponseCode() {
+		return responseCode;
+	}
+
+	public Exception getException() {
+		return exception;
+	}
+
+	@Override
+	public String toString() {
+		if (exception != null) {
+			return id + ": " + exception.getMessage();
+		}
+		return id + ": " + responseCode;
+	}
+
+}
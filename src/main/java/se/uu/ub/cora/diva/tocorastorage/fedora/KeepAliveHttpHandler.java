@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import se.uu.ub.cora.diva.tocorastorage.FedoraException;
+import se.uu.ub.cora.httphandler.HttpHandler;
+
+/**
+ * KeepAliveHttpHandler reads the whole response, from the input stream or the error stream, the
+ * first time the response is asked for, and closes the stream so that the connection can be
+ * reused. See {@link KeepAliveHttpHandlerFactory}.
+ */
+final class KeepAliveHttpHandler implements HttpHandler {
+	private static final int BUFFER_SIZE = 8192;
+	private String url;
+	private HttpURLConnection urlConnection;
+	private int responseCode;
+	private String responseText;
+
+	static KeepAliveHttpHandler usingURLAndConnectTimeoutAndReadTimeout(String url,
+			int connectTimeoutInMillis, int readTimeoutInMillis) {
+		return new KeepAliveHttpHandler(url, connectTimeoutInMillis, readTimeoutInMillis);
+	}
+
+	private KeepAliveHttpHandler(String url, int connectTimeoutInMillis,
+			int readTimeoutInMillis) {
+		this.url = url;
+		try {
+			urlConnection = (HttpURLConnection) new URL(url).openConnection();
+		} catch (IOException | ClassCastException e) {
+			throw FedoraException.withMessageAndException("Unable to open connection to: " + url,
+					e);
+		}
+		urlConnection.setConnectTimeout(connectTimeoutInMillis);
+		urlConnection.setReadTimeout(readTimeoutInMillis);
+		urlConnection.setUseCaches(false);
+	}
+
+	@Override
+	public void setRequestMethod(String requestMethod) {
+		try {
+			urlConnection.setRequestMethod(requestMethod);
+		} catch (IOException e) {
+			throw FedoraException.withMessageAndException(
+					"Unable to set request method: " + requestMethod, e);
+		}
+	}
+
+	@Override
+	public void setRequestProperty(String key, String value) {
+		urlConnection.setRequestProperty(key, value);
+	}
+
+	@Override
+	public void setOutput(String output) {
+		byte[] outputBytes = output.getBytes(StandardCharsets.UTF_8);
+		urlConnection.setDoOutput(true);
+		urlConnection.setFixedLengthStreamingMode(outputBytes.length);
+		try (OutputStream outputStream = urlConnection.getOutputStream()) {
+			outputStream.write(outputBytes);
+		} catch (IOException e) {
+			throw FedoraException.withMessageAndException("Unable to write to: " + url, e);
+		}
+	}
+
+	@Override
+	public void setStreamOutput(InputStream stream) {
+		urlConnection.setDoOutput(true);
+		urlConnection.setChunkedStreamingMode(0);
+		try (OutputStream outputStream = urlConnection.getOutputStream()) {
+			copyStream(stream, outputStream);
+		} catch (IOException e) {
+			throw FedoraException.withMessageAndException("Unable to write to: " + url, e);
+		}
+	}
+
+	private void copyStream(InputStream from, OutputStream to) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int numberOfReadBytes;
+		while ((numberOfReadBytes = from.read(buffer)) != -1) {
+			to.write(buffer, 0, numberOfReadBytes);
+		}
+	}
+
+	@Override
+	public int getResponseCode() {
+		possiblyReadResponse();
+		return responseCode;
+	}
+
+	@Override
+	public String getResponseText() {
+		possiblyReadResponse();
+		if (responseIsError()) {
+			throw FedoraException.withMessage("Unable to read response from: " + url
+					+ ", with response code: " + responseCode);
+		}
+		return responseText;
+	}
+
+	@Override
+	public String getErrorText() {
+		possiblyReadResponse();
+		return responseIsError() ? responseText : "";
+	}
+
+	private boolean responseIsError() {
+		return responseCode >= HttpURLConnection.HTTP_BAD_REQUEST;
+	}
+
+	private void possiblyReadResponse() {
+		if (responseText == null) {
+			try {
+				readResponse();
+			} catch (IOException e) {
+				throw FedoraException
+						.withMessageAndException("Unable to read response from: " + url, e);
+			}
+		}
+	}
+
+	private void readResponse() throws IOException {
+		responseCode = urlConnection.getResponseCode();
+		try (InputStream responseStream = getInputOrErrorStream()) {
+			responseText = readAsString(responseStream);
+		}
+	}
+
+	private InputStream getInputOrErrorStream() throws IOException {
+		if (responseIsError()) {
+			return urlConnection.getErrorStream();
+		}
+		return urlConnection.getInputStream();
+	}
+
+	private String readAsString(InputStream responseStream) throws IOException {
+		if (responseStream == null) {
+			return "";
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		copyStream(responseStream, bytes);
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String getHeaderField(String name) {
+		return urlConnection.getHeaderField(name);
+	}
+
+	String getURL() {
+		// needed for tests
+		return url;
+	}
+
+	int getConnectTimeout() {
+		// needed for tests
+		return urlConnection.getConnectTimeout();
+	}
+
+	int getReadTimeout() {
+		// needed for tests
+		return urlConnection.getReadTimeout();
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import se.uu.ub.cora.diva.tocorastorage.NotImplementedException;
+import se.uu.ub.cora.httphandler.HttpHandler;
+import se.uu.ub.cora.httphandler.HttpHandlerFactory;
+import se.uu.ub.cora.httphandler.HttpMultiPartUploader;
+
+/**
+ * KeepAliveHttpHandlerFactory factors HttpHandlers that reuse connections to fedora. Every
+ * response, including error responses and responses where only the response code is asked for,
+ * is read to its end and closed, which lets the jdk keep the connection alive and hand it to the
+ * next request to the same host. The number of idle connections kept per host is set by the jdk
+ * system property http.maxConnections.
+ * <p>
+ * Connect and read timeouts are set on each connection, so that a slow or unreachable fedora
+ * fails calls instead of blocking them indefinitely.
+ */
+public final class KeepAliveHttpHandlerFactory implements HttpHandlerFactory {
+	private int connectTimeoutInMillis;
+	private int readTimeoutInMillis;
+
+	public static KeepAliveHttpHandlerFactory usingConnectTimeoutAndReadTimeoutInMillis(
+			int connectTimeoutInMillis, int readTimeoutInMillis) {
+		throwErrorIfNegative("connectTimeoutInMillis", connectTimeoutInMillis);
+		throwErrorIfNegative("readTimeoutInMillis", readTimeoutInMillis);
+		return new KeepAliveHttpHandlerFactory(connectTimeoutInMillis, readTimeoutInMillis);
+	}
+
+	private static void throwErrorIfNegative(String name, int timeout) {
+		if (timeout < 0) {
+			throw new IllegalArgumentException(name + " must not be negative, was: " + timeout);
+		}
+	}
+
+	private KeepAliveHttpHandlerFactory(int connectTimeoutInMillis, int readTimeoutInMillis) {
+		this.connectTimeoutInMillis = connectTimeoutInMillis;
+		this.readTimeoutInMillis = readTimeoutInMillis;
+	}
+
+	@Override
+	public HttpHandler factor(String url) {
+		return KeepAliveHttpHandler.usingURLAndConnectTimeoutAndReadTimeout(url,
+				connectTimeoutInMillis, readTimeoutInMillis);
+	}
+
+	@Override
+	public HttpMultiPartUploader factorHttpMultiPartUploader(String url) {
+		throw NotImplementedException
+				.withMessage("factorHttpMultiPartUploader is not implemented");
+	}
+
+	public int getConnectTimeoutInMillis() {
+		// needed for tests
+		return connectTimeoutInMillis;
+	}
+
+	public int getReadTimeoutInMillis() {
+		// needed for tests
+		return readTimeoutInMillis;
+	}
+
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.util.function.Supplier;
+
+import se.uu.ub.cora.diva.tocorastorage.metrics.Metrics;
+
+public final class NoRetryFedoraRetrier implements FedoraRetrier {
+
+	@Override
+	public <T> T callUsingMetricsAndOperation(Supplier<T> fedoraCall, Metrics metrics,
+			String operation) {
+		return fedoraCall.get();
+	}
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import se.uu.ub.cora.diva.tocorastorage.FedoraException;
+
+/**
+ * ParallelFedoraExecutor runs one call per id with at most maxNumberOfParallelCalls calls in
+ * progress at the same time. Results are returned in the same order as the ids, and calls that
+ * fail are reported per id instead of aborting the remaining calls, so each id may only occur
+ * once. The executor owns a thread pool when more than one parallel call is allowed, and close
+ * must be called when it is no longer used.
+ */
+public final class ParallelFedoraExecutor {
+	private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+	private int maxNumberOfParallelCalls;
+	private ExecutorService executorService;
+	private volatile boolean closed = false;
+
+	public static ParallelFedoraExecutor usingMaxNumberOfParallelCalls(
+			int maxNumberOfParallelCalls) {
+		return new ParallelFedoraExecutor(maxNumberOfParallelCalls);
+	}
+
+	private ParallelFedoraExecutor(int maxNumberOfParallelCalls) {
+		throwErrorIfLessThanOne(maxNumberOfParallelCalls);
+		this.maxNumberOfParallelCalls = maxNumberOfParallelCalls;
+		if (maxNumberOfParallelCalls > 1) {
+			executorService = Executors.newFixedThreadPool(maxNumberOfParallelCalls,
+					createDaemonThreadFactory());
+		}
+	}
+
+	private void throwErrorIfLessThanOne(int maxNumberOfParallelCalls) {
+		if (maxNumberOfParallelCalls < 1) {
+			throw new IllegalArgumentException(
+					"maxNumberOfParallelCalls must be at least 1, was: " + maxNumberOfParallelCalls);
+		}
+	}
+
+	private static ThreadFactory createDaemonThreadFactory() {
+		String namePrefix = "diva-fedora-" + POOL_NUMBER.incrementAndGet() + "-";
+		AtomicInteger threadNumber = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	public <T> ParallelResult<T> executeForAllIds(List<String> ids, Function<String, T> call) {
+		throwErrorIfClosed();
+		throwErrorIfAnyIdIsDuplicated(ids);
+		if (executorService == null) {
+			return executeSequentially(ids, call);
+		}
+		return executeInParallel(ids, call);
+	}
+
+	private void throwErrorIfClosed() {
+		if (closed) {
+			throw FedoraException.withMessage("ParallelFedoraExecutor is closed");
+		}
+	}
+
+	private void throwErrorIfAnyIdIsDuplicated(List<String> ids) {
+		Set<String> uniqueIds = new HashSet<>(ids.size());
+		for (String id : ids) {
+			if (!uniqueIds.add(id)) {
+				throw new IllegalArgumentException("ids must be unique, found duplicate: " + id);
+			}
+		}
+	}
+
+	private <T> ParallelResult<T> executeSequentially(List<String> ids, Function<String, T> call) {
+		ParallelResult<T> result = new ParallelResult<>();
+		for (String id : ids) {
+			executeOneCallAndAddToResult(id, call, result);
+		}
+		return result;
+	}
+
+	private <T> void executeOneCallAndAddToResult(String id, Function<String, T> call,
+			ParallelResult<T> result) {
+		try {
+			result.addResult(call.apply(id));
+		} catch (Exception e) {
+			result.addFailure(id, e);
+		}
+	}
+
+	private <T> ParallelResult<T> executeInParallel(List<String> ids, Function<String, T> call) {
+		List<Future<T>> futures = new ArrayList<>(ids.size());
+		for (String id : ids) {
+			futures.add(executorService.submit(() -> call.apply(id)));
+		}
+		return collectResultsInOrder(ids, futures);
+	}
+
+	private <T> ParallelResult<T> collectResultsInOrder(List<String> ids, List<Future<T>> futures) {
+		ParallelResult<T> result = new ParallelResult<>();
+		for (int i = 0; i < futures.size(); i++) {
+			waitForCallAndAddToResult(ids.get(i), futures, i, result);
+		}
+		return result;
+	}
+
+	private <T> void waitForCallAndAddToResult(String id, List<Future<T>> futures, int index,
+			ParallelResult<T> result) {
+		try {
+			result.addResult(futures.get(index).get());
+		} catch (ExecutionException e) {
+			addCauseAsFailureOrRethrowError(id, e.getCause(), result);
+		} catch (InterruptedException e) {
+			cancelAllFutures(futures);
+			Thread.currentThread().interrupt();
+			throw FedoraException.withMessageAndException(
+					"Interrupted while waiting for parallel calls to fedora", e);
+		}
+	}
+
+	private <T> void addCauseAsFailureOrRethrowError(String id, Throwable cause,
+			ParallelResult<T> result) {
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		result.addFailure(id, (Exception) cause);
+	}
+
+	private <T> void cancelAllFutures(List<Future<T>> futures) {
+		for (Future<T> future : futures) {
+			future.cancel(true);
+		}
+	}
+
+	public int getMaxNumberOfParallelCalls() {
+		return maxNumberOfParallelCalls;
+	}
+
+	/**
+	 * close stops the threads used for parallel calls. Calls in progress are allowed to finish,
+	 * while later calls to executeForAllIds throw a FedoraException.
+	 */
+	public void close() {
+		closed = true;
+		if (executorService != null) {
+			executorService.shutdown();
+		}
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	boolean isTerminated() {
+		// needed for tests
+		return executorService == null || executorService.isTerminated();
+	}
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class ParallelResult<T> {
+	private int numberOfCalls = 0;
+	private List<T> results = new ArrayList<>();
+	private Map<String, Exception> failures = new LinkedHashMap<>();
+
+	void addResult(T result) {
+		numberOfCalls++;
+		results.add(result);
+	}
+
+	void addFailure(String id, Exception exception) {
+		numberOfCalls++;
+		failures.put(id, exception);
+	}
+
+	public List<T> getResults() {
+		return results;
+	}
+
+	public Map<String, Exception> getFailures() {
+		return Collections.unmodifiableMap(failures);
+	}
+
+	public boolean hasFailures() {
+		return !failures.isEmpty();
+	}
+
+	public int getNumberOfCalls() {
+		return numberOfCalls;
+	}
+
+}
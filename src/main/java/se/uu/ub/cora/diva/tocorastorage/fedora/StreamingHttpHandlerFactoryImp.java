@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+public final class StreamingHttpHandlerFactoryImp implements StreamingHttpHandlerFactory {
+	private int connectTimeoutInMillis;
+	private int readTimeoutInMillis;
+
+	public StreamingHttpHandlerFactoryImp() {
+		this(0, 0);
+	}
+
+	/**
+	 * A timeout of zero means that the call waits until the connection is made or the response is
+	 * read, as for HttpURLConnection.
+	 */
+	public StreamingHttpHandlerFactoryImp(int connectTimeoutInMillis, int readTimeoutInMillis) {
+		this.connectTimeoutInMillis = connectTimeoutInMillis;
+		this.readTimeoutInMillis = readTimeoutInMillis;
+	}
+
+	@Override
+	public StreamingHttpHandler factor(String url) {
+		return StreamingHttpHandlerImp.usingURLAndConnectTimeoutAndReadTimeout(url,
+				connectTimeoutInMillis, readTimeoutInMillis);
+	}
+
+	public int getConnectTimeoutInMillis() {
+		// needed for tests
+		return connectTimeoutInMillis;
+	}
+
+	public int getReadTimeoutInMillis() {
+		// needed for tests
+		return readTimeoutInMillis;
+	}
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import se.uu.ub.cora.diva.tocorastorage.FedoraException;
+
+public final class StreamingHttpHandlerImp implements StreamingHttpHandler {
+	private String url;
+	private HttpURLConnection urlConnection;
+
+	public static StreamingHttpHandlerImp usingURL(String url) {
+		return new StreamingHttpHandlerImp(url, 0, 0);
+	}
+
+	public static StreamingHttpHandlerImp usingURLAndConnectTimeoutAndReadTimeout(String url,
+			int connectTimeoutInMillis, int readTimeoutInMillis) {
+		return new StreamingHttpHandlerImp(url, connectTimeoutInMillis, readTimeoutInMillis);
+	}
+
+	private StreamingHttpHandlerImp(String url, int connectTimeoutInMillis,
+			int readTimeoutInMillis) {
+		this.url = url;
+		try {
+			urlConnection = (HttpURLConnection) new URL(url).openConnection();
+		} catch (IOException | ClassCastException e) {
+			throw FedoraException.withMessageAndException("Unable to open connection to: " + url,
+					e);
+		}
+		urlConnection.setConnectTimeout(connectTimeoutInMillis);
+		urlConnection.setReadTimeout(readTimeoutInMillis);
+	}
+
+	@Override
+	public void setRequestMethod(String requestMethod) {
+		try {
+			urlConnection.setRequestMethod(requestMethod);
+		} catch (IOException e) {
+			throw FedoraException.withMessageAndException(
+					"Unable to set request method: " + requestMethod, e);
+		}
+	}
+
+	@Override
+	public void setRequestProperty(String key, String value) {
+		urlConnection.setRequestProperty(key, value);
+	}
+
+	@Override
+	public int getResponseCode() {
+		try {
+			return urlConnection.getResponseCode();
+		} catch (IOException e) {
+			throw FedoraException.withMessageAndException("Unable to read response from: " + url,
+					e);
+		}
+	}
+
+	@Override
+	public FedoraResponseBody getResponseBody() {
+		try {
+			return FedoraResponseBody.usingStream(urlConnection.getInputStream());
+		} catch (IOException e) {
+			closeErrorStream();
+			throw FedoraException.withMessageAndException("Unable to read response from: " + url
+					+ ", with response code: " + getResponseCodeOrMinusOne(), e);
+		}
+	}
+
+	private void closeErrorStream() {
+		InputStream errorStream = urlConnection.getErrorStream();
+		if (errorStream != null) {
+			tryToCloseErrorStream(errorStream);
+		}
+	}
+
+	private void tryToCloseErrorStream(InputStream errorStream) {
+		try {
+			errorStream.close();
+		} catch (IOException e) {
+			// the call has already failed, and a failed close only means the connection is
+			// not reused
+		}
+	}
+
+	private int getResponseCodeOrMinusOne() {
+		try {
+			return urlConnection.getResponseCode();
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	String getURL() {
+		// needed for tests
+		return url;
+	}
+
+	int getConnectTimeout() {
+		// needed for tests
+		return urlConnection.getConnectTimeout();
+	}
+
+	int getReadTimeout() {
+		// needed for tests
+		return urlConnection.getReadTimeout();
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import se.uu.ub.cora.httphandler.HttpHandler;
+import se.uu.ub.cora.httphandler.HttpHandlerFactory;
+
+/**
+ * TextResponseStreamingHttpHandlerFactory makes a StreamingHttpHandler out of the handlers from a
+ * HttpHandlerFactory, by reading the response text and handing it out as a text body. It is used
+ * when no StreamingHttpHandlerFactory is set, so reads work the same way as before, without the
+ * memory savings of a real stream.
+ */
+public final class TextResponseStreamingHttpHandlerFactory implements StreamingHttpHandlerFactory {
+	private HttpHandlerFactory httpHandlerFactory;
+
+	public static TextResponseStreamingHttpHandlerFactory usingHttpHandlerFactory(
+			HttpHandlerFactory httpHandlerFactory) {
+		return new TextResponseStreamingHttpHandlerFactory(httpHandlerFactory);
+	}
+
+	private TextResponseStreamingHttpHandlerFactory(HttpHandlerFactory httpHandlerFactory) {
+		this.httpHandlerFactory = httpHandlerFactory;
+	}
+
+	@Override
+	public StreamingHttpHandler factor(String url) {
+		return new TextResponseStreamingHttpHandler(httpHandlerFactory.factor(url));
+	}
+
+	public HttpHandlerFactory getHttpHandlerFactory() {
+		// needed for tests
+		return httpHandlerFactory;
+	}
+
+	private static final class TextResponseStreamingHttpHandler implements StreamingHttpHandler {
+		private HttpHandler httpHandler;
+
+		private TextResponseStreamingHttpHandler(HttpHandler httpHandler) {
+			this.httpHandler = httpHandler;
+		}
+
+		@Override
+		public void setRequestMethod(String requestMethod) {
+			httpHandler.setRequestMethod(requestMethod);
+		}
+
+		@Override
+		public void setRequestProperty(String key, String value) {
+			httpHandler.setRequestProperty(key, value);
+		}
+
+		@Override
+		public int getResponseCode() {
+			return httpHandler.getResponseCode();
+		}
+
+		@Override
+		public FedoraResponseBody getResponseBody() {
+			return FedoraResponseBody.usingText(httpHandler.getResponseText());
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import se.uu.ub.cora.diva.tocorastorage.ParseException;
+
+final class XMLStreamReaderFactory {
+	private static final String MESSAGE_AFTER_LOCATION = "Message: ";
+	private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY = ThreadLocal
+			.withInitial(XMLStreamReaderFactory::createInputFactory);
+
+	private XMLStreamReaderFactory() {
+	}
+
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+		inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		return inputFactory;
+	}
+
+	static XMLStreamReader forXML(String xml) throws XMLStreamException {
+		return forReader(new StringReader(xml));
+	}
+
+	static XMLStreamReader forReader(Reader xml) throws XMLStreamException {
+		return INPUT_FACTORY.get().createXMLStreamReader(xml);
+	}
+
+	static XMLStreamReader forInputStream(InputStream xml) throws XMLStreamException {
+		return INPUT_FACTORY.get().createXMLStreamReader(xml);
+	}
+
+	static String removePrefix(String name) {
+		return name.substring(name.indexOf(':') + 1);
+	}
+
+	static String getMessageWithoutLocation(XMLStreamException exception) {
+		String message = exception.getMessage();
+		int startOfMessage = message.indexOf(MESSAGE_AFTER_LOCATION);
+		if (startOfMessage == -1) {
+			return message;
+		}
+		return message.substring(startOfMessage + MESSAGE_AFTER_LOCATION.length());
+	}
+
+	static ParseException createDoctypeNotAllowedException() {
+		return ParseException.withMessage("DOCTYPE is not allowed in xml");
+	}
+
+}
@@ -1,8 +1,11 @@
 package se.uu.ub.cora.diva.tocorastorage.fedora;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
@@ -10,6 +13,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
@@ -28,35 +32,100 @@ import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 import se.uu.ub.cora.diva.tocorastorage.ParseException;
+import se.uu.ub.cora.diva.tocorastorage.metrics.Metrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.MetricsTimer;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
 
 public final class XMLXPathParser {
 	private static final String XPATH_STRING_ERROR_MESSAGE = "Unable to use xpathString: ";
+	private static final int MAX_NUMBER_OF_COMPILED_EXPRESSIONS_PER_THREAD = 256;
+	private static final ThreadLocal<CompiledExpressions> COMPILED_EXPRESSIONS = ThreadLocal
+			.withInitial(CompiledExpressions::new);
+	private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = new ThreadLocal<>();
+	private static final ThreadLocal<Transformer> TRANSFORMER = new ThreadLocal<>();
+	private static final ThreadLocal<XPath> XPATH = ThreadLocal
+			.withInitial(() -> XPathFactory.newInstance().newXPath());
+	private static final Metrics NO_OP_METRICS = new NoOpMetrics();
+	private Metrics metrics;
 	private Document document;
-	private XPath xpath;
 
-	private XMLXPathParser(String xml)
+	private XMLXPathParser(InputSource xml, Metrics metrics)
 			throws ParserConfigurationException, SAXException, IOException {
-		document = createDocumentFromXML(xml);
-		setupXPath();
+		this.metrics = metrics;
+		MetricsTimer timer = metrics.startTimer("xml.parse");
+		try {
+			document = createDocumentFromInputSource(xml);
+		} finally {
+			timer.stop();
+		}
 	}
 
 	public static XMLXPathParser forXML(String xml) {
+		return forXMLUsingMetrics(xml, NO_OP_METRICS);
+	}
+
+	public static XMLXPathParser forXMLUsingMetrics(String xml, Metrics metrics) {
+		return forInputSourceUsingMetrics(new InputSource(new StringReader(xml)), metrics);
+	}
+
+	/**
+	 * forXML parses the xml directly from the stream, using the encoding given in the xml.
+	 * Closing the stream is left to the caller.
+	 */
+	public static XMLXPathParser forXML(InputStream xml) {
+		return forXMLUsingMetrics(xml, NO_OP_METRICS);
+	}
+
+	public static XMLXPathParser forXMLUsingMetrics(InputStream xml, Metrics metrics) {
+		return forInputSourceUsingMetrics(new InputSource(xml), metrics);
+	}
+
+	static XMLXPathParser forInputSourceUsingMetrics(InputSource xml, Metrics metrics) {
 		try {
-			return new XMLXPathParser(xml);
+			return new XMLXPathParser(xml, metrics);
 		} catch (Exception e) {
 			throw ParseException.withMessageAndException("Can not read xml: " + e.getMessage(), e);
 		}
 	}
 
-	private void setupXPath() {
-		XPathFactory xpathFactory = XPathFactory.newInstance();
-		xpath = xpathFactory.newXPath();
+	/**
+	 * removeCachedObjectsForCurrentThread removes the document builder, transformer, xpath and
+	 * compiled expressions kept for the current thread. It should be called by threads that are
+	 * reused by a container, before the application is undeployed.
+	 */
+	public static void removeCachedObjectsForCurrentThread() {
+		COMPILED_EXPRESSIONS.remove();
+		DOCUMENT_BUILDER.remove();
+		TRANSFORMER.remove();
+		XPATH.remove();
 	}
 
 	public Document createDocumentFromXML(String xml)
 			throws ParserConfigurationException, SAXException, IOException {
-		DocumentBuilder dBuilder = createDocumentBuilder();
-		return readXMLUsingBuilderAndXML(dBuilder, xml);
+		return createDocumentFromInputSource(new InputSource(new StringReader(xml)));
+	}
+
+	private Document createDocumentFromInputSource(InputSource xml)
+			throws ParserConfigurationException, SAXException, IOException {
+		DocumentBuilder dBuilder = getDocumentBuilderForCurrentThread();
+		return readXMLUsingBuilderAndInputSource(dBuilder, xml);
+	}
+
+	private DocumentBuilder getDocumentBuilderForCurrentThread()
+			throws ParserConfigurationException {
+		DocumentBuilder dBuilder = DOCUMENT_BUILDER.get();
+		if (dBuilder == null) {
+			dBuilder = createDocumentBuilder();
+			DOCUMENT_BUILDER.set(dBuilder);
+		} else {
+			resetDocumentBuilder(dBuilder);
+		}
+		return dBuilder;
+	}
+
+	private void resetDocumentBuilder(DocumentBuilder dBuilder) {
+		dBuilder.reset();
+		setErrorHandlerWithoutSystemOutPrinting(dBuilder);
 	}
 
 	private DocumentBuilder createDocumentBuilder() throws ParserConfigurationException {
@@ -64,24 +133,35 @@ public final class XMLXPathParser {
 		dbFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
 		dbFactory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
 		DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
+		setErrorHandlerWithoutSystemOutPrinting(dBuilder);
+		return dBuilder;
+	}
+
+	private void setErrorHandlerWithoutSystemOutPrinting(DocumentBuilder dBuilder) {
 		ErrorHandler errorHandlerWithoutSystemOutPrinting = new DefaultHandler();
 		dBuilder.setErrorHandler(errorHandlerWithoutSystemOutPrinting);
-		return dBuilder;
 	}
 
-	private Document readXMLUsingBuilderAndXML(DocumentBuilder dBuilder, String xml)
+	private Document readXMLUsingBuilderAndInputSource(DocumentBuilder dBuilder, InputSource in)
 			throws SAXException, IOException {
-		StringReader reader = new StringReader(xml);
-		InputSource in = new InputSource(reader);
 		Document doc = dBuilder.parse(in);
 		doc.getDocumentElement().normalize();
 		return doc;
 	}
 
+	XPathExpression compileUsingCache(String xpathString) throws XPathExpressionException {
+		CompiledExpressions compiledExpressions = COMPILED_EXPRESSIONS.get();
+		XPathExpression expr = compiledExpressions.get(xpathString);
+		if (expr == null) {
+			expr = XPATH.get().compile(xpathString);
+			compiledExpressions.put(xpathString, expr);
+		}
+		return expr;
+	}
+
 	public String getStringFromDocumentUsingXPath(String xpathString) {
 		try {
-			XPathExpression expr;
-			expr = xpath.compile(xpathString);
+			XPathExpression expr = compileUsingCache(xpathString);
 			return (String) expr.evaluate(document, XPathConstants.STRING);
 		} catch (XPathExpressionException e) {
 			throw ParseException
@@ -92,8 +172,7 @@ public final class XMLXPathParser {
 
 	public String getStringFromDocumentUsingNodeAndXPath(Node node, String xpathString) {
 		try {
-			XPathExpression expr;
-			expr = xpath.compile(xpathString);
+			XPathExpression expr = compileUsingCache(xpathString);
 			return (String) expr.evaluate(node, XPathConstants.STRING);
 		} catch (XPathExpressionException e) {
 			throw ParseException
@@ -104,7 +183,7 @@ public final class XMLXPathParser {
 
 	public NodeList getNodeListFromDocumentUsingXPath(String xpathString) {
 		try {
-			XPathExpression expr = xpath.compile(xpathString);
+			XPathExpression expr = compileUsingCache(xpathString);
 			return (NodeList) expr.evaluate(document, XPathConstants.NODESET);
 		} catch (XPathExpressionException e) {
 			throw ParseException
@@ -114,7 +193,7 @@ public final class XMLXPathParser {
 
 	public void setStringInDocumentUsingXPath(String xpathString, String newValue) {
 		try {
-			XPathExpression expr = xpath.compile(xpathString);
+			XPathExpression expr = compileUsingCache(xpathString);
 			Node nodeToSet = (Node) expr.evaluate(document, XPathConstants.NODE);
 			nodeToSet.setTextContent(newValue);
 		} catch (XPathExpressionException e) {
@@ -122,24 +201,53 @@ public final class XMLXPathParser {
 		}
 	}
 
+	private static Transformer getTransformerForCurrentThread()
+			throws TransformerConfigurationException {
+		Transformer transformer = TRANSFORMER.get();
+		if (transformer == null) {
+			transformer = createTransformer();
+			TRANSFORMER.set(transformer);
+		}
+		return transformer;
+	}
+
+	private static Transformer createTransformer() throws TransformerConfigurationException {
+		TransformerFactory tf = TransformerFactory.newInstance();
+		tf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+		Transformer transformer = tf.newTransformer();
+		transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+		transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+		transformer.setOutputProperty(OutputKeys.INDENT, "no");
+		transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+		return transformer;
+	}
+
 	public String getDocumentAsString(String xpathString) {
+		MetricsTimer timer = metrics.startTimer("xml.serialize");
 		try {
-			XPathExpression expr = xpath.compile(xpathString);
+			XPathExpression expr = compileUsingCache(xpathString);
 			Node nodeToExport = (Node) expr.evaluate(document, XPathConstants.NODE);
 			StringWriter sw = new StringWriter();
-			TransformerFactory tf = TransformerFactory.newInstance();
-			tf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-			Transformer transformer = tf.newTransformer();
-			transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-			transformer.setOutputProperty(OutputKeys.METHOD, "xml");
-			transformer.setOutputProperty(OutputKeys.INDENT, "no");
-			transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-
+			Transformer transformer = getTransformerForCurrentThread();
 			transformer.transform(new DOMSource(nodeToExport), new StreamResult(sw));
 			return sw.toString();
 		} catch (Exception e) {
 			throw new RuntimeException("Error converting node to String", e);
+		} finally {
+			timer.stop();
 		}
 	}
 
+	private static final class CompiledExpressions extends LinkedHashMap<String, XPathExpression> {
+		private static final long serialVersionUID = 1L;
+
+		CompiledExpressions() {
+			super(16, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, XPathExpression> eldest) {
+			return size() > MAX_NUMBER_OF_COMPILED_EXPRESSIONS_PER_THREAD;
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * InMemoryMetrics keeps all timers and counters in memory. Timed durations are kept in a
+ * histogram per timer name, see {@link TimerStatistics}.
+ */
+public final class InMemoryMetrics implements Metrics {
+	static final LongSupplier SYSTEM_NANO_TIME = System::nanoTime;
+	private final LongSupplier nanoTime;
+	private final Map<String, TimerHistogram> timers = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+	public static InMemoryMetrics usingSystemNanoTime() {
+		return new InMemoryMetrics(SYSTEM_NANO_TIME);
+	}
+
+	public static InMemoryMetrics usingNanoTimeSupplier(LongSupplier nanoTime) {
+		return new InMemoryMetrics(nanoTime);
+	}
+
+	private InMemoryMetrics(LongSupplier nanoTime) {
+		this.nanoTime = nanoTime;
+	}
+
+	@Override
+	public MetricsTimer startTimer(String name) {
+		long startTime = nanoTime.getAsLong();
+		return () -> recordTimeInNanos(name, nanoTime.getAsLong() - startTime);
+	}
+
+	private void recordTimeInNanos(String name, long durationInNanos) {
+		timers.computeIfAbsent(name, key -> new TimerHistogram()).record(durationInNanos);
+	}
+
+	@Override
+	public void incrementCounter(String name) {
+		counters.computeIfAbsent(name, key -> new LongAdder()).increment();
+	}
+
+	public TimerStatistics getTimerStatistics(String name) {
+		TimerHistogram histogram = timers.get(name);
+		if (histogram == null) {
+			return TimerStatistics.EMPTY;
+		}
+		return histogram.getStatistics();
+	}
+
+	public long getCount(String name) {
+		LongAdder counter = counters.get(name);
+		return counter == null ? 0 : counter.sum();
+	}
+
+	public Set<String> getTimerNames() {
+		return Collections.unmodifiableSet(new TreeSet<>(timers.keySet()));
+	}
+
+	public Set<String> getCounterNames() {
+		return Collections.unmodifiableSet(new TreeSet<>(counters.keySet()));
+	}
+
+	public void reset() {
+		timers.clear();
+		counters.clear();
+	}
+
+	LongSupplier getNanoTimeSupplier() {
+		// needed for tests
+		return nanoTime;
+	}
+
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.metrics;
+
+/**
+ * Metrics records timers and counters for calls to fedora and the database, xml parsing and
+ * conversion. Implementations must be thread safe as the storages and converters are used from
+ * many threads.
+ */
+public interface Metrics {
+
+	MetricsTimer startTimer(String name);
+
+	void incrementCounter(String name);
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.metrics;
+
+/**
+ * TimerHistogram counts durations in buckets where bucket n holds durations from 2^(n-1) up to
+ * 2^n - 1 nanoseconds, which keeps the memory used constant regardless of the number of recorded
+ * durations.
+ */
+final class TimerHistogram {
+	static final int NUMBER_OF_BUCKETS = 64;
+	private final long[] bucketCounts = new long[NUMBER_OF_BUCKETS];
+	private long count;
+	private long totalInNanos;
+	private long minInNanos = Long.MAX_VALUE;
+	private long maxInNanos;
+
+	synchronized void record(long durationInNanos) {
+		long duration = Math.max(0, durationInNanos);
+		bucketCounts[getBucketForDuration(duration)]++;
+		count++;
+		totalInNanos += duration;
+		minInNanos = Math.min(minInNanos, duration);
+		maxInNanos = Math.max(maxInNanos, duration);
+	}
+
+	static int getBucketForDuration(long durationInNanos) {
+		return Math.min(NUMBER_OF_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(durationInNanos));
+	}
+
+	static long getUpperBoundForBucket(int bucket) {
+		if (bucket >= NUMBER_OF_BUCKETS - 1) {
+			return Long.MAX_VALUE;
+		}
+		return (1L << bucket) - 1;
+	}
+
+	synchronized TimerStatistics getStatistics() {
+		return new TimerStatistics(count, totalInNanos, count == 0 ? 0 : minInNanos, maxInNanos,
+				bucketCounts.clone());
+	}
+
+}
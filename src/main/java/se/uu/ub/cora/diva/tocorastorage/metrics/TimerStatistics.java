@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.metrics;
+
+public final class TimerStatistics {
+	static final TimerStatistics EMPTY = new TimerStatistics(0, 0, 0, 0,
+			new long[TimerHistogram.NUMBER_OF_BUCKETS]);
+	private long count;
+	private long totalInNanos;
+	private long minInNanos;
+	private long maxInNanos;
+	private long[] bucketCounts;
+
+	TimerStatistics(long count, long totalInNanos, long minInNanos, long maxInNanos,
+			long[] bucketCounts) {
+		this.count = count;
+		this.totalInNanos = totalInNanos;
+		this.minInNanos = minInNanos;
+		this.maxInNanos = maxInNanos;
+		this.bucketCounts = bucketCounts;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getTotalInNanos() {
+		return totalInNanos;
+	}
+
+	public long getMinInNanos() {
+		return minInNanos;
+	}
+
+	public long getMaxInNanos() {
+		return maxInNanos;
+	}
+
+	public double getMeanInNanos() {
+		return count == 0 ? 0 : (double) totalInNanos / count;
+	}
+
+	/**
+	 * getPercentileInNanos returns an upper bound for the given percentile (0-100) of the recorded
+	 * durations. The bound is the upper limit of the histogram bucket the percentile falls in, but
+	 * never more than the longest recorded duration.
+	 */
+	public long getPercentileInNanos(double percentile) {
+		throwErrorIfPercentileIsOutOfRange(percentile);
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		return Math.min(maxInNanos, getUpperBoundOfBucketHoldingRank(rank));
+	}
+
+	private void throwErrorIfPercentileIsOutOfRange(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException(
+					"percentile must be between 0 and 100, was: " + percentile);
+		}
+	}
+
+	private long getUpperBoundOfBucketHoldingRank(long rank) {
+		long countUpToBucket = 0;
+		for (int bucket = 0; bucket < bucketCounts.length; bucket++) {
+			countUpToBucket += bucketCounts[bucket];
+			if (countUpToBucket >= rank) {
+				return TimerHistogram.getUpperBoundForBucket(bucket);
+			}
+		}
+		return maxInNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "TimerStatistics [count=" + count + ", totalInNanos=" + totalInNanos
+				+ ", minInNanos=" + minInNanos + ", maxInNanos=" + maxInNanos + "]";
+	}
+
+}
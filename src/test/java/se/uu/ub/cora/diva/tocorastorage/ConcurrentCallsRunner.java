@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+public final class ConcurrentCallsRunner {
+
+	private ConcurrentCallsRunner() {
+	}
+
+	/**
+	 * Runs numberOfCalls calls spread over numberOfThreads threads that are all started at the same
+	 * time, and returns the results ordered by call number.
+	 */
+	public static <T> List<T> runCallsConcurrently(int numberOfThreads, int numberOfCalls,
+			IntFunction<T> call) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+		try {
+			CountDownLatch startSignal = new CountDownLatch(1);
+			List<Future<T>> futures = new ArrayList<>();
+			for (int i = 0; i < numberOfCalls; i++) {
+				int callNumber = i;
+				futures.add(executor.submit(() -> {
+					startSignal.await();
+					return call.apply(callNumber);
+				}));
+			}
+			startSignal.countDown();
+			return collectResults(futures);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static <T> List<T> collectResults(List<Future<T>> futures) throws Exception {
+		List<T> results = new ArrayList<>();
+		for (Future<T> future : futures) {
+			results.add(future.get());
+		}
+		return results;
+	}
+}
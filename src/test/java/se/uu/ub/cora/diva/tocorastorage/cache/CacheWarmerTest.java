@@ -0,0 +1,424 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+
+public class CacheWarmerTest {
+	private ClockSpy clock;
+	private List<Long> sleeps;
+	private List<String> readIds;
+	private List<Runnable> queuedTasks;
+	private CacheWarmer cacheWarmer;
+	private RecordCache cache;
+
+	@BeforeMethod
+	public void setUp() {
+		clock = new ClockSpy();
+		sleeps = new ArrayList<>();
+		readIds = Collections.synchronizedList(new ArrayList<>());
+		queuedTasks = new ArrayList<>();
+		cacheWarmer = createCacheWarmerUsingMaxNumberOfParallelReadsAndMaxReadsPerSecond(1, 1000);
+		cache = RecordCacheImp.usingMaxSizeAndTimeToLiveInMillis(100, 60000);
+	}
+
+	private CacheWarmer createCacheWarmerUsingMaxNumberOfParallelReadsAndMaxReadsPerSecond(
+			int maxNumberOfParallelReads, int maxReadsPerSecond) {
+		return CacheWarmer.usingMaxNumberOfParallelReadsAndMaxReadsPerSecondAndClockAndSleeper(
+				maxNumberOfParallelReads, maxReadsPerSecond, clock, delayInMillis -> {
+					sleeps.add(delayInMillis);
+					clock.millis += delayInMillis;
+				});
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "maxNumberOfParallelReads must be at least 1, was: 0")
+	public void testMaxNumberOfParallelReadsMustBeAtLeastOne() throws Exception {
+		CacheWarmer.usingMaxNumberOfParallelReadsAndMaxReadsPerSecond(0, 10);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "maxReadsPerSecond must be at least 1, was: 0")
+	public void testMaxReadsPerSecondMustBeAtLeastOne() throws Exception {
+		CacheWarmer.usingMaxNumberOfParallelReadsAndMaxReadsPerSecond(10, 0);
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		CacheWarmer defaultCacheWarmer = CacheWarmer
+				.usingMaxNumberOfParallelReadsAndMaxReadsPerSecond(4, 50);
+
+		assertEquals(defaultCacheWarmer.getMaxNumberOfParallelReads(), 4);
+		assertEquals(defaultCacheWarmer.getMaxReadsPerSecond(), 50);
+		assertFalse(defaultCacheWarmer.isReady());
+	}
+
+	@Test
+	public void testWarmUpIsStartedUsingExecutorAndIsReadyWhenDone() throws Exception {
+		cacheWarmer.addRecordsToWarmUp("person", () -> idsIterator("p1", "p2"), readIds::add, cache);
+
+		CompletableFuture<CacheWarmUpResult> readiness = cacheWarmer
+				.startUsingExecutor(queuedTasks::add);
+
+		assertEquals(queuedTasks.size(), 1);
+		assertFalse(cacheWarmer.isReady());
+		assertEquals(readIds.size(), 0);
+
+		queuedTasks.get(0).run();
+
+		assertTrue(cacheWarmer.isReady());
+		assertSame(cacheWarmer.getReadiness(), readiness);
+		assertEquals(readIds, Arrays.asList("p1", "p2"));
+		assertEquals(readiness.get().getNumberOfReadRecords(), 2);
+		assertFalse(readiness.get().hasFailures());
+	}
+
+	private Iterator<String> idsIterator(String... ids) {
+		return Arrays.asList(ids).iterator();
+	}
+
+	@Test
+	public void testWarmUpIsOnlyStartedOnce() throws Exception {
+		cacheWarmer.addRecordsToWarmUp("person", () -> idsIterator("p1"), readIds::add, cache);
+
+		CompletableFuture<CacheWarmUpResult> readiness = cacheWarmer
+				.startUsingExecutor(queuedTasks::add);
+		CompletableFuture<CacheWarmUpResult> readiness2 = cacheWarmer
+				.startUsingExecutor(queuedTasks::add);
+
+		assertEquals(queuedTasks.size(), 1);
+		assertSame(readiness2, readiness);
+	}
+
+	@Test
+	public void testWarmUpWithoutRecordsIsReadyAtOnce() throws Exception {
+		CacheWarmUpResult result = cacheWarmer.startUsingExecutor(Runnable::run).get();
+
+		assertTrue(cacheWarmer.isReady());
+		assertEquals(result.getNumberOfReadRecords(), 0);
+	}
+
+	@Test
+	public void testTypesAreWarmedUpInOrderAdded() throws Exception {
+		List<String> listedTypes = new ArrayList<>();
+		cacheWarmer.addRecordsToWarmUp("person", () -> {
+			listedTypes.add("person");
+			return idsIterator("p1", "p2");
+		}, readIds::add, cache);
+		cacheWarmer.addRecordsToWarmUp("divaOrganisation", () -> {
+			listedTypes.add("divaOrganisation");
+			return idsIterator("o1");
+		}, readIds::add, cache);
+
+		assertEquals(listedTypes.size(), 0);
+		cacheWarmer.startUsingExecutor(Runnable::run);
+
+		assertEquals(listedTypes, Arrays.asList("person", "divaOrganisation"));
+		assertEquals(readIds, Arrays.asList("p1", "p2", "o1"));
+		assertEquals(cacheWarmer.getNumberOfReadRecords(), 3);
+	}
+
+	@Test
+	public void testReadsAreLimitedToMaxReadsPerSecond() throws Exception {
+		cacheWarmer = createCacheWarmerUsingMaxNumberOfParallelReadsAndMaxReadsPerSecond(1, 4);
+		List<Long> readTimes = new ArrayList<>();
+		cacheWarmer.addRecordsToWarmUp("person", () -> idsIterator("p1", "p2", "p3"),
+				id -> readTimes.add(clock.millis), cache);
+
+		cacheWarmer.startUsingExecutor(Runnable::run);
+
+		assertEquals(readTimes, Arrays.asList(1000L, 1250L, 1500L));
+		assertEquals(sleeps, Arrays.asList(250L, 250L));
+	}
+
+	@Test
+	public void testTimeSpentReadingCountsTowardsNextRead() throws Exception {
+		cacheWarmer = createCacheWarmerUsingMaxNumberOfParallelReadsAndMaxReadsPerSecond(1, 4);
+		cacheWarmer.addRecordsToWarmUp("person", () -> idsIterator("p1", "p2", "p3"),
+				id -> clock.millis += 400, cache);
+
+		CacheWarmUpResult result = cacheWarmer.startUsingExecutor(Runnable::run).get();
+
+		assertEquals(sleeps.size(), 0);
+		assertEquals(result.getDurationInMillis(), 1200);
+	}
+
+	@Test
+	public void testFailedReadsAreCountedAndDoNotStopWarmUp() throws Exception {
+		cacheWarmer.addRecordsToWarmUp("person", () -> idsIterator("p1", "broken", "p3"), id -> {
+			if ("broken".equals(id)) {
+				throw new RuntimeException("Error reading " + id);
+			}
+			readIds.add(id);
+		}, cache);
+
+		CacheWarmUpResult result = cacheWarmer.startUsingExecutor(Runnable::run).get();
+
+		assertEquals(readIds, Arrays.asList("p1", "p3"));
+		assertEquals(result.getNumberOfReadRecords(), 2);
+		assertEquals(result.getNumberOfFailedReads(), 1);
+		assertTrue(result.hasFailures());
+		assertTrue(cacheWarmer.isReady());
+	}
+
+	@Test
+	public void testFailedListingOfIdsSkipsOnlyThatType() throws Exception {
+		cacheWarmer.addRecordsToWarmUp("person", () -> {
+			throw new RuntimeException("fedora is down");
+		}, readIds::add, cache);
+		cacheWarmer.addRecordsToWarmUp("divaOrganisation", () -> idsIterator("o1"),
+				readIds::add, cache);
+
+		CacheWarmUpResult result = cacheWarmer.startUsingExecutor(Runnable::run).get();
+
+		assertEquals(readIds, Arrays.asList("o1"));
+		assertEquals(result.getFailedTypes(), Arrays.asList("person"));
+		assertTrue(result.hasFailures());
+	}
+
+	@Test
+	public void testFailureWhileIteratingIdsStopsThatType() throws Exception {
+		Iterator<String> failingIds = new Iterator<String>() {
+			private int position = 0;
+
+			@Override
+			public boolean hasNext() {
+				if (position == 2) {
+					throw new RuntimeException("next page could not be read");
+				}
+				return true;
+			}
+
+			@Override
+			public String next() {
+				position++;
+				return "p" + position;
+			}
+		};
+		cacheWarmer.addRecordsToWarmUp("person", () -> failingIds, readIds::add, cache);
+
+		CacheWarmUpResult result = cacheWarmer.startUsingExecutor(Runnable::run).get();
+
+		assertEquals(readIds, Arrays.asList("p1", "p2"));
+		assertEquals(result.getFailedTypes(), Arrays.asList("person"));
+	}
+
+	@Test
+	public void testCloseableIdsAreClosedWhenTypeIsWarmedUp() throws Exception {
+		CloseableIdsSpy ids = new CloseableIdsSpy("p1", "p2");
+		cacheWarmer.addRecordsToWarmUp("person", () -> ids, id -> {
+			assertFalse(ids.closed);
+			readIds.add(id);
+		}, cache);
+
+		cacheWarmer.startUsingExecutor(Runnable::run).get();
+
+		assertEquals(readIds, Arrays.asList("p1", "p2"));
+		assertTrue(ids.closed);
+	}
+
+	@Test
+	public void testCloseableIdsAreClosedWhenInterrupted() throws Exception {
+		CloseableIdsSpy ids = new CloseableIdsSpy("p1", "p2");
+		cacheWarmer.addRecordsToWarmUp("person", () -> ids, id -> {
+			readIds.add(id);
+			Thread.currentThread().interrupt();
+		}, cache);
+
+		cacheWarmer.startUsingExecutor(Runnable::run);
+		Thread.interrupted();
+
+		assertEquals(readIds, Arrays.asList("p1"));
+		assertTrue(ids.closed);
+	}
+
+	private static final class CloseableIdsSpy implements Iterator<String>, AutoCloseable {
+		private Iterator<String> ids;
+		private boolean closed = false;
+
+		private CloseableIdsSpy(String... ids) {
+			this.ids = Arrays.asList(ids).iterator();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return ids.hasNext();
+		}
+
+		@Override
+		public String next() {
+			return ids.next();
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	@Test
+	public void testReadsAreRunInParallel() throws Exception {
+		cacheWarmer = createCacheWarmerUsingMaxNumberOfParallelReadsAndMaxReadsPerSecond(3, 1000);
+		CountDownLatch allStarted = new CountDownLatch(3);
+		List<Boolean> allStartedForIds = Collections.synchronizedList(new ArrayList<>());
+		cacheWarmer.addRecordsToWarmUp("person", () -> idsIterator("p1", "p2", "p3"), id -> {
+			allStarted.countDown();
+			allStartedForIds.add(awaitLatch(allStarted));
+		}, cache);
+
+		CacheWarmUpResult result = cacheWarmer.startUsingExecutor(Runnable::run).get();
+
+		assertEquals(allStartedForIds, Arrays.asList(true, true, true));
+		assertEquals(result.getNumberOfReadRecords(), 3);
+	}
+
+	private boolean awaitLatch(CountDownLatch latch) {
+		try {
+			return latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	@Test
+	public void testNumberOfParallelReadsIsLimited() throws Exception {
+		cacheWarmer = createCacheWarmerUsingMaxNumberOfParallelReadsAndMaxReadsPerSecond(2, 1000);
+		AtomicInteger ongoingReads = new AtomicInteger();
+		List<Integer> ongoingReadsAtStart = Collections.synchronizedList(new ArrayList<>());
+		cacheWarmer.addRecordsToWarmUp("person",
+				() -> Collections.nCopies(10, "someId").iterator(), id -> {
+					ongoingReadsAtStart.add(ongoingReads.incrementAndGet());
+					sleepShortly();
+					ongoingReads.decrementAndGet();
+				}, cache);
+
+		CacheWarmUpResult result = cacheWarmer.startUsingExecutor(Runnable::run).get();
+
+		assertEquals(ongoingReadsAtStart.size(), 10);
+		assertTrue(Collections.max(ongoingReadsAtStart) <= 2);
+		assertEquals(result.getNumberOfReadRecords(), 10);
+	}
+
+	private void sleepShortly() {
+		try {
+			Thread.sleep(10);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	public void testStartInBackgroundRunsInOtherThread() throws Exception {
+		List<Thread> usedThreads = Collections.synchronizedList(new ArrayList<>());
+		cacheWarmer.addRecordsToWarmUp("person", () -> idsIterator("p1"),
+				id -> usedThreads.add(Thread.currentThread()), cache);
+
+		CacheWarmUpResult result = cacheWarmer.startInBackground().get(5, TimeUnit.SECONDS);
+
+		assertEquals(result.getNumberOfReadRecords(), 1);
+		assertTrue(usedThreads.get(0).isDaemon());
+		assertTrue(usedThreads.get(0).getName().startsWith("diva-cache-warm-up-"));
+	}
+
+	@Test
+	public void testInterruptedWarmUpStopsReading() throws Exception {
+		cacheWarmer.addRecordsToWarmUp("person", () -> idsIterator("p1", "p2", "p3"), id -> {
+			readIds.add(id);
+			Thread.currentThread().interrupt();
+		}, cache);
+
+		CacheWarmUpResult result;
+		try {
+			result = cacheWarmer.startUsingExecutor(Runnable::run).get();
+		} finally {
+			Thread.interrupted();
+		}
+
+		assertEquals(readIds, Arrays.asList("p1"));
+		assertEquals(result.getNumberOfReadRecords(), 1);
+	}
+
+	@Test
+	public void testNoMoreIdsThanCacheHoldsAreRead() throws Exception {
+		cache = RecordCacheImp.usingMaxSizeAndTimeToLiveInMillis(2, 60000);
+		cacheWarmer.addRecordsToWarmUp("person", () -> idsIterator("p1", "p2", "p3"),
+				readIds::add, cache);
+
+		CacheWarmUpResult result = cacheWarmer.startUsingExecutor(Runnable::run).get();
+
+		assertEquals(readIds, Arrays.asList("p1", "p2"));
+		assertEquals(result.getNumberOfReadRecords(), 2);
+	}
+
+	@Test
+	public void testWarmUpOfTypeStopsWhenCacheIsFull() throws Exception {
+		cache = RecordCacheImp.usingMaxSizeAndTimeToLiveInMillis(3, 60000);
+		cache.read("alreadyCached", id -> DataGroup.withNameInData(id));
+		CloseableIdsSpy ids = new CloseableIdsSpy("p1", "p2", "p3");
+		cacheWarmer.addRecordsToWarmUp("person", () -> ids, this::readIntoCache, cache);
+		cacheWarmer.addRecordsToWarmUp("divaOrganisation", () -> idsIterator("o1"),
+				readIds::add, cache);
+
+		CacheWarmUpResult result = cacheWarmer.startUsingExecutor(Runnable::run).get();
+
+		assertEquals(readIds, Arrays.asList("p1", "p2"));
+		assertEquals(result.getNumberOfReadRecords(), 2);
+		assertEquals(cache.getStatistics().getSize(), 3);
+		assertTrue(ids.closed);
+	}
+
+	private void readIntoCache(String id) {
+		readIds.add(id);
+		cache.read(id, DataGroup::withNameInData);
+	}
+
+	@Test
+	public void testNothingIsListedForCacheThatKeepsNothing() throws Exception {
+		AtomicInteger numberOfListings = new AtomicInteger();
+		cacheWarmer.addRecordsToWarmUp("person", () -> {
+			numberOfListings.incrementAndGet();
+			return idsIterator("p1");
+		}, readIds::add, new PassThroughRecordCache());
+
+		CacheWarmUpResult result = cacheWarmer.startUsingExecutor(Runnable::run).get();
+
+		assertEquals(numberOfListings.get(), 0);
+		assertEquals(result.getNumberOfReadRecords(), 0);
+		assertTrue(cacheWarmer.isReady());
+	}
+}
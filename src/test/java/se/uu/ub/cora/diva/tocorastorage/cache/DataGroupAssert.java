@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+
+import se.uu.ub.cora.bookkeeper.data.DataAtomic;
+import se.uu.ub.cora.bookkeeper.data.DataElement;
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+
+public final class DataGroupAssert {
+
+	private DataGroupAssert() {
+	}
+
+	public static void assertIsCopyOf(DataGroup actual, DataGroup expected) {
+		assertNotSame(actual, expected);
+		assertSameContent(actual, expected);
+	}
+
+	public static void assertSameContent(DataElement actual, DataElement expected) {
+		assertEquals(actual.getClass(), expected.getClass());
+		assertEquals(actual.getNameInData(), expected.getNameInData());
+		if (expected instanceof DataAtomic) {
+			assertSameAtomicContent((DataAtomic) actual, (DataAtomic) expected);
+		} else {
+			assertSameGroupContent((DataGroup) actual, (DataGroup) expected);
+		}
+	}
+
+	private static void assertSameAtomicContent(DataAtomic actual, DataAtomic expected) {
+		assertEquals(actual.getValue(), expected.getValue());
+		assertEquals(actual.getRepeatId(), expected.getRepeatId());
+	}
+
+	private static void assertSameGroupContent(DataGroup actual, DataGroup expected) {
+		assertEquals(actual.getRepeatId(), expected.getRepeatId());
+		assertEquals(actual.getAttributes(), expected.getAttributes());
+		assertEquals(actual.getChildren().size(), expected.getChildren().size());
+		for (int i = 0; i < expected.getChildren().size(); i++) {
+			assertSameContent(actual.getChildren().get(i), expected.getChildren().get(i));
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.bookkeeper.data.DataAtomic;
+import se.uu.ub.cora.bookkeeper.data.DataElement;
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+
+public class DataGroupBinaryCodecTest {
+
+	@Test
+	public void testEmptyGroup() throws Exception {
+		DataGroup group = DataGroup.withNameInData("person");
+
+		DataGroup readGroup = writeAndRead(group);
+
+		assertEquals(readGroup.getNameInData(), "person");
+		assertNull(readGroup.getRepeatId());
+		assertEquals(readGroup.getChildren().size(), 0);
+		assertEquals(readGroup.getAttributes().size(), 0);
+	}
+
+	private DataGroup writeAndRead(DataGroup group) throws IOException {
+		return DataGroupBinaryCodec.readDataGroup(createInput(toBytes(group)));
+	}
+
+	private byte[] toBytes(DataGroup group) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataGroupBinaryCodec.writeDataGroup(new DataOutputStream(bytes), group);
+		return bytes.toByteArray();
+	}
+
+	private DataInputStream createInput(byte[] bytes) {
+		return new DataInputStream(new ByteArrayInputStream(bytes));
+	}
+
+	@Test
+	public void testNestedGroupsWithAtomicsAttributesAndRepeatIds() throws Exception {
+		DataGroup person = DataGroup.withNameInData("authority");
+		person.addAttributeByIdWithValue("type", "person");
+		DataGroup name = DataGroup.withNameInData("name");
+		name.setRepeatId("0");
+		name.addAttributeByIdWithValue("type", "authorized");
+		DataAtomic familyName = DataAtomic.withNameInDataAndValue("familyName", "Åström");
+		familyName.setRepeatId("1");
+		name.addChild(familyName);
+		name.addChild(DataAtomic.withNameInDataAndValue("givenName", ""));
+		person.addChild(name);
+		person.addChild(DataAtomic.withNameInDataAndValue("note", "line1\nline2 \"quoted\""));
+
+		DataGroup readPerson = writeAndRead(person);
+
+		assertEquals(toComparableString(readPerson), toComparableString(person));
+		assertEquals(readPerson.getFirstGroupWithNameInData("name")
+				.getFirstAtomicValueWithNameInData("familyName"), "Åström");
+	}
+
+	private String toComparableString(DataElement element) {
+		StringBuilder out = new StringBuilder();
+		appendElement(out, element);
+		return out.toString();
+	}
+
+	private void appendElement(StringBuilder out, DataElement element) {
+		out.append(element.getNameInData());
+		if (element instanceof DataAtomic) {
+			DataAtomic atomic = (DataAtomic) element;
+			out.append("[").append(atomic.getRepeatId()).append("]=\"")
+					.append(atomic.getValue()).append("\"");
+		} else {
+			DataGroup group = (DataGroup) element;
+			out.append("[").append(group.getRepeatId()).append("]").append(group.getAttributes())
+					.append("{");
+			for (DataElement child : group.getChildren()) {
+				appendElement(out, child);
+				out.append(",");
+			}
+			out.append("}");
+		}
+	}
+
+	@Test
+	public void testNullValueIsKept() throws Exception {
+		DataGroup group = DataGroup.withNameInData("organisation");
+		group.addChild(DataAtomic.withNameInDataAndValue("organisationName", null));
+
+		DataGroup readGroup = writeAndRead(group);
+
+		DataAtomic readAtomic = (DataAtomic) readGroup.getChildren().get(0);
+		assertNull(readAtomic.getValue());
+	}
+
+	@Test
+	public void testReadingAtomicAsGroupFails() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(1);
+
+		try {
+			DataGroupBinaryCodec.readDataGroup(createInput(bytes.toByteArray()));
+			fail("IOException should have been thrown");
+		} catch (IOException e) {
+			assertEquals(e.getMessage(), "Expected a group but found element type: 1");
+		}
+	}
+
+	@Test
+	public void testUnknownElementTypeFails() throws Exception {
+		byte[] bytes = toBytes(createGroupWithOneAtomicChild());
+		int positionOfChildType = 1 + 4 + 5 + 4 + 4 + 4;
+		bytes[positionOfChildType] = 7;
+
+		try {
+			DataGroupBinaryCodec.readDataGroup(createInput(bytes));
+			fail("IOException should have been thrown");
+		} catch (IOException e) {
+			assertEquals(e.getMessage(), "Unknown element type: 7");
+		}
+	}
+
+	private DataGroup createGroupWithOneAtomicChild() {
+		DataGroup group = DataGroup.withNameInData("group");
+		group.addChild(DataAtomic.withNameInDataAndValue("atomic", "value"));
+		return group;
+	}
+
+	@Test
+	public void testInvalidStringLengthFails() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(-2);
+
+		try {
+			DataGroupBinaryCodec.readString(createInput(bytes.toByteArray()));
+			fail("IOException should have been thrown");
+		} catch (IOException e) {
+			assertEquals(e.getMessage(), "Invalid string length: -2");
+		}
+	}
+}
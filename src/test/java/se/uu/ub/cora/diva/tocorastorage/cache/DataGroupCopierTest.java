@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static se.uu.ub.cora.diva.tocorastorage.cache.DataGroupAssert.assertIsCopyOf;
+
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.bookkeeper.data.DataAtomic;
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+
+public class DataGroupCopierTest {
+
+	@Test
+	public void testCopyOfNullIsNull() throws Exception {
+		assertNull(DataGroupCopier.copy(null));
+	}
+
+	@Test
+	public void testCopyHasSameContent() throws Exception {
+		DataGroup original = createPerson();
+
+		DataGroup copy = DataGroupCopier.copy(original);
+
+		assertIsCopyOf(copy, original);
+		DataGroup copiedName = copy.getFirstGroupWithNameInData("name");
+		assertNotSame(copiedName, original.getFirstGroupWithNameInData("name"));
+		assertNotSame(copiedName.getChildren().get(0),
+				original.getFirstGroupWithNameInData("name").getChildren().get(0));
+	}
+
+	private DataGroup createPerson() {
+		DataGroup person = DataGroup.withNameInData("authority");
+		person.addAttributeByIdWithValue("type", "person");
+		DataGroup name = DataGroup.withNameInData("name");
+		name.setRepeatId("0");
+		name.addAttributeByIdWithValue("type", "authorized");
+		DataAtomic givenName = DataAtomic.withNameInDataAndValue("givenName", "Kalle");
+		givenName.setRepeatId("1");
+		name.addChild(givenName);
+		name.addChild(DataAtomic.withNameInDataAndValue("familyName", "Kula"));
+		person.addChild(name);
+		person.addChild(DataAtomic.withNameInDataAndValue("id", "authority-person:11685"));
+		return person;
+	}
+
+	@Test
+	public void testChangingCopyDoesNotChangeOriginal() throws Exception {
+		DataGroup original = createPerson();
+
+		DataGroup copy = DataGroupCopier.copy(original);
+		copy.addChild(DataAtomic.withNameInDataAndValue("extra", "value"));
+		copy.addAttributeByIdWithValue("extra", "value");
+		copy.getFirstGroupWithNameInData("name").removeFirstChildWithNameInData("familyName");
+		copy.getFirstGroupWithNameInData("name").setRepeatId("5");
+
+		assertEquals(original.getChildren().size(), 2);
+		assertEquals(original.getAttributes().size(), 1);
+		DataGroup originalName = original.getFirstGroupWithNameInData("name");
+		assertEquals(originalName.getChildren().size(), 2);
+		assertEquals(originalName.getRepeatId(), "0");
+	}
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static se.uu.ub.cora.diva.tocorastorage.cache.DataGroupAssert.assertIsCopyOf;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+
+public class DiskBackedRecordCacheTest {
+	private Path storeDirectory;
+	private Path storeFile;
+	private ClockSpy clock;
+	private DiskRecordStore diskRecordStore;
+	private DiskBackedRecordCache cache;
+	private List<String> loadedIds;
+	private List<VersionedRecord> staleRecordsPassedToLoader;
+	private String versionInBackend;
+
+	@BeforeMethod
+	public void setUp() throws IOException {
+		storeDirectory = Files.createTempDirectory("diskBackedRecordCache");
+		storeFile = storeDirectory.resolve("records.store");
+		clock = new ClockSpy();
+		diskRecordStore = DiskRecordStore.openUsingPathAndCapacityInBytesAndClock(storeFile, 4096,
+				clock);
+		cache = createCacheUsingDiskRecordStore(diskRecordStore);
+		loadedIds = new ArrayList<>();
+		staleRecordsPassedToLoader = new ArrayList<>();
+		versionInBackend = "v1";
+	}
+
+	private DiskBackedRecordCache createCacheUsingDiskRecordStore(DiskRecordStore store) {
+		return DiskBackedRecordCache
+				.usingTypeAndDiskRecordStoreAndCacheAndMaxAgeInMillisAndClock("person", store,
+						RecordCacheImp.usingMaxSizeAndTimeToLiveInMillisAndClock(10, 60000, clock),
+						500, clock);
+	}
+
+	@AfterMethod
+	public void tearDown() throws IOException {
+		diskRecordStore.close();
+		Files.deleteIfExists(storeFile);
+		Files.delete(storeDirectory);
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		RecordCache wrappedCache = new PassThroughRecordCache();
+		DiskBackedRecordCache defaultCache = DiskBackedRecordCache
+				.usingTypeAndDiskRecordStoreAndCacheAndMaxAgeInMillis("divaOrganisation",
+						diskRecordStore, wrappedCache, 1000);
+
+		assertEquals(defaultCache.getType(), "divaOrganisation");
+		assertSame(defaultCache.getDiskRecordStore(), diskRecordStore);
+		assertSame(defaultCache.getCache(), wrappedCache);
+		assertEquals(defaultCache.getDiskHitCount(), 0);
+	}
+
+	private VersionedRecord loadFromBackend(String id, VersionedRecord staleRecord) {
+		staleRecordsPassedToLoader.add(staleRecord);
+		if (staleRecord != null && staleRecord.hasVersion(versionInBackend)) {
+			return staleRecord;
+		}
+		loadedIds.add(id);
+		return VersionedRecord.usingRecordAndVersion(
+				DataGroup.withNameInData(id + versionInBackend), versionInBackend);
+	}
+
+	@Test
+	public void testLoadedRecordIsWrittenToDisk() throws Exception {
+		DataGroup record = cache.read("1", this::loadFromBackend);
+
+		assertEquals(record.getNameInData(), "1v1");
+		assertEquals(loadedIds, Arrays.asList("1"));
+		StoredRecord storedRecord = diskRecordStore.read("person", "1");
+		assertEquals(storedRecord.getVersionedRecord().getVersion(), "v1");
+		assertEquals(storedRecord.getVersionedRecord().getRecord().getNameInData(), "1v1");
+	}
+
+	@Test
+	public void testRecordFromDiskIsRevalidatedAfterRestart() throws Exception {
+		cache.read("1", this::loadFromBackend);
+		DiskBackedRecordCache cacheAfterRestart = restart();
+
+		DataGroup record = cacheAfterRestart.read("1", this::loadFromBackend);
+
+		assertEquals(record.getNameInData(), "1v1");
+		assertEquals(loadedIds, Arrays.asList("1"));
+		assertEquals(staleRecordsPassedToLoader.get(1).getVersion(), "v1");
+		assertEquals(cacheAfterRestart.getDiskHitCount(), 1);
+	}
+
+	private DiskBackedRecordCache restart() {
+		diskRecordStore.close();
+		diskRecordStore = DiskRecordStore.openUsingPathAndCapacityInBytesAndClock(storeFile, 4096,
+				clock);
+		return createCacheUsingDiskRecordStore(diskRecordStore);
+	}
+
+	@Test
+	public void testChangedRecordIsReloadedAndWrittenToDiskAfterRestart() throws Exception {
+		cache.read("1", this::loadFromBackend);
+		DiskBackedRecordCache cacheAfterRestart = restart();
+		versionInBackend = "v2";
+
+		DataGroup record = cacheAfterRestart.read("1", this::loadFromBackend);
+
+		assertEquals(record.getNameInData(), "1v2");
+		assertEquals(loadedIds, Arrays.asList("1", "1"));
+		assertEquals(cacheAfterRestart.getDiskHitCount(), 0);
+		assertEquals(diskRecordStore.read("person", "1").getVersionedRecord().getVersion(), "v2");
+	}
+
+	@Test
+	public void testCachedRecordIsNotReadFromDisk() throws Exception {
+		DataGroup firstRead = cache.read("1", this::loadFromBackend);
+		DataGroup secondRead = cache.read("1", this::loadFromBackend);
+
+		assertIsCopyOf(secondRead, firstRead);
+		assertEquals(staleRecordsPassedToLoader.size(), 1);
+		assertEquals(cache.getStatistics().getHitCount(), 1);
+	}
+
+	@Test
+	public void testExpiredRecordInMemoryIsRevalidatedWithoutDisk() throws Exception {
+		cache.read("1", this::loadFromBackend);
+		clock.millis += 60000;
+
+		cache.read("1", this::loadFromBackend);
+
+		assertEquals(loadedIds, Arrays.asList("1"));
+		assertEquals(cache.getDiskHitCount(), 0);
+	}
+
+	@Test
+	public void testRecordWithoutVersionIsNotWrittenFromRecordLoader() throws Exception {
+		cache.read("1", (id, staleRecord) -> VersionedRecord
+				.usingRecordWithoutVersion(DataGroup.withNameInData(id)));
+
+		assertNull(diskRecordStore.read("person", "1"));
+	}
+
+	@Test
+	public void testRecordFromFunctionIsUsedFromDiskUntilMaxAge() throws Exception {
+		cache.read("1", this::loadWithoutVersion);
+		DiskBackedRecordCache cacheAfterRestart = restart();
+
+		clock.millis += 499;
+		DataGroup record = cacheAfterRestart.read("1", this::loadWithoutVersion);
+
+		assertEquals(record.getNameInData(), "1");
+		assertEquals(loadedIds, Arrays.asList("1"));
+		assertEquals(cacheAfterRestart.getDiskHitCount(), 1);
+	}
+
+	private DataGroup loadWithoutVersion(String id) {
+		loadedIds.add(id);
+		return DataGroup.withNameInData(id);
+	}
+
+	@Test
+	public void testRecordFromFunctionIsReloadedWhenOlderThanMaxAge() throws Exception {
+		cache.read("1", this::loadWithoutVersion);
+		DiskBackedRecordCache cacheAfterRestart = restart();
+
+		clock.millis += 500;
+		cacheAfterRestart.read("1", this::loadWithoutVersion);
+
+		assertEquals(loadedIds, Arrays.asList("1", "1"));
+		assertEquals(cacheAfterRestart.getDiskHitCount(), 0);
+		assertEquals(diskRecordStore.read("person", "1").getStoredAtMillis(), 1500);
+	}
+
+	@Test
+	public void testRecordLoadedWhileRecordWasInvalidatedIsNotWrittenToDisk() throws Exception {
+		DataGroup record = cache.read("1", (id, staleRecord) -> {
+			VersionedRecord recordBeforeUpdate = loadFromBackend(id, staleRecord);
+			cache.invalidate(id);
+			return recordBeforeUpdate;
+		});
+
+		assertEquals(record.getNameInData(), "1v1");
+		assertNull(diskRecordStore.read("person", "1"));
+		versionInBackend = "v2";
+		assertEquals(cache.read("1", this::loadFromBackend).getNameInData(), "1v2");
+		assertEquals(diskRecordStore.read("person", "1").getVersionedRecord().getVersion(),
+				"v2");
+	}
+
+	@Test
+	public void testRecordFromFunctionLoadedWhileAllWereInvalidatedIsNotWrittenToDisk()
+			throws Exception {
+		cache.read("1", id -> {
+			cache.invalidateAll();
+			return DataGroup.withNameInData(id);
+		});
+
+		assertNull(diskRecordStore.read("person", "1"));
+	}
+
+	@Test
+	public void testInvalidateRemovesRecordFromDisk() throws Exception {
+		cache.read("1", this::loadFromBackend);
+		cache.read("2", this::loadFromBackend);
+
+		cache.invalidate("1");
+
+		assertNull(diskRecordStore.read("person", "1"));
+		assertEquals(diskRecordStore.getNumberOfRecords(), 1);
+		assertEquals(cache.getStatistics().getInvalidationCount(), 1);
+	}
+
+	@Test
+	public void testInvalidateAllRemovesOnlyRecordsOfTypeFromDisk() throws Exception {
+		cache.read("1", this::loadFromBackend);
+		diskRecordStore.write("divaOrganisation", "1",
+				VersionedRecord.usingRecordWithoutVersion(DataGroup.withNameInData("org")));
+
+		cache.invalidateAll();
+
+		assertNull(diskRecordStore.read("person", "1"));
+		assertTrue(diskRecordStore.read("divaOrganisation", "1") != null);
+		assertEquals(cache.getStatistics().getSize(), 0);
+	}
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.bookkeeper.data.DataAtomic;
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+
+public class DiskRecordStoreTest {
+	private Path storeDirectory;
+	private Path storeFile;
+	private ClockSpy clock;
+	private DiskRecordStore diskRecordStore;
+
+	@BeforeMethod
+	public void setUp() throws IOException {
+		storeDirectory = Files.createTempDirectory("diskRecordStore");
+		storeFile = storeDirectory.resolve("records.store");
+		clock = new ClockSpy();
+		diskRecordStore = openStoreUsingCapacity(4096);
+	}
+
+	private DiskRecordStore openStoreUsingCapacity(int capacityInBytes) {
+		return DiskRecordStore.openUsingPathAndCapacityInBytesAndClock(storeFile, capacityInBytes,
+				clock);
+	}
+
+	@AfterMethod
+	public void tearDown() throws IOException {
+		diskRecordStore.close();
+		Files.deleteIfExists(storeFile);
+		Files.delete(storeDirectory);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "capacityInBytes must be at least 64, was: 63")
+	public void testCapacityMustBeAtLeast64() throws Exception {
+		DiskRecordStore.openUsingPathAndCapacityInBytes(storeFile, 63);
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertEquals(diskRecordStore.getPath(), storeFile);
+		assertEquals(diskRecordStore.getCapacityInBytes(), 4096);
+		assertEquals(diskRecordStore.getNumberOfRecords(), 0);
+		assertEquals(diskRecordStore.getUsedBytes(), 0);
+		assertEquals(Files.size(storeFile), 4096);
+	}
+
+	@Test
+	public void testOpenFailsForMissingDirectory() throws Exception {
+		Path fileInMissingDirectory = storeDirectory.resolve("missing").resolve("records.store");
+		try {
+			DiskRecordStore.openUsingPathAndCapacityInBytes(fileInMissingDirectory, 4096);
+			fail("DiskRecordStoreException should have been thrown");
+		} catch (DiskRecordStoreException e) {
+			assertEquals(e.getMessage(),
+					"Unable to open disk record store: " + fileInMissingDirectory);
+			assertTrue(e.getCause() instanceof IOException);
+		}
+	}
+
+	@Test
+	public void testReadMissingRecordReturnsNull() throws Exception {
+		assertNull(diskRecordStore.read("person", "authority-person:1"));
+	}
+
+	@Test
+	public void testWriteAndRead() throws Exception {
+		diskRecordStore.write("person", "authority-person:1", createRecord("person1", "v1"));
+
+		StoredRecord storedRecord = diskRecordStore.read("person", "authority-person:1");
+
+		assertRecordHasNameAndVersion(storedRecord.getVersionedRecord(), "person1", "v1");
+		assertEquals(storedRecord.getStoredAtMillis(), 1000);
+		assertEquals(diskRecordStore.getNumberOfRecords(), 1);
+		assertTrue(diskRecordStore.getUsedBytes() > 0);
+	}
+
+	private VersionedRecord createRecord(String name, String version) {
+		DataGroup record = DataGroup.withNameInData(name);
+		record.addChild(DataAtomic.withNameInDataAndValue("id", name));
+		return VersionedRecord.usingRecordAndVersion(record, version);
+	}
+
+	private void assertRecordHasNameAndVersion(VersionedRecord record, String name,
+			String version) {
+		assertEquals(record.getRecord().getNameInData(), name);
+		assertEquals(record.getRecord().getFirstAtomicValueWithNameInData("id"), name);
+		assertEquals(record.getVersion(), version);
+	}
+
+	@Test
+	public void testRecordsAreKeyedByTypeAndId() throws Exception {
+		diskRecordStore.write("person", "1", createRecord("person1", "v1"));
+		diskRecordStore.write("divaOrganisation", "1", createRecord("organisation1", null));
+
+		assertRecordHasNameAndVersion(diskRecordStore.read("person", "1").getVersionedRecord(),
+				"person1", "v1");
+		assertRecordHasNameAndVersion(
+				diskRecordStore.read("divaOrganisation", "1").getVersionedRecord(),
+				"organisation1", null);
+	}
+
+	@Test
+	public void testLatestWriteIsRead() throws Exception {
+		diskRecordStore.write("person", "1", createRecord("person1", "v1"));
+		clock.millis += 10;
+		diskRecordStore.write("person", "1", createRecord("person1Updated", "v2"));
+
+		StoredRecord storedRecord = diskRecordStore.read("person", "1");
+
+		assertRecordHasNameAndVersion(storedRecord.getVersionedRecord(), "person1Updated", "v2");
+		assertEquals(storedRecord.getStoredAtMillis(), 1010);
+		assertEquals(diskRecordStore.getNumberOfRecords(), 1);
+	}
+
+	@Test
+	public void testRecordsAreReadAfterReopen() throws Exception {
+		diskRecordStore.write("person", "1", createRecord("person1", "v1"));
+		diskRecordStore.write("person", "2", createRecord("person2", "v1"));
+		diskRecordStore.write("person", "1", createRecord("person1Updated", "v2"));
+		int usedBytes = diskRecordStore.getUsedBytes();
+
+		diskRecordStore = reopen();
+
+		assertEquals(diskRecordStore.getNumberOfRecords(), 2);
+		assertEquals(diskRecordStore.getUsedBytes(), usedBytes);
+		assertRecordHasNameAndVersion(diskRecordStore.read("person", "1").getVersionedRecord(),
+				"person1Updated", "v2");
+		assertRecordHasNameAndVersion(diskRecordStore.read("person", "2").getVersionedRecord(),
+				"person2", "v1");
+	}
+
+	private DiskRecordStore reopen() {
+		diskRecordStore.close();
+		return openStoreUsingCapacity(4096);
+	}
+
+	@Test
+	public void testRemove() throws Exception {
+		diskRecordStore.write("person", "1", createRecord("person1", "v1"));
+		diskRecordStore.write("person", "2", createRecord("person2", "v1"));
+
+		diskRecordStore.remove("person", "1");
+		diskRecordStore.remove("person", "notStored");
+
+		assertNull(diskRecordStore.read("person", "1"));
+		assertEquals(diskRecordStore.getNumberOfRecords(), 1);
+	}
+
+	@Test
+	public void testRemovedRecordIsStillRemovedAfterReopen() throws Exception {
+		diskRecordStore.write("person", "1", createRecord("person1", "v1"));
+		diskRecordStore.remove("person", "1");
+
+		diskRecordStore = reopen();
+
+		assertNull(diskRecordStore.read("person", "1"));
+		assertEquals(diskRecordStore.getNumberOfRecords(), 0);
+	}
+
+	@Test
+	public void testRecordRemovedWhileFileIsFullIsStillRemovedAfterReopen() throws Exception {
+		diskRecordStore = reopenUsingCapacity(400);
+		diskRecordStore.write("person", "1", createRecord("person1", "v1"));
+		int sizeOfPerson1 = diskRecordStore.getUsedBytes();
+		fillFileUsingRecordForPerson2();
+		assertEquals(diskRecordStore.getUsedBytes(), 400);
+		long compactionCountWhenFull = diskRecordStore.getCompactionCount();
+
+		diskRecordStore.remove("person", "1");
+
+		assertEquals(diskRecordStore.getCompactionCount(), compactionCountWhenFull + 1);
+		assertEquals(diskRecordStore.getUsedBytes(), 400 - sizeOfPerson1);
+		assertEquals(diskRecordStore.getRejectedWriteCount(), 0);
+		assertNull(diskRecordStore.read("person", "1"));
+		diskRecordStore = openStoreUsingCapacityAfterClose(400);
+		assertNull(diskRecordStore.read("person", "1"));
+		assertEquals(diskRecordStore.getNumberOfRecords(), 1);
+	}
+
+	private void fillFileUsingRecordForPerson2() {
+		diskRecordStore.write("person", "2", createRecordWithoutChildren("a"));
+		int bytesLeft = 400 - diskRecordStore.getUsedBytes();
+		diskRecordStore.write("person", "2",
+				createRecordWithoutChildren(createNameUsingLength(1 + bytesLeft)));
+	}
+
+	@Test
+	public void testRemoveAllOfType() throws Exception {
+		diskRecordStore.write("person", "1", createRecord("person1", "v1"));
+		diskRecordStore.write("person", "2", createRecord("person2", "v1"));
+		diskRecordStore.write("divaOrganisation", "1", createRecord("organisation1", null));
+
+		diskRecordStore.removeAllOfType("person");
+		diskRecordStore = reopen();
+
+		assertNull(diskRecordStore.read("person", "1"));
+		assertNull(diskRecordStore.read("person", "2"));
+		assertEquals(diskRecordStore.getNumberOfRecords(), 1);
+	}
+
+	@Test
+	public void testPartlyWrittenEntryIsIgnoredOnReopen() throws Exception {
+		diskRecordStore.write("person", "1", createRecord("person1", "v1"));
+		int endOfFirstEntry = diskRecordStore.getUsedBytes();
+		diskRecordStore.write("person", "2", createRecord("person2", "v1"));
+		diskRecordStore.close();
+		overwriteByteInFile(endOfFirstEntry + 20);
+
+		diskRecordStore = openStoreUsingCapacity(4096);
+
+		assertEquals(diskRecordStore.getNumberOfRecords(), 1);
+		assertEquals(diskRecordStore.getUsedBytes(), endOfFirstEntry);
+		assertNull(diskRecordStore.read("person", "2"));
+
+		diskRecordStore.write("person", "3", createRecord("person3", "v1"));
+		diskRecordStore = reopen();
+		assertRecordHasNameAndVersion(diskRecordStore.read("person", "3").getVersionedRecord(),
+				"person3", "v1");
+	}
+
+	private void overwriteByteInFile(int position) throws IOException {
+		try (FileChannel channel = FileChannel.open(storeFile, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 42 }), position);
+		}
+	}
+
+	@Test
+	public void testFullFileIsCompacted() throws Exception {
+		diskRecordStore = reopenUsingCapacity(400);
+		for (int i = 0; i < 20; i++) {
+			diskRecordStore.write("person", "1", createRecord("person1", "v" + i));
+		}
+		diskRecordStore.write("person", "2", createRecord("person2", "v1"));
+
+		assertTrue(diskRecordStore.getCompactionCount() > 0);
+		assertTrue(diskRecordStore.getUsedBytes() <= 400);
+		assertRecordHasNameAndVersion(diskRecordStore.read("person", "1").getVersionedRecord(),
+				"person1", "v19");
+
+		diskRecordStore = openStoreUsingCapacityAfterClose(400);
+		assertEquals(diskRecordStore.getNumberOfRecords(), 2);
+		assertRecordHasNameAndVersion(diskRecordStore.read("person", "1").getVersionedRecord(),
+				"person1", "v19");
+		assertRecordHasNameAndVersion(diskRecordStore.read("person", "2").getVersionedRecord(),
+				"person2", "v1");
+	}
+
+	@Test
+	public void testFileIsReplacedByCompactedFile() throws Exception {
+		diskRecordStore = reopenUsingCapacity(400);
+		for (int i = 0; i < 20; i++) {
+			diskRecordStore.write("person", "1", createRecord("person1", "v" + i));
+		}
+
+		assertTrue(diskRecordStore.getCompactionCount() > 0);
+		assertEquals(Files.size(storeFile), 400);
+		try (Stream<Path> filesInDirectory = Files.list(storeDirectory)) {
+			assertEquals(filesInDirectory.collect(Collectors.toList()),
+					Arrays.asList(storeFile));
+		}
+	}
+
+	@Test
+	public void testFailedCompactionKeepsFile() throws Exception {
+		diskRecordStore = reopenUsingCapacity(400);
+		Path compactedFile = storeDirectory.resolve("records.store.compacting");
+		Path fileBlockingCompaction = Files.createDirectory(compactedFile).resolve("blocking");
+		Files.createFile(fileBlockingCompaction);
+		try {
+			writeUntilCompactionFails();
+			diskRecordStore = openStoreUsingCapacityAfterClose(400);
+
+			assertEquals(diskRecordStore.getNumberOfRecords(), 1);
+			assertEquals(diskRecordStore.read("person", "1").getVersionedRecord().getRecord()
+					.getNameInData(), "person1");
+		} finally {
+			Files.delete(fileBlockingCompaction);
+			Files.delete(compactedFile);
+		}
+	}
+
+	private void writeUntilCompactionFails() {
+		try {
+			for (int i = 0; i < 20; i++) {
+				diskRecordStore.write("person", "1", createRecord("person1", "v" + i));
+			}
+			fail("DiskRecordStoreException should have been thrown");
+		} catch (DiskRecordStoreException e) {
+			assertEquals(e.getMessage(), "Unable to compact disk record store: " + storeFile);
+			assertTrue(e.getCause() instanceof IOException);
+		}
+	}
+
+	private DiskRecordStore reopenUsingCapacity(int capacityInBytes) throws IOException {
+		diskRecordStore.close();
+		Files.deleteIfExists(storeFile);
+		return openStoreUsingCapacity(capacityInBytes);
+	}
+
+	@Test
+	public void testRecordThatDoesNotFitIsNotStored() throws Exception {
+		diskRecordStore = reopenUsingCapacity(128);
+		diskRecordStore.write("person", "1", createRecord("person1", "v1"));
+		assertEquals(diskRecordStore.getNumberOfRecords(), 1);
+
+		diskRecordStore.write("person", "1", createRecord(createLongName(), "v2"));
+
+		assertNull(diskRecordStore.read("person", "1"));
+		assertEquals(diskRecordStore.getRejectedWriteCount(), 1);
+		diskRecordStore = openStoreUsingCapacityAfterClose(128);
+		assertNull(diskRecordStore.read("person", "1"));
+	}
+
+	private VersionedRecord createRecordWithoutChildren(String name) {
+		return VersionedRecord.usingRecordAndVersion(DataGroup.withNameInData(name), "v1");
+	}
+
+	private String createLongName() {
+		return createNameUsingLength(100);
+	}
+
+	private String createNameUsingLength(int length) {
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			name.append("x");
+		}
+		return name.toString();
+	}
+
+	private DiskRecordStore openStoreUsingCapacityAfterClose(int capacityInBytes) {
+		diskRecordStore.close();
+		return openStoreUsingCapacity(capacityInBytes);
+	}
+
+	@Test
+	public void testClosedStoreCanNotBeUsed() throws Exception {
+		diskRecordStore.flush();
+		diskRecordStore.close();
+		diskRecordStore.close();
+
+		try {
+			diskRecordStore.read("person", "1");
+			fail("DiskRecordStoreException should have been thrown");
+		} catch (DiskRecordStoreException e) {
+			assertEquals(e.getMessage(), "Disk record store is closed: " + storeFile);
+		}
+	}
+}
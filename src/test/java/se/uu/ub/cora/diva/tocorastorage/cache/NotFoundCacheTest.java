@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class NotFoundCacheTest {
+	private ClockSpy clock;
+	private NotFoundCache cache;
+
+	@BeforeMethod
+	public void setUp() {
+		clock = new ClockSpy();
+		cache = NotFoundCache.usingMaxSizeAndTimeToLiveInMillisAndClock(2, 100, clock);
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		NotFoundCache defaultCache = NotFoundCache.usingMaxSizeAndTimeToLiveInMillis(5, 200);
+
+		assertEquals(defaultCache.getMaxSize(), 5);
+		assertEquals(defaultCache.getTimeToLiveInMillis(), 200);
+		assertEquals(defaultCache.getSize(), 0);
+	}
+
+	@Test
+	public void testUnknownIdIsNotMissing() throws Exception {
+		assertFalse(cache.isKnownToBeMissing("id1"));
+		assertEquals(cache.getHitCount(), 0);
+	}
+
+	@Test
+	public void testRememberedIdIsMissing() throws Exception {
+		cache.rememberMissing("id1");
+
+		assertTrue(cache.isKnownToBeMissing("id1"));
+		assertFalse(cache.isKnownToBeMissing("id2"));
+		assertEquals(cache.getHitCount(), 1);
+	}
+
+	@Test
+	public void testIdIsForgottenAfterTimeToLive() throws Exception {
+		cache.rememberMissing("id1");
+
+		clock.millis += 99;
+		assertTrue(cache.isKnownToBeMissing("id1"));
+		clock.millis += 1;
+		assertFalse(cache.isKnownToBeMissing("id1"));
+		assertEquals(cache.getSize(), 0);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIdIsForgottenAboveMaxSize() throws Exception {
+		cache.rememberMissing("id1");
+		cache.rememberMissing("id2");
+		cache.isKnownToBeMissing("id1");
+		cache.rememberMissing("id3");
+
+		assertEquals(cache.getSize(), 2);
+		assertTrue(cache.isKnownToBeMissing("id1"));
+		assertFalse(cache.isKnownToBeMissing("id2"));
+		assertTrue(cache.isKnownToBeMissing("id3"));
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		cache.rememberMissing("id1");
+		cache.rememberMissing("id2");
+
+		cache.invalidate("id1");
+
+		assertFalse(cache.isKnownToBeMissing("id1"));
+		assertTrue(cache.isKnownToBeMissing("id2"));
+	}
+
+	@Test
+	public void testInvalidateAll() throws Exception {
+		cache.rememberMissing("id1");
+		cache.rememberMissing("id2");
+
+		cache.invalidateAll();
+
+		assertEquals(cache.getSize(), 0);
+	}
+
+	@Test
+	public void testCacheWithMaxSizeZeroRemembersNothing() throws Exception {
+		NotFoundCache disabledCache = NotFoundCache.usingMaxSizeAndTimeToLiveInMillis(0, 100);
+
+		disabledCache.rememberMissing("id1");
+
+		assertFalse(disabledCache.isKnownToBeMissing("id1"));
+		assertEquals(disabledCache.getSize(), 0);
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+
+public class PassThroughRecordCacheTest {
+
+	@Test
+	public void testEveryReadIsLoaded() throws Exception {
+		PassThroughRecordCache cache = new PassThroughRecordCache();
+		List<String> loadedIds = new ArrayList<>();
+
+		cache.read("id1", id -> {
+			loadedIds.add(id);
+			return DataGroup.withNameInData(id);
+		});
+		cache.invalidate("id1");
+		cache.invalidateAll();
+		DataGroup record = cache.read("id1", id -> {
+			loadedIds.add(id);
+			return DataGroup.withNameInData(id);
+		});
+
+		assertEquals(record.getNameInData(), "id1");
+		assertEquals(loadedIds.size(), 2);
+		assertEquals(cache.getStatistics().getRequestCount(), 0);
+	}
+
+	@Test
+	public void testRecordLoaderIsCalledWithoutStaleRecord() throws Exception {
+		PassThroughRecordCache cache = new PassThroughRecordCache();
+		DataGroup record = cache.read("id1", (id, staleRecord) -> {
+			assertNull(staleRecord);
+			return VersionedRecord.usingRecordAndVersion(DataGroup.withNameInData(id), "v1");
+		});
+		assertEquals(record.getNameInData(), "id1");
+	}
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static se.uu.ub.cora.diva.tocorastorage.cache.DataGroupAssert.assertIsCopyOf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.bookkeeper.data.DataAtomic;
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+
+public class RecordCacheImpTest {
+	private ClockSpy clock;
+	private RecordCacheImp cache;
+	private List<String> loadedIds;
+	private Function<String, DataGroup> loader;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		clock = new ClockSpy();
+		cache = RecordCacheImp.usingMaxSizeAndTimeToLiveInMillisAndClock(2, 100, clock);
+		loadedIds = new ArrayList<>();
+		loader = id -> {
+			loadedIds.add(id);
+			return DataGroup.withNameInData(id);
+		};
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		RecordCacheImp cacheWithSystemClock = RecordCacheImp.usingMaxSizeAndTimeToLiveInMillis(10,
+				500);
+		assertEquals(cacheWithSystemClock.getMaxSize(), 10);
+		assertEquals(cacheWithSystemClock.getTimeToLiveInMillis(), 500);
+		assertTrue(cacheWithSystemClock instanceof RecordCache);
+	}
+
+	@Test
+	public void testFirstReadLoadsRecord() throws Exception {
+		DataGroup record = cache.read("id1", loader);
+
+		assertEquals(record.getNameInData(), "id1");
+		assertEquals(loadedIds.size(), 1);
+		assertStatistics(0, 1, 1);
+	}
+
+	private void assertStatistics(long hits, long misses, int size) {
+		RecordCacheStatistics statistics = cache.getStatistics();
+		assertEquals(statistics.getHitCount(), hits);
+		assertEquals(statistics.getMissCount(), misses);
+		assertEquals(statistics.getSize(), size);
+	}
+
+	@Test
+	public void testSecondReadIsServedFromCache() throws Exception {
+		DataGroup firstRead = cache.read("id1", loader);
+		DataGroup secondRead = cache.read("id1", loader);
+
+		assertIsCopyOf(secondRead, firstRead);
+		assertEquals(loadedIds.size(), 1);
+		assertStatistics(1, 1, 1);
+		assertEquals(cache.getStatistics().getHitRatio(), 0.5);
+	}
+
+	@Test
+	public void testChangingReadRecordDoesNotChangeCachedRecord() throws Exception {
+		DataGroup loadedRecord = DataGroup.withNameInData("id1");
+		DataGroup firstRead = cache.read("id1",
+				(id, staleRecord) -> VersionedRecord.usingRecordAndVersion(loadedRecord, "v1"));
+		firstRead.addChild(DataAtomic.withNameInDataAndValue("changedBy", "firstReader"));
+
+		DataGroup secondRead = cache.read("id1", loader);
+		secondRead.addAttributeByIdWithValue("changedBy", "secondReader");
+
+		assertNotSame(firstRead, loadedRecord);
+		assertEquals(loadedRecord.getChildren().size(), 0);
+		assertEquals(cache.read("id1", loader).getChildren().size(), 0);
+		assertEquals(cache.read("id1", loader).getAttributes().size(), 0);
+	}
+
+	@Test
+	public void testExpiredRecordIsLoadedAgain() throws Exception {
+		DataGroup firstRead = cache.read("id1", loader);
+		clock.millis += 99;
+		assertIsCopyOf(cache.read("id1", loader), firstRead);
+		clock.millis += 1;
+
+		DataGroup readAfterExpiry = cache.read("id1", loader);
+
+		assertNotSame(readAfterExpiry, firstRead);
+		assertEquals(loadedIds.size(), 2);
+		assertEquals(cache.getStatistics().getExpirationCount(), 1);
+		assertStatistics(1, 2, 1);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedRecordIsEvictedWhenFull() throws Exception {
+		cache.read("id1", loader);
+		cache.read("id2", loader);
+		cache.read("id1", loader);
+		cache.read("id3", loader);
+
+		cache.read("id1", loader);
+		cache.read("id2", loader);
+
+		assertEquals(loadedIds.size(), 4);
+		assertEquals(loadedIds.get(3), "id2");
+		assertEquals(cache.getStatistics().getEvictionCount(), 2);
+		assertEquals(cache.getStatistics().getSize(), 2);
+	}
+
+	@Test
+	public void testInvalidatedRecordIsLoadedAgain() throws Exception {
+		cache.read("id1", loader);
+		cache.invalidate("id1");
+		cache.read("id1", loader);
+
+		assertEquals(loadedIds.size(), 2);
+		assertEquals(cache.getStatistics().getInvalidationCount(), 1);
+	}
+
+	@Test
+	public void testInvalidateAll() throws Exception {
+		cache.read("id1", loader);
+		cache.read("id2", loader);
+		cache.invalidateAll();
+
+		assertEquals(cache.getStatistics().getSize(), 0);
+	}
+
+	@Test
+	public void testRecordInvalidatedDuringLoadIsNotCached() throws Exception {
+		cache.read("id1", id -> {
+			cache.invalidate(id);
+			return DataGroup.withNameInData(id);
+		});
+		cache.read("id1", loader);
+
+		assertEquals(loadedIds.size(), 1);
+	}
+
+	@Test
+	public void testFailedLoadIsCountedAndNotCached() throws Exception {
+		try {
+			cache.read("id1", id -> {
+				throw new RuntimeException("some load error");
+			});
+		} catch (RuntimeException e) {
+			assertEquals(e.getMessage(), "some load error");
+		}
+		assertEquals(cache.getStatistics().getLoadFailureCount(), 1);
+		assertStatistics(0, 1, 0);
+	}
+
+	@Test
+	public void testStatisticsToString() throws Exception {
+		cache.read("id1", loader);
+		cache.read("id1", loader);
+		assertEquals(cache.getStatistics().toString(),
+				"hits: 1, misses: 1, revalidations: 0, loadFailures: 0, "
+						+ "evictions: 0, expirations: 0, invalidations: 0, size: 1");
+	}
+
+	@Test
+	public void testHitRatioWithoutRequestsIsZero() throws Exception {
+		assertEquals(cache.getStatistics().getHitRatio(), 0.0);
+	}
+
+	@Test
+	public void testRecordLoaderGetsNoStaleRecordOnFirstRead() throws Exception {
+		List<VersionedRecord> staleRecords = new ArrayList<>();
+		cache.read("id1", (id, staleRecord) -> {
+			staleRecords.add(staleRecord);
+			return VersionedRecord.usingRecordAndVersion(DataGroup.withNameInData(id), "v1");
+		});
+		assertEquals(staleRecords.size(), 1);
+		assertNull(staleRecords.get(0));
+	}
+
+	@Test
+	public void testRecordLoaderGetsExpiredRecordAsStaleRecord() throws Exception {
+		VersionedRecord firstVersion = VersionedRecord
+				.usingRecordAndVersion(DataGroup.withNameInData("id1"), "v1");
+		cache.read("id1", (id, staleRecord) -> firstVersion);
+		clock.millis += 100;
+		List<VersionedRecord> staleRecords = new ArrayList<>();
+
+		cache.read("id1", (id, staleRecord) -> {
+			staleRecords.add(staleRecord);
+			return VersionedRecord.usingRecordAndVersion(DataGroup.withNameInData(id), "v2");
+		});
+
+		assertSame(staleRecords.get(0), firstVersion);
+		assertEquals(cache.getStatistics().getRevalidationCount(), 0);
+	}
+
+	@Test
+	public void testStaleRecordReturnedByLoaderIsCachedAgainAndCountedAsRevalidated()
+			throws Exception {
+		DataGroup firstRecord = DataGroup.withNameInData("id1");
+		cache.read("id1",
+				(id, staleRecord) -> VersionedRecord.usingRecordAndVersion(firstRecord, "v1"));
+		clock.millis += 100;
+
+		DataGroup revalidatedRecord = cache.read("id1", (id, staleRecord) -> staleRecord);
+		DataGroup cachedRecord = cache.read("id1", (id, staleRecord) -> {
+			throw new RuntimeException("should not be loaded");
+		});
+
+		assertIsCopyOf(revalidatedRecord, firstRecord);
+		assertIsCopyOf(cachedRecord, firstRecord);
+		assertEquals(cache.getStatistics().getRevalidationCount(), 1);
+		assertStatistics(1, 2, 1);
+	}
+
+	@Test
+	public void testVersionedRecord() throws Exception {
+		DataGroup record = DataGroup.withNameInData("id1");
+		VersionedRecord versionedRecord = VersionedRecord.usingRecordAndVersion(record, "v1");
+		assertSame(versionedRecord.getRecord(), record);
+		assertEquals(versionedRecord.getVersion(), "v1");
+		assertTrue(versionedRecord.hasVersion("v1"));
+		assertFalse(versionedRecord.hasVersion("v2"));
+		assertFalse(VersionedRecord.usingRecordWithoutVersion(record).hasVersion(null));
+		assertFalse(VersionedRecord.usingRecordAndVersion(record, "").hasVersion(""));
+	}
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+import static se.uu.ub.cora.diva.tocorastorage.cache.DataGroupAssert.assertSameContent;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.bookkeeper.data.DataAtomic;
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+import se.uu.ub.cora.diva.tocorastorage.ConcurrentCallsRunner;
+
+public class SingleFlightTest {
+	private SingleFlight<String, DataGroup> singleFlight;
+	private AtomicInteger numberOfCalls;
+
+	@BeforeMethod
+	public void setUp() {
+		singleFlight = new SingleFlight<>();
+		numberOfCalls = new AtomicInteger();
+	}
+
+	@Test
+	public void testCallIsRunAndResultReturned() throws Exception {
+		DataGroup result = singleFlight.call("id1", () -> createRecord("id1"));
+
+		assertEquals(result.getNameInData(), "id1");
+		assertEquals(numberOfCalls.get(), 1);
+		assertEquals(singleFlight.getCallCount(), 1);
+		assertEquals(singleFlight.getSharedResultCount(), 0);
+		assertEquals(singleFlight.getNumberOfCallsInProgress(), 0);
+	}
+
+	private DataGroup createRecord(String id) {
+		numberOfCalls.incrementAndGet();
+		return DataGroup.withNameInData(id);
+	}
+
+	@Test
+	public void testSequentialCallsAreNotMerged() throws Exception {
+		DataGroup first = singleFlight.call("id1", () -> createRecord("id1"));
+		DataGroup second = singleFlight.call("id1", () -> createRecord("id1"));
+
+		assertEquals(numberOfCalls.get(), 2);
+		assertTrue(first != second);
+	}
+
+	@Test
+	public void testConcurrentCallsForSameKeyShareOneCall() throws Exception {
+		List<DataGroup> results = ConcurrentCallsRunner.runCallsConcurrently(5, 5,
+				callNumber -> singleFlight.call("id1", () -> {
+					waitUntil(() -> singleFlight.getSharedResultCount() == 4);
+					return createRecord("id1");
+				}));
+
+		assertEquals(numberOfCalls.get(), 1);
+		for (DataGroup result : results) {
+			assertSame(result, results.get(0));
+		}
+		assertEquals(singleFlight.getCallCount(), 1);
+		assertEquals(singleFlight.getSharedResultCount(), 4);
+		assertEquals(singleFlight.getNumberOfCallsInProgress(), 0);
+	}
+
+	@Test
+	public void testWaitingCallersGetCopiesOfResultWhenUsingResultCopier() throws Exception {
+		singleFlight = SingleFlight.usingResultCopier(DataGroupCopier::copy);
+		DataGroup record = createRecord("id1");
+
+		List<DataGroup> results = ConcurrentCallsRunner.runCallsConcurrently(5, 5,
+				callNumber -> singleFlight.call("id1", () -> {
+					waitUntil(() -> singleFlight.getSharedResultCount() == 4);
+					return record;
+				}));
+
+		Set<DataGroup> distinctResults = Collections.newSetFromMap(new IdentityHashMap<>());
+		distinctResults.addAll(results);
+		assertEquals(distinctResults.size(), 5);
+		assertFalse(distinctResults.contains(record));
+		for (DataGroup result : results) {
+			assertSameContent(result, record);
+		}
+		assertEquals(singleFlight.getCallCount(), 1);
+	}
+
+	@Test
+	public void testCallerRunningCallChangingItsResultDoesNotChangeResultOfWaitingCaller()
+			throws Exception {
+		CountDownLatch resultChanged = new CountDownLatch(1);
+		Set<Thread> waitingThreads = ConcurrentHashMap.newKeySet();
+		singleFlight = SingleFlight.usingResultCopier(result -> {
+			if (waitingThreads.contains(Thread.currentThread())) {
+				awaitLatch(resultChanged);
+			}
+			return DataGroupCopier.copy(result);
+		});
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<DataGroup> waitingResult = executor.submit(() -> {
+				waitingThreads.add(Thread.currentThread());
+				waitUntil(() -> singleFlight.getNumberOfCallsInProgress() == 1);
+				return singleFlight.call("id1", () -> createRecord("notRunning"));
+			});
+			DataGroup result = singleFlight.call("id1", () -> {
+				waitUntil(() -> singleFlight.getSharedResultCount() == 1);
+				return createRecord("id1");
+			});
+			result.addChild(DataAtomic.withNameInDataAndValue("changed", "true"));
+			resultChanged.countDown();
+
+			assertSameContent(waitingResult.get(5, TimeUnit.SECONDS), createRecord("id1"));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void waitUntil(BooleanSupplier condition) {
+		long giveUpAt = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean() && System.currentTimeMillis() < giveUpAt) {
+			Thread.yield();
+		}
+	}
+
+	@Test
+	public void testConcurrentCallsForDifferentKeysAreNotMerged() throws Exception {
+		CountDownLatch allStarted = new CountDownLatch(3);
+
+		List<DataGroup> results = ConcurrentCallsRunner.runCallsConcurrently(3, 3,
+				callNumber -> singleFlight.call("id" + callNumber, () -> {
+					allStarted.countDown();
+					awaitLatch(allStarted);
+					return createRecord("id" + callNumber);
+				}));
+
+		assertEquals(numberOfCalls.get(), 3);
+		assertEquals(results.get(2).getNameInData(), "id2");
+		assertEquals(singleFlight.getSharedResultCount(), 0);
+	}
+
+	private void awaitLatch(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	public void testExceptionIsThrownToAllWaitingCallers() throws Exception {
+		List<String> messages = ConcurrentCallsRunner.runCallsConcurrently(3, 3, callNumber -> {
+			try {
+				singleFlight.call("id1", () -> {
+					waitUntil(() -> singleFlight.getSharedResultCount() == 2);
+					numberOfCalls.incrementAndGet();
+					throw new IllegalStateException("backend is down");
+				});
+				return "no exception";
+			} catch (IllegalStateException e) {
+				return e.getMessage();
+			}
+		});
+
+		assertEquals(numberOfCalls.get(), 1);
+		for (String message : messages) {
+			assertEquals(message, "backend is down");
+		}
+		assertEquals(singleFlight.getNumberOfCallsInProgress(), 0);
+	}
+
+	@Test
+	public void testNewCallIsMadeAfterFailedCall() throws Exception {
+		try {
+			singleFlight.call("id1", () -> {
+				throw new IllegalStateException("backend is down");
+			});
+			fail("IllegalStateException should have been thrown");
+		} catch (IllegalStateException e) {
+			DataGroup result = singleFlight.call("id1", () -> createRecord("id1"));
+			assertEquals(result.getNameInData(), "id1");
+		}
+	}
+
+	@Test
+	public void testCallArrivingAfterForgetStartsNewCall() throws Exception {
+		CountDownLatch firstCallStarted = new CountDownLatch(1);
+		CountDownLatch releaseFirstCall = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<DataGroup> firstCall = executor.submit(() -> singleFlight.call("id1", () -> {
+				firstCallStarted.countDown();
+				awaitLatch(releaseFirstCall);
+				return createRecord("oldData");
+			}));
+			assertTrue(firstCallStarted.await(5, TimeUnit.SECONDS));
+
+			singleFlight.forget("id1");
+			DataGroup secondResult = singleFlight.call("id1", () -> createRecord("newData"));
+			releaseFirstCall.countDown();
+
+			assertEquals(secondResult.getNameInData(), "newData");
+			assertEquals(firstCall.get(5, TimeUnit.SECONDS).getNameInData(), "oldData");
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(singleFlight.getCallCount(), 2);
+		assertEquals(singleFlight.getNumberOfCallsInProgress(), 0);
+	}
+}
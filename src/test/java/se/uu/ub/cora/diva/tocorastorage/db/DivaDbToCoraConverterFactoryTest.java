@@ -18,12 +18,15 @@
  */
 package se.uu.ub.cora.diva.tocorastorage.db;
 
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import se.uu.ub.cora.diva.tocorastorage.NotImplementedException;
+import se.uu.ub.cora.diva.tocorastorage.metrics.InMemoryMetrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
 
 public class DivaDbToCoraConverterFactoryTest {
 	private DivaDbToCoraConverterFactory divaDbToCoraConverterFactoryImp;
@@ -59,4 +62,29 @@ public class DivaDbToCoraConverterFactoryTest {
 				.factor("divaOrganisationSuccessor");
 		assertTrue(converter instanceof DivaDbToCoraOrganisationSuccessorConverter);
 	}
+
+	@Test
+	public void testFactoryReturnsSameConverterForEachCall() throws Exception {
+		assertSame(divaDbToCoraConverterFactoryImp.factor("divaOrganisation"),
+				divaDbToCoraConverterFactoryImp.factor("divaOrganisation"));
+		assertSame(divaDbToCoraConverterFactoryImp.factor("divaOrganisationPredecessor"),
+				divaDbToCoraConverterFactoryImp.factor("divaOrganisationPredecessor"));
+		assertSame(divaDbToCoraConverterFactoryImp.factor("divaOrganisationSuccessor"),
+				divaDbToCoraConverterFactoryImp.factor("divaOrganisationSuccessor"));
+	}
+
+	@Test
+	public void testMetricsArePassedToConverters() throws Exception {
+		InMemoryMetrics metrics = InMemoryMetrics.usingSystemNanoTime();
+		DivaDbToCoraConverterFactoryImp factory = new DivaDbToCoraConverterFactoryImp(metrics);
+
+		assertSame(factory.getMetrics(), metrics);
+		assertSame(((DivaDbToCoraOrganisationConverter) factory.factor("divaOrganisation"))
+				.getMetrics(), metrics);
+		assertSame(((DivaDbToCoraOrganisationPredecessorConverter) factory
+				.factor("divaOrganisationPredecessor")).getMetrics(), metrics);
+		assertSame(((DivaDbToCoraOrganisationSuccessorConverter) factory
+				.factor("divaOrganisationSuccessor")).getMetrics(), metrics);
+		assertTrue(new DivaDbToCoraConverterFactoryImp().getMetrics() instanceof NoOpMetrics);
+	}
 }
@@ -25,6 +25,8 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import se.uu.ub.cora.diva.tocorastorage.NotImplementedException;
+import se.uu.ub.cora.diva.tocorastorage.metrics.InMemoryMetrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
 import se.uu.ub.cora.sqldatabase.RecordReaderFactory;
 
 public class DivaDbToCoraFactoryTest {
@@ -69,4 +71,18 @@ public class DivaDbToCoraFactoryTest {
 	public void testGetConverterFactory() {
 		assertSame(divaDbToCoraFactoryImp.getConverterFactory(), converterFactory);
 	}
+
+	@Test
+	public void testMetricsArePassedToDivaDbToCora() throws Exception {
+		InMemoryMetrics metrics = InMemoryMetrics.usingSystemNanoTime();
+		DivaDbToCoraFactoryImp factory = new DivaDbToCoraFactoryImp(readerFactory,
+				converterFactory, metrics);
+
+		DivaDbToCoraOrganisation divaDbToCora = (DivaDbToCoraOrganisation) factory
+				.factor("divaOrganisation");
+
+		assertSame(factory.getMetrics(), metrics);
+		assertSame(divaDbToCora.getMetrics(), metrics);
+		assertTrue(divaDbToCoraFactoryImp.getMetrics() instanceof NoOpMetrics);
+	}
 }
@@ -24,12 +24,16 @@ import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import se.uu.ub.cora.bookkeeper.data.DataGroup;
+import se.uu.ub.cora.diva.tocorastorage.ConcurrentCallsRunner;
+import se.uu.ub.cora.diva.tocorastorage.metrics.InMemoryMetrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
 
 public class DivaDbToCoraOrganisationConverterTest {
 
@@ -301,4 +305,43 @@ public class DivaDbToCoraOrganisationConverterTest {
 		assertEquals(parentOrgLink.getFirstAtomicValueWithNameInData("linkedRecordId"),
 				"someParentOrganisation");
 	}
+
+	@Test
+	public void testSameConverterGivesCorrectResultsFromManyThreads() throws Exception {
+		List<DataGroup> organisations = ConcurrentCallsRunner.runCallsConcurrently(8, 2000,
+				callNumber -> converter.fromMap(createRowForOrganisationNumber(callNumber)));
+
+		for (int i = 0; i < organisations.size(); i++) {
+			DataGroup organisation = organisations.get(i);
+			DataGroup recordInfo = organisation.getFirstGroupWithNameInData("recordInfo");
+			assertEquals(recordInfo.getFirstAtomicValueWithNameInData("id"), "org" + i);
+			assertEquals(organisation.getFirstAtomicValueWithNameInData("organisationName"),
+					"name" + i);
+			assertEquals(organisation.containsChildWithNameInData("city"), i % 2 == 0);
+			assertEquals(organisation.getChildren().size(), i % 2 == 0 ? 6 : 5);
+		}
+	}
+
+	private Map<String, String> createRowForOrganisationNumber(int number) {
+		Map<String, String> row = new HashMap<>();
+		row.put("id", "org" + number);
+		row.put("defaultname", "name" + number);
+		if (number % 2 == 0) {
+			row.put("city", "city" + number);
+		}
+		return row;
+	}
+
+	@Test
+	public void testFromMapIsRecordedInMetrics() throws Exception {
+		InMemoryMetrics metrics = InMemoryMetrics.usingSystemNanoTime();
+		DivaDbToCoraOrganisationConverter measuredConverter = new DivaDbToCoraOrganisationConverter(
+				metrics);
+
+		measuredConverter.fromMap(rowFromDb);
+
+		assertEquals(metrics.getTimerStatistics("converter.divaOrganisation.fromMap").getCount(),
+				1);
+		assertTrue(converter.getMetrics() instanceof NoOpMetrics);
+	}
 }
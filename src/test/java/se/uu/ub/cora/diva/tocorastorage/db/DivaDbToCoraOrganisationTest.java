@@ -4,6 +4,7 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 import java.util.List;
 import java.util.Map;
@@ -12,6 +13,9 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import se.uu.ub.cora.bookkeeper.data.DataGroup;
+import se.uu.ub.cora.diva.tocorastorage.metrics.InMemoryMetrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
+import se.uu.ub.cora.spider.record.storage.RecordNotFoundException;
 
 public class DivaDbToCoraOrganisationTest {
 
@@ -328,4 +332,43 @@ public class DivaDbToCoraOrganisationTest {
 				.get(index);
 		assertTrue(firstSuccessorConverter.mapToConvert.containsKey("closed_date"));
 	}
+
+	@Test
+	public void testRecordReaderCallsAreRecordedInMetrics() throws Exception {
+		InMemoryMetrics metrics = InMemoryMetrics.usingSystemNanoTime();
+		DivaDbToCoraOrganisation measuredOrganisation = DivaDbToCoraOrganisation
+				.usingRecordReaderFactoryAndConverterFactoryAndMetrics(recordReaderFactory,
+						converterFactory, metrics);
+
+		measuredOrganisation.convertOneRowData(TABLE_NAME, "someId");
+
+		assertEquals(metrics.getTimerStatistics("db.readFromTableUsingConditions." + TABLE_NAME).getCount(), 1);
+		assertEquals(metrics.getTimerStatistics("db.readFromTable.divaOrganisationPredecessor")
+				.getCount(), 2);
+		assertTrue(toCoraOrganisation.getMetrics() instanceof NoOpMetrics);
+	}
+
+	@Test
+	public void testOrganisationNotFoundInDbThrowsRecordNotFound() throws Exception {
+		try {
+			toCoraOrganisation.convertOneRowData(TABLE_NAME, "someMissingId");
+			fail("RecordNotFoundException should have been thrown");
+		} catch (RecordNotFoundException e) {
+			assertEquals(e.getMessage(),
+					"Record not found in db for type: divaOrganisation and id: someMissingId");
+		}
+		RecordReaderSpy recordReader = recordReaderFactory.factored;
+		assertEquals(recordReader.usedTableNames.size(), 1);
+		assertEquals(converterFactory.factoredTypes.size(), 0);
+	}
+
+	@Test
+	public void testOrganisationIsReadAsListAsReadOneRowThrowsSameErrorForMissingRow()
+			throws Exception {
+		toCoraOrganisation.convertOneRowData(TABLE_NAME, "someId");
+
+		RecordReaderSpy recordReader = recordReaderFactory.factored;
+		assertFalse(recordReader.readOneRowWasCalled);
+		assertEquals(recordReader.usedConditionsList.get(0).get("id"), "someId");
+	}
 }
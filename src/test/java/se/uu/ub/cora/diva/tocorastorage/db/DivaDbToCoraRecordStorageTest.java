@@ -19,17 +19,37 @@
 package se.uu.ub.cora.diva.tocorastorage.db;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+import static se.uu.ub.cora.diva.tocorastorage.cache.DataGroupAssert.assertIsCopyOf;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import se.uu.ub.cora.bookkeeper.data.DataGroup;
+import se.uu.ub.cora.diva.tocorastorage.ConcurrentCallsRunner;
 import se.uu.ub.cora.diva.tocorastorage.NotImplementedException;
+import se.uu.ub.cora.diva.tocorastorage.cache.CacheWarmUpResult;
+import se.uu.ub.cora.diva.tocorastorage.cache.CacheWarmer;
+import se.uu.ub.cora.diva.tocorastorage.cache.ClockSpy;
+import se.uu.ub.cora.diva.tocorastorage.cache.NotFoundCache;
+import se.uu.ub.cora.diva.tocorastorage.cache.PassThroughRecordCache;
+import se.uu.ub.cora.diva.tocorastorage.cache.RecordCacheImp;
+import se.uu.ub.cora.diva.tocorastorage.metrics.InMemoryMetrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
 import se.uu.ub.cora.spider.data.SpiderReadResult;
+import se.uu.ub.cora.spider.record.storage.RecordNotFoundException;
 import se.uu.ub.cora.spider.record.storage.RecordStorage;
 
 public class DivaDbToCoraRecordStorageTest {
@@ -84,7 +104,7 @@ public class DivaDbToCoraRecordStorageTest {
 	public void testOrganisationFromDivaDbToCoraIsReturnedFromRead() throws Exception {
 		DataGroup readOrganisation = divaToCoraRecordStorage.read(TABLE_NAME, "someId");
 		DivaDbToCoraSpy factored = divaDbToCoraFactory.factored;
-		assertEquals(readOrganisation, factored.dataGroup);
+		assertIsCopyOf(readOrganisation, factored.dataGroup);
 	}
 
 	@Test(expectedExceptions = NotImplementedException.class, expectedExceptionsMessageRegExp = ""
@@ -219,4 +239,222 @@ public class DivaDbToCoraRecordStorageTest {
 		divaToCoraRecordStorage.recordExistsForAbstractOrImplementingRecordTypeAndRecordId(null,
 				null);
 	}
+
+	@Test
+	public void testReadListIsRecordedInMetrics() throws Exception {
+		InMemoryMetrics metrics = InMemoryMetrics.usingSystemNanoTime();
+		assertTrue(divaToCoraRecordStorage.getMetrics() instanceof NoOpMetrics);
+		divaToCoraRecordStorage.setMetrics(metrics);
+
+		divaToCoraRecordStorage.readList("divaOrganisation", DataGroup.withNameInData("filter"));
+
+		assertEquals(metrics.getTimerStatistics("db.readAllFromTable.divaOrganisation").getCount(),
+				1);
+	}
+
+	@Test
+	public void testReadAsyncRunsInCallingThreadByDefault() throws Exception {
+		CompletableFuture<DataGroup> future = divaToCoraRecordStorage.readAsync(TABLE_NAME,
+				"someId");
+
+		assertTrue(future.isDone());
+		assertIsCopyOf(future.get(), divaDbToCoraFactory.factored.dataGroup);
+		assertEquals(divaDbToCoraFactory.factored.id, "someId");
+	}
+
+	@Test
+	public void testReadAsyncUsesExecutor() throws Exception {
+		List<Runnable> queuedTasks = new ArrayList<>();
+		Executor executor = queuedTasks::add;
+		divaToCoraRecordStorage.setAsyncExecutor(executor);
+
+		CompletableFuture<DataGroup> future = divaToCoraRecordStorage.readAsync(TABLE_NAME,
+				"someId");
+
+		assertFalse(future.isDone());
+		assertEquals(queuedTasks.size(), 1);
+		queuedTasks.get(0).run();
+		assertIsCopyOf(future.get(), divaDbToCoraFactory.factored.dataGroup);
+		assertSame(divaToCoraRecordStorage.getAsyncExecutor(), executor);
+	}
+
+	@Test
+	public void testReadListAsync() throws Exception {
+		SpiderReadResult result = divaToCoraRecordStorage
+				.readListAsync(TABLE_NAME, DataGroup.withNameInData("filter")).get();
+
+		assertEquals(result.listOfDataGroups.size(),
+				recordReaderFactory.factored.returnedList.size());
+	}
+
+	@Test
+	public void testFailedReadAsyncCompletesExceptionally() throws Exception {
+		CompletableFuture<DataGroup> future = divaToCoraRecordStorage.readAsync("someType",
+				"someId");
+
+		try {
+			future.get();
+			fail("ExecutionException should have been thrown");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof NotImplementedException);
+			assertEquals(e.getCause().getMessage(), "read is not implemented for type: someType");
+		}
+	}
+
+	@Test
+	public void testConcurrentReadsOfSameOrganisationShareOneReadFromDb() throws Exception {
+		AtomicInteger numberOfReads = new AtomicInteger();
+		divaToCoraRecordStorage = DivaDbToCoraRecordStorage
+				.usingRecordReaderFactoryConverterFactoryAndDbToCoraFactory(recordReaderFactory,
+						converterFactory, type -> (organisationType, id) -> {
+							numberOfReads.incrementAndGet();
+							waitUntilNumberOfSharedOrganisationReadsIs(4);
+							return DataGroup.withNameInData(id);
+						});
+
+		List<DataGroup> organisations = ConcurrentCallsRunner.runCallsConcurrently(5, 5,
+				callNumber -> divaToCoraRecordStorage.read(TABLE_NAME, "someId"));
+
+		assertEquals(numberOfReads.get(), 1);
+		for (DataGroup organisation : organisations.subList(1, organisations.size())) {
+			assertIsCopyOf(organisation, organisations.get(0));
+		}
+		assertEquals(divaToCoraRecordStorage.getOrganisationReads().getSharedResultCount(), 4);
+	}
+
+	private void waitUntilNumberOfSharedOrganisationReadsIs(long numberOfSharedReads) {
+		long giveUpAt = System.currentTimeMillis() + 5000;
+		while (divaToCoraRecordStorage.getOrganisationReads()
+				.getSharedResultCount() < numberOfSharedReads
+				&& System.currentTimeMillis() < giveUpAt) {
+			Thread.yield();
+		}
+	}
+
+	@Test
+	public void testSequentialReadsOfSameOrganisationAreNotShared() throws Exception {
+		divaToCoraRecordStorage.read(TABLE_NAME, "someId");
+		DivaDbToCoraSpy firstRead = divaDbToCoraFactory.factored;
+		divaToCoraRecordStorage.read(TABLE_NAME, "someId");
+
+		assertNotSame(divaDbToCoraFactory.factored, firstRead);
+		assertEquals(divaToCoraRecordStorage.getOrganisationReads().getCallCount(), 2);
+	}
+
+	@Test
+	public void testDefaultNotFoundCacheRemembersNothing() throws Exception {
+		assertEquals(divaToCoraRecordStorage.getMissingOrganisations().getMaxSize(), 0);
+	}
+
+	@Test
+	public void testMissingOrganisationIsAnsweredFromNotFoundCache() throws Exception {
+		ClockSpy clock = new ClockSpy();
+		AtomicInteger numberOfReads = new AtomicInteger();
+		divaToCoraRecordStorage = DivaDbToCoraRecordStorage
+				.usingRecordReaderFactoryConverterFactoryAndDbToCoraFactory(recordReaderFactory,
+						converterFactory, type -> (organisationType, id) -> {
+							numberOfReads.incrementAndGet();
+							throw new RecordNotFoundException("not found in spy");
+						});
+		divaToCoraRecordStorage.setMissingOrganisations(
+				NotFoundCache.usingMaxSizeAndTimeToLiveInMillisAndClock(10, 1000, clock));
+
+		assertOrganisationIsNotFoundWithMessage("not found in spy");
+		assertOrganisationIsNotFoundWithMessage(
+				"Record not found in db for type: divaOrganisation and id: someMissingId");
+		assertEquals(numberOfReads.get(), 1);
+
+		clock.millis += 1000;
+		assertOrganisationIsNotFoundWithMessage("not found in spy");
+		assertEquals(numberOfReads.get(), 2);
+	}
+
+	private void assertOrganisationIsNotFoundWithMessage(String message) {
+		try {
+			divaToCoraRecordStorage.read(TABLE_NAME, "someMissingId");
+			fail("RecordNotFoundException should have been thrown");
+		} catch (RecordNotFoundException e) {
+			assertEquals(e.getMessage(), message);
+		}
+	}
+
+	@Test
+	public void testOtherErrorsAreNotRememberedInNotFoundCache() throws Exception {
+		divaToCoraRecordStorage = DivaDbToCoraRecordStorage
+				.usingRecordReaderFactoryConverterFactoryAndDbToCoraFactory(recordReaderFactory,
+						converterFactory, type -> (organisationType, id) -> {
+							throw new RuntimeException("db is down");
+						});
+		divaToCoraRecordStorage.setMissingOrganisations(
+				NotFoundCache.usingMaxSizeAndTimeToLiveInMillis(10, 1000));
+
+		try {
+			divaToCoraRecordStorage.read(TABLE_NAME, "someId");
+			fail("RuntimeException should have been thrown");
+		} catch (RuntimeException e) {
+			assertEquals(e.getMessage(), "db is down");
+		}
+		assertEquals(divaToCoraRecordStorage.getMissingOrganisations().getSize(), 0);
+	}
+
+	@Test
+	public void testDefaultOrganisationCacheDoesNotCache() throws Exception {
+		assertTrue(divaToCoraRecordStorage
+				.getOrganisationCache() instanceof PassThroughRecordCache);
+		divaToCoraRecordStorage.read(TABLE_NAME, "someId");
+		DivaDbToCoraSpy firstRead = divaDbToCoraFactory.factored;
+		divaToCoraRecordStorage.read(TABLE_NAME, "someId");
+
+		assertNotSame(divaDbToCoraFactory.factored, firstRead);
+	}
+
+	@Test
+	public void testReadOrganisationTwiceWithCacheOnlyReadsFromDbOnce() throws Exception {
+		divaToCoraRecordStorage.setOrganisationCache(
+				RecordCacheImp.usingMaxSizeAndTimeToLiveInMillis(10, 60000));
+
+		DataGroup firstRead = divaToCoraRecordStorage.read(TABLE_NAME, "someId");
+		DivaDbToCoraSpy factoredForFirstRead = divaDbToCoraFactory.factored;
+		DataGroup secondRead = divaToCoraRecordStorage.read(TABLE_NAME, "someId");
+
+		assertIsCopyOf(secondRead, firstRead);
+		assertSame(divaDbToCoraFactory.factored, factoredForFirstRead);
+	}
+
+	@Test
+	public void testOrganisationsAreWarmedUpIntoOrganisationCache() throws Exception {
+		divaToCoraRecordStorage.setOrganisationCache(
+				RecordCacheImp.usingMaxSizeAndTimeToLiveInMillis(10, 60000));
+		recordReaderFactory.noOfRecordsToReturn = 2;
+		CacheWarmer cacheWarmer = CacheWarmer
+				.usingMaxNumberOfParallelReadsAndMaxReadsPerSecond(1, 1000);
+
+		divaToCoraRecordStorage.addOrganisationsToCacheWarmUp(cacheWarmer);
+		CacheWarmUpResult result = cacheWarmer.startUsingExecutor(Runnable::run).get();
+
+		assertEquals(result.getNumberOfReadRecords(), 2);
+		assertEquals(recordReaderFactory.factored.usedTableName, TABLE_NAME);
+		assertEquals(divaDbToCoraFactory.factored.id, "someId1");
+		assertEquals(divaToCoraRecordStorage.getOrganisationCache().getStatistics().getSize(), 2);
+
+		DivaDbToCoraSpy factoredInWarmUp = divaDbToCoraFactory.factored;
+		divaToCoraRecordStorage.read(TABLE_NAME, "someId1");
+		assertSame(divaDbToCoraFactory.factored, factoredInWarmUp);
+	}
+
+	@Test
+	public void testOrganisationWarmUpStopsWhenOrganisationCacheIsFull() throws Exception {
+		divaToCoraRecordStorage.setOrganisationCache(
+				RecordCacheImp.usingMaxSizeAndTimeToLiveInMillis(1, 60000));
+		recordReaderFactory.noOfRecordsToReturn = 2;
+		CacheWarmer cacheWarmer = CacheWarmer
+				.usingMaxNumberOfParallelReadsAndMaxReadsPerSecond(1, 1000);
+
+		divaToCoraRecordStorage.addOrganisationsToCacheWarmUp(cacheWarmer);
+		CacheWarmUpResult result = cacheWarmer.startUsingExecutor(Runnable::run).get();
+
+		assertEquals(result.getNumberOfReadRecords(), 1);
+		assertEquals(divaDbToCoraFactory.factored.id, "someId0");
+		assertEquals(divaToCoraRecordStorage.getOrganisationCache().getStatistics().getSize(), 1);
+	}
 }
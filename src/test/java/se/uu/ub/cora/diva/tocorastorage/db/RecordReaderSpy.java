@@ -37,6 +37,7 @@ public class RecordReaderSpy implements RecordReader {
 	public int numOfSuccessorsToReturn = 0;
 
 	public Map<String, String> oneRowRead;
+	public boolean readOneRowWasCalled = false;
 	public List<Map<String, String>> predecessorsToReturn = new ArrayList<>();
 	public List<Map<String, String>> successorsToReturn = new ArrayList<>();
 
@@ -48,6 +49,7 @@ public class RecordReaderSpy implements RecordReader {
 		for (int i = 0; i < noOfRecordsToReturn; i++) {
 			Map<String, String> map = new HashMap<>();
 			map.put("someKey" + i, "someValue" + i);
+			map.put("id", "someId" + i);
 			returnedList.add(map);
 		}
 		return returnedList;
@@ -56,10 +58,15 @@ public class RecordReaderSpy implements RecordReader {
 	@Override
 	public Map<String, String> readOneRowFromDbUsingTableAndConditions(String tableName,
 			Map<String, String> conditions) {
+		readOneRowWasCalled = true;
 		usedTableName = tableName;
 		usedTableNames.add(usedTableName);
 		usedConditions = conditions;
 		usedConditionsList.add(usedConditions);
+		return createOneRow(conditions);
+	}
+
+	private Map<String, String> createOneRow(Map<String, String> conditions) {
 		Map<String, String> map = new HashMap<>();
 		map.put("someKey", "someValue");
 		if (conditions.containsKey("id")) {
@@ -81,6 +88,9 @@ public class RecordReaderSpy implements RecordReader {
 		usedTableNames.add(usedTableName);
 		usedConditions = conditions;
 		usedConditionsList.add(usedConditions);
+		if (conditions.containsKey("id")) {
+			return createRowsForId(conditions);
+		}
 		if (numOfPredecessorsToReturn == -1 || numOfSuccessorsToReturn == -1) {
 			return null;
 		}
@@ -110,6 +120,14 @@ public class RecordReaderSpy implements RecordReader {
 		return successorsToReturn;
 	}
 
+	private List<Map<String, String>> createRowsForId(Map<String, String> conditions) {
+		List<Map<String, String>> rows = new ArrayList<>();
+		if (!"someMissingId".equals(conditions.get("id"))) {
+			rows.add(createOneRow(conditions));
+		}
+		return rows;
+	}
+
 	private List<Map<String, String>> createListToReturn(int numToReturn) {
 		List<Map<String, String>> listToReturn = new ArrayList<>();
 		for (int i = 0; i < numToReturn; i++) {
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.bookkeeper.data.DataAtomic;
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+
+public class DataGroupJsonWriterTest {
+
+	@Test
+	public void testEmptyGroup() throws Exception {
+		DataGroup person = DataGroup.withNameInData("person");
+
+		assertEquals(DataGroupJsonWriter.toJson(person), "{\"name\":\"person\",\"children\":[]}");
+	}
+
+	@Test
+	public void testGroupWithChildrenAttributesAndRepeatIds() throws Exception {
+		DataGroup person = DataGroup.withNameInData("person");
+		DataGroup name = DataGroup.withNameInData("name");
+		name.addAttributeByIdWithValue("type", "authorized");
+		name.setRepeatId("1");
+		DataAtomic familyName = DataAtomic.withNameInDataAndValue("familyName", "Svensson");
+		familyName.setRepeatId("0");
+		name.addChild(familyName);
+		person.addChild(name);
+		person.addChild(DataAtomic.withNameInDataAndValue("id", "authority-person:1"));
+
+		assertEquals(DataGroupJsonWriter.toJson(person), "{\"name\":\"person\",\"children\":["
+				+ "{\"name\":\"name\",\"children\":[{\"name\":\"familyName\",\"value\":\"Svensson\""
+				+ ",\"repeatId\":\"0\"}],\"attributes\":{\"type\":\"authorized\"},\"repeatId\":\"1\"}"
+				+ ",{\"name\":\"id\",\"value\":\"authority-person:1\"}]}");
+	}
+
+	@Test
+	public void testValuesAreEscaped() throws Exception {
+		DataGroup person = DataGroup.withNameInData("person");
+		person.addChild(DataAtomic.withNameInDataAndValue("note",
+				"\"quoted\" back\\slash\nnew\rline\ttab\u0001Åsa"));
+
+		assertEquals(DataGroupJsonWriter.toJson(person), "{\"name\":\"person\",\"children\":["
+				+ "{\"name\":\"note\",\"value\":\"\\\"quoted\\\" back\\\\slash\\nnew"
+				+ "\\rline\\ttab\\u0001Åsa\"}]}");
+	}
+
+	@Test
+	public void testMissingValuesAreWrittenAsNull() throws Exception {
+		DataGroup person = DataGroup.withNameInData("person");
+		person.addAttributeByIdWithValue("type", null);
+		person.addChild(DataAtomic.withNameInDataAndValue("note", null));
+
+		assertEquals(DataGroupJsonWriter.toJson(person), "{\"name\":\"person\",\"children\":["
+				+ "{\"name\":\"note\",\"value\":null}],\"attributes\":{\"type\":null}}");
+	}
+}
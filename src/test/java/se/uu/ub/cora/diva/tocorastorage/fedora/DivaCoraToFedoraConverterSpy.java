@@ -23,13 +23,30 @@ import se.uu.ub.cora.bookkeeper.data.DataGroup;
 public class DivaCoraToFedoraConverterSpy implements DivaCoraToFedoraConverter {
 
 	public DataGroup record;
+	public String sourceXML;
 	public String returnedXML = "<dummy>Dummy xml from DivaCoraToFedoraConverterSpy</dummy>";
+	public String nameInDataToThrowExceptionFor;
 
 	@Override
 	public String toXML(DataGroup record) {
 
 		this.record = record;
+		possiblyThrowExceptionForRecord(record);
 		return returnedXML;
 	}
 
+	@Override
+	public String toXMLUsingSourceXML(DataGroup record, String sourceXML) {
+		this.record = record;
+		this.sourceXML = sourceXML;
+		possiblyThrowExceptionForRecord(record);
+		return returnedXML;
+	}
+
+	private void possiblyThrowExceptionForRecord(DataGroup record) {
+		if (record.getNameInData().equals(nameInDataToThrowExceptionFor)) {
+			throw new RuntimeException("Error thrown from DivaCoraToFedoraConverterSpy");
+		}
+	}
+
 }
@@ -20,11 +20,15 @@ package se.uu.ub.cora.diva.tocorastorage.fedora;
 
 import static org.testng.Assert.assertEquals;
 
+import java.util.List;
+
 import org.testng.annotations.Test;
 
 import resources.ResourceReader;
 import se.uu.ub.cora.bookkeeper.data.DataAtomic;
 import se.uu.ub.cora.bookkeeper.data.DataGroup;
+import se.uu.ub.cora.diva.tocorastorage.ConcurrentCallsRunner;
+import se.uu.ub.cora.diva.tocorastorage.metrics.InMemoryMetrics;
 
 public class DivaCoraToFedoraPersonConverterTest {
 	@Test
@@ -50,6 +54,19 @@ public class DivaCoraToFedoraPersonConverterTest {
 
 	}
 
+	@Test
+	public void testConvertToFedoraXMLUsingSourceXMLDoesNotReadFromFedora() throws Exception {
+		HttpHandlerFactorySpy httpHandlerFactory = new HttpHandlerFactorySpy();
+		DivaCoraToFedoraConverter converter = DivaCoraToFedoraPersonConverter
+				.usingHttpHandlerFactoryAndFedoraUrl(httpHandlerFactory, "someFedoraURL");
+		String sourceXML = ResourceReader.readResourceAsString("person/11685.xml");
+
+		String xml = converter.toXMLUsingSourceXML(createPerson11685DataGroup(), sourceXML);
+
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 0);
+		assertEquals(xml, ResourceReader.readResourceAsString("person/expectedUpdated11685.xml"));
+	}
+
 	private DataGroup createPerson11685DataGroup() {
 		DataGroup record = DataGroup.withNameInData("authorityPerson");
 		DataGroup recordInfo = DataGroup.withNameInData("recordInfo");
@@ -68,4 +85,70 @@ public class DivaCoraToFedoraPersonConverterTest {
 		return record;
 	}
 
+
+	@Test
+	public void testSameConverterGivesCorrectResultsFromManyThreads() throws Exception {
+		DivaCoraToFedoraConverter converter = DivaCoraToFedoraPersonConverter
+				.usingHttpHandlerFactoryAndFedoraUrl(new HttpHandlerFactorySpy(), "someFedoraURL");
+		String sourceXML = ResourceReader.readResourceAsString("person/11685.xml");
+
+		List<String> xmls = ConcurrentCallsRunner.runCallsConcurrently(8, 300,
+				callNumber -> converter.toXMLUsingSourceXML(
+						createPersonWithFamilyName("Andersson" + callNumber), sourceXML));
+
+		for (int i = 0; i < xmls.size(); i++) {
+			XMLXPathParser parser = XMLXPathParser.forXML(xmls.get(i));
+			assertEquals(parser.getStringFromDocumentUsingXPath(
+					"/authorityPerson/defaultName/lastname/text()"), "Andersson" + i);
+		}
+	}
+
+	private DataGroup createPersonWithFamilyName(String familyName) {
+		DataGroup record = createPerson11685DataGroup();
+		DataGroup authorizedName = record.getFirstGroupWithNameInData("authorizedName");
+		authorizedName.removeFirstChildWithNameInData("familyName");
+		authorizedName.addChild(DataAtomic.withNameInDataAndValue("familyName", familyName));
+		return record;
+	}
+
+	@Test
+	public void testToXMLIsRecordedInMetrics() throws Exception {
+		InMemoryMetrics metrics = InMemoryMetrics.usingSystemNanoTime();
+		HttpHandlerFactorySpy httpHandlerFactory = new HttpHandlerFactorySpy();
+		httpHandlerFactory.responseText = ResourceReader.readResourceAsString("person/11685.xml");
+		DivaCoraToFedoraConverter converter = DivaCoraToFedoraPersonConverter
+				.usingHttpHandlerFactoryAndFedoraUrlAndMetrics(httpHandlerFactory,
+						"someFedoraURL", metrics);
+
+		converter.toXML(createPerson11685DataGroup());
+
+		assertEquals(metrics.getTimerStatistics("fedora.http.readPersonForUpdate").getCount(), 1);
+		assertEquals(metrics.getCount("fedora.http.readPersonForUpdate.200"), 1);
+		assertEquals(metrics.getTimerStatistics("converter.person.toXML").getCount(), 1);
+		assertEquals(metrics.getTimerStatistics("xml.parse").getCount(), 1);
+		assertEquals(metrics.getTimerStatistics("xml.serialize").getCount(), 1);
+	}
+
+	@Test
+	public void testFailedReadBeforeUpdateIsRetried() throws Exception {
+		InMemoryMetrics metrics = InMemoryMetrics.usingSystemNanoTime();
+		HttpHandlerFactorySpy httpHandlerFactory = new HttpHandlerFactorySpy();
+		httpHandlerFactory.responseText = ResourceReader.readResourceAsString("person/11685.xml");
+		httpHandlerFactory.numberOfExceptionsForUrls.put(
+				"someFedoraURL" + "objects/authority-person:11685/datastreams/METADATA/content", 1);
+		DivaCoraToFedoraPersonConverter converter = DivaCoraToFedoraPersonConverter
+				.usingHttpHandlerFactoryAndFedoraUrlAndMetrics(httpHandlerFactory,
+						"someFedoraURL", metrics);
+		converter.setRetrier(FedoraRetrierImp
+				.usingMaxAttemptsAndBaseDelayAndMaxDelayInMillisAndSleeperAndJitter(2, 10, 100,
+						delay -> {
+						}, () -> 0.5));
+
+		String xml = converter.toXML(createPerson11685DataGroup());
+
+		assertEquals(xml, ResourceReader.readResourceAsString("person/expectedUpdated11685.xml"));
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 2);
+		assertEquals(metrics.getCount("fedora.http.readPersonForUpdate.failed"), 1);
+		assertEquals(metrics.getCount("fedora.retry.readPersonForUpdate.recovered"), 1);
+	}
 }
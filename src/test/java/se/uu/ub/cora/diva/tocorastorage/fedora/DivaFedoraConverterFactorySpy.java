@@ -19,14 +19,18 @@
 package se.uu.ub.cora.diva.tocorastorage.fedora;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class DivaFedoraConverterFactorySpy implements DivaFedoraConverterFactory {
 
-	List<DivaFedoraToCoraConverter> factoredConverters = new ArrayList<>();
-	List<String> factoredTypes = new ArrayList<>();
-	List<DivaCoraToFedoraConverter> factoredToFedoraConverters = new ArrayList<>();
-	public List<String> factoredToFedoraTypes = new ArrayList<>();
+	List<DivaFedoraToCoraConverter> factoredConverters = Collections
+			.synchronizedList(new ArrayList<>());
+	List<String> factoredTypes = Collections.synchronizedList(new ArrayList<>());
+	List<DivaCoraToFedoraConverter> factoredToFedoraConverters = Collections
+			.synchronizedList(new ArrayList<>());
+	public List<String> factoredToFedoraTypes = Collections.synchronizedList(new ArrayList<>());
+	public String toFedoraNameInDataToThrowExceptionFor;
 
 	@Override
 	public DivaFedoraToCoraConverter factorToCoraConverter(String type) {
@@ -39,7 +43,8 @@ public class DivaFedoraConverterFactorySpy implements DivaFedoraConverterFactory
 	@Override
 	public DivaCoraToFedoraConverter factorToFedoraConverter(String type) {
 		factoredToFedoraTypes.add(type);
-		DivaCoraToFedoraConverter converter = new DivaCoraToFedoraConverterSpy();
+		DivaCoraToFedoraConverterSpy converter = new DivaCoraToFedoraConverterSpy();
+		converter.nameInDataToThrowExceptionFor = toFedoraNameInDataToThrowExceptionFor;
 		factoredToFedoraConverters.add(converter);
 
 		return converter;
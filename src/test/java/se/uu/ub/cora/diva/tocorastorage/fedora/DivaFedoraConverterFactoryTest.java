@@ -19,12 +19,15 @@
 package se.uu.ub.cora.diva.tocorastorage.fedora;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import se.uu.ub.cora.diva.tocorastorage.NotImplementedException;
+import se.uu.ub.cora.diva.tocorastorage.metrics.InMemoryMetrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
 import se.uu.ub.cora.httphandler.HttpHandlerFactoryImp;
 
 public class DivaFedoraConverterFactoryTest {
@@ -49,6 +52,14 @@ public class DivaFedoraConverterFactoryTest {
 		assertTrue(converter instanceof DivaFedoraToCoraPersonConverter);
 	}
 
+	@Test
+	public void testFactoryStreamingPerson() throws Exception {
+		divaToCoraConverterFactoryImp.setUseStreamingPersonConverter(true);
+		DivaFedoraToCoraConverter converter = divaToCoraConverterFactoryImp
+				.factorToCoraConverter("person");
+		assertTrue(converter instanceof DivaFedoraToCoraPersonStreamingConverter);
+	}
+
 	@Test(expectedExceptions = NotImplementedException.class, expectedExceptionsMessageRegExp = ""
 			+ "No converter implemented for: someType")
 	public void factorToFedoraUnknownTypeThrowsException() throws Exception {
@@ -74,4 +85,66 @@ public class DivaFedoraConverterFactoryTest {
 	public void testGetFedoraURLNeededForTests() throws Exception {
 		assertEquals(divaToCoraConverterFactoryImp.getFedoraURL(), fedoraURL);
 	}
+
+	@Test
+	public void testFactoryReturnsSameConverterForEachCall() throws Exception {
+		assertSame(divaToCoraConverterFactoryImp.factorToCoraConverter("person"),
+				divaToCoraConverterFactoryImp.factorToCoraConverter("person"));
+		assertSame(divaToCoraConverterFactoryImp.factorToFedoraConverter("person"),
+				divaToCoraConverterFactoryImp.factorToFedoraConverter("person"));
+		divaToCoraConverterFactoryImp.setUseStreamingPersonConverter(true);
+		assertSame(divaToCoraConverterFactoryImp.factorToCoraConverter("person"),
+				divaToCoraConverterFactoryImp.factorToCoraConverter("person"));
+	}
+
+	@Test
+	public void testDefaultMetricsIsNoOp() throws Exception {
+		assertTrue(divaToCoraConverterFactoryImp.getMetrics() instanceof NoOpMetrics);
+	}
+
+	@Test
+	public void testMetricsArePassedToConverters() throws Exception {
+		InMemoryMetrics metrics = InMemoryMetrics.usingSystemNanoTime();
+		DivaFedoraConverterFactoryImp factory = DivaFedoraConverterFactoryImp
+				.usingFedoraURLAndMetrics("someFedoraUrl", metrics);
+
+		assertSame(factory.getMetrics(), metrics);
+		assertSame(((DivaFedoraToCoraPersonConverter) factory.factorToCoraConverter("person"))
+				.getMetrics(), metrics);
+		assertSame(((DivaCoraToFedoraPersonConverter) factory.factorToFedoraConverter("person"))
+				.getMetrics(), metrics);
+		factory.setUseStreamingPersonConverter(true);
+		assertSame(((DivaFedoraToCoraPersonStreamingConverter) factory
+				.factorToCoraConverter("person")).getMetrics(), metrics);
+	}
+
+	@Test
+	public void testHttpHandlerFactoryIsSharedWithConverters() throws Exception {
+		HttpHandlerFactorySpy httpHandlerFactory = new HttpHandlerFactorySpy();
+		InMemoryMetrics metrics = InMemoryMetrics.usingSystemNanoTime();
+		DivaFedoraConverterFactoryImp factory = DivaFedoraConverterFactoryImp
+				.usingHttpHandlerFactoryAndFedoraURLAndMetrics(httpHandlerFactory, fedoraURL,
+						metrics);
+
+		DivaCoraToFedoraPersonConverter converter = (DivaCoraToFedoraPersonConverter) factory
+				.factorToFedoraConverter("person");
+		assertSame(factory.getHttpHandlerFactory(), httpHandlerFactory);
+		assertSame(converter.getHttpHandlerFactory(), httpHandlerFactory);
+		assertEquals(converter.getFedorURL(), fedoraURL);
+		assertSame(factory.getMetrics(), metrics);
+	}
+
+	@Test
+	public void testRetrierIsSetInToFedoraPersonConverter() throws Exception {
+		DivaCoraToFedoraPersonConverter converter = (DivaCoraToFedoraPersonConverter) divaToCoraConverterFactoryImp
+				.factorToFedoraConverter("person");
+		assertTrue(converter.getRetrier() instanceof NoRetryFedoraRetrier);
+
+		FedoraRetrier retrier = FedoraRetrierImp
+				.usingMaxAttemptsAndBaseDelayAndMaxDelayInMillis(3, 10, 100);
+		divaToCoraConverterFactoryImp.setRetrier(retrier);
+
+		assertSame(converter.getRetrier(), retrier);
+		assertSame(divaToCoraConverterFactoryImp.getRetrier(), retrier);
+	}
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.bookkeeper.data.DataAtomic;
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
+import se.uu.ub.cora.httphandler.HttpHandlerFactoryImp;
+
+public class DivaFedoraRecordStorageFakeFedoraTest {
+	private static final int NUMBER_OF_PERSONS = 25;
+	private FakeFedoraServer fedora;
+	private DivaFedoraRecordStorage recordStorage;
+
+	@BeforeMethod
+	public void beforeMethod() throws IOException {
+		fedora = FakeFedoraServer.usingNumberOfPersons(NUMBER_OF_PERSONS);
+		fedora.start();
+		String baseURL = fedora.getBaseURL();
+		recordStorage = DivaFedoraRecordStorage
+				.usingHttpHandlerFactoryAndConverterFactoryAndBaseURLAndUsernameAndPassword(
+						new HttpHandlerFactoryImp(),
+						DivaFedoraConverterFactoryImp.usingFedoraURL(baseURL), baseURL,
+						"fedoraUser", "fedoraPassword");
+		recordStorage.setStreamingHttpHandlerFactory(new StreamingHttpHandlerFactoryImp());
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		fedora.stop();
+	}
+
+	@Test
+	public void testReadPerson() throws Exception {
+		DataGroup person = recordStorage.read("person", "authority-person:7");
+
+		assertEquals(getId(person), "authority-person:7");
+		assertEquals(getFamilyName(person), "Svensson7");
+	}
+
+	private String getId(DataGroup person) {
+		return person.getFirstGroupWithNameInData("recordInfo")
+				.getFirstAtomicValueWithNameInData("id");
+	}
+
+	private String getFamilyName(DataGroup person) {
+		return person.getFirstGroupWithNameInData("authorizedName")
+				.getFirstAtomicValueWithNameInData("familyName");
+	}
+
+	@Test
+	public void testReadListReadsAllPersonsInParallelUsingPaging() throws Exception {
+		fedora.setLatencyInMillis(5);
+		recordStorage.setPersonListPageSize(10);
+		recordStorage.setParallelExecutor(ParallelFedoraExecutor.usingMaxNumberOfParallelCalls(8));
+
+		List<DataGroup> persons = recordStorage.readList("person",
+				createFilterWithToNo(NUMBER_OF_PERSONS)).listOfDataGroups;
+
+		assertEquals(persons.size(), NUMBER_OF_PERSONS);
+		assertEquals(fedora.getNumberOfRequests(), 3 + NUMBER_OF_PERSONS);
+	}
+
+	private DataGroup createFilterWithToNo(int toNo) {
+		DataGroup filter = DataGroup.withNameInData("filter");
+		filter.addChild(DataAtomic.withNameInDataAndValue("toNo", String.valueOf(toNo)));
+		return filter;
+	}
+
+	@Test
+	public void testUpdatePersonIsWrittenToFedora() throws Exception {
+		DataGroup person = recordStorage.read("person", "authority-person:3");
+		setFamilyName(person, "Updated");
+
+		recordStorage.update("person", "authority-person:3", person, null, null, "diva");
+
+		assertTrue(fedora.getPersonXML("authority-person:3")
+				.contains("<lastname>Updated</lastname>"));
+		assertEquals(getFamilyName(recordStorage.read("person", "authority-person:3")),
+				"Updated");
+	}
+
+	private void setFamilyName(DataGroup person, String familyName) {
+		DataGroup authorizedName = person.getFirstGroupWithNameInData("authorizedName");
+		authorizedName.removeFirstChildWithNameInData("familyName");
+		authorizedName.addChild(DataAtomic.withNameInDataAndValue("familyName", familyName));
+	}
+
+	@Test
+	public void testUpdateUsingSourceXMLCacheOnlyReadsProfileBeforeWriting() throws Exception {
+		recordStorage.setSourceXMLCache(FedoraSourceXMLCache.usingMaxSize(10));
+		DataGroup person = recordStorage.read("person", "authority-person:4");
+		int numberOfRequestsAfterRead = fedora.getNumberOfRequests();
+		setFamilyName(person, "Updated");
+
+		recordStorage.update("person", "authority-person:4", person, null, null, "diva");
+
+		assertEquals(fedora.getNumberOfRequests() - numberOfRequestsAfterRead, 2);
+		String writtenXML = fedora.getPersonXML("authority-person:4");
+		assertTrue(writtenXML.contains("<lastname>Updated</lastname>"));
+		assertTrue(writtenXML.contains("<firstname>Sven</firstname>"));
+	}
+
+	@Test
+	public void testUpdateUsingSourceXMLCacheFallsBackOnConflict() throws Exception {
+		recordStorage.setSourceXMLCache(FedoraSourceXMLCache.usingMaxSize(10));
+		DataGroup person = recordStorage.read("person", "authority-person:4");
+		fedora.setPersonXML("authority-person:4",
+				fedora.getPersonXML("authority-person:4").replace("<firstname>Sven</firstname>",
+						"<firstname>Changed</firstname>"));
+		setFamilyName(person, "Updated");
+
+		recordStorage.update("person", "authority-person:4", person, null, null, "diva");
+
+		String writtenXML = fedora.getPersonXML("authority-person:4");
+		assertTrue(writtenXML.contains("<lastname>Updated</lastname>"));
+		assertTrue(writtenXML.contains("<firstname>Sven</firstname>"));
+	}
+
+	@Test
+	public void testKeepAliveHttpHandlerFactoryReusesConnections() throws Exception {
+		String baseURL = fedora.getBaseURL();
+		KeepAliveHttpHandlerFactory httpHandlerFactory = KeepAliveHttpHandlerFactory
+				.usingConnectTimeoutAndReadTimeoutInMillis(1000, 5000);
+		DivaFedoraRecordStorage keepAliveStorage = DivaFedoraRecordStorage
+				.usingHttpHandlerFactoryAndConverterFactoryAndBaseURLAndUsernameAndPassword(
+						httpHandlerFactory,
+						DivaFedoraConverterFactoryImp.usingHttpHandlerFactoryAndFedoraURLAndMetrics(
+								httpHandlerFactory, baseURL, new NoOpMetrics()),
+						baseURL, "fedoraUser", "fedoraPassword");
+		keepAliveStorage.setSourceXMLCache(FedoraSourceXMLCache.usingMaxSize(100));
+		keepAliveStorage.setPersonListPageSize(10);
+
+		List<DataGroup> persons = keepAliveStorage.readList("person",
+				createFilterWithToNo(NUMBER_OF_PERSONS)).listOfDataGroups;
+		for (DataGroup person : persons.subList(0, 5)) {
+			setFamilyName(person, "Updated");
+			keepAliveStorage.update("person", getId(person), person, null, null, "diva");
+		}
+
+		assertEquals(persons.size(), NUMBER_OF_PERSONS);
+		assertTrue(fedora.getNumberOfRequests() > NUMBER_OF_PERSONS + 10);
+		assertEquals(fedora.getNumberOfConnections(), 1,
+				"connections: " + fedora.getNumberOfConnections());
+	}
+
+	@Test
+	public void testReadAsyncWaitsForSlowestReadNotSumOfReads() throws Exception {
+		fedora.setLatencyInMillis(200);
+		ExecutorService executor = Executors.newFixedThreadPool(10);
+		try {
+			recordStorage.setAsyncExecutor(executor);
+			long start = System.nanoTime();
+
+			List<CompletableFuture<DataGroup>> reads = new ArrayList<>();
+			for (int i = 1; i <= 10; i++) {
+				reads.add(recordStorage.readAsync("person", "authority-person:" + i));
+			}
+			CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).get(5,
+					TimeUnit.SECONDS);
+
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			assertTrue(elapsedMillis < 1000, "elapsed: " + elapsedMillis);
+			assertEquals(getId(reads.get(9).get()), "authority-person:10");
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
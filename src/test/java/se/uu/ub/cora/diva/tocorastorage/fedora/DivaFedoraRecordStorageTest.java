@@ -19,22 +19,58 @@
 package se.uu.ub.cora.diva.tocorastorage.fedora;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+import static se.uu.ub.cora.diva.tocorastorage.cache.DataGroupAssert.assertIsCopyOf;
+import static se.uu.ub.cora.diva.tocorastorage.fedora.FedoraPidListXMLCreator.createXMLForPidListUsingTokenAndPids;
 
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import se.uu.ub.cora.bookkeeper.data.DataAtomic;
 import se.uu.ub.cora.bookkeeper.data.DataGroup;
+import se.uu.ub.cora.diva.tocorastorage.ConcurrentCallsRunner;
 import se.uu.ub.cora.diva.tocorastorage.FedoraException;
 import se.uu.ub.cora.diva.tocorastorage.NotImplementedException;
+import se.uu.ub.cora.diva.tocorastorage.cache.CacheWarmUpResult;
+import se.uu.ub.cora.diva.tocorastorage.cache.CacheWarmer;
+import se.uu.ub.cora.diva.tocorastorage.cache.ClockSpy;
+import se.uu.ub.cora.diva.tocorastorage.cache.DiskBackedRecordCache;
+import se.uu.ub.cora.diva.tocorastorage.cache.DiskRecordStore;
+import se.uu.ub.cora.diva.tocorastorage.cache.NotFoundCache;
+import se.uu.ub.cora.diva.tocorastorage.cache.PassThroughRecordCache;
+import se.uu.ub.cora.diva.tocorastorage.cache.RecordCacheImp;
+import se.uu.ub.cora.diva.tocorastorage.cache.RecordCacheStatistics;
+import se.uu.ub.cora.diva.tocorastorage.cache.SingleFlight;
+import se.uu.ub.cora.diva.tocorastorage.fedora.StreamingHttpHandlerFactorySpy.StreamingHttpHandlerSpy;
+import se.uu.ub.cora.diva.tocorastorage.metrics.InMemoryMetrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
+import se.uu.ub.cora.spider.data.SpiderReadResult;
+import se.uu.ub.cora.spider.record.storage.RecordNotFoundException;
 import se.uu.ub.cora.spider.record.storage.RecordStorage;
 
 public class DivaFedoraRecordStorageTest {
@@ -86,7 +122,314 @@ public class DivaFedoraRecordStorageTest {
 		DivaFedoraToCoraConverterSpy divaToCoraConverter = (DivaFedoraToCoraConverterSpy) converterFactory.factoredConverters
 				.get(0);
 		assertEquals(divaToCoraConverter.xml, httpHandlerFactory.responseText);
-		assertEquals(readPerson, divaToCoraConverter.convertedDataGroup);
+		assertIsCopyOf(readPerson, divaToCoraConverter.convertedDataGroup);
+	}
+
+	@Test
+	public void testDefaultPersonCacheDoesNotCache() throws Exception {
+		assertTrue(divaToCoraRecordStorage.getPersonCache() instanceof PassThroughRecordCache);
+		divaToCoraRecordStorage.read("person", "authority-person:11685");
+		divaToCoraRecordStorage.read("person", "authority-person:11685");
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 2);
+	}
+
+	@Test
+	public void readPersonTwiceWithCacheOnlyCallsFedoraOnce() throws Exception {
+		divaToCoraRecordStorage
+				.setPersonCache(RecordCacheImp.usingMaxSizeAndTimeToLiveInMillis(10, 60000));
+
+		DataGroup firstRead = divaToCoraRecordStorage.read("person", "authority-person:11685");
+		DataGroup secondRead = divaToCoraRecordStorage.read("person", "authority-person:11685");
+
+		assertIsCopyOf(secondRead, firstRead);
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 1);
+		assertEquals(converterFactory.factoredConverters.size(), 1);
+		RecordCacheStatistics statistics = divaToCoraRecordStorage.getPersonCacheStatistics();
+		assertEquals(statistics.getHitCount(), 1);
+		assertEquals(statistics.getMissCount(), 1);
+	}
+
+	@Test
+	public void updatePersonInvalidatesCachedPerson() throws Exception {
+		divaToCoraRecordStorage
+				.setPersonCache(RecordCacheImp.usingMaxSizeAndTimeToLiveInMillis(10, 60000));
+		divaToCoraRecordStorage.read("person", "diva-person:2233");
+
+		divaToCoraRecordStorage.update("person", "diva-person:2233",
+				DataGroup.withNameInData("authority"), createCollectTermsWithRecordLabel(), null,
+				null);
+		divaToCoraRecordStorage.read("person", "diva-person:2233");
+
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 3);
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.get(2).requestMetod, "GET");
+		assertEquals(divaToCoraRecordStorage.getPersonCacheStatistics().getInvalidationCount(),
+				1);
+	}
+
+	@Test
+	public void failedUpdateAlsoInvalidatesCachedPerson() throws Exception {
+		divaToCoraRecordStorage
+				.setPersonCache(RecordCacheImp.usingMaxSizeAndTimeToLiveInMillis(10, 60000));
+		divaToCoraRecordStorage.read("person", "diva-person:2233");
+		httpHandlerFactory.responseCode = 500;
+		try {
+			divaToCoraRecordStorage.update("person", "diva-person:2233",
+					DataGroup.withNameInData("authority"), createCollectTermsWithRecordLabel(),
+					null, null);
+			fail("FedoraException should have been thrown");
+		} catch (FedoraException e) {
+			assertEquals(divaToCoraRecordStorage.getPersonCacheStatistics().getSize(), 0);
+		}
+	}
+
+	@Test
+	public void readPersonListUsesPersonCache() throws Exception {
+		divaToCoraRecordStorage
+				.setPersonCache(RecordCacheImp.usingMaxSizeAndTimeToLiveInMillis(10, 60000));
+		httpHandlerFactory.responseText = createXMLForPersonList();
+		divaToCoraRecordStorage.read("person", "authority-person:12685");
+
+		divaToCoraRecordStorage.readList("person", DataGroup.withNameInData("filter"));
+
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 4);
+		assertEquals(divaToCoraRecordStorage.getPersonCacheStatistics().getHitCount(), 1);
+	}
+
+	@Test
+	public void expiredPersonWithoutVersionIsReadAgainUsingOneRequest() throws Exception {
+		ClockSpy clock = setUpPersonCacheWithClock();
+		DataGroup firstRead = divaToCoraRecordStorage.read("person", "authority-person:11685");
+		clock.millis += 100;
+
+		DataGroup readAfterExpiry = divaToCoraRecordStorage.read("person",
+				"authority-person:11685");
+
+		assertNotSame(readAfterExpiry, firstRead);
+		assertEquals(httpHandlerFactory.urls,
+				Arrays.asList(CONTENT_URL_11685, CONTENT_URL_11685));
+		assertEquals(converterFactory.factoredConverters.size(), 2);
+	}
+
+	@Test
+	public void expiredPersonIsRevalidatedUsingDatastreamProfile() throws Exception {
+		ClockSpy clock = setUpPersonCacheWithClock();
+		divaToCoraRecordStorage.setSourceXMLCache(FedoraSourceXMLCache.usingMaxSize(10));
+		DataGroup firstRead = divaToCoraRecordStorage.read("person", "authority-person:11685");
+		clock.millis += 100;
+		httpHandlerFactory.responseTextsForUrls.put(PROFILE_URL_11685,
+				createDatastreamProfileXML("2019-03-01T10:00:00.000Z", "abc123"));
+
+		DataGroup readAfterExpiry = divaToCoraRecordStorage.read("person",
+				"authority-person:11685");
+
+		assertNotSame(readAfterExpiry, firstRead);
+		assertEquals(httpHandlerFactory.urls,
+				Arrays.asList(CONTENT_URL_11685, PROFILE_URL_11685, CONTENT_URL_11685));
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.get(1).requestMetod, "GET");
+	}
+
+	private static final String PROFILE_URL_11685 = "http://alvin-cora-fedora:8088/fedora/"
+			+ "objects/authority-person:11685/datastreams/METADATA?format=xml";
+
+	private ClockSpy setUpPersonCacheWithClock() {
+		ClockSpy clock = new ClockSpy();
+		divaToCoraRecordStorage.setPersonCache(
+				RecordCacheImp.usingMaxSizeAndTimeToLiveInMillisAndClock(10, 100, clock));
+		return clock;
+	}
+
+	private String createDatastreamProfileXML(String createDate, String checksum) {
+		return "<datastreamProfile xmlns=\"http://www.fedora.info/definitions/1/0/management/\""
+				+ " pid=\"authority-person:11685\" dsID=\"METADATA\">"
+				+ "<dsLabel>METADATA</dsLabel><dsVersionID>METADATA.3</dsVersionID>"
+				+ "<dsCreateDate>" + createDate + "</dsCreateDate><dsState>A</dsState>"
+				+ "<dsChecksumType>SHA-512</dsChecksumType><dsChecksum>" + checksum
+				+ "</dsChecksum></datastreamProfile>";
+	}
+
+	@Test
+	public void unchangedPersonIsOnlyRevalidatedNotReadAgain() throws Exception {
+		ClockSpy clock = setUpPersonCacheWithClock();
+		setUpSourceXMLCacheAndReadPerson11685();
+		clock.millis += 100;
+		DataGroup revalidatedRead = divaToCoraRecordStorage.read("person",
+				"authority-person:11685");
+		clock.millis += 100;
+
+		DataGroup secondRevalidatedRead = divaToCoraRecordStorage.read("person",
+				"authority-person:11685");
+
+		assertIsCopyOf(secondRevalidatedRead, revalidatedRead);
+		assertEquals(httpHandlerFactory.urls,
+				Arrays.asList(CONTENT_URL_11685, PROFILE_URL_11685, PROFILE_URL_11685));
+		assertEquals(converterFactory.factoredConverters.size(), 1);
+		assertEquals(divaToCoraRecordStorage.getPersonCacheStatistics().getRevalidationCount(),
+				2);
+	}
+
+	@Test
+	public void changedPersonIsReadAgainAfterRevalidation() throws Exception {
+		ClockSpy clock = setUpPersonCacheWithClock();
+		setUpSourceXMLCacheAndReadPerson11685();
+		clock.millis += 100;
+		httpHandlerFactory.responseTextsForUrls.put(PROFILE_URL_11685,
+				createDatastreamProfileXML("2019-03-02T10:00:00.000Z", "def456"));
+
+		divaToCoraRecordStorage.read("person", "authority-person:11685");
+
+		assertEquals(httpHandlerFactory.urls,
+				Arrays.asList(CONTENT_URL_11685, PROFILE_URL_11685, CONTENT_URL_11685));
+		assertEquals(converterFactory.factoredConverters.size(), 2);
+	}
+
+	@Test
+	public void personWithoutChecksumInProfileIsAlwaysReadAgain() throws Exception {
+		ClockSpy clock = setUpPersonCacheWithClock();
+		divaToCoraRecordStorage.setSourceXMLCache(FedoraSourceXMLCache.usingMaxSize(10));
+		httpHandlerFactory.responseTextsForUrls.put(PROFILE_URL_11685,
+				"<datastreamProfile></datastreamProfile>");
+		divaToCoraRecordStorage.read("person", "authority-person:11685");
+		clock.millis += 100;
+		divaToCoraRecordStorage.read("person", "authority-person:11685");
+		clock.millis += 100;
+
+		divaToCoraRecordStorage.read("person", "authority-person:11685");
+
+		assertEquals(converterFactory.factoredConverters.size(), 3);
+		assertEquals(httpHandlerFactory.urls, Arrays.asList(CONTENT_URL_11685,
+				PROFILE_URL_11685, CONTENT_URL_11685, CONTENT_URL_11685));
+	}
+
+	@Test
+	public void sourceXMLCacheIsDisabledByDefault() throws Exception {
+		assertEquals(divaToCoraRecordStorage.getSourceXMLCache().getMaxSize(), 0);
+		divaToCoraRecordStorage.read("person", "authority-person:11685");
+		assertEquals(httpHandlerFactory.urls.size(), 1);
+		assertEquals(divaToCoraRecordStorage.getSourceXMLCache().getSize(), 0);
+	}
+
+	private static final String UPDATE_URL_11685 = "http://alvin-cora-fedora:8088/fedora/"
+			+ "objects/authority-person:11685/datastreams/METADATA?format=?xml&controlGroup=M"
+			+ "&logMessage=coraWritten&checksumType=SHA-512";
+
+	private static final String SOURCE_XML_11685 = "<authorityPerson>source</authorityPerson>";
+
+	private void setUpSourceXMLCacheAndReadPerson11685() {
+		divaToCoraRecordStorage.setSourceXMLCache(FedoraSourceXMLCache.usingMaxSize(10));
+		httpHandlerFactory.responseTextsForUrls.put(PROFILE_URL_11685,
+				createDatastreamProfileXML("2019-03-01T10:00:00.000Z",
+						FakeFedoraServer.calculateSHA512Checksum(SOURCE_XML_11685)));
+		httpHandlerFactory.responseText = SOURCE_XML_11685;
+		divaToCoraRecordStorage.read("person", "authority-person:11685");
+	}
+
+	@Test
+	public void readWithSourceXMLCacheOnlyReadsContent() throws Exception {
+		setUpSourceXMLCacheAndReadPerson11685();
+
+		assertEquals(httpHandlerFactory.urls, Arrays.asList(CONTENT_URL_11685));
+		assertEquals(divaToCoraRecordStorage.getSourceXMLCache().getSize(), 1);
+	}
+
+	@Test
+	public void readWithSourceXMLCacheIsOnlyRevalidatedWhenProfileHasChecksumOfContent()
+			throws Exception {
+		ClockSpy clock = setUpPersonCacheWithClock();
+		setUpSourceXMLCacheAndReadPerson11685();
+		clock.millis += 100;
+
+		divaToCoraRecordStorage.read("person", "authority-person:11685");
+
+		assertEquals(httpHandlerFactory.urls,
+				Arrays.asList(CONTENT_URL_11685, PROFILE_URL_11685));
+		assertEquals(converterFactory.factoredConverters.size(), 1);
+	}
+
+	@Test
+	public void updateAfterReadUsesCachedSourceXMLAndLastModifiedDate() throws Exception {
+		setUpSourceXMLCacheAndReadPerson11685();
+		DataGroup record = DataGroup.withNameInData("authority");
+
+		divaToCoraRecordStorage.update("person", "authority-person:11685", record,
+				createCollectTermsWithRecordLabel(), null, null);
+
+		assertEquals(httpHandlerFactory.urls.size(), 3);
+		assertEquals(httpHandlerFactory.urls.get(1), PROFILE_URL_11685);
+		assertEquals(httpHandlerFactory.urls.get(2),
+				UPDATE_URL_11685 + "&lastModifiedDate=2019-03-01T10:00:00.000Z");
+		HttpHandlerSpy httpHandler = httpHandlerFactory.factoredHttpHandlers.get(2);
+		assertEquals(httpHandler.requestMetod, "PUT");
+		DivaCoraToFedoraConverterSpy converterSpy = (DivaCoraToFedoraConverterSpy) converterFactory.factoredToFedoraConverters
+				.get(0);
+		assertSame(converterSpy.record, record);
+		assertEquals(converterSpy.sourceXML, SOURCE_XML_11685);
+		assertEquals(httpHandler.outputStrings.get(0), converterSpy.returnedXML);
+		assertEquals(divaToCoraRecordStorage.getSourceXMLCache().getSize(), 0);
+	}
+
+	@Test
+	public void updateWithStaleCachedSourceXMLIsWrittenAgainUsingSourceFromFedora()
+			throws Exception {
+		setUpSourceXMLCacheAndReadPerson11685();
+		httpHandlerFactory.responseCodesForUrls.put(
+				UPDATE_URL_11685 + "&lastModifiedDate=2019-03-01T10:00:00.000Z", 409);
+
+		divaToCoraRecordStorage.update("person", "authority-person:11685",
+				DataGroup.withNameInData("authority"), createCollectTermsWithRecordLabel(), null,
+				null);
+
+		assertEquals(httpHandlerFactory.urls.size(), 4);
+		assertEquals(httpHandlerFactory.urls.get(3), UPDATE_URL_11685);
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.get(3).requestMetod, "PUT");
+		assertEquals(divaToCoraRecordStorage.getSourceXMLCache().getSize(), 0);
+	}
+
+	@Test
+	public void updateWithCachedSourceXMLNotMatchingChecksumInFedoraIsWrittenWithoutSource()
+			throws Exception {
+		setUpSourceXMLCacheAndReadPerson11685();
+		httpHandlerFactory.responseTextsForUrls.put(PROFILE_URL_11685,
+				createDatastreamProfileXML("2019-03-02T10:00:00.000Z",
+						FakeFedoraServer.calculateSHA512Checksum("<authorityPerson>changed"
+								+ "</authorityPerson>")));
+
+		divaToCoraRecordStorage.update("person", "authority-person:11685",
+				DataGroup.withNameInData("authority"), createCollectTermsWithRecordLabel(), null,
+				null);
+
+		assertEquals(httpHandlerFactory.urls.size(), 3);
+		assertEquals(httpHandlerFactory.urls.get(2), UPDATE_URL_11685);
+		DivaCoraToFedoraConverterSpy converterSpy = (DivaCoraToFedoraConverterSpy) converterFactory.factoredToFedoraConverters
+				.get(0);
+		assertNull(converterSpy.sourceXML);
+		assertEquals(divaToCoraRecordStorage.getSourceXMLCache().getSize(), 0);
+	}
+
+	@Test
+	public void updateWithCachedSourceXMLAndOtherChecksumTypeIsWrittenWithoutSource()
+			throws Exception {
+		setUpSourceXMLCacheAndReadPerson11685();
+		httpHandlerFactory.responseTextsForUrls.put(PROFILE_URL_11685,
+				createDatastreamProfileXML("2019-03-01T10:00:00.000Z",
+						FakeFedoraServer.calculateSHA512Checksum(SOURCE_XML_11685))
+								.replace("SHA-512", "MD5"));
+
+		divaToCoraRecordStorage.update("person", "authority-person:11685",
+				DataGroup.withNameInData("authority"), createCollectTermsWithRecordLabel(), null,
+				null);
+
+		assertEquals(httpHandlerFactory.urls.get(2), UPDATE_URL_11685);
+	}
+
+	@Test(expectedExceptions = FedoraException.class, expectedExceptionsMessageRegExp = ""
+			+ "update to fedora failed for record: authority-person:11685")
+	public void updateUsingCachedSourceXMLThrowsErrorIfNotOkFromFedora() throws Exception {
+		setUpSourceXMLCacheAndReadPerson11685();
+		httpHandlerFactory.responseCode = 500;
+
+		divaToCoraRecordStorage.update("person", "authority-person:11685",
+				DataGroup.withNameInData("authority"), createCollectTermsWithRecordLabel(), null,
+				null);
 	}
 
 	@Test(expectedExceptions = NotImplementedException.class, expectedExceptionsMessageRegExp = ""
@@ -189,6 +532,155 @@ public class DivaFedoraRecordStorageTest {
 				null);
 	}
 
+	@Test(expectedExceptions = NotImplementedException.class, expectedExceptionsMessageRegExp = ""
+			+ "updateAll is not implemented for type: place")
+	public void updateAllThrowsNotImplementedExceptionForOtherType() throws Exception {
+		divaToCoraRecordStorage.updateAll("place", new LinkedHashMap<>());
+	}
+
+	@Test
+	public void updateAllWritesAllPersonsInParallelAndReturnsOutcomesInOrder() throws Exception {
+		divaToCoraRecordStorage
+				.setParallelExecutor(ParallelFedoraExecutor.usingMaxNumberOfParallelCalls(3));
+		Map<String, DataGroup> recordsById = createRecordsForIds("diva-person:1", "diva-person:2",
+				"diva-person:3");
+
+		List<FedoraUpdateOutcome> outcomes = divaToCoraRecordStorage.updateAll("person",
+				recordsById);
+
+		assertEquals(outcomes.size(), 3);
+		assertOutcomeIsOkForId(outcomes.get(0), "diva-person:1");
+		assertOutcomeIsOkForId(outcomes.get(1), "diva-person:2");
+		assertOutcomeIsOkForId(outcomes.get(2), "diva-person:3");
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 3);
+		assertTrue(httpHandlerFactory.urls.contains(
+				baseURL + "objects/diva-person:2/datastreams/METADATA?format=?xml&controlGroup=M"
+						+ "&logMessage=coraWritten&checksumType=SHA-512"));
+		for (HttpHandlerSpy httpHandler : httpHandlerFactory.factoredHttpHandlers) {
+			assertEquals(httpHandler.requestMetod, "PUT");
+		}
+		assertEquals(converterFactory.factoredToFedoraConverters.size(), 3);
+	}
+
+	private Map<String, DataGroup> createRecordsForIds(String... ids) {
+		Map<String, DataGroup> recordsById = new LinkedHashMap<>();
+		for (String id : ids) {
+			recordsById.put(id, DataGroup.withNameInData("authority"));
+		}
+		return recordsById;
+	}
+
+	private void assertOutcomeIsOkForId(FedoraUpdateOutcome outcome, String id) {
+		assertEquals(outcome.getId(), id);
+		assertTrue(outcome.isOk());
+		assertEquals(outcome.getResponseCode(), 200);
+		assertNull(outcome.getException());
+	}
+
+	@Test
+	public void updateAllReportsResponseCodeForPersonNotAcceptedByFedora() throws Exception {
+		httpHandlerFactory.responseCodesForUrls.put(
+				baseURL + "objects/diva-person:2/datastreams/METADATA?format=?xml&controlGroup=M"
+						+ "&logMessage=coraWritten&checksumType=SHA-512",
+				500);
+
+		List<FedoraUpdateOutcome> outcomes = divaToCoraRecordStorage.updateAll("person",
+				createRecordsForIds("diva-person:1", "diva-person:2", "diva-person:3"));
+
+		assertOutcomeIsOkForId(outcomes.get(0), "diva-person:1");
+		FedoraUpdateOutcome failedOutcome = outcomes.get(1);
+		assertEquals(failedOutcome.getId(), "diva-person:2");
+		assertFalse(failedOutcome.isOk());
+		assertEquals(failedOutcome.getResponseCode(), 500);
+		assertNull(failedOutcome.getException());
+		assertEquals(failedOutcome.toString(), "diva-person:2: 500");
+		assertOutcomeIsOkForId(outcomes.get(2), "diva-person:3");
+	}
+
+	@Test
+	public void updateAllGoesThroughCircuitBreakerAndCountsNotOkAsFailure() throws Exception {
+		FedoraCircuitBreakerImp circuitBreaker = FedoraCircuitBreakerImp
+				.usingMaxConcurrentCallsAndFailureThresholdAndSlowCallAndOpenDurationInMillis(5, 2,
+						10000, 60000);
+		divaToCoraRecordStorage.setCircuitBreaker(circuitBreaker);
+		httpHandlerFactory.responseCode = 500;
+
+		List<FedoraUpdateOutcome> outcomes = divaToCoraRecordStorage.updateAll("person",
+				createRecordsForIds("diva-person:1", "diva-person:2", "diva-person:3"));
+
+		assertEquals(outcomes.get(0).getResponseCode(), 500);
+		assertEquals(outcomes.get(1).getResponseCode(), 500);
+		assertEquals(outcomes.get(2).getException().getMessage(),
+				"Circuit breaker for fedora is open, calls are rejected until fedora recovers");
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 2);
+		FedoraCircuitBreakerStatistics statistics = circuitBreaker.getStatistics();
+		assertEquals(statistics.getFailureCount(), 2);
+		assertEquals(statistics.getSuccessCount(), 0);
+		assertEquals(statistics.getState(), FedoraCircuitState.OPEN);
+	}
+
+	@Test
+	public void updateNotOkFromFedoraCountsAsFailureInCircuitBreaker() throws Exception {
+		FedoraCircuitBreakerImp circuitBreaker = FedoraCircuitBreakerImp
+				.usingMaxConcurrentCallsAndFailureThresholdAndSlowCallAndOpenDurationInMillis(5, 5,
+						10000, 60000);
+		divaToCoraRecordStorage.setCircuitBreaker(circuitBreaker);
+		httpHandlerFactory.responseCode = 500;
+
+		try {
+			divaToCoraRecordStorage.update("person", "authority-person:11685",
+					DataGroup.withNameInData("authority"), createCollectTermsWithRecordLabel(),
+					null, null);
+			fail("FedoraException should have been thrown");
+		} catch (FedoraException e) {
+			assertEquals(e.getCause().getMessage(), "update to fedora failed for record: "
+					+ "authority-person:11685, with response code: 500");
+		}
+
+		assertEquals(circuitBreaker.getStatistics().getFailureCount(), 1);
+		assertEquals(circuitBreaker.getStatistics().getSuccessCount(), 0);
+	}
+
+	@Test
+	public void updateAllReportsExceptionAndContinuesWithOtherPersons() throws Exception {
+		divaToCoraRecordStorage
+				.setParallelExecutor(ParallelFedoraExecutor.usingMaxNumberOfParallelCalls(2));
+		converterFactory.toFedoraNameInDataToThrowExceptionFor = "brokenAuthority";
+		Map<String, DataGroup> recordsById = createRecordsForIds("diva-person:1",
+				"diva-person:3");
+		recordsById.put("diva-person:2", DataGroup.withNameInData("brokenAuthority"));
+
+		List<FedoraUpdateOutcome> outcomes = divaToCoraRecordStorage.updateAll("person",
+				recordsById);
+
+		assertOutcomeIsOkForId(outcomes.get(0), "diva-person:1");
+		assertOutcomeIsOkForId(outcomes.get(1), "diva-person:3");
+		FedoraUpdateOutcome failedOutcome = outcomes.get(2);
+		assertEquals(failedOutcome.getId(), "diva-person:2");
+		assertFalse(failedOutcome.isOk());
+		assertEquals(failedOutcome.getResponseCode(), -1);
+		assertEquals(failedOutcome.getException().getMessage(),
+				"Error thrown from DivaCoraToFedoraConverterSpy");
+		assertEquals(failedOutcome.toString(),
+				"diva-person:2: Error thrown from DivaCoraToFedoraConverterSpy");
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 2);
+	}
+
+	@Test
+	public void updateAllInvalidatesCachedPersons() throws Exception {
+		divaToCoraRecordStorage
+				.setPersonCache(RecordCacheImp.usingMaxSizeAndTimeToLiveInMillis(10, 60000));
+		divaToCoraRecordStorage.read("person", "diva-person:1");
+		divaToCoraRecordStorage.read("person", "diva-person:2");
+
+		divaToCoraRecordStorage.updateAll("person",
+				createRecordsForIds("diva-person:1", "diva-person:2"));
+
+		assertEquals(divaToCoraRecordStorage.getPersonCacheStatistics().getSize(), 0);
+		assertEquals(divaToCoraRecordStorage.getPersonCacheStatistics().getInvalidationCount(),
+				2);
+	}
+
 	@Test(expectedExceptions = NotImplementedException.class, expectedExceptionsMessageRegExp = ""
 			+ "readList is not implemented for type: null")
 	public void readListThrowsNotImplementedExceptionForTypeNull() throws Exception {
@@ -231,6 +723,188 @@ public class DivaFedoraRecordStorageTest {
 		assertEquals(readPersonIterator.next(), divaToCoraConverter.convertedDataGroup);
 	}
 
+	@Test
+	public void testDefaultParallelExecutorReadsOneAtATime() throws Exception {
+		assertEquals(divaToCoraRecordStorage.getParallelExecutor().getMaxNumberOfParallelCalls(),
+				1);
+	}
+
+	@Test
+	public void testCloseClosesParallelExecutor() throws Exception {
+		ParallelFedoraExecutor parallelExecutor = ParallelFedoraExecutor
+				.usingMaxNumberOfParallelCalls(3);
+		divaToCoraRecordStorage.setParallelExecutor(parallelExecutor);
+
+		divaToCoraRecordStorage.close();
+
+		assertTrue(parallelExecutor.isClosed());
+	}
+
+	@Test
+	public void testSetParallelExecutorClosesReplacedExecutor() throws Exception {
+		ParallelFedoraExecutor defaultExecutor = divaToCoraRecordStorage.getParallelExecutor();
+		ParallelFedoraExecutor parallelExecutor = ParallelFedoraExecutor
+				.usingMaxNumberOfParallelCalls(3);
+
+		divaToCoraRecordStorage.setParallelExecutor(parallelExecutor);
+		divaToCoraRecordStorage.setParallelExecutor(parallelExecutor);
+
+		assertTrue(defaultExecutor.isClosed());
+		assertFalse(parallelExecutor.isClosed());
+		divaToCoraRecordStorage.close();
+	}
+
+	@Test
+	public void readPersonListInParallelReturnsAllConvertedPersons() throws Exception {
+		divaToCoraRecordStorage
+				.setParallelExecutor(ParallelFedoraExecutor.usingMaxNumberOfParallelCalls(3));
+		httpHandlerFactory.responseText = createXMLForPersonList();
+
+		Collection<DataGroup> readPersonList = divaToCoraRecordStorage.readList("person",
+				DataGroup.withNameInData("filter")).listOfDataGroups;
+
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 4);
+		assertTrue(httpHandlerFactory.urls
+				.contains(baseURL + "objects/authority-person:11685/datastreams/METADATA/content"));
+		assertTrue(httpHandlerFactory.urls
+				.contains(baseURL + "objects/authority-person:12685/datastreams/METADATA/content"));
+		assertTrue(httpHandlerFactory.urls
+				.contains(baseURL + "objects/authority-person:13685/datastreams/METADATA/content"));
+		assertEquals(converterFactory.factoredConverters.size(), 3);
+		assertEquals(readPersonList.size(), 3);
+	}
+
+	@Test
+	public void readPersonListReportsEachPersonThatFailed() throws Exception {
+		divaToCoraRecordStorage
+				.setParallelExecutor(ParallelFedoraExecutor.usingMaxNumberOfParallelCalls(3));
+		httpHandlerFactory.responseText = createXMLForPersonList();
+		httpHandlerFactory.urlsToThrowExceptionFor
+				.add(baseURL + "objects/authority-person:12685/datastreams/METADATA/content");
+		httpHandlerFactory.urlsToThrowExceptionFor
+				.add(baseURL + "objects/authority-person:13685/datastreams/METADATA/content");
+		try {
+			divaToCoraRecordStorage.readList("person", DataGroup.withNameInData("filter"));
+			fail("FedoraException should have been thrown");
+		} catch (FedoraException e) {
+			assertEquals(e.getMessage(), "Unable to read list of persons: "
+					+ "Failed to read 2 of 3 persons: "
+					+ "authority-person:12685 (Error thrown from HttpHandlerSpy) "
+					+ "authority-person:13685 (Error thrown from HttpHandlerSpy)");
+			assertEquals(e.getCause().getSuppressed().length, 2);
+		}
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 4);
+	}
+
+	@Test
+	public void readPersonListFollowsSessionTokenPastFirstPage() throws Exception {
+		divaToCoraRecordStorage.setPersonListPageSize(2);
+		String firstPageUrl = baseURL
+				+ "objects?pid=true&maxResults=2&resultFormat=xml&query=pid%7Eauthority-person:*";
+		httpHandlerFactory.responseTextsForUrls.put(firstPageUrl,
+				createXMLForPidListUsingTokenAndPids("someToken", "authority-person:1",
+						"authority-person:2"));
+		httpHandlerFactory.responseTextsForUrls.put(firstPageUrl + "&sessionToken=someToken",
+				createXMLForPidListUsingTokenAndPids(null, "authority-person:3"));
+
+		DataGroup filter = DataGroup.withNameInData("filter");
+		filter.addChild(DataAtomic.withNameInDataAndValue("toNo", "3"));
+		List<DataGroup> readPersonList = divaToCoraRecordStorage.readList("person",
+				filter).listOfDataGroups;
+
+		assertEquals(readPersonList.size(), 3);
+		assertEquals(httpHandlerFactory.urls.get(1), firstPageUrl + "&sessionToken=someToken");
+		assertEquals(httpHandlerFactory.urls.get(4),
+				baseURL + "objects/authority-person:3/datastreams/METADATA/content");
+	}
+
+	@Test
+	public void readPersonListWithoutToNoStopsAfterOnePage() throws Exception {
+		divaToCoraRecordStorage.setPersonListPageSize(2);
+		String firstPageUrl = baseURL
+				+ "objects?pid=true&maxResults=2&resultFormat=xml&query=pid%7Eauthority-person:*";
+		httpHandlerFactory.responseTextsForUrls.put(firstPageUrl,
+				createXMLForPidListUsingTokenAndPids("someToken", "authority-person:1",
+						"authority-person:2"));
+		httpHandlerFactory.responseTextsForUrls.put(firstPageUrl + "&sessionToken=someToken",
+				createXMLForPidListUsingTokenAndPids(null, "authority-person:3"));
+
+		List<DataGroup> readPersonList = divaToCoraRecordStorage.readList("person",
+				DataGroup.withNameInData("filter")).listOfDataGroups;
+
+		assertEquals(readPersonList.size(), 2);
+		assertEquals(httpHandlerFactory.urls.size(), 3);
+		assertFalse(httpHandlerFactory.urls.contains(firstPageUrl + "&sessionToken=someToken"));
+	}
+
+	@Test
+	public void readPersonListWithOnlyFromNoReturnsOnePageFromFromNo() throws Exception {
+		divaToCoraRecordStorage.setPersonListPageSize(2);
+		String firstPageUrl = baseURL
+				+ "objects?pid=true&maxResults=2&resultFormat=xml&query=pid%7Eauthority-person:*";
+		httpHandlerFactory.responseTextsForUrls.put(firstPageUrl,
+				createXMLForPidListUsingTokenAndPids("token2", "authority-person:1",
+						"authority-person:2"));
+		httpHandlerFactory.responseTextsForUrls.put(firstPageUrl + "&sessionToken=token2",
+				createXMLForPidListUsingTokenAndPids("token3", "authority-person:3",
+						"authority-person:4"));
+
+		DataGroup filter = DataGroup.withNameInData("filter");
+		filter.addChild(DataAtomic.withNameInDataAndValue("fromNo", "2"));
+		List<DataGroup> readPersonList = divaToCoraRecordStorage.readList("person",
+				filter).listOfDataGroups;
+
+		assertEquals(readPersonList.size(), 2);
+		assertEquals(httpHandlerFactory.urls.get(3),
+				baseURL + "objects/authority-person:3/datastreams/METADATA/content");
+	}
+
+	@Test
+	public void readPersonListUsesFromNoAndToNoInFilter() throws Exception {
+		divaToCoraRecordStorage.setPersonListPageSize(2);
+		String firstPageUrl = baseURL
+				+ "objects?pid=true&maxResults=2&resultFormat=xml&query=pid%7Eauthority-person:*";
+		httpHandlerFactory.responseTextsForUrls.put(firstPageUrl,
+				createXMLForPidListUsingTokenAndPids("token2", "authority-person:1",
+						"authority-person:2"));
+		httpHandlerFactory.responseTextsForUrls.put(firstPageUrl + "&sessionToken=token2",
+				createXMLForPidListUsingTokenAndPids("token3", "authority-person:3",
+						"authority-person:4"));
+
+		DataGroup filter = DataGroup.withNameInData("filter");
+		filter.addChild(DataAtomic.withNameInDataAndValue("fromNo", "2"));
+		filter.addChild(DataAtomic.withNameInDataAndValue("toNo", "3"));
+		List<DataGroup> readPersonList = divaToCoraRecordStorage.readList("person",
+				filter).listOfDataGroups;
+
+		assertEquals(readPersonList.size(), 2);
+		assertEquals(httpHandlerFactory.urls.size(), 4);
+		assertEquals(httpHandlerFactory.urls.get(2),
+				baseURL + "objects/authority-person:2/datastreams/METADATA/content");
+		assertEquals(httpHandlerFactory.urls.get(3),
+				baseURL + "objects/authority-person:3/datastreams/METADATA/content");
+	}
+
+	@Test
+	public void readPersonListWithSmallToNoAsksFedoraForSmallerPage() throws Exception {
+		httpHandlerFactory.responseText = createXMLForPersonList();
+		DataGroup filter = DataGroup.withNameInData("filter");
+		filter.addChild(DataAtomic.withNameInDataAndValue("toNo", "1"));
+
+		List<DataGroup> readPersonList = divaToCoraRecordStorage.readList("person",
+				filter).listOfDataGroups;
+
+		assertEquals(readPersonList.size(), 1);
+		assertEquals(httpHandlerFactory.urls.get(0), baseURL
+				+ "objects?pid=true&maxResults=1&resultFormat=xml&query=pid%7Eauthority-person:*");
+	}
+
+	@Test
+	public void testCreatePersonPidIteratorUsesPageSize() throws Exception {
+		divaToCoraRecordStorage.setPersonListPageSize(7);
+		assertEquals(divaToCoraRecordStorage.createPersonPidIterator().getPageSize(), 7);
+	}
+
 	private String createXMLForPersonList() {
 		return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
 				+ "<result xmlns=\"http://www.fedora.info/definitions/1/0/types/\" xmlns:types=\"http://www.fedora.info/definitions/1/0/types/\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"http://www.fedora.info/definitions/1/0/types/ http://localhost:8088/fedora/schema/findObjects.xsd\">\n"
@@ -274,4 +948,660 @@ public class DivaFedoraRecordStorageTest {
 		divaToCoraRecordStorage.recordExistsForAbstractOrImplementingRecordTypeAndRecordId(null,
 				null);
 	}
+
+	@Test
+	public void testDefaultMetricsIsNoOp() throws Exception {
+		assertTrue(divaToCoraRecordStorage.getMetrics() instanceof NoOpMetrics);
+	}
+
+	@Test
+	public void readPersonRecordsTimerAndResponseCodeInMetrics() throws Exception {
+		InMemoryMetrics metrics = InMemoryMetrics.usingSystemNanoTime();
+		divaToCoraRecordStorage.setMetrics(metrics);
+
+		divaToCoraRecordStorage.read("person", "authority-person:11685");
+
+		assertEquals(metrics.getTimerStatistics("fedora.http.readPerson").getCount(), 1);
+		assertEquals(metrics.getCount("fedora.http.readPerson.200"), 1);
+	}
+
+	@Test
+	public void failedReadPersonIsCountedInMetrics() throws Exception {
+		InMemoryMetrics metrics = InMemoryMetrics.usingSystemNanoTime();
+		divaToCoraRecordStorage.setMetrics(metrics);
+		httpHandlerFactory.urlsToThrowExceptionFor
+				.add(baseURL + "objects/authority-person:11685/datastreams/METADATA/content");
+		try {
+			divaToCoraRecordStorage.read("person", "authority-person:11685");
+			fail("Exception should have been thrown");
+		} catch (RuntimeException e) {
+			assertEquals(metrics.getTimerStatistics("fedora.http.readPerson").getCount(), 1);
+			assertEquals(metrics.getCount("fedora.http.readPerson.failed"), 1);
+		}
+	}
+
+	@Test
+	public void updatePersonRecordsResponseCodeInMetrics() throws Exception {
+		InMemoryMetrics metrics = InMemoryMetrics.usingSystemNanoTime();
+		divaToCoraRecordStorage.setMetrics(metrics);
+		httpHandlerFactory.responseCode = 500;
+
+		List<FedoraUpdateOutcome> outcomes = divaToCoraRecordStorage.updateAll("person",
+				createRecordsForIds("diva-person:1", "diva-person:2"));
+
+		assertEquals(outcomes.size(), 2);
+		assertEquals(metrics.getTimerStatistics("fedora.http.writePerson").getCount(), 2);
+		assertEquals(metrics.getCount("fedora.http.writePerson.500"), 2);
+	}
+
+	@Test
+	public void readPersonListRecordsPidPagesAndPersonsInMetrics() throws Exception {
+		InMemoryMetrics metrics = InMemoryMetrics.usingSystemNanoTime();
+		divaToCoraRecordStorage.setMetrics(metrics);
+		divaToCoraRecordStorage.setSourceXMLCache(FedoraSourceXMLCache.usingMaxSize(10));
+		httpHandlerFactory.responseText = createXMLForPersonList();
+		httpHandlerFactory.responseTextsForUrls.put(
+				baseURL + "objects/authority-person:11685/datastreams/METADATA?format=xml",
+				createDatastreamProfileXML("2019-01-01T00:00:00.000Z", "someChecksum"));
+
+		divaToCoraRecordStorage.readList("person", DataGroup.withNameInData("filter"));
+
+		assertEquals(metrics.getTimerStatistics("fedora.http.listPids").getCount(), 1);
+		assertEquals(metrics.getCount("fedora.http.listPids.200"), 1);
+		assertEquals(metrics.getTimerStatistics("fedora.http.readProfile").getCount(), 0);
+		assertEquals(metrics.getTimerStatistics("fedora.http.readPerson").getCount(), 3);
+	}
+
+	@Test
+	public void testDefaultStreamingHttpHandlerFactoryUsesHttpHandlerFactory() throws Exception {
+		TextResponseStreamingHttpHandlerFactory streamingFactory = (TextResponseStreamingHttpHandlerFactory) divaToCoraRecordStorage
+				.getStreamingHttpHandlerFactory();
+		assertSame(streamingFactory.getHttpHandlerFactory(), httpHandlerFactory);
+	}
+
+	@Test
+	public void readPersonConvertsResponseStreamAndClosesIt() throws Exception {
+		StreamingHttpHandlerFactorySpy streamingFactory = new StreamingHttpHandlerFactorySpy();
+		streamingFactory.responseText = "<person>from stream</person>";
+		divaToCoraRecordStorage.setStreamingHttpHandlerFactory(streamingFactory);
+
+		DataGroup readPerson = divaToCoraRecordStorage.read("person", "authority-person:11685");
+
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 0);
+		assertEquals(streamingFactory.urls.get(0),
+				baseURL + "objects/authority-person:11685/datastreams/METADATA/content");
+		StreamingHttpHandlerSpy httpHandler = streamingFactory.factoredHttpHandlers.get(0);
+		assertEquals(httpHandler.requestMethod, "GET");
+		assertTrue(httpHandler.responseStreamClosed);
+		DivaFedoraToCoraConverterSpy toCoraConverter = (DivaFedoraToCoraConverterSpy) converterFactory.factoredConverters
+				.get(0);
+		assertTrue(toCoraConverter.readFromStream);
+		assertEquals(toCoraConverter.xml, "<person>from stream</person>");
+		assertIsCopyOf(readPerson, toCoraConverter.convertedDataGroup);
+	}
+
+	@Test
+	public void readPersonRetriesResponseThatBreaksWhileItIsRead() throws Exception {
+		StreamingHttpHandlerFactorySpy streamingFactory = new StreamingHttpHandlerFactorySpy();
+		streamingFactory.responseText = "<person>from stream</person>";
+		String personUrl = baseURL + "objects/authority-person:11685/datastreams/METADATA/content";
+		streamingFactory.numberOfBrokenResponsesForUrls.put(personUrl, 1);
+		divaToCoraRecordStorage.setStreamingHttpHandlerFactory(streamingFactory);
+		divaToCoraRecordStorage.setRetrier(FedoraRetrierImp
+				.usingMaxAttemptsAndBaseDelayAndMaxDelayInMillisAndSleeperAndJitter(2, 10, 100,
+						delay -> {
+						}, () -> 0.5));
+
+		divaToCoraRecordStorage.read("person", "authority-person:11685");
+
+		assertEquals(streamingFactory.urls, Arrays.asList(personUrl, personUrl));
+		assertTrue(streamingFactory.factoredHttpHandlers.get(0).responseStreamClosed);
+	}
+
+	@Test
+	public void readPersonListClosesPageThatIsNotReadToItsEnd() throws Exception {
+		StreamingHttpHandlerFactorySpy streamingFactory = new StreamingHttpHandlerFactorySpy();
+		streamingFactory.responseText = createXMLForPersonList();
+		divaToCoraRecordStorage.setStreamingHttpHandlerFactory(streamingFactory);
+		DataGroup filter = DataGroup.withNameInData("filter");
+		filter.addChild(DataAtomic.withNameInDataAndValue("toNo", "1"));
+
+		divaToCoraRecordStorage.readList("person", filter);
+
+		for (StreamingHttpHandlerSpy httpHandler : streamingFactory.factoredHttpHandlers) {
+			assertTrue(httpHandler.responseStreamClosed);
+		}
+	}
+
+	@Test
+	public void readPersonWithSourceXMLCacheReadsPersonAsText() throws Exception {
+		StreamingHttpHandlerFactorySpy streamingFactory = new StreamingHttpHandlerFactorySpy();
+		divaToCoraRecordStorage.setStreamingHttpHandlerFactory(streamingFactory);
+		divaToCoraRecordStorage.setSourceXMLCache(FedoraSourceXMLCache.usingMaxSize(10));
+
+		divaToCoraRecordStorage.read("person", "authority-person:11685");
+
+		assertEquals(streamingFactory.factoredHttpHandlers.size(), 0);
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 1);
+	}
+
+	@Test
+	public void readPersonListReadsPidPagesAsStream() throws Exception {
+		StreamingHttpHandlerFactorySpy streamingFactory = new StreamingHttpHandlerFactorySpy();
+		streamingFactory.responseText = createXMLForPersonList();
+		divaToCoraRecordStorage.setStreamingHttpHandlerFactory(streamingFactory);
+
+		Collection<DataGroup> readPersonList = divaToCoraRecordStorage.readList("person",
+				DataGroup.withNameInData("filter")).listOfDataGroups;
+
+		assertEquals(readPersonList.size(), 3);
+		assertEquals(streamingFactory.factoredHttpHandlers.size(), 4);
+		assertTrue(streamingFactory.urls.get(0).startsWith(baseURL + "objects?pid=true"));
+		for (StreamingHttpHandlerSpy httpHandler : streamingFactory.factoredHttpHandlers) {
+			assertTrue(httpHandler.responseStreamClosed);
+		}
+	}
+
+	@Test
+	public void testReadAsyncRunsInCallingThreadByDefault() throws Exception {
+		CompletableFuture<DataGroup> future = divaToCoraRecordStorage.readAsync("person",
+				"authority-person:11685");
+
+		assertTrue(future.isDone());
+		DivaFedoraToCoraConverterSpy toCoraConverter = (DivaFedoraToCoraConverterSpy) converterFactory.factoredConverters
+				.get(0);
+		assertIsCopyOf(future.get(), toCoraConverter.convertedDataGroup);
+	}
+
+	@Test
+	public void testReadAsyncAndReadListAsyncUseExecutor() throws Exception {
+		List<Runnable> queuedTasks = new ArrayList<>();
+		Executor executor = queuedTasks::add;
+		divaToCoraRecordStorage.setAsyncExecutor(executor);
+		httpHandlerFactory.responseText = createXMLForPersonList();
+
+		CompletableFuture<DataGroup> read = divaToCoraRecordStorage.readAsync("person",
+				"authority-person:11685");
+		CompletableFuture<SpiderReadResult> readList = divaToCoraRecordStorage
+				.readListAsync("person", DataGroup.withNameInData("filter"));
+
+		assertFalse(read.isDone());
+		assertFalse(readList.isDone());
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 0);
+		queuedTasks.forEach(Runnable::run);
+		assertNotNull(read.get());
+		assertEquals(readList.get().listOfDataGroups.size(), 3);
+		assertSame(divaToCoraRecordStorage.getAsyncExecutor(), executor);
+	}
+
+	@Test
+	public void testFailedReadAsyncCompletesExceptionally() throws Exception {
+		CompletableFuture<DataGroup> future = divaToCoraRecordStorage.readAsync("someType",
+				"someId");
+
+		try {
+			future.get();
+			fail("ExecutionException should have been thrown");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof NotImplementedException);
+			assertEquals(e.getCause().getMessage(), "read is not implemented for type: someType");
+		}
+	}
+
+	@Test
+	public void testDefaultCircuitBreakerIsPassThrough() throws Exception {
+		assertTrue(divaToCoraRecordStorage
+				.getCircuitBreaker() instanceof PassThroughFedoraCircuitBreaker);
+	}
+
+	@Test
+	public void testFailedReadsOpenCircuitAndLaterReadsAreRejected() throws Exception {
+		FedoraCircuitBreakerImp circuitBreaker = FedoraCircuitBreakerImp
+				.usingMaxConcurrentCallsAndFailureThresholdAndSlowCallAndOpenDurationInMillis(5, 2,
+						10000, 60000);
+		divaToCoraRecordStorage.setCircuitBreaker(circuitBreaker);
+		String personUrl = baseURL + "objects/authority-person:11685/datastreams/METADATA/content";
+		httpHandlerFactory.urlsToThrowExceptionFor.add(personUrl);
+
+		readPersonAndIgnoreFailure();
+		readPersonAndIgnoreFailure();
+		try {
+			divaToCoraRecordStorage.read("person", "authority-person:11685");
+			fail("FedoraException should have been thrown");
+		} catch (FedoraException e) {
+			assertEquals(e.getMessage(), "Circuit breaker for fedora is open, "
+					+ "calls are rejected until fedora recovers");
+		}
+
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 2);
+		FedoraCircuitBreakerStatistics statistics = divaToCoraRecordStorage
+				.getCircuitBreakerStatistics();
+		assertEquals(statistics.getState(), FedoraCircuitState.OPEN);
+		assertEquals(statistics.getFailureCount(), 2);
+		assertEquals(statistics.getRejectionCount(), 1);
+	}
+
+	private void readPersonAndIgnoreFailure() {
+		try {
+			divaToCoraRecordStorage.read("person", "authority-person:11685");
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testUpdateIsRejectedWhenCircuitIsOpen() throws Exception {
+		FedoraCircuitBreakerImp circuitBreaker = FedoraCircuitBreakerImp
+				.usingMaxConcurrentCallsAndFailureThresholdAndSlowCallAndOpenDurationInMillis(5, 1,
+						10000, 60000);
+		divaToCoraRecordStorage.setCircuitBreaker(circuitBreaker);
+		httpHandlerFactory.urlsToThrowExceptionFor
+				.add(baseURL + "objects/authority-person:11685/datastreams/METADATA/content");
+		readPersonAndIgnoreFailure();
+
+		try {
+			divaToCoraRecordStorage.update("person", "authority-person:11685",
+					DataGroup.withNameInData("authority"), createCollectTermsWithRecordLabel(),
+					null, null);
+			fail("FedoraException should have been thrown");
+		} catch (FedoraException e) {
+			assertEquals(e.getMessage(),
+					"update to fedora failed for record: authority-person:11685");
+			assertEquals(e.getCause().getMessage(), "Circuit breaker for fedora is open, "
+					+ "calls are rejected until fedora recovers");
+		}
+		assertEquals(converterFactory.factoredToFedoraConverters.size(), 0);
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 1);
+	}
+
+	@Test
+	public void testPersonPidIteratorUsesCircuitBreaker() throws Exception {
+		FedoraCircuitBreakerImp circuitBreaker = FedoraCircuitBreakerImp
+				.usingMaxConcurrentCallsAndFailureThresholdAndSlowCallAndOpenDurationInMillis(5, 2,
+						10000, 60000);
+		divaToCoraRecordStorage.setCircuitBreaker(circuitBreaker);
+		httpHandlerFactory.responseText = createXMLForPersonList();
+
+		divaToCoraRecordStorage.readList("person", DataGroup.withNameInData("filter"));
+
+		FedoraPidIterator pidIterator = divaToCoraRecordStorage.createPersonPidIterator();
+		assertSame(pidIterator.getCircuitBreaker(), circuitBreaker);
+		assertEquals(circuitBreaker.getStatistics().getSuccessCount(), 4);
+	}
+
+	@Test
+	public void testDefaultRetrierDoesNotRetry() throws Exception {
+		assertTrue(divaToCoraRecordStorage.getRetrier() instanceof NoRetryFedoraRetrier);
+	}
+
+	@Test
+	public void testTransientErrorInPersonListIsRetried() throws Exception {
+		InMemoryMetrics metrics = InMemoryMetrics.usingSystemNanoTime();
+		divaToCoraRecordStorage.setMetrics(metrics);
+		divaToCoraRecordStorage.setRetrier(createRetrierWithMaxAttempts(3));
+		httpHandlerFactory.responseText = createXMLForPersonList();
+		httpHandlerFactory.numberOfExceptionsForUrls
+				.put(baseURL + "objects/authority-person:12685/datastreams/METADATA/content", 2);
+
+		List<DataGroup> readPersonList = divaToCoraRecordStorage.readList("person",
+				DataGroup.withNameInData("filter")).listOfDataGroups;
+
+		assertEquals(readPersonList.size(), 3);
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 6);
+		assertEquals(metrics.getCount("fedora.http.readPerson.failed"), 2);
+		assertEquals(metrics.getCount("fedora.retry.readPerson.attempt.1"), 3);
+		assertEquals(metrics.getCount("fedora.retry.readPerson.attempt.3"), 1);
+		assertEquals(metrics.getCount("fedora.retry.readPerson.recovered"), 1);
+		assertEquals(metrics.getCount("fedora.retry.listPids.attempt.1"), 1);
+	}
+
+	private FedoraRetrierImp createRetrierWithMaxAttempts(int maxAttempts) {
+		return FedoraRetrierImp.usingMaxAttemptsAndBaseDelayAndMaxDelayInMillisAndSleeperAndJitter(
+				maxAttempts, 10, 100, delay -> {
+				}, () -> 0.5);
+	}
+
+	@Test
+	public void testReadPersonXMLIsRetried() throws Exception {
+		divaToCoraRecordStorage.setRetrier(createRetrierWithMaxAttempts(2));
+		divaToCoraRecordStorage.setSourceXMLCache(FedoraSourceXMLCache.usingMaxSize(10));
+		httpHandlerFactory.numberOfExceptionsForUrls.put(CONTENT_URL_11685, 1);
+
+		divaToCoraRecordStorage.read("person", "authority-person:11685");
+
+		assertEquals(httpHandlerFactory.urls,
+				Arrays.asList(CONTENT_URL_11685, CONTENT_URL_11685));
+	}
+
+	@Test
+	public void testReadProfileIsRetried() throws Exception {
+		divaToCoraRecordStorage.setRetrier(createRetrierWithMaxAttempts(2));
+		setUpSourceXMLCacheAndReadPerson11685();
+		httpHandlerFactory.numberOfExceptionsForUrls.put(PROFILE_URL_11685, 1);
+
+		divaToCoraRecordStorage.update("person", "authority-person:11685",
+				DataGroup.withNameInData("authority"), createCollectTermsWithRecordLabel(), null,
+				null);
+
+		assertEquals(httpHandlerFactory.urls.subList(1, 3),
+				Arrays.asList(PROFILE_URL_11685, PROFILE_URL_11685));
+	}
+
+	@Test
+	public void testUpdateIsNotRetried() throws Exception {
+		divaToCoraRecordStorage.setRetrier(createRetrierWithMaxAttempts(3));
+		httpHandlerFactory.responseCode = 500;
+
+		try {
+			divaToCoraRecordStorage.update("person", "authority-person:11685",
+					DataGroup.withNameInData("authority"), createCollectTermsWithRecordLabel(),
+					null, null);
+			fail("FedoraException should have been thrown");
+		} catch (FedoraException e) {
+			assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 1);
+		}
+	}
+
+	@Test
+	public void testConcurrentReadsOfSamePersonShareOneCallToFedora() throws Exception {
+		StreamingHttpHandlerFactorySpy streamingFactory = new StreamingHttpHandlerFactorySpy();
+		divaToCoraRecordStorage.setStreamingHttpHandlerFactory(url -> {
+			waitUntilNumberOfSharedPersonReadsIs(4);
+			return streamingFactory.factor(url);
+		});
+
+		List<DataGroup> persons = ConcurrentCallsRunner.runCallsConcurrently(5, 5,
+				callNumber -> divaToCoraRecordStorage.read("person", "authority-person:11685"));
+
+		assertEquals(streamingFactory.factoredHttpHandlers.size(), 1);
+		for (DataGroup person : persons.subList(1, persons.size())) {
+			assertIsCopyOf(person, persons.get(0));
+		}
+		assertEquals(divaToCoraRecordStorage.getPersonReads().getCallCount(), 1);
+	}
+
+	private void waitUntilNumberOfSharedPersonReadsIs(long numberOfSharedReads) {
+		long giveUpAt = System.currentTimeMillis() + 5000;
+		while (divaToCoraRecordStorage.getPersonReads().getSharedResultCount() < numberOfSharedReads
+				&& System.currentTimeMillis() < giveUpAt) {
+			Thread.yield();
+		}
+	}
+
+	@Test
+	public void testUpdateMakesLaterReadsStartNewCallToFedora() throws Exception {
+		SingleFlight<String, DataGroup> personReads = divaToCoraRecordStorage.getPersonReads();
+		CountDownLatch readStarted = new CountDownLatch(1);
+		CountDownLatch releaseRead = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			executor.submit(() -> personReads.call("authority-person:11685", () -> {
+				readStarted.countDown();
+				awaitLatch(releaseRead);
+				return DataGroup.withNameInData("oldPerson");
+			}));
+			assertTrue(readStarted.await(5, TimeUnit.SECONDS));
+
+			divaToCoraRecordStorage.update("person", "authority-person:11685",
+					DataGroup.withNameInData("authority"), createCollectTermsWithRecordLabel(),
+					null, null);
+			DataGroup person = divaToCoraRecordStorage.read("person", "authority-person:11685");
+
+			assertEquals(person.getNameInData(), "Converted xml");
+		} finally {
+			releaseRead.countDown();
+			executor.shutdown();
+		}
+	}
+
+	private void awaitLatch(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static final String CONTENT_URL_11685 = "http://alvin-cora-fedora:8088/fedora/"
+			+ "objects/authority-person:11685/datastreams/METADATA/content";
+
+	@Test
+	public void testPersonNotFoundInFedoraThrowsRecordNotFound() throws Exception {
+		httpHandlerFactory.responseCodesForUrls.put(CONTENT_URL_11685, 404);
+
+		assertPersonIsNotFound();
+		assertEquals(converterFactory.factoredConverters.size(), 0);
+	}
+
+	private RecordNotFoundException assertPersonIsNotFound() {
+		try {
+			divaToCoraRecordStorage.read("person", "authority-person:11685");
+			fail("RecordNotFoundException should have been thrown");
+			return null;
+		} catch (RecordNotFoundException e) {
+			assertEquals(e.getMessage(),
+					"Record not found in fedora for type: person and id: authority-person:11685");
+			return e;
+		}
+	}
+
+	@Test
+	public void testFailedReadWithNotFoundResponseCodeThrowsRecordNotFound() throws Exception {
+		httpHandlerFactory.responseCodesForUrls.put(CONTENT_URL_11685, 404);
+		httpHandlerFactory.urlsToThrowExceptionFor.add(CONTENT_URL_11685);
+
+		RecordNotFoundException exception = assertPersonIsNotFound();
+
+		assertEquals(exception.getCause().getMessage(), "Error thrown from HttpHandlerSpy");
+	}
+
+	@Test
+	public void testPersonNotFoundWithSourceXMLCacheThrowsRecordNotFound() throws Exception {
+		divaToCoraRecordStorage.setSourceXMLCache(FedoraSourceXMLCache.usingMaxSize(10));
+		httpHandlerFactory.responseCodesForUrls.put(CONTENT_URL_11685, 404);
+
+		assertPersonIsNotFound();
+		assertEquals(httpHandlerFactory.urls.size(), 1);
+	}
+
+	@Test
+	public void testOtherFailedReadIsNotRecordNotFound() throws Exception {
+		httpHandlerFactory.responseCodesForUrls.put(CONTENT_URL_11685, 500);
+		httpHandlerFactory.urlsToThrowExceptionFor.add(CONTENT_URL_11685);
+
+		try {
+			divaToCoraRecordStorage.read("person", "authority-person:11685");
+			fail("Exception should have been thrown");
+		} catch (RuntimeException e) {
+			assertFalse(e instanceof RecordNotFoundException);
+		}
+	}
+
+	@Test
+	public void testDefaultNotFoundCacheRemembersNothing() throws Exception {
+		httpHandlerFactory.responseCodesForUrls.put(CONTENT_URL_11685, 404);
+
+		assertPersonIsNotFound();
+		assertPersonIsNotFound();
+
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 2);
+		assertEquals(divaToCoraRecordStorage.getMissingPersons().getMaxSize(), 0);
+	}
+
+	@Test
+	public void testMissingPersonIsAnsweredFromNotFoundCache() throws Exception {
+		ClockSpy clock = new ClockSpy();
+		divaToCoraRecordStorage.setMissingPersons(
+				NotFoundCache.usingMaxSizeAndTimeToLiveInMillisAndClock(10, 1000, clock));
+		httpHandlerFactory.responseCodesForUrls.put(CONTENT_URL_11685, 404);
+
+		assertPersonIsNotFound();
+		assertPersonIsNotFound();
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 1);
+
+		clock.millis += 1000;
+		assertPersonIsNotFound();
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 2);
+	}
+
+	@Test
+	public void testUpdateRemovesPersonFromNotFoundCache() throws Exception {
+		divaToCoraRecordStorage
+				.setMissingPersons(NotFoundCache.usingMaxSizeAndTimeToLiveInMillis(10, 60000));
+		httpHandlerFactory.responseCodesForUrls.put(CONTENT_URL_11685, 404);
+		assertPersonIsNotFound();
+		httpHandlerFactory.responseCodesForUrls.remove(CONTENT_URL_11685);
+
+		divaToCoraRecordStorage.update("person", "authority-person:11685",
+				DataGroup.withNameInData("authority"), createCollectTermsWithRecordLabel(), null,
+				null);
+		DataGroup person = divaToCoraRecordStorage.read("person", "authority-person:11685");
+
+		assertEquals(person.getNameInData(), "Converted xml");
+		assertEquals(divaToCoraRecordStorage.getMissingPersons().getSize(), 0);
+	}
+
+	@Test
+	public void testNotFoundPersonsDoNotOpenCircuit() throws Exception {
+		divaToCoraRecordStorage.setCircuitBreaker(FedoraCircuitBreakerImp
+				.usingMaxConcurrentCallsAndFailureThresholdAndSlowCallAndOpenDurationInMillis(5, 1,
+						10000, 60000));
+		httpHandlerFactory.responseCodesForUrls.put(CONTENT_URL_11685, 404);
+
+		assertPersonIsNotFound();
+		assertPersonIsNotFound();
+
+		assertEquals(divaToCoraRecordStorage.getCircuitBreakerStatistics().getState(),
+				FedoraCircuitState.CLOSED);
+	}
+
+	@Test
+	public void testReadPersonBypassingCacheDoesNotUseOrFillCaches() throws Exception {
+		RecordCacheImp personCache = RecordCacheImp.usingMaxSizeAndTimeToLiveInMillis(10, 60000);
+		divaToCoraRecordStorage.setPersonCache(personCache);
+
+		DataGroup person = divaToCoraRecordStorage
+				.readPersonBypassingCache("authority-person:11685");
+		divaToCoraRecordStorage.readPersonBypassingCache("authority-person:11685");
+
+		assertEquals(person.getNameInData(), "Converted xml");
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 2);
+		assertEquals(personCache.getStatistics().getSize(), 0);
+		assertEquals(divaToCoraRecordStorage.getPersonReads().getCallCount(), 0);
+	}
+
+	@Test
+	public void testReadPersonBypassingCacheDoesNotRememberMissingPerson() throws Exception {
+		httpHandlerFactory.responseCodesForUrls.put(CONTENT_URL_11685, 404);
+		try {
+			divaToCoraRecordStorage.readPersonBypassingCache("authority-person:11685");
+			fail("RecordNotFoundException should have been thrown");
+		} catch (RecordNotFoundException e) {
+			assertEquals(e.getMessage(),
+					"Record not found in fedora for type: person and id: authority-person:11685");
+		}
+
+		assertEquals(divaToCoraRecordStorage.getMissingPersons().getSize(), 0);
+	}
+
+	@Test
+	public void testPersonsAreWarmedUpIntoPersonCache() throws Exception {
+		divaToCoraRecordStorage
+				.setPersonCache(RecordCacheImp.usingMaxSizeAndTimeToLiveInMillis(10, 60000));
+		httpHandlerFactory.responseText = createXMLForPersonList();
+		CacheWarmer cacheWarmer = CacheWarmer
+				.usingMaxNumberOfParallelReadsAndMaxReadsPerSecond(1, 1000);
+
+		divaToCoraRecordStorage.addPersonsToCacheWarmUp(cacheWarmer);
+		CacheWarmUpResult result = cacheWarmer.startUsingExecutor(Runnable::run).get();
+
+		assertEquals(result.getNumberOfReadRecords(), 3);
+		assertEquals(httpHandlerFactory.urls.size(), 4);
+		assertEquals(divaToCoraRecordStorage.getPersonCacheStatistics().getSize(), 3);
+
+		divaToCoraRecordStorage.read("person", "authority-person:12685");
+		assertEquals(httpHandlerFactory.urls.size(), 4);
+	}
+
+	@Test
+	public void testPersonWarmUpStopsWhenPersonCacheIsFull() throws Exception {
+		divaToCoraRecordStorage
+				.setPersonCache(RecordCacheImp.usingMaxSizeAndTimeToLiveInMillis(2, 60000));
+		httpHandlerFactory.responseText = createXMLForPersonList();
+		CacheWarmer cacheWarmer = CacheWarmer
+				.usingMaxNumberOfParallelReadsAndMaxReadsPerSecond(1, 1000);
+
+		divaToCoraRecordStorage.addPersonsToCacheWarmUp(cacheWarmer);
+		CacheWarmUpResult result = cacheWarmer.startUsingExecutor(Runnable::run).get();
+
+		assertEquals(result.getNumberOfReadRecords(), 2);
+		assertEquals(httpHandlerFactory.urls.size(), 3);
+		assertEquals(divaToCoraRecordStorage.getPersonCacheStatistics().getSize(), 2);
+	}
+
+	@Test
+	public void testNoPersonsAreWarmedUpWithoutPersonCache() throws Exception {
+		httpHandlerFactory.responseText = createXMLForPersonList();
+		CacheWarmer cacheWarmer = CacheWarmer
+				.usingMaxNumberOfParallelReadsAndMaxReadsPerSecond(1, 1000);
+
+		divaToCoraRecordStorage.addPersonsToCacheWarmUp(cacheWarmer);
+		CacheWarmUpResult result = cacheWarmer.startUsingExecutor(Runnable::run).get();
+
+		assertEquals(result.getNumberOfReadRecords(), 0);
+		assertEquals(httpHandlerFactory.urls.size(), 0);
+	}
+
+	@Test
+	public void testFailedPersonListingIsReportedByWarmUp() throws Exception {
+		divaToCoraRecordStorage
+				.setPersonCache(RecordCacheImp.usingMaxSizeAndTimeToLiveInMillis(10, 60000));
+		httpHandlerFactory.responseCode = 500;
+		httpHandlerFactory.urlsToThrowExceptionFor.add(baseURL
+				+ "objects?pid=true&maxResults=100&resultFormat=xml&query=pid%7Eauthority-person:*");
+		CacheWarmer cacheWarmer = CacheWarmer
+				.usingMaxNumberOfParallelReadsAndMaxReadsPerSecond(1, 1000);
+
+		divaToCoraRecordStorage.addPersonsToCacheWarmUp(cacheWarmer);
+		CacheWarmUpResult result = cacheWarmer.startUsingExecutor(Runnable::run).get();
+
+		assertEquals(result.getFailedTypes(), Arrays.asList("person"));
+		assertTrue(cacheWarmer.isReady());
+	}
+
+	@Test
+	public void testPersonStoredOnDiskIsOnlyRevalidatedAfterRestart() throws Exception {
+		Path storeFile = Files.createTempFile("personStore", ".store");
+		try {
+			httpHandlerFactory.responseText = SOURCE_XML_11685;
+			DiskRecordStore diskRecordStore = setUpDiskBackedPersonCacheUsingStoreFile(storeFile);
+			divaToCoraRecordStorage.read("person", "authority-person:11685");
+			diskRecordStore.close();
+
+			BeforeMethod();
+			httpHandlerFactory.responseTextsForUrls.put(PROFILE_URL_11685,
+					createDatastreamProfileXML("2019-03-01T10:00:00.000Z",
+							FakeFedoraServer.calculateSHA512Checksum(SOURCE_XML_11685)));
+			diskRecordStore = setUpDiskBackedPersonCacheUsingStoreFile(storeFile);
+			DataGroup readAfterRestart = divaToCoraRecordStorage.read("person",
+					"authority-person:11685");
+			diskRecordStore.close();
+
+			assertEquals(readAfterRestart.getNameInData(), "Converted xml");
+			assertEquals(httpHandlerFactory.urls, Arrays.asList(PROFILE_URL_11685));
+			assertEquals(converterFactory.factoredConverters.size(), 0);
+		} finally {
+			Files.delete(storeFile);
+		}
+	}
+
+	private DiskRecordStore setUpDiskBackedPersonCacheUsingStoreFile(Path storeFile) {
+		DiskRecordStore diskRecordStore = DiskRecordStore.openUsingPathAndCapacityInBytes(storeFile,
+				4096);
+		divaToCoraRecordStorage.setSourceXMLCache(FedoraSourceXMLCache.usingMaxSize(10));
+		divaToCoraRecordStorage.setPersonCache(DiskBackedRecordCache
+				.usingTypeAndDiskRecordStoreAndCacheAndMaxAgeInMillis("person", diskRecordStore,
+						RecordCacheImp.usingMaxSizeAndTimeToLiveInMillis(10, 60000), 60000));
+		return diskRecordStore;
+	}
 }
@@ -1,12 +1,21 @@
 package se.uu.ub.cora.diva.tocorastorage.fedora;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.xml.sax.InputSource;
+
 import se.uu.ub.cora.bookkeeper.data.DataGroup;
+import se.uu.ub.cora.diva.tocorastorage.ParseException;
 import se.uu.ub.cora.diva.tocorastorage.fedora.DivaFedoraToCoraConverter;
 
 public class DivaFedoraToCoraConverterSpy implements DivaFedoraToCoraConverter {
 
 	public String xml;
 	public DataGroup convertedDataGroup;
+	public boolean readFromStream = false;
 
 	@Override
 	public DataGroup fromXML(String xml) {
@@ -15,4 +24,28 @@ public class DivaFedoraToCoraConverterSpy implements DivaFedoraToCoraConverter {
 		return convertedDataGroup;
 	}
 
+	@Override
+	public DataGroup fromXML(FedoraResponseBody xml) {
+		readFromStream = true;
+		return fromXML(readBodyAsString(xml));
+	}
+
+	private String readBodyAsString(FedoraResponseBody xml) {
+		InputSource inputSource = xml.createInputSource();
+		try {
+			if (inputSource.getCharacterStream() != null) {
+				return readAllCharacters(inputSource.getCharacterStream());
+			}
+			return new String(inputSource.getByteStream().readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw ParseException.withMessageAndException("Can not read xml in spy", e);
+		}
+	}
+
+	private String readAllCharacters(Reader reader) throws IOException {
+		StringWriter text = new StringWriter();
+		reader.transferTo(text);
+		return text.toString();
+	}
+
 }
@@ -20,6 +20,7 @@ package se.uu.ub.cora.diva.tocorastorage.fedora;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 import static se.uu.ub.cora.diva.tocorastorage.fedora.DivaFedoraToCoraPersonConverterTestHelper.assertCorrectCreatedByUsingRecordInfoAndUserId;
 import static se.uu.ub.cora.diva.tocorastorage.fedora.DivaFedoraToCoraPersonConverterTestHelper.assertCorrectIdUsingRecordInfoAndId;
 import static se.uu.ub.cora.diva.tocorastorage.fedora.DivaFedoraToCoraPersonConverterTestHelper.assertCorrectTsCreatedUsingRecordInfoAndTsCreated;
@@ -27,13 +28,19 @@ import static se.uu.ub.cora.diva.tocorastorage.fedora.DivaFedoraToCoraPersonConv
 import static se.uu.ub.cora.diva.tocorastorage.fedora.DivaFedoraToCoraPersonConverterTestHelper.assertCorrectUpdatedByUsingUpdatedAndUserId;
 import static se.uu.ub.cora.diva.tocorastorage.fedora.DivaFedoraToCoraPersonConverterTestHelper.assertRecordInfoPersonInDiva;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import se.uu.ub.cora.bookkeeper.data.DataGroup;
+import se.uu.ub.cora.diva.tocorastorage.ConcurrentCallsRunner;
 import se.uu.ub.cora.diva.tocorastorage.ParseException;
+import se.uu.ub.cora.diva.tocorastorage.metrics.InMemoryMetrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
 
 public class DivaFedoraToCoraPersonConverterTest {
 
@@ -249,4 +256,61 @@ public class DivaFedoraToCoraPersonConverterTest {
 
 	}
 
+
+	@Test
+	public void testSameConverterGivesCorrectResultsFromManyThreads() throws Exception {
+		assertSameConverterGivesCorrectResultsFromManyThreads(converter);
+	}
+
+	@Test
+	public void testSameStreamingConverterGivesCorrectResultsFromManyThreads() throws Exception {
+		assertSameConverterGivesCorrectResultsFromManyThreads(
+				new DivaFedoraToCoraPersonStreamingConverter());
+	}
+
+	private void assertSameConverterGivesCorrectResultsFromManyThreads(
+			DivaFedoraToCoraConverter sharedConverter) throws Exception {
+		List<String> xmls = Arrays.asList(DivaFedoraToCoraPersonConverterTestData.person11685XML,
+				DivaFedoraToCoraPersonConverterTestData.person10000XML,
+				DivaFedoraToCoraPersonConverterTestData.personNoNameXML);
+		List<String> expectedIds = Arrays.asList("authority-person:11685",
+				"authority-person:10000", "authority-person:10000");
+		List<Integer> expectedNumberOfAlternativeNames = Arrays.asList(3, 1, 1);
+
+		List<DataGroup> persons = ConcurrentCallsRunner.runCallsConcurrently(8, 300,
+				callNumber -> sharedConverter.fromXML(xmls.get(callNumber % 3)));
+
+		for (int i = 0; i < persons.size(); i++) {
+			DataGroup person = persons.get(i);
+			DataGroup recordInfo = person.getFirstGroupWithNameInData("recordInfo");
+			assertCorrectIdUsingRecordInfoAndId(recordInfo, expectedIds.get(i % 3));
+			assertEquals(person.getAllGroupsWithNameInData("alternativeName").size(),
+					(int) expectedNumberOfAlternativeNames.get(i % 3));
+			assertEquals(person.containsChildWithNameInData("authorizedName"), i % 3 != 2);
+		}
+	}
+
+	@Test
+	public void testDefaultMetricsIsNoOp() throws Exception {
+		assertTrue(converter.getMetrics() instanceof NoOpMetrics);
+	}
+
+	@Test
+	public void testFromXMLIsRecordedInMetrics() throws Exception {
+		InMemoryMetrics metrics = InMemoryMetrics.usingSystemNanoTime();
+		DivaFedoraToCoraPersonConverter measuredConverter = new DivaFedoraToCoraPersonConverter(
+				metrics);
+
+		measuredConverter.fromXML(DivaFedoraToCoraPersonConverterTestData.person11685XML);
+
+		assertEquals(metrics.getTimerStatistics("converter.person.fromXML").getCount(), 1);
+		assertEquals(metrics.getTimerStatistics("xml.parse").getCount(), 1);
+	}
+
+	@Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = ""
+			+ "Error converting person to Cora person: Can not read xml: .*")
+	public void parseExceptionShouldBeThrownOnMalformedXMLInStream() throws Exception {
+		converter.fromXML(FedoraResponseBody.usingStream(
+				new ByteArrayInputStream("<pid></notPid>".getBytes(StandardCharsets.UTF_8))));
+	}
 }
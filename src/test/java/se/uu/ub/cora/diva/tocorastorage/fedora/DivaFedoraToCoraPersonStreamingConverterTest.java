@@ -0,0 +1,200 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.bookkeeper.data.DataAtomic;
+import se.uu.ub.cora.bookkeeper.data.DataElement;
+import se.uu.ub.cora.bookkeeper.data.DataGroup;
+import se.uu.ub.cora.diva.tocorastorage.ParseException;
+import se.uu.ub.cora.diva.tocorastorage.metrics.InMemoryMetrics;
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
+
+public class DivaFedoraToCoraPersonStreamingConverterTest {
+	private DivaFedoraToCoraConverter streamingConverter = new DivaFedoraToCoraPersonStreamingConverter();
+
+	@DataProvider(name = "personXML")
+	public Object[][] personXML() {
+		return new Object[][] { { DivaFedoraToCoraPersonConverterTestData.person11685XML },
+				{ DivaFedoraToCoraPersonConverterTestData.person10000XML },
+				{ DivaFedoraToCoraPersonConverterTestData.personNoFirstNameXML },
+				{ DivaFedoraToCoraPersonConverterTestData.personNoLastNameXML },
+				{ DivaFedoraToCoraPersonConverterTestData.personNoNameXML },
+				{ DivaFedoraToCoraPersonConverterTestData.personNoFirstNameAlternativeXML },
+				{ DivaFedoraToCoraPersonConverterTestData.personNoLastNameAlternativeXML },
+				{ DivaFedoraToCoraPersonConverterTestData.personNoAlternativeNameXML },
+				{ createPersonXMLWithContent("<pid><![CDATA[authority-person:1]]>0</pid>"
+						+ "<defaultName><lastname>Svensson &amp; Son</lastname></defaultName>") },
+				{ createPersonXMLWithContent("<pid>first<!-- comment -->second</pid>"
+						+ "<pid>otherPid</pid>") },
+				{ createPersonXMLWithContent("<pid>\n  <inner>x</inner>authority-person:1</pid>"
+						+ "<defaultName><lastname></lastname><lastname>Svensson</lastname>"
+						+ "<firstname> </firstname></defaultName>") },
+				{ createPersonXMLWithContent("<alternativeNames><nameForm></nameForm>"
+						+ "<nameForm><lastname>Karlsson</lastname></nameForm></alternativeNames>"
+						+ "<alternativeNames><nameForm><firstname>Sven</firstname></nameForm>"
+						+ "</alternativeNames>") },
+				{ "<authorityPerson><recordInfo><events><event><timestamp>"
+						+ "2016-09-02T10:59:47.428Z<!-- c -->2017-09-02T10:59:47.428Z</timestamp>"
+						+ "</event><event><timestamp/></event></events></recordInfo>"
+						+ "<pid>authority-person:1</pid></authorityPerson>" },
+				{ createPersonXMLWithContent("<x:pid>prefixedPid</x:pid><pid>pid</pid>") },
+				{ createPersonXMLWithContent("<y:pid>y</y:pid>").replace("authorityPerson",
+						"x:authorityPerson") } };
+	}
+
+	private String createPersonXMLWithContent(String content) {
+		return "<authorityPerson>" + content + "<recordInfo><events>"
+				+ "<event><timestamp>2016-09-02T10:59:47.428Z</timestamp></event>"
+				+ "<event><timestamp>2018-02-08T10:16:19.538Z</timestamp></event>"
+				+ "</events></recordInfo></authorityPerson>";
+	}
+
+	@Test(dataProvider = "personXML")
+	public void testSameResultAsDOMConverter(String xml) throws Exception {
+		DataGroup expectedPerson = new DivaFedoraToCoraPersonConverter().fromXML(xml);
+
+		DataGroup person = streamingConverter.fromXML(xml);
+
+		assertEquals(toComparableString(person), toComparableString(expectedPerson));
+	}
+
+	private String toComparableString(DataElement element) {
+		StringBuilder out = new StringBuilder();
+		appendElement(out, element);
+		return out.toString();
+	}
+
+	private void appendElement(StringBuilder out, DataElement element) {
+		out.append(element.getNameInData());
+		if (element instanceof DataAtomic) {
+			DataAtomic atomic = (DataAtomic) element;
+			out.append("[").append(atomic.getRepeatId()).append("]=\"")
+					.append(atomic.getValue()).append("\"");
+		} else {
+			DataGroup group = (DataGroup) element;
+			out.append("[").append(group.getRepeatId()).append("]").append(group.getAttributes())
+					.append("{");
+			for (DataElement child : group.getChildren()) {
+				appendElement(out, child);
+				out.append(",");
+			}
+			out.append("}");
+		}
+	}
+
+	@Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = ""
+			+ "Error converting person to Cora person: .*")
+	public void parseExceptionShouldBeThrownOnMalformedXML() throws Exception {
+		streamingConverter.fromXML("<pid></notPid>");
+	}
+
+	@Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = ""
+			+ "Error converting person to Cora person: No timestamp found in person xml")
+	public void parseExceptionShouldBeThrownWhenNoTimestamp() throws Exception {
+		streamingConverter.fromXML("<authorityPerson><pid>authority-person:1</pid>"
+				+ "</authorityPerson>");
+	}
+
+	@Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = ""
+			+ "Error converting person to Cora person: DOCTYPE is not allowed in xml")
+	public void parseExceptionShouldBeThrownOnDoctype() throws Exception {
+		streamingConverter.fromXML("<!DOCTYPE authorityPerson [<!ENTITY x \"y\">]>"
+				+ createPersonXMLWithContent("<pid>&x;</pid>"));
+	}
+
+	@Test
+	public void testDefaultMetricsIsNoOp() throws Exception {
+		DivaFedoraToCoraPersonStreamingConverter defaultConverter = new DivaFedoraToCoraPersonStreamingConverter();
+		assertTrue(defaultConverter.getMetrics() instanceof NoOpMetrics);
+	}
+
+	@Test
+	public void testFromXMLIsRecordedInMetrics() throws Exception {
+		InMemoryMetrics metrics = InMemoryMetrics.usingSystemNanoTime();
+		DivaFedoraToCoraPersonStreamingConverter measuredConverter = new DivaFedoraToCoraPersonStreamingConverter(
+				metrics);
+
+		measuredConverter.fromXML(DivaFedoraToCoraPersonConverterTestData.person11685XML);
+
+		assertEquals(metrics.getTimerStatistics("converter.person.fromXML").getCount(), 1);
+	}
+
+	@Test(dataProvider = "personXML")
+	public void testSameResultFromStreamAsFromString(String xml) throws Exception {
+		DataGroup expectedPerson = new DivaFedoraToCoraPersonConverter().fromXML(xml);
+
+		DataGroup person = streamingConverter.fromXML(toStream(xml));
+		DataGroup personFromDOMConverter = new DivaFedoraToCoraPersonConverter()
+				.fromXML(toStream(xml));
+
+		assertEquals(toComparableString(person), toComparableString(expectedPerson));
+		assertEquals(toComparableString(personFromDOMConverter),
+				toComparableString(expectedPerson));
+	}
+
+	private FedoraResponseBody toStream(String xml) {
+		return FedoraResponseBody
+				.usingStream(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void testStreamIsReadUsingEncodingInXML() throws Exception {
+		String xml = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>"
+				+ createPersonXMLWithContent(
+						"<defaultName><lastname>Åström</lastname></defaultName>");
+		InputStream stream = new ByteArrayInputStream(xml.getBytes(StandardCharsets.ISO_8859_1));
+
+		DataGroup person = streamingConverter.fromXML(FedoraResponseBody.usingStream(stream));
+
+		assertEquals(person.getFirstGroupWithNameInData("authorizedName")
+				.getFirstAtomicValueWithNameInData("familyName"), "Åström");
+	}
+
+	@Test
+	public void testTextIsReadWithoutUsingEncodingInXML() throws Exception {
+		String xml = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>"
+				+ createPersonXMLWithContent(
+						"<defaultName><lastname>Åström</lastname></defaultName>");
+
+		DataGroup person = streamingConverter.fromXML(FedoraResponseBody.usingText(xml));
+		DataGroup personFromDOMConverter = new DivaFedoraToCoraPersonConverter()
+				.fromXML(FedoraResponseBody.usingText(xml));
+
+		assertEquals(person.getFirstGroupWithNameInData("authorizedName")
+				.getFirstAtomicValueWithNameInData("familyName"), "Åström");
+		assertEquals(personFromDOMConverter.getFirstGroupWithNameInData("authorizedName")
+				.getFirstAtomicValueWithNameInData("familyName"), "Åström");
+	}
+
+	@Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = ""
+			+ "Error converting person to Cora person: .*")
+	public void parseExceptionShouldBeThrownOnMalformedXMLInStream() throws Exception {
+		streamingConverter.fromXML(toStream("<pid></notPid>"));
+	}
+}
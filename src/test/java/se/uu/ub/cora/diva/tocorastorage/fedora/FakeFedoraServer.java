@@ -0,0 +1,311 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * FakeFedoraServer is an in process http server that answers the fedora calls made by
+ * DivaFedoraRecordStorage, so that it can be tested end to end, using real http, without a
+ * network or a running fedora. It holds a generated corpus of persons and implements listing of
+ * pids using paging, reading of person xml and datastream profiles, and writing of person xml.
+ */
+public final class FakeFedoraServer {
+	private static final String CONTEXT = "/fedora/";
+	private static final String PID_PREFIX = "authority-person:";
+	private static final DateTimeFormatter FEDORA_DATE_FORMAT = DateTimeFormatter
+			.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+	private static final Pattern DATASTREAM_PATH = Pattern
+			.compile(CONTEXT + "objects/([^/]+)/datastreams/METADATA(/content)?");
+	private NavigableMap<String, StoredPerson> persons = new ConcurrentSkipListMap<>();
+	private AtomicInteger numberOfRequests = new AtomicInteger();
+	private Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+	private AtomicLong lastModified = new AtomicLong(
+			Instant.parse("2019-01-01T00:00:00.000Z").toEpochMilli());
+	private long latencyInMillis = 0;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	public static FakeFedoraServer usingNumberOfPersons(int numberOfPersons) {
+		return new FakeFedoraServer(numberOfPersons);
+	}
+
+	private FakeFedoraServer(int numberOfPersons) {
+		for (int i = 1; i <= numberOfPersons; i++) {
+			String pid = PID_PREFIX + i;
+			setPersonXML(pid, createPersonXML(pid, i));
+		}
+	}
+
+	private static String createPersonXML(String pid, int number) {
+		return DivaFedoraToCoraPersonConverterTestData.person10000XML
+				.replace("authority-person:10000", pid)
+				.replace("<lastname>Svensson</lastname>",
+						"<lastname>Svensson" + number + "</lastname>");
+	}
+
+	public void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.createContext(CONTEXT, this::handleWithLatency);
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	public String getBaseURL() {
+		return "http://localhost:" + server.getAddress().getPort() + CONTEXT;
+	}
+
+	private void handleWithLatency(HttpExchange exchange) throws IOException {
+		numberOfRequests.incrementAndGet();
+		clientPorts.add(exchange.getRemoteAddress().getPort());
+		try {
+			sleepForLatency();
+			handle(exchange);
+		} catch (RuntimeException e) {
+			respond(exchange, 500, e.toString());
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void sleepForLatency() {
+		if (latencyInMillis > 0) {
+			try {
+				Thread.sleep(latencyInMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		Map<String, String> parameters = readParameters(exchange);
+		Matcher datastreamMatcher = DATASTREAM_PATH.matcher(path);
+		if ((CONTEXT + "objects").equals(path) && isGet(exchange)) {
+			respondWithPidList(exchange, parameters);
+		} else if (datastreamMatcher.matches()) {
+			handleDatastream(exchange, parameters, datastreamMatcher.group(1),
+					datastreamMatcher.group(2) != null);
+		} else {
+			respond(exchange, 404, "Not found: " + path);
+		}
+	}
+
+	private Map<String, String> readParameters(HttpExchange exchange) {
+		Map<String, String> parameters = new HashMap<>();
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query != null) {
+			for (String parameter : query.split("&")) {
+				String[] nameAndValue = parameter.split("=", 2);
+				parameters.put(nameAndValue[0],
+						nameAndValue.length > 1 ? urlDecode(nameAndValue[1]) : "");
+			}
+		}
+		return parameters;
+	}
+
+	private String urlDecode(String value) {
+		try {
+			return URLDecoder.decode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private boolean isGet(HttpExchange exchange) {
+		return "GET".equals(exchange.getRequestMethod());
+	}
+
+	private void respondWithPidList(HttpExchange exchange, Map<String, String> parameters)
+			throws IOException {
+		String pidPrefix = getPidPrefixFromQuery(parameters.get("query"));
+		int maxResults = Integer.parseInt(parameters.get("maxResults"));
+		List<String> pids = readPidsWithPrefixAfterToken(pidPrefix,
+				parameters.get("sessionToken"), maxResults + 1);
+		String nextToken = null;
+		if (pids.size() > maxResults) {
+			pids.remove(maxResults);
+			nextToken = pids.get(maxResults - 1);
+		}
+		respond(exchange, 200, FedoraPidListXMLCreator
+				.createXMLForPidListUsingTokenAndPids(nextToken, pids.toArray(new String[0])));
+	}
+
+	private String getPidPrefixFromQuery(String query) {
+		if (query == null || !query.startsWith("pid~") || !query.endsWith("*")) {
+			throw new IllegalArgumentException("Unsupported query: " + query);
+		}
+		return query.substring("pid~".length(), query.length() - 1);
+	}
+
+	private List<String> readPidsWithPrefixAfterToken(String pidPrefix, String sessionToken,
+			int maxNumberOfPids) {
+		NavigableMap<String, StoredPerson> remainingPersons = sessionToken == null ? persons
+				: persons.tailMap(sessionToken, false);
+		List<String> pids = new ArrayList<>();
+		Iterator<String> remainingPids = remainingPersons.keySet().iterator();
+		while (pids.size() < maxNumberOfPids && remainingPids.hasNext()) {
+			String pid = remainingPids.next();
+			if (pid.startsWith(pidPrefix)) {
+				pids.add(pid);
+			}
+		}
+		return pids;
+	}
+
+	private void handleDatastream(HttpExchange exchange, Map<String, String> parameters,
+			String pid, boolean content) throws IOException {
+		StoredPerson person = persons.get(pid);
+		if (person == null) {
+			respond(exchange, 404, "No object found in fedora for: " + pid);
+		} else if (content && isGet(exchange)) {
+			respond(exchange, 200, person.xml);
+		} else if (!content && isGet(exchange)) {
+			respond(exchange, 200, createDatastreamProfileXML(pid, person));
+		} else if (!content && "PUT".equals(exchange.getRequestMethod())) {
+			writePerson(exchange, parameters, pid, person);
+		} else {
+			respond(exchange, 405, "Method not allowed: " + exchange.getRequestMethod());
+		}
+	}
+
+	private String createDatastreamProfileXML(String pid, StoredPerson person) {
+		return "<datastreamProfile xmlns=\"http://www.fedora.info/definitions/1/0/management/\""
+				+ " pid=\"" + pid + "\" dsID=\"METADATA\"><dsLabel>METADATA</dsLabel>"
+				+ "<dsCreateDate>" + person.createDate + "</dsCreateDate><dsState>A</dsState>"
+				+ "<dsChecksumType>SHA-512</dsChecksumType><dsChecksum>"
+				+ calculateSHA512Checksum(person.xml) + "</dsChecksum></datastreamProfile>";
+	}
+
+	static String calculateSHA512Checksum(String xml) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-512")
+					.digest(xml.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder();
+			for (byte digestByte : digest) {
+				hex.append(String.format("%02x", digestByte));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void writePerson(HttpExchange exchange, Map<String, String> parameters, String pid,
+			StoredPerson person) throws IOException {
+		String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+		String lastModifiedDate = parameters.get("lastModifiedDate");
+		if (authorization == null || !authorization.startsWith("Basic ")) {
+			respond(exchange, 401, "Unauthorized");
+		} else if (lastModifiedDate != null && !lastModifiedDate.equals(person.createDate)) {
+			respond(exchange, 409, "Datastream modified since: " + lastModifiedDate);
+		} else {
+			setPersonXML(pid, readRequestBody(exchange));
+			respond(exchange, 200, createDatastreamProfileXML(pid, persons.get(pid)));
+		}
+	}
+
+	private String readRequestBody(HttpExchange exchange) throws IOException {
+		try (InputStream requestBody = exchange.getRequestBody()) {
+			return new String(requestBody.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private void respond(HttpExchange exchange, int responseCode, String responseText)
+			throws IOException {
+		byte[] response = responseText.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=UTF-8");
+		exchange.sendResponseHeaders(responseCode, response.length);
+		try (OutputStream responseBody = exchange.getResponseBody()) {
+			responseBody.write(response);
+		}
+	}
+
+	public void setPersonXML(String pid, String xml) {
+		String createDate = FEDORA_DATE_FORMAT
+				.format(Instant.ofEpochMilli(lastModified.incrementAndGet()));
+		persons.put(pid, new StoredPerson(xml, createDate));
+	}
+
+	public String getPersonXML(String pid) {
+		return persons.get(pid).xml;
+	}
+
+	public void setLatencyInMillis(long latencyInMillis) {
+		this.latencyInMillis = latencyInMillis;
+	}
+
+	public int getNumberOfRequests() {
+		return numberOfRequests.get();
+	}
+
+	/**
+	 * getNumberOfConnections returns the number of client connections that have made requests, a
+	 * connection kept alive and reused for several requests is counted once.
+	 */
+	public int getNumberOfConnections() {
+		return clientPorts.size();
+	}
+
+	private static final class StoredPerson {
+		private final String xml;
+		private final String createDate;
+
+		private StoredPerson(String xml, String createDate) {
+			this.xml = xml;
+			this.createDate = createDate;
+		}
+	}
+}
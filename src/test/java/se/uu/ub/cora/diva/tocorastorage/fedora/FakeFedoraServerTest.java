@@ -0,0 +1,179 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class FakeFedoraServerTest {
+	private FakeFedoraServer fedora;
+	private String baseURL;
+
+	@BeforeMethod
+	public void beforeMethod() throws IOException {
+		fedora = FakeFedoraServer.usingNumberOfPersons(5);
+		fedora.start();
+		baseURL = fedora.getBaseURL();
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		fedora.stop();
+	}
+
+	@Test
+	public void testPidsAreListedUsingPaging() throws Exception {
+		FedoraPidIterator pidIterator = FedoraPidIterator
+				.usingStreamingHttpHandlerFactoryAndBaseURLAndQueryAndPageSize(
+						new StreamingHttpHandlerFactoryImp(), baseURL,
+						"pid%7Eauthority-person:*", 2);
+		List<String> pids = new ArrayList<>();
+		pidIterator.forEachRemaining(pids::add);
+
+		assertEquals(pids.size(), 5);
+		assertTrue(pids.contains("authority-person:1"));
+		assertTrue(pids.contains("authority-person:5"));
+		assertEquals(pidIterator.getNumberOfFetchedPages(), 3);
+	}
+
+	@Test
+	public void testPidsNotMatchingQueryAreNotListed() throws Exception {
+		fedora.setPersonXML("authority-organisation:1", "<organisation/>");
+		FedoraPidIterator pidIterator = FedoraPidIterator
+				.usingStreamingHttpHandlerFactoryAndBaseURLAndQueryAndPageSize(
+						new StreamingHttpHandlerFactoryImp(), baseURL,
+						"pid%7Eauthority-organisation:*", 10);
+
+		assertEquals(pidIterator.next(), "authority-organisation:1");
+		assertEquals(pidIterator.hasNext(), false);
+	}
+
+	@Test
+	public void testPersonIsReadFromGeneratedCorpus() throws Exception {
+		HttpURLConnection connection = openConnectionForPerson("authority-person:3");
+
+		assertEquals(connection.getResponseCode(), 200);
+		String personXML = readResponse(connection);
+		assertEquals(personXML, fedora.getPersonXML("authority-person:3"));
+		assertTrue(personXML.contains("<pid>authority-person:3</pid>"));
+		assertTrue(personXML.contains("<lastname>Svensson3</lastname>"));
+	}
+
+	private HttpURLConnection openConnectionForPerson(String pid) throws IOException {
+		return openConnection("objects/" + pid + "/datastreams/METADATA/content");
+	}
+
+	private HttpURLConnection openConnection(String path) throws IOException {
+		return (HttpURLConnection) new URL(baseURL + path).openConnection();
+	}
+
+	private String readResponse(HttpURLConnection connection) throws IOException {
+		try (InputStream response = connection.getInputStream()) {
+			return new String(response.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	@Test
+	public void testUnknownPersonIsNotFound() throws Exception {
+		HttpURLConnection connection = openConnectionForPerson("authority-person:99");
+
+		assertEquals(connection.getResponseCode(), 404);
+	}
+
+	@Test
+	public void testUnknownPathIsNotFound() throws Exception {
+		assertEquals(openConnection("objects/authority-person:1/other").getResponseCode(), 404);
+	}
+
+	@Test
+	public void testPersonIsWrittenAndProfileIsUpdated() throws Exception {
+		String profileBefore = readProfile("authority-person:1");
+
+		HttpURLConnection connection = openConnectionForWrite("authority-person:1", "");
+		connection.setRequestProperty("Authorization", "Basic someAuth");
+		writeRequestBody(connection, "<authorityPerson>updated</authorityPerson>");
+
+		assertEquals(connection.getResponseCode(), 200);
+		assertEquals(fedora.getPersonXML("authority-person:1"),
+				"<authorityPerson>updated</authorityPerson>");
+		assertNotEquals(readProfile("authority-person:1"), profileBefore);
+	}
+
+	private String readProfile(String pid) throws IOException {
+		return readResponse(openConnection("objects/" + pid + "/datastreams/METADATA?format=xml"));
+	}
+
+	private HttpURLConnection openConnectionForWrite(String pid, String extraParameters)
+			throws IOException {
+		HttpURLConnection connection = openConnection("objects/" + pid
+				+ "/datastreams/METADATA?format=?xml&controlGroup=M" + extraParameters);
+		connection.setRequestMethod("PUT");
+		return connection;
+	}
+
+	private void writeRequestBody(HttpURLConnection connection, String body) throws IOException {
+		connection.setDoOutput(true);
+		try (OutputStream output = connection.getOutputStream()) {
+			output.write(body.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	public void testWriteWithoutAuthorizationIsUnauthorized() throws Exception {
+		HttpURLConnection connection = openConnectionForWrite("authority-person:1", "");
+		writeRequestBody(connection, "<authorityPerson/>");
+
+		assertEquals(connection.getResponseCode(), 401);
+	}
+
+	@Test
+	public void testWriteWithOldLastModifiedDateIsConflict() throws Exception {
+		HttpURLConnection connection = openConnectionForWrite("authority-person:1",
+				"&lastModifiedDate=2000-01-01T00:00:00.000Z");
+		connection.setRequestProperty("Authorization", "Basic someAuth");
+		writeRequestBody(connection, "<authorityPerson/>");
+
+		assertEquals(connection.getResponseCode(), 409);
+	}
+
+	@Test
+	public void testLatencyIsAddedToEachRequest() throws Exception {
+		fedora.setLatencyInMillis(50);
+		long start = System.nanoTime();
+
+		readProfile("authority-person:1");
+
+		assertTrue(System.nanoTime() - start >= 50_000_000L);
+		assertEquals(fedora.getNumberOfRequests(), 1);
+	}
+}
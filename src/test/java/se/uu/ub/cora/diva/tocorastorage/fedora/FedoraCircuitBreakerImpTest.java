@@ -0,0 +1,524 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.diva.tocorastorage.FedoraException;
+import se.uu.ub.cora.diva.tocorastorage.cache.ClockSpy;
+import se.uu.ub.cora.spider.record.storage.RecordNotFoundException;
+
+public class FedoraCircuitBreakerImpTest {
+	private ClockSpy clock;
+	private FedoraCircuitBreakerImp circuitBreaker;
+	private List<String> calls;
+
+	@BeforeMethod
+	public void setUp() {
+		clock = new ClockSpy();
+		circuitBreaker = FedoraCircuitBreakerImp
+				.usingMaxConcurrentCallsAndFailureThresholdAndSlowCallAndOpenDurationInMillisAndClock(
+						2, 3, 500, 10000, clock);
+		calls = new ArrayList<>();
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "maxConcurrentCalls must be at least 1, was: 0")
+	public void testMaxConcurrentCallsMustBeAtLeastOne() throws Exception {
+		FedoraCircuitBreakerImp
+				.usingMaxConcurrentCallsAndFailureThresholdAndSlowCallAndOpenDurationInMillis(0, 3,
+						500, 10000);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "failureThreshold must be at least 1, was: 0")
+	public void testFailureThresholdMustBeAtLeastOne() throws Exception {
+		FedoraCircuitBreakerImp
+				.usingMaxConcurrentCallsAndFailureThresholdAndSlowCallAndOpenDurationInMillis(2, 0,
+						500, 10000);
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertEquals(circuitBreaker.getMaxConcurrentCalls(), 2);
+		assertEquals(circuitBreaker.getFailureThreshold(), 3);
+		assertEquals(circuitBreaker.getSlowCallDurationInMillis(), 500);
+		assertEquals(circuitBreaker.getOpenDurationInMillis(), 10000);
+		assertEquals(circuitBreaker.getStatistics().getState(), FedoraCircuitState.CLOSED);
+	}
+
+	@Test
+	public void testSuccessfulCallReturnsResult() throws Exception {
+		String result = circuitBreaker.call(() -> "someResult");
+
+		assertEquals(result, "someResult");
+		FedoraCircuitBreakerStatistics statistics = circuitBreaker.getStatistics();
+		assertEquals(statistics.getSuccessCount(), 1);
+		assertEquals(statistics.getFailureCount(), 0);
+		assertEquals(statistics.getCallsInProgress(), 0);
+	}
+
+	@Test
+	public void testFailedResultIsReturnedAndCountedAsFailure() throws Exception {
+		int result = circuitBreaker.call(() -> 500, code -> code != 200);
+
+		assertEquals(result, 500);
+		FedoraCircuitBreakerStatistics statistics = circuitBreaker.getStatistics();
+		assertEquals(statistics.getSuccessCount(), 0);
+		assertEquals(statistics.getFailureCount(), 1);
+		assertEquals(statistics.getCallsInProgress(), 0);
+	}
+
+	@Test
+	public void testFailedResultsOpenCircuitAtFailureThreshold() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			circuitBreaker.call(() -> 500, code -> code != 200);
+		}
+
+		assertEquals(circuitBreaker.getStatistics().getState(), FedoraCircuitState.OPEN);
+	}
+
+	@Test
+	public void testResultNotMatchingFailedResultIsCountedAsSuccess() throws Exception {
+		int result = circuitBreaker.call(() -> 200, code -> code != 200);
+
+		assertEquals(result, 200);
+		assertEquals(circuitBreaker.getStatistics().getSuccessCount(), 1);
+	}
+
+	@Test(expectedExceptions = FedoraException.class, expectedExceptionsMessageRegExp = ""
+			+ "fedora is down")
+	public void testFailedCallThrowsOriginalException() throws Exception {
+		circuitBreaker.call(this::failingCall);
+	}
+
+	private String failingCall() {
+		calls.add("failingCall");
+		throw FedoraException.withMessage("fedora is down");
+	}
+
+	private void callAndIgnoreFailure() {
+		try {
+			circuitBreaker.call(this::failingCall);
+		} catch (FedoraException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCircuitStaysClosedBelowFailureThreshold() throws Exception {
+		callAndIgnoreFailure();
+		callAndIgnoreFailure();
+
+		FedoraCircuitBreakerStatistics statistics = circuitBreaker.getStatistics();
+		assertEquals(statistics.getState(), FedoraCircuitState.CLOSED);
+		assertEquals(statistics.getFailureCount(), 2);
+	}
+
+	@Test
+	public void testSuccessfulCallResetsConsecutiveFailures() throws Exception {
+		callAndIgnoreFailure();
+		callAndIgnoreFailure();
+		circuitBreaker.call(() -> "someResult");
+		callAndIgnoreFailure();
+		callAndIgnoreFailure();
+
+		assertEquals(circuitBreaker.getStatistics().getState(), FedoraCircuitState.CLOSED);
+	}
+
+	@Test
+	public void testCircuitOpensAtFailureThreshold() throws Exception {
+		openCircuit();
+
+		assertEquals(circuitBreaker.getStatistics().getState(), FedoraCircuitState.OPEN);
+	}
+
+	private void openCircuit() {
+		callAndIgnoreFailure();
+		callAndIgnoreFailure();
+		callAndIgnoreFailure();
+	}
+
+	@Test(expectedExceptions = FedoraException.class, expectedExceptionsMessageRegExp = ""
+			+ "Circuit breaker for fedora is open, calls are rejected until fedora recovers")
+	public void testOpenCircuitRejectsCalls() throws Exception {
+		openCircuit();
+
+		circuitBreaker.call(() -> "someResult");
+	}
+
+	@Test
+	public void testOpenCircuitDoesNotCallFedora() throws Exception {
+		openCircuit();
+
+		callAndIgnoreFailure();
+
+		assertEquals(calls.size(), 3);
+		FedoraCircuitBreakerStatistics statistics = circuitBreaker.getStatistics();
+		assertEquals(statistics.getFailureCount(), 3);
+		assertEquals(statistics.getOpenCircuitRejectionCount(), 1);
+		assertEquals(statistics.getRejectionCount(), 1);
+	}
+
+	@Test
+	public void testCircuitIsHalfOpenAfterOpenDuration() throws Exception {
+		openCircuit();
+
+		clock.millis += 9999;
+		assertEquals(circuitBreaker.getStatistics().getState(), FedoraCircuitState.OPEN);
+		clock.millis += 1;
+		assertEquals(circuitBreaker.getStatistics().getState(), FedoraCircuitState.HALF_OPEN);
+	}
+
+	@Test
+	public void testSuccessfulTrialCallClosesCircuit() throws Exception {
+		openCircuit();
+		clock.millis += 10000;
+
+		String result = circuitBreaker.call(() -> "someResult");
+
+		assertEquals(result, "someResult");
+		assertEquals(circuitBreaker.getStatistics().getState(), FedoraCircuitState.CLOSED);
+		callAndIgnoreFailure();
+		assertEquals(circuitBreaker.getStatistics().getState(), FedoraCircuitState.CLOSED);
+	}
+
+	@Test
+	public void testFailedTrialCallOpensCircuitAgain() throws Exception {
+		openCircuit();
+		clock.millis += 10000;
+
+		callAndIgnoreFailure();
+
+		assertEquals(calls.size(), 4);
+		assertEquals(circuitBreaker.getStatistics().getState(), FedoraCircuitState.OPEN);
+		clock.millis += 9999;
+		assertEquals(circuitBreaker.getStatistics().getState(), FedoraCircuitState.OPEN);
+	}
+
+	@Test
+	public void testOnlyOneTrialCallIsLetThroughWhenHalfOpen() throws Exception {
+		openCircuit();
+		clock.millis += 10000;
+
+		String result = circuitBreaker.call(() -> {
+			callAndIgnoreFailure();
+			return "trialResult";
+		});
+
+		assertEquals(result, "trialResult");
+		assertEquals(calls.size(), 3);
+		assertEquals(circuitBreaker.getStatistics().getOpenCircuitRejectionCount(), 1);
+	}
+
+	@Test
+	public void testCallStartedBeforeCircuitOpenedDoesNotCloseIt() throws Exception {
+		String result = circuitBreaker.call(() -> {
+			openCircuit();
+			return "lateResult";
+		});
+
+		assertEquals(result, "lateResult");
+		FedoraCircuitBreakerStatistics statistics = circuitBreaker.getStatistics();
+		assertEquals(statistics.getState(), FedoraCircuitState.OPEN);
+		assertEquals(statistics.getSuccessCount(), 1);
+	}
+
+	@Test
+	public void testCallStartedBeforeCircuitOpenedDoesNotCloseHalfOpenCircuit()
+			throws Exception {
+		circuitBreaker = FedoraCircuitBreakerImp
+				.usingMaxConcurrentCallsAndFailureThresholdAndSlowCallAndOpenDurationInMillisAndClock(
+						2, 3, 20000, 10000, clock);
+
+		circuitBreaker.call(() -> {
+			openCircuit();
+			clock.millis += 10000;
+			return "lateResult";
+		});
+
+		assertEquals(circuitBreaker.getStatistics().getState(), FedoraCircuitState.HALF_OPEN);
+		circuitBreaker.call(() -> "trialResult");
+		assertEquals(circuitBreaker.getStatistics().getState(), FedoraCircuitState.CLOSED);
+	}
+
+	@Test
+	public void testFailedCallStartedBeforeCircuitOpenedDoesNotOpenHalfOpenCircuitAgain()
+			throws Exception {
+		circuitBreaker.call(() -> {
+			openCircuit();
+			clock.millis += 10000;
+			return 500;
+		}, code -> code != 200);
+
+		FedoraCircuitBreakerStatistics statistics = circuitBreaker.getStatistics();
+		assertEquals(statistics.getState(), FedoraCircuitState.HALF_OPEN);
+		assertEquals(statistics.getFailureCount(), 4);
+	}
+
+	@Test
+	public void testErrorInTrialCallOpensCircuitAgain() throws Exception {
+		openCircuit();
+		clock.millis += 10000;
+
+		try {
+			circuitBreaker.call(() -> {
+				throw new StackOverflowError("trial call broke");
+			});
+			fail("StackOverflowError should have been thrown");
+		} catch (StackOverflowError e) {
+			assertEquals(e.getMessage(), "trial call broke");
+		}
+
+		FedoraCircuitBreakerStatistics statistics = circuitBreaker.getStatistics();
+		assertEquals(statistics.getState(), FedoraCircuitState.OPEN);
+		assertEquals(statistics.getFailureCount(), 4);
+		clock.millis += 10000;
+		assertEquals(circuitBreaker.call(() -> "trialResult"), "trialResult");
+		assertEquals(circuitBreaker.getStatistics().getState(), FedoraCircuitState.CLOSED);
+	}
+
+	@Test
+	public void testSlowCallsOpenCircuit() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			String result = circuitBreaker.call(() -> {
+				clock.millis += 501;
+				return "slowResult";
+			});
+			assertEquals(result, "slowResult");
+		}
+
+		FedoraCircuitBreakerStatistics statistics = circuitBreaker.getStatistics();
+		assertEquals(statistics.getState(), FedoraCircuitState.OPEN);
+		assertEquals(statistics.getSlowCallCount(), 3);
+		assertEquals(statistics.getSuccessCount(), 0);
+	}
+
+	@Test
+	public void testCallAtSlowCallDurationIsNotSlow() throws Exception {
+		circuitBreaker.call(() -> {
+			clock.millis += 500;
+			return "someResult";
+		});
+
+		assertEquals(circuitBreaker.getStatistics().getSuccessCount(), 1);
+		assertEquals(circuitBreaker.getStatistics().getSlowCallCount(), 0);
+	}
+
+	@Test
+	public void testMaxWaitForBulkheadDefaultsToSlowCallDuration() throws Exception {
+		assertEquals(circuitBreaker.getMaxWaitForBulkheadInMillis(), 500);
+	}
+
+	@Test
+	public void testBulkheadRejectsCallsOverMaxConcurrentCalls() throws Exception {
+		circuitBreaker.setMaxWaitForBulkheadInMillis(0);
+		CountDownLatch callsStarted = new CountDownLatch(2);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 2; i++) {
+				results.add(executor.submit(() -> circuitBreaker.call(() -> {
+					callsStarted.countDown();
+					awaitLatch(release);
+					return "someResult";
+				})));
+			}
+			assertTrue(callsStarted.await(5, TimeUnit.SECONDS));
+			assertEquals(circuitBreaker.getStatistics().getCallsInProgress(), 2);
+
+			assertBulkheadRejectsCall();
+
+			release.countDown();
+			for (Future<String> result : results) {
+				assertEquals(result.get(5, TimeUnit.SECONDS), "someResult");
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		FedoraCircuitBreakerStatistics statistics = circuitBreaker.getStatistics();
+		assertEquals(statistics.getBulkheadRejectionCount(), 1);
+		assertEquals(statistics.getRejectionCount(), 1);
+		assertEquals(statistics.getCallsInProgress(), 0);
+		assertEquals(statistics.getState(), FedoraCircuitState.CLOSED);
+	}
+
+	@Test
+	public void testCallWaitsForBulkheadUntilCallInProgressFinishes() throws Exception {
+		circuitBreaker.setMaxWaitForBulkheadInMillis(5000);
+		ParallelFedoraExecutor parallelExecutor = ParallelFedoraExecutor
+				.usingMaxNumberOfParallelCalls(6);
+		try {
+			ParallelResult<String> result = parallelExecutor.executeForAllIds(createIds(12),
+					id -> circuitBreaker.call(() -> sleepAndReturn(id)));
+
+			assertEquals(result.getFailures().size(), 0);
+			assertEquals(result.getResults().size(), 12);
+		} finally {
+			parallelExecutor.close();
+		}
+		FedoraCircuitBreakerStatistics statistics = circuitBreaker.getStatistics();
+		assertEquals(statistics.getBulkheadRejectionCount(), 0);
+		assertEquals(statistics.getSuccessCount(), 12);
+		assertEquals(statistics.getCallsInProgress(), 0);
+	}
+
+	private List<String> createIds(int numberOfIds) {
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < numberOfIds; i++) {
+			ids.add("id" + i);
+		}
+		return ids;
+	}
+
+	private String sleepAndReturn(String id) {
+		try {
+			Thread.sleep(10);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return id;
+	}
+
+	@Test
+	public void testCallIsRejectedWhenBulkheadIsNotReleasedWithinMaxWait() throws Exception {
+		circuitBreaker.setMaxWaitForBulkheadInMillis(50);
+		CountDownLatch callsStarted = new CountDownLatch(2);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (int i = 0; i < 2; i++) {
+				executor.submit(() -> circuitBreaker.call(() -> {
+					callsStarted.countDown();
+					awaitLatch(release);
+					return "someResult";
+				}));
+			}
+			assertTrue(callsStarted.await(5, TimeUnit.SECONDS));
+
+			long startMillis = System.currentTimeMillis();
+			assertBulkheadRejectsCall();
+
+			assertTrue(System.currentTimeMillis() - startMillis >= 50);
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+		assertEquals(circuitBreaker.getStatistics().getBulkheadRejectionCount(), 1);
+	}
+
+	@Test
+	public void testInterruptWhileWaitingForBulkheadRejectsCall() throws Exception {
+		circuitBreaker.setMaxWaitForBulkheadInMillis(5000);
+		CountDownLatch callsStarted = new CountDownLatch(2);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (int i = 0; i < 2; i++) {
+				executor.submit(() -> circuitBreaker.call(() -> {
+					callsStarted.countDown();
+					awaitLatch(release);
+					return "someResult";
+				}));
+			}
+			assertTrue(callsStarted.await(5, TimeUnit.SECONDS));
+
+			Thread.currentThread().interrupt();
+			assertBulkheadRejectsCall();
+
+			assertTrue(Thread.interrupted());
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+	}
+
+	private void awaitLatch(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void assertBulkheadRejectsCall() {
+		try {
+			circuitBreaker.call(() -> "someResult");
+			throw new AssertionError("Expected call to be rejected");
+		} catch (FedoraException e) {
+			assertEquals(e.getMessage(), "Too many concurrent calls to fedora, max is: 2");
+		}
+	}
+
+	@Test
+	public void testRejectedCallFromOpenCircuitReleasesBulkhead() throws Exception {
+		openCircuit();
+		callAndIgnoreFailure();
+		callAndIgnoreFailure();
+		callAndIgnoreFailure();
+
+		FedoraCircuitBreakerStatistics statistics = circuitBreaker.getStatistics();
+		assertEquals(statistics.getCallsInProgress(), 0);
+		assertEquals(statistics.getOpenCircuitRejectionCount(), 3);
+		assertEquals(statistics.getBulkheadRejectionCount(), 0);
+	}
+
+	@Test
+	public void testStatisticsToString() throws Exception {
+		circuitBreaker.call(() -> "someResult");
+		callAndIgnoreFailure();
+
+		assertEquals(circuitBreaker.getStatistics().toString(),
+				"state: CLOSED, successes: 1, failures: 1, slowCalls: 0, "
+						+ "openCircuitRejections: 0, bulkheadRejections: 0, callsInProgress: 0");
+	}
+
+	@Test
+	public void testRecordNotFoundIsNotCountedAsFailure() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			try {
+				circuitBreaker.call(() -> {
+					throw new RecordNotFoundException("not found");
+				});
+				fail("RecordNotFoundException should have been thrown");
+			} catch (RecordNotFoundException e) {
+				assertEquals(e.getMessage(), "not found");
+			}
+		}
+
+		FedoraCircuitBreakerStatistics statistics = circuitBreaker.getStatistics();
+		assertEquals(statistics.getState(), FedoraCircuitState.CLOSED);
+		assertEquals(statistics.getSuccessCount(), 5);
+		assertEquals(statistics.getFailureCount(), 0);
+	}
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.diva.tocorastorage.FedoraException;
+import se.uu.ub.cora.diva.tocorastorage.cache.ClockSpy;
+import se.uu.ub.cora.diva.tocorastorage.cache.RecordCacheImp;
+import se.uu.ub.cora.diva.tocorastorage.cache.RecordCacheStatistics;
+
+public class FedoraPersonExporterTest {
+	private String baseURL = "http://alvin-cora-fedora:8088/fedora/";
+	private String pidQueryURL = baseURL + "objects?pid=true&maxResults=2&resultFormat=xml"
+			+ "&query=pid%7Eauthority-person:*";
+	private StreamingHttpHandlerFactorySpy streamingFactory;
+	private DivaFedoraRecordStorage recordStorage;
+	private Path exportDirectory;
+	private Path exportFile;
+	private Path checkpointFile;
+	private FedoraPersonExporter exporter;
+	private List<FedoraExportProgress> reportedProgress;
+	private List<Map<String, Exception>> reportedFailures;
+
+	@BeforeMethod
+	public void beforeMethod() throws IOException {
+		streamingFactory = new StreamingHttpHandlerFactorySpy();
+		recordStorage = DivaFedoraRecordStorage
+				.usingHttpHandlerFactoryAndConverterFactoryAndBaseURLAndUsernameAndPassword(
+						new HttpHandlerFactorySpy(),
+						DivaFedoraConverterFactoryImp.usingFedoraURL(baseURL), baseURL,
+						"fedoraUser", "fedoraPassword");
+		recordStorage.setStreamingHttpHandlerFactory(streamingFactory);
+		recordStorage.setPersonListPageSize(2);
+		exportDirectory = Files.createTempDirectory("fedoraExport");
+		exportFile = exportDirectory.resolve("persons.ndjson");
+		checkpointFile = exportDirectory.resolve("persons.checkpoint");
+		exporter = FedoraPersonExporter.usingRecordStorageAndExportFileAndCheckpointFile(
+				recordStorage, exportFile, checkpointFile);
+		reportedProgress = new ArrayList<>();
+		reportedFailures = new ArrayList<>();
+		exporter.setListener((progress, failures) -> {
+			reportedProgress.add(progress);
+			reportedFailures.add(failures);
+		});
+		exporter.setBatchSize(2);
+	}
+
+	@AfterMethod
+	public void afterMethod() throws IOException {
+		try (Stream<Path> files = Files.list(exportDirectory)) {
+			for (Path file : files.collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(exportDirectory);
+	}
+
+	private void setUpPidPages() {
+		setResponseForUrl(pidQueryURL, FedoraPidListXMLCreator
+				.createXMLForPidListUsingTokenAndPids("token1", "authority-person:1",
+						"authority-person:2"));
+		setResponseForUrl(pidQueryURL + "&sessionToken=token1", FedoraPidListXMLCreator
+				.createXMLForPidListUsingTokenAndPids(null, "authority-person:3"));
+	}
+
+	private void setResponseForUrl(String url, String responseText) {
+		streamingFactory.responseTextsForUrls.put(url, responseText);
+	}
+
+	private void setUpPersons(String... ids) {
+		for (String id : ids) {
+			setResponseForUrl(baseURL + "objects/" + id + "/datastreams/METADATA/content",
+					createPersonXML(id));
+		}
+	}
+
+	private String createPersonXML(String id) {
+		return "<authorityPerson><pid>" + id + "</pid><recordInfo><events>"
+				+ "<event><timestamp>2016-09-02T10:59:47.428Z</timestamp></event>"
+				+ "<event><timestamp>2018-02-08T10:16:19.538Z</timestamp></event>"
+				+ "</events></recordInfo></authorityPerson>";
+	}
+
+	private List<String> readExportedLines() throws IOException {
+		return Files.readAllLines(exportFile, StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testAllPersonsAreExportedOnePerLine() throws Exception {
+		setUpPidPages();
+		setUpPersons("authority-person:1", "authority-person:2", "authority-person:3");
+
+		FedoraExportProgress progress = exporter.export();
+
+		List<String> lines = readExportedLines();
+		assertEquals(lines.size(), 3);
+		assertExportedLineIsPerson(lines.get(0), "authority-person:1");
+		assertExportedLineIsPerson(lines.get(1), "authority-person:2");
+		assertExportedLineIsPerson(lines.get(2), "authority-person:3");
+		assertEquals(progress.getNumberOfExportedRecords(), 3);
+		assertEquals(progress.getNumberOfFailedRecords(), 0);
+		assertEquals(progress.getNumberOfRecordsInThisRun(), 3);
+		assertFalse(Files.exists(checkpointFile));
+	}
+
+	private void assertExportedLineIsPerson(String line, String id) {
+		String expectedPersonStart = "{\"name\":\"person\",\"children\":[{\"name\":"
+				+ "\"recordInfo\",\"children\":[{\"name\":\"type\",\"children\":[{\"name\":"
+				+ "\"linkedRecordType\",\"value\":\"recordType\"},{\"name\":\"linkedRecordId\","
+				+ "\"value\":\"person\"}]},{\"name\":\"id\",\"value\":\"" + id + "\"}";
+		assertTrue(line.startsWith(expectedPersonStart), line);
+	}
+
+	@Test
+	public void testListenerIsCalledForEachBatch() throws Exception {
+		setUpPidPages();
+		setUpPersons("authority-person:1", "authority-person:2", "authority-person:3");
+
+		exporter.export();
+
+		assertEquals(reportedProgress.size(), 2);
+		assertEquals(reportedProgress.get(0).getNumberOfExportedRecords(), 2);
+		assertEquals(reportedProgress.get(1).getNumberOfExportedRecords(), 3);
+		assertTrue(reportedFailures.get(0).isEmpty());
+	}
+
+	@Test
+	public void testFailedPersonsAreReportedAndNotWritten() throws Exception {
+		setUpPidPages();
+		setUpPersons("authority-person:1", "authority-person:3");
+
+		FedoraExportProgress progress = exporter.export();
+
+		List<String> lines = readExportedLines();
+		assertEquals(lines.size(), 2);
+		assertExportedLineIsPerson(lines.get(0), "authority-person:1");
+		assertExportedLineIsPerson(lines.get(1), "authority-person:3");
+		assertEquals(progress.getNumberOfExportedRecords(), 2);
+		assertEquals(progress.getNumberOfFailedRecords(), 1);
+		assertEquals(progress.getNumberOfRecordsInThisRun(), 3);
+		assertTrue(reportedFailures.get(0).containsKey("authority-person:2"));
+		assertTrue(reportedFailures.get(1).isEmpty());
+	}
+
+	@Test
+	public void testInterruptedExportIsResumedFromCheckpoint() throws Exception {
+		setUpPidPages();
+		setUpPersons("authority-person:1", "authority-person:2", "authority-person:3");
+		exporter.setListener((progress, failures) -> {
+			throw new RuntimeException("export interrupted");
+		});
+		try {
+			exporter.export();
+			fail("export should have been interrupted");
+		} catch (RuntimeException e) {
+			assertEquals(e.getMessage(), "export interrupted");
+		}
+		assertTrue(Files.exists(checkpointFile));
+		Files.write(exportFile, "{\"partly written".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+		streamingFactory.urls.clear();
+
+		exporter.setListener((progress, failures) -> reportedProgress.add(progress));
+		FedoraExportProgress progress = exporter.export();
+
+		List<String> lines = readExportedLines();
+		assertEquals(lines.size(), 3);
+		assertExportedLineIsPerson(lines.get(0), "authority-person:1");
+		assertExportedLineIsPerson(lines.get(1), "authority-person:2");
+		assertExportedLineIsPerson(lines.get(2), "authority-person:3");
+		assertEquals(progress.getNumberOfExportedRecords(), 3);
+		assertEquals(progress.getNumberOfRecordsInThisRun(), 1);
+		assertFalse(streamingFactory.urls.contains(
+				baseURL + "objects/authority-person:1/datastreams/METADATA/content"));
+		assertFalse(Files.exists(checkpointFile));
+	}
+
+	@Test
+	public void testResumedExportContinuesAfterLastProcessedPidWhenEarlierPidIsRemoved()
+			throws Exception {
+		setUpPidPages();
+		setUpPersons("authority-person:1", "authority-person:2", "authority-person:3");
+		interruptExportAfterFirstBatch();
+		setResponseForUrl(pidQueryURL, FedoraPidListXMLCreator
+				.createXMLForPidListUsingTokenAndPids("token1", "authority-person:2"));
+
+		FedoraExportProgress progress = exporter.export();
+
+		List<String> lines = readExportedLines();
+		assertEquals(lines.size(), 3);
+		assertExportedLineIsPerson(lines.get(2), "authority-person:3");
+		assertEquals(progress.getNumberOfRecordsInThisRun(), 1);
+	}
+
+	private void interruptExportAfterFirstBatch() {
+		exporter.setListener((progress, failures) -> {
+			throw new RuntimeException("export interrupted");
+		});
+		try {
+			exporter.export();
+			fail("export should have been interrupted");
+		} catch (RuntimeException e) {
+			assertEquals(e.getMessage(), "export interrupted");
+		}
+		exporter.setListener((progress, failures) -> reportedProgress.add(progress));
+	}
+
+	@Test(expectedExceptions = FedoraException.class, expectedExceptionsMessageRegExp = ""
+			+ "Unable to resume export, last processed pid: authority-person:2 is no longer "
+			+ "listed by fedora")
+	public void testResumeThrowsExceptionIfLastProcessedPidIsNoLongerListed() throws Exception {
+		setUpPidPages();
+		setUpPersons("authority-person:1", "authority-person:2", "authority-person:3");
+		interruptExportAfterFirstBatch();
+		setResponseForUrl(pidQueryURL, FedoraPidListXMLCreator
+				.createXMLForPidListUsingTokenAndPids("token1", "authority-person:1"));
+
+		exporter.export();
+	}
+
+	@Test
+	public void testCheckpointIsKeptWhenPidsFailed() throws Exception {
+		setUpPidPages();
+		setUpPersons("authority-person:1", "authority-person:3");
+
+		exporter.export();
+
+		assertTrue(Files.exists(checkpointFile));
+		FedoraExportCheckpoint checkpoint = FedoraExportCheckpoint
+				.readFromFileOrStartNew(checkpointFile);
+		assertEquals(checkpoint.getLastProcessedPid(), "authority-person:3");
+		assertEquals(checkpoint.getFailedPids(), Collections.singleton("authority-person:2"));
+		assertEquals(checkpoint.getNumberOfExportedRecords(), 2);
+	}
+
+	@Test
+	public void testFailedPidsAreRetriedWhenExportIsResumed() throws Exception {
+		setUpPidPages();
+		setUpPersons("authority-person:1", "authority-person:3");
+		exporter.export();
+		setUpPersons("authority-person:2");
+		streamingFactory.urls.clear();
+
+		FedoraExportProgress progress = exporter.export();
+
+		List<String> lines = readExportedLines();
+		assertEquals(lines.size(), 3);
+		assertExportedLineIsPerson(lines.get(0), "authority-person:1");
+		assertExportedLineIsPerson(lines.get(1), "authority-person:3");
+		assertExportedLineIsPerson(lines.get(2), "authority-person:2");
+		assertEquals(progress.getNumberOfExportedRecords(), 3);
+		assertEquals(progress.getNumberOfFailedRecords(), 0);
+		assertEquals(progress.getNumberOfRecordsInThisRun(), 1);
+		assertFalse(streamingFactory.urls.contains(
+				baseURL + "objects/authority-person:1/datastreams/METADATA/content"));
+		assertFalse(streamingFactory.urls.contains(
+				baseURL + "objects/authority-person:3/datastreams/METADATA/content"));
+		assertFalse(Files.exists(checkpointFile));
+	}
+
+	@Test
+	public void testPidsStillFailingAfterRetryAreKeptInCheckpoint() throws Exception {
+		setUpPidPages();
+		setUpPersons("authority-person:1", "authority-person:3");
+		exporter.export();
+
+		FedoraExportProgress progress = exporter.export();
+
+		assertEquals(readExportedLines().size(), 2);
+		assertEquals(progress.getNumberOfExportedRecords(), 2);
+		assertEquals(progress.getNumberOfFailedRecords(), 1);
+		assertEquals(FedoraExportCheckpoint.readFromFileOrStartNew(checkpointFile)
+				.getFailedPids(), Collections.singleton("authority-person:2"));
+	}
+
+	@Test
+	public void testExportDoesNotUseOrFillPersonCache() throws Exception {
+		RecordCacheImp personCache = RecordCacheImp.usingMaxSizeAndTimeToLiveInMillis(10, 60000);
+		recordStorage.setPersonCache(personCache);
+		setUpPidPages();
+		setUpPersons("authority-person:1", "authority-person:2", "authority-person:3");
+
+		exporter.export();
+
+		RecordCacheStatistics statistics = personCache.getStatistics();
+		assertEquals(statistics.getSize(), 0);
+		assertEquals(statistics.getMissCount(), 0);
+		assertEquals(recordStorage.getPersonReads().getCallCount(), 0);
+	}
+
+	@Test
+	public void testNewExportStartsFromBeginningAndReplacesExportFile() throws Exception {
+		setUpPidPages();
+		setUpPersons("authority-person:1", "authority-person:2", "authority-person:3");
+		Files.write(exportFile, "old export\n".getBytes(StandardCharsets.UTF_8));
+
+		exporter.export();
+		exporter.export();
+
+		List<String> lines = readExportedLines();
+		assertEquals(lines.size(), 3);
+		assertExportedLineIsPerson(lines.get(0), "authority-person:1");
+	}
+
+	@Test
+	public void testThroughputIsReported() throws Exception {
+		setUpPidPages();
+		setUpPersons("authority-person:1", "authority-person:2", "authority-person:3");
+		ClockSpy clock = new ClockSpy();
+		exporter.setClock(clock);
+		exporter.setListener((progress, failures) -> {
+			reportedProgress.add(progress);
+			clock.millis += 500;
+		});
+
+		FedoraExportProgress progress = exporter.export();
+
+		assertEquals(reportedProgress.get(0).getElapsedMillis(), 0);
+		assertEquals(reportedProgress.get(0).getRecordsPerSecond(), 0.0);
+		assertEquals(reportedProgress.get(1).getElapsedMillis(), 500);
+		assertEquals(reportedProgress.get(1).getRecordsPerSecond(), 6.0);
+		assertEquals(progress.getElapsedMillis(), 1000);
+		assertEquals(progress.getRecordsPerSecond(), 3.0);
+		assertEquals(progress.toString(), "exported: 3, failed: 0, records/s: 3.0");
+	}
+
+	@Test(expectedExceptions = FedoraException.class, expectedExceptionsMessageRegExp = ""
+			+ "Unable to read export checkpoint: .*persons.checkpoint")
+	public void testBrokenCheckpointThrowsException() throws Exception {
+		Files.write(checkpointFile, "numberOfExportedRecords=notANumber"
+				.getBytes(StandardCharsets.UTF_8));
+
+		exporter.export();
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "batchSize must be at least 1, was: 0")
+	public void testBatchSizeMustBeAtLeastOne() throws Exception {
+		exporter.setBatchSize(0);
+	}
+}
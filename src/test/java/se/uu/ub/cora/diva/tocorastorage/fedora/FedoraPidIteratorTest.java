@@ -0,0 +1,266 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+import static se.uu.ub.cora.diva.tocorastorage.fedora.FedoraPidListXMLCreator.createXMLForPidListUsingTokenAndPids;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.diva.tocorastorage.FedoraException;
+
+public class FedoraPidIteratorTest {
+	private static final String QUERY = "pid%7Eauthority-person:*";
+	private HttpHandlerFactorySpy httpHandlerFactory;
+	private String baseURL = "http://someFedora/fedora/";
+	private String firstPageUrl = baseURL
+			+ "objects?pid=true&maxResults=2&resultFormat=xml&query=" + QUERY;
+	private FedoraPidIterator pidIterator;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		httpHandlerFactory = new HttpHandlerFactorySpy();
+		pidIterator = FedoraPidIterator.usingHttpHandlerFactoryAndBaseURLAndQueryAndPageSize(
+				httpHandlerFactory, baseURL, QUERY, 2);
+	}
+
+	@Test
+	public void testNoPageIsFetchedBeforeFirstPidIsAskedFor() throws Exception {
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 0);
+		assertEquals(pidIterator.getNumberOfFetchedPages(), 0);
+		assertEquals(pidIterator.getPageSize(), 2);
+	}
+
+	@Test
+	public void testOnePageWithoutToken() throws Exception {
+		httpHandlerFactory.responseText = createXMLForPidListUsingTokenAndPids(null,
+				"authority-person:1", "authority-person:2");
+
+		assertEquals(readAllPids(), Arrays.asList("authority-person:1", "authority-person:2"));
+		assertEquals(httpHandlerFactory.urls, Arrays.asList(firstPageUrl));
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.get(0).requestMetod, "GET");
+		assertEquals(pidIterator.getNumberOfFetchedPages(), 1);
+	}
+
+	private List<String> readAllPids() {
+		List<String> pids = new ArrayList<>();
+		while (pidIterator.hasNext()) {
+			pids.add(pidIterator.next());
+		}
+		return pids;
+	}
+
+	@Test
+	public void testPagesAreFollowedUsingSessionToken() throws Exception {
+		String secondPageUrl = firstPageUrl + "&sessionToken=token%2B1";
+		String thirdPageUrl = firstPageUrl + "&sessionToken=token2";
+		httpHandlerFactory.responseTextsForUrls.put(firstPageUrl,
+				createXMLForPidListUsingTokenAndPids("token+1", "authority-person:1",
+						"authority-person:2"));
+		httpHandlerFactory.responseTextsForUrls.put(secondPageUrl,
+				createXMLForPidListUsingTokenAndPids("token2", "authority-person:3",
+						"authority-person:4"));
+		httpHandlerFactory.responseTextsForUrls.put(thirdPageUrl,
+				createXMLForPidListUsingTokenAndPids(null, "authority-person:5"));
+
+		assertEquals(readAllPids(), Arrays.asList("authority-person:1", "authority-person:2",
+				"authority-person:3", "authority-person:4", "authority-person:5"));
+		assertEquals(httpHandlerFactory.urls,
+				Arrays.asList(firstPageUrl, secondPageUrl, thirdPageUrl));
+		assertEquals(pidIterator.getNumberOfFetchedPages(), 3);
+	}
+
+	@Test
+	public void testNextPageIsOnlyFetchedWhenNeeded() throws Exception {
+		httpHandlerFactory.responseTextsForUrls.put(firstPageUrl,
+				createXMLForPidListUsingTokenAndPids("token2", "authority-person:1",
+						"authority-person:2"));
+
+		assertEquals(pidIterator.next(), "authority-person:1");
+		assertEquals(pidIterator.next(), "authority-person:2");
+		assertEquals(httpHandlerFactory.urls.size(), 1);
+	}
+
+	@Test
+	public void testCloseClosesResponseOfCurrentPage() throws Exception {
+		StreamingHttpHandlerFactorySpy streamingFactory = new StreamingHttpHandlerFactorySpy();
+		streamingFactory.responseText = createXMLForPidListUsingTokenAndPids("token2",
+				"authority-person:1", "authority-person:2");
+		String pid;
+		try (FedoraPidIterator streamingPidIterator = FedoraPidIterator
+				.usingStreamingHttpHandlerFactoryAndBaseURLAndQueryAndPageSize(streamingFactory,
+						baseURL, QUERY, 2)) {
+			pid = streamingPidIterator.next();
+		}
+
+		assertEquals(pid, "authority-person:1");
+		assertTrue(streamingFactory.factoredHttpHandlers.get(0).responseStreamClosed);
+	}
+
+	@Test
+	public void testNoMorePidsAfterClose() throws Exception {
+		httpHandlerFactory.responseText = createXMLForPidListUsingTokenAndPids("token2",
+				"authority-person:1", "authority-person:2");
+		pidIterator.next();
+
+		pidIterator.close();
+
+		assertFalse(pidIterator.hasNext());
+		assertEquals(httpHandlerFactory.urls.size(), 1);
+	}
+
+	@Test
+	public void testCloseBeforeFirstPage() throws Exception {
+		pidIterator.close();
+
+		assertFalse(pidIterator.hasNext());
+		assertEquals(httpHandlerFactory.urls.size(), 0);
+	}
+
+	@Test
+	public void testEmptyPageWithTokenContinuesToNextPage() throws Exception {
+		httpHandlerFactory.responseTextsForUrls.put(firstPageUrl,
+				createXMLForPidListUsingTokenAndPids("token2"));
+		httpHandlerFactory.responseTextsForUrls.put(firstPageUrl + "&sessionToken=token2",
+				createXMLForPidListUsingTokenAndPids(null, "authority-person:1"));
+
+		assertTrue(pidIterator.hasNext());
+		assertEquals(pidIterator.next(), "authority-person:1");
+		assertFalse(pidIterator.hasNext());
+	}
+
+	@Test(expectedExceptions = NoSuchElementException.class, expectedExceptionsMessageRegExp = ""
+			+ "No more pids in fedora for query: pid%7Eauthority-person:\\*")
+	public void testNextWhenNoMorePidsThrowsException() throws Exception {
+		httpHandlerFactory.responseText = createXMLForPidListUsingTokenAndPids(null);
+		pidIterator.next();
+	}
+
+	@Test
+	public void testPagesAreFetchedThroughCircuitBreaker() throws Exception {
+		FedoraCircuitBreakerImp circuitBreaker = FedoraCircuitBreakerImp
+				.usingMaxConcurrentCallsAndFailureThresholdAndSlowCallAndOpenDurationInMillis(1, 1,
+						10000, 60000);
+		pidIterator.setCircuitBreaker(circuitBreaker);
+		httpHandlerFactory.urlsToThrowExceptionFor.add(firstPageUrl);
+
+		assertPidIteratorThrowsErrorWithMessage("Error thrown from HttpHandlerSpy");
+		assertPidIteratorThrowsErrorWithMessage(
+				"Circuit breaker for fedora is open, calls are rejected until fedora recovers");
+
+		assertEquals(httpHandlerFactory.factoredHttpHandlers.size(), 1);
+		assertEquals(pidIterator.getNumberOfFetchedPages(), 0);
+	}
+
+	private void assertPidIteratorThrowsErrorWithMessage(String message) {
+		try {
+			pidIterator.hasNext();
+			fail("Exception should have been thrown");
+		} catch (RuntimeException e) {
+			assertEquals(e.getMessage(), message);
+		}
+	}
+
+	@Test
+	public void testFailedPageIsRetried() throws Exception {
+		pidIterator.setRetrier(FedoraRetrierImp
+				.usingMaxAttemptsAndBaseDelayAndMaxDelayInMillisAndSleeperAndJitter(2, 10, 100,
+						delay -> {
+						}, () -> 0.5));
+		httpHandlerFactory.numberOfExceptionsForUrls.put(firstPageUrl, 1);
+		httpHandlerFactory.responseText = createXMLForPidListUsingTokenAndPids(null,
+				"authority-person:1");
+
+		assertEquals(readAllPids(), Arrays.asList("authority-person:1"));
+		assertEquals(httpHandlerFactory.urls, Arrays.asList(firstPageUrl, firstPageUrl));
+		assertEquals(pidIterator.getNumberOfFetchedPages(), 1);
+	}
+
+	@Test
+	public void testBrokenPageResponseIsRetried() throws Exception {
+		StreamingHttpHandlerFactorySpy streamingFactory = new StreamingHttpHandlerFactorySpy();
+		streamingFactory.responseText = createXMLForPidListUsingTokenAndPids(null,
+				"authority-person:1");
+		streamingFactory.numberOfBrokenResponsesForUrls.put(firstPageUrl, 1);
+		FedoraPidIterator streamingPidIterator = createStreamingPidIterator(streamingFactory);
+		streamingPidIterator.setRetrier(FedoraRetrierImp
+				.usingMaxAttemptsAndBaseDelayAndMaxDelayInMillisAndSleeperAndJitter(2, 10, 100,
+						delay -> {
+						}, () -> 0.5));
+
+		assertEquals(streamingPidIterator.next(), "authority-person:1");
+		assertFalse(streamingPidIterator.hasNext());
+		assertEquals(streamingFactory.urls, Arrays.asList(firstPageUrl, firstPageUrl));
+		assertTrue(streamingFactory.factoredHttpHandlers.get(0).responseStreamClosed);
+		assertTrue(streamingFactory.factoredHttpHandlers.get(1).responseStreamClosed);
+	}
+
+	private FedoraPidIterator createStreamingPidIterator(
+			StreamingHttpHandlerFactorySpy streamingFactory) {
+		return FedoraPidIterator.usingStreamingHttpHandlerFactoryAndBaseURLAndQueryAndPageSize(
+				streamingFactory, baseURL, QUERY, 2);
+	}
+
+	@Test
+	public void testBrokenPageResponseIsCountedAsFailureInCircuitBreaker() throws Exception {
+		StreamingHttpHandlerFactorySpy streamingFactory = new StreamingHttpHandlerFactorySpy();
+		streamingFactory.responseText = createXMLForPidListUsingTokenAndPids(null,
+				"authority-person:1");
+		streamingFactory.numberOfBrokenResponsesForUrls.put(firstPageUrl, 1);
+		FedoraPidIterator streamingPidIterator = createStreamingPidIterator(streamingFactory);
+		FedoraCircuitBreakerImp circuitBreaker = FedoraCircuitBreakerImp
+				.usingMaxConcurrentCallsAndFailureThresholdAndSlowCallAndOpenDurationInMillis(1, 1,
+						10000, 60000);
+		streamingPidIterator.setCircuitBreaker(circuitBreaker);
+
+		try {
+			streamingPidIterator.hasNext();
+			fail("FedoraException should have been thrown");
+		} catch (FedoraException e) {
+			assertEquals(e.getMessage(),
+					"Unable to read page of pids from fedora: Connection reset in spy");
+		}
+
+		assertEquals(circuitBreaker.getStatistics().getState(), FedoraCircuitState.OPEN);
+		assertTrue(streamingFactory.factoredHttpHandlers.get(0).responseStreamClosed);
+	}
+
+	@Test
+	public void testPageIsReadToItsEndBeforeFirstPidIsReturned() throws Exception {
+		StreamingHttpHandlerFactorySpy streamingFactory = new StreamingHttpHandlerFactorySpy();
+		streamingFactory.responseText = createXMLForPidListUsingTokenAndPids("token2",
+				"authority-person:1", "authority-person:2");
+		FedoraPidIterator streamingPidIterator = createStreamingPidIterator(streamingFactory);
+
+		assertEquals(streamingPidIterator.next(), "authority-person:1");
+
+		assertTrue(streamingFactory.factoredHttpHandlers.get(0).responseStreamClosed);
+		assertEquals(streamingPidIterator.next(), "authority-person:2");
+		assertEquals(streamingFactory.urls.size(), 1);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+public class FedoraPidListXMLCreator {
+
+	public static String createXMLForPidListUsingTokenAndPids(String token, String... pids) {
+		StringBuilder xml = new StringBuilder();
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		xml.append("<result xmlns=\"http://www.fedora.info/definitions/1/0/types/\">\n");
+		possiblyAddListSession(xml, token);
+		xml.append("  <resultList>\n");
+		for (String pid : pids) {
+			xml.append("  <objectFields>\n");
+			xml.append("      <pid>").append(pid).append("</pid>\n");
+			xml.append("  </objectFields>\n");
+		}
+		xml.append("  </resultList>\n");
+		xml.append("</result>");
+		return xml.toString();
+	}
+
+	private static void possiblyAddListSession(StringBuilder xml, String token) {
+		if (token != null) {
+			xml.append("  <listSession>\n");
+			xml.append("    <token>").append(token).append("</token>\n");
+			xml.append("    <cursor>0</cursor>\n");
+			xml.append("  </listSession>\n");
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.diva.tocorastorage.ParseException;
+
+public class FedoraPidPageReaderTest {
+
+	@Test
+	public void testReadPidsAndToken() throws Exception {
+		FedoraPidPageReader pageReader = FedoraPidPageReader.forXML(FedoraPidListXMLCreator
+				.createXMLForPidListUsingTokenAndPids("someToken", "pid:1", "pid:2"));
+
+		assertEquals(pageReader.readNextPid(), "pid:1");
+		assertEquals(pageReader.readNextPid(), "pid:2");
+		assertNull(pageReader.readNextPid());
+		assertTrue(pageReader.isEndOfPageReached());
+		assertEquals(pageReader.getSessionToken(), "someToken");
+	}
+
+	@Test
+	public void testFirstPidIsReadBeforeEndOfPage() throws Exception {
+		FedoraPidPageReader pageReader = FedoraPidPageReader.forXML(FedoraPidListXMLCreator
+				.createXMLForPidListUsingTokenAndPids("someToken", "pid:1", "pid:2"));
+
+		assertEquals(pageReader.readNextPid(), "pid:1");
+		assertFalse(pageReader.isEndOfPageReached());
+	}
+
+	@Test
+	public void testPageWithoutTokenAndPids() throws Exception {
+		FedoraPidPageReader pageReader = FedoraPidPageReader
+				.forXML(FedoraPidListXMLCreator.createXMLForPidListUsingTokenAndPids(null));
+
+		assertNull(pageReader.readNextPid());
+		assertEquals(pageReader.getSessionToken(), "");
+	}
+
+	@Test
+	public void testPidsOutsideResultListAreNotRead() throws Exception {
+		FedoraPidPageReader pageReader = FedoraPidPageReader
+				.forXML("<result><pid>notAPid</pid><resultList><objectFields><pid>pid:1</pid>"
+						+ "<other>notAPid</other></objectFields></resultList></result>");
+
+		assertEquals(pageReader.readNextPid(), "pid:1");
+		assertNull(pageReader.readNextPid());
+	}
+
+	@Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = ""
+			+ "Can not read xml: The element type \"result\" must be terminated by the matching "
+			+ "end-tag \"</result>\".")
+	public void testBrokenXML() throws Exception {
+		FedoraPidPageReader.forXML("<result></notResult>").readNextPid();
+	}
+
+	@Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = ""
+			+ "DOCTYPE is not allowed in xml")
+	public void testDoctypeIsNotAllowed() throws Exception {
+		FedoraPidPageReader.forXML("<!DOCTYPE result><result></result>").readNextPid();
+	}
+
+	@Test
+	public void testPageReadAsTextIsNotDecodedAgain() throws Exception {
+		String xml = FedoraPidListXMLCreator
+				.createXMLForPidListUsingTokenAndPids("someToken", "pid:Åsa")
+				.replace("encoding=\"UTF-8\"", "encoding=\"ISO-8859-1\"");
+		FedoraPidPageReader pageReader = FedoraPidPageReader.forXML(xml);
+
+		assertEquals(pageReader.readNextPid(), "pid:Åsa");
+	}
+
+	@Test
+	public void testStreamIsClosedWhenEndOfPageIsReached() throws Exception {
+		CloseCountingInputStream stream = new CloseCountingInputStream(FedoraPidListXMLCreator
+				.createXMLForPidListUsingTokenAndPids("someToken", "pid:1"));
+		FedoraPidPageReader pageReader = FedoraPidPageReader
+				.forResponseBody(FedoraResponseBody.usingStream(stream));
+
+		assertEquals(pageReader.readNextPid(), "pid:1");
+		assertEquals(stream.numberOfCloseCalls, 0);
+		assertNull(pageReader.readNextPid());
+		assertTrue(stream.numberOfCloseCalls > 0);
+	}
+
+	@Test
+	public void testStreamIsClosedOnBrokenXML() throws Exception {
+		CloseCountingInputStream stream = new CloseCountingInputStream("<result></notResult>");
+		FedoraPidPageReader pageReader = FedoraPidPageReader
+				.forResponseBody(FedoraResponseBody.usingStream(stream));
+		try {
+			pageReader.readNextPid();
+			fail("ParseException should have been thrown");
+		} catch (ParseException e) {
+			assertEquals(stream.numberOfCloseCalls, 1);
+		}
+	}
+
+	@Test
+	public void testStreamIsClosedOnDoctype() throws Exception {
+		CloseCountingInputStream stream = new CloseCountingInputStream(
+				"<!DOCTYPE result [<!ENTITY x \"y\">]><result/>");
+		FedoraPidPageReader pageReader = FedoraPidPageReader
+				.forResponseBody(FedoraResponseBody.usingStream(stream));
+		try {
+			pageReader.readNextPid();
+			fail("ParseException should have been thrown");
+		} catch (ParseException e) {
+			assertEquals(stream.numberOfCloseCalls, 1);
+		}
+	}
+
+	private static class CloseCountingInputStream extends ByteArrayInputStream {
+		int numberOfCloseCalls = 0;
+
+		CloseCountingInputStream(String xml) {
+			super(xml.getBytes(StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void close() throws IOException {
+			numberOfCloseCalls++;
+			super.close();
+		}
+	}
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.diva.tocorastorage.FedoraException;
+import se.uu.ub.cora.diva.tocorastorage.ParseException;
+import se.uu.ub.cora.diva.tocorastorage.metrics.InMemoryMetrics;
+import se.uu.ub.cora.spider.record.storage.RecordNotFoundException;
+
+public class FedoraRetrierImpTest {
+	private List<Long> delays;
+	private double jitter;
+	private FedoraRetrierImp retrier;
+	private InMemoryMetrics metrics;
+	private int numberOfCalls;
+
+	@BeforeMethod
+	public void setUp() {
+		delays = new ArrayList<>();
+		jitter = 0.999;
+		retrier = createRetrierUsingMaxAttemptsAndBaseDelayAndMaxDelay(4, 100, 1000);
+		metrics = InMemoryMetrics.usingSystemNanoTime();
+		numberOfCalls = 0;
+	}
+
+	private FedoraRetrierImp createRetrierUsingMaxAttemptsAndBaseDelayAndMaxDelay(int maxAttempts,
+			long baseDelay, long maxDelay) {
+		return FedoraRetrierImp.usingMaxAttemptsAndBaseDelayAndMaxDelayInMillisAndSleeperAndJitter(
+				maxAttempts, baseDelay, maxDelay, delays::add, () -> jitter);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "maxAttempts must be at least 1, was: 0")
+	public void testMaxAttemptsMustBeAtLeastOne() throws Exception {
+		FedoraRetrierImp.usingMaxAttemptsAndBaseDelayAndMaxDelayInMillis(0, 100, 1000);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "baseDelayInMillis must be at least 0, was: -1")
+	public void testBaseDelayMustNotBeNegative() throws Exception {
+		FedoraRetrierImp.usingMaxAttemptsAndBaseDelayAndMaxDelayInMillis(3, -1, 1000);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "maxDelayInMillis must be at least 100, was: 99")
+	public void testMaxDelayMustBeAtLeastBaseDelay() throws Exception {
+		FedoraRetrierImp.usingMaxAttemptsAndBaseDelayAndMaxDelayInMillis(3, 100, 99);
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		FedoraRetrierImp defaultRetrier = FedoraRetrierImp
+				.usingMaxAttemptsAndBaseDelayAndMaxDelayInMillis(3, 100, 1000);
+
+		assertEquals(defaultRetrier.getMaxAttempts(), 3);
+		assertEquals(defaultRetrier.getBaseDelayInMillis(), 100);
+		assertEquals(defaultRetrier.getMaxDelayInMillis(), 1000);
+		assertEquals(defaultRetrier.getMaxRetryTokens(), 10);
+		assertEquals(defaultRetrier.getRetryTokensPerCall(), 0.1);
+		assertEquals(defaultRetrier.getRetryTokens(), 10.0);
+	}
+
+	@Test
+	public void testSuccessfulCallIsNotRetried() throws Exception {
+		String result = retrier.callUsingMetricsAndOperation(() -> {
+			numberOfCalls++;
+			return "someResult";
+		}, metrics, "readPerson");
+
+		assertEquals(result, "someResult");
+		assertEquals(numberOfCalls, 1);
+		assertEquals(delays.size(), 0);
+		assertEquals(metrics.getCount("fedora.retry.readPerson.attempt.1"), 1);
+		assertEquals(metrics.getCount("fedora.retry.readPerson.recovered"), 0);
+	}
+
+	@Test
+	public void testFailedCallIsRetriedUntilItSucceeds() throws Exception {
+		String result = retrier.callUsingMetricsAndOperation(
+				() -> failNumberOfTimesThenReturn(2, "someResult"), metrics, "readPerson");
+
+		assertEquals(result, "someResult");
+		assertEquals(numberOfCalls, 3);
+		assertEquals(metrics.getCount("fedora.retry.readPerson.attempt.1"), 1);
+		assertEquals(metrics.getCount("fedora.retry.readPerson.attempt.2"), 1);
+		assertEquals(metrics.getCount("fedora.retry.readPerson.attempt.3"), 1);
+		assertEquals(metrics.getCount("fedora.retry.readPerson.recovered"), 1);
+	}
+
+	private String failNumberOfTimesThenReturn(int numberOfFailures, String result) {
+		numberOfCalls++;
+		if (numberOfCalls <= numberOfFailures) {
+			throw FedoraException.withMessage("fedora failed call: " + numberOfCalls);
+		}
+		return result;
+	}
+
+	@Test
+	public void testLastErrorIsThrownWhenMaxAttemptsIsReached() throws Exception {
+		try {
+			retrier.callUsingMetricsAndOperation(
+					() -> failNumberOfTimesThenReturn(10, "someResult"), metrics, "readPerson");
+			fail("FedoraException should have been thrown");
+		} catch (FedoraException e) {
+			assertEquals(e.getMessage(), "fedora failed call: 4");
+		}
+		assertEquals(numberOfCalls, 4);
+		assertEquals(delays.size(), 3);
+		assertEquals(metrics.getCount("fedora.retry.readPerson.exhausted"), 1);
+	}
+
+	@Test
+	public void testBackoffIsExponentialAndLimitedByMaxDelay() throws Exception {
+		retrier = createRetrierUsingMaxAttemptsAndBaseDelayAndMaxDelay(6, 100, 1000);
+		callAndIgnoreFailure(10);
+
+		assertEquals(delays, Arrays.asList(99L, 199L, 399L, 799L, 999L));
+	}
+
+	private void callAndIgnoreFailure(int numberOfFailures) {
+		try {
+			retrier.callUsingMetricsAndOperation(
+					() -> failNumberOfTimesThenReturn(numberOfFailures, "someResult"), metrics,
+					"readPerson");
+		} catch (FedoraException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testBackoffIsMultipliedWithJitter() throws Exception {
+		jitter = 0.25;
+		callAndIgnoreFailure(10);
+
+		assertEquals(delays, Arrays.asList(25L, 50L, 100L));
+	}
+
+	@Test
+	public void testNoWaitWhenJitterIsZero() throws Exception {
+		jitter = 0;
+		callAndIgnoreFailure(10);
+
+		assertEquals(numberOfCalls, 4);
+		assertEquals(delays.size(), 0);
+	}
+
+	@Test
+	public void testLargeNumberOfAttemptsDoesNotOverflowBackoff() throws Exception {
+		retrier = createRetrierUsingMaxAttemptsAndBaseDelayAndMaxDelay(80, 100, 1000);
+		retrier.setRetryBudget(100, 0);
+		callAndIgnoreFailure(100);
+
+		assertEquals(delays.size(), 79);
+		assertEquals(delays.get(78).longValue(), 999L);
+	}
+
+	@Test
+	public void testParseExceptionIsNotRetried() throws Exception {
+		try {
+			retrier.callUsingMetricsAndOperation(() -> {
+				numberOfCalls++;
+				throw ParseException.withMessage("broken xml");
+			}, metrics, "readPerson");
+			fail("ParseException should have been thrown");
+		} catch (ParseException e) {
+			assertEquals(e.getMessage(), "broken xml");
+		}
+		assertEquals(numberOfCalls, 1);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "maxRetryTokens must be at least 0, was: -1")
+	public void testMaxRetryTokensMustNotBeNegative() throws Exception {
+		retrier.setRetryBudget(-1, 0.1);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "retryTokensPerCall must be at least 0, was: -0.5")
+	public void testRetryTokensPerCallMustNotBeNegative() throws Exception {
+		retrier.setRetryBudget(10, -0.5);
+	}
+
+	@Test
+	public void testRetriesAreLimitedByRetryBudget() throws Exception {
+		retrier.setRetryBudget(2, 0.5);
+
+		callAndIgnoreFailure(10);
+
+		assertEquals(numberOfCalls, 3);
+		assertEquals(metrics.getCount("fedora.retry.readPerson.budgetExhausted"), 1);
+		assertEquals(metrics.getCount("fedora.retry.readPerson.exhausted"), 0);
+		assertEquals(retrier.getRetryTokens(), 0.0);
+	}
+
+	@Test
+	public void testEachCallAddsRetryTokens() throws Exception {
+		retrier.setRetryBudget(2, 0.5);
+		callAndIgnoreFailure(10);
+		numberOfCalls = 0;
+
+		retrier.callUsingMetricsAndOperation(() -> "someResult", metrics, "readPerson");
+		assertEquals(retrier.getRetryTokens(), 0.5);
+		retrier.callUsingMetricsAndOperation(() -> "someResult", metrics, "readPerson");
+		assertEquals(retrier.getRetryTokens(), 1.0);
+
+		String result = retrier.callUsingMetricsAndOperation(
+				() -> failNumberOfTimesThenReturn(1, "someResult"), metrics, "readPerson");
+		assertEquals(result, "someResult");
+		assertEquals(retrier.getRetryTokens(), 0.5);
+	}
+
+	@Test
+	public void testRetryTokensDoNotExceedMax() throws Exception {
+		retrier.setRetryBudget(2, 0.5);
+
+		for (int i = 0; i < 5; i++) {
+			retrier.callUsingMetricsAndOperation(() -> "someResult", metrics, "readPerson");
+		}
+
+		assertEquals(retrier.getRetryTokens(), 2.0);
+	}
+
+	@Test
+	public void testInterruptWhileWaitingStopsRetries() throws Exception {
+		FedoraRetrierImp sleepingRetrier = FedoraRetrierImp
+				.usingMaxAttemptsAndBaseDelayAndMaxDelayInMillis(3, 10000, 10000);
+		Thread.currentThread().interrupt();
+		try {
+			sleepingRetrier.callUsingMetricsAndOperation(
+					() -> failNumberOfTimesThenReturn(10, "someResult"), metrics, "readPerson");
+			fail("FedoraException should have been thrown");
+		} catch (FedoraException e) {
+			assertEquals(e.getMessage(), "Interrupted while waiting to retry");
+			assertTrue(Thread.interrupted());
+		}
+		assertEquals(numberOfCalls, 1);
+	}
+
+	@Test
+	public void testRecordNotFoundIsNotRetried() throws Exception {
+		try {
+			retrier.callUsingMetricsAndOperation(() -> {
+				numberOfCalls++;
+				throw new RecordNotFoundException("not found");
+			}, metrics, "readPerson");
+			fail("RecordNotFoundException should have been thrown");
+		} catch (RecordNotFoundException e) {
+			assertEquals(e.getMessage(), "not found");
+		}
+		assertEquals(numberOfCalls, 1);
+		assertEquals(retrier.getRetryTokens(), 10.0);
+	}
+}
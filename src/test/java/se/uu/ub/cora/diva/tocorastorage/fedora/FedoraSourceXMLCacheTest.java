@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+public class FedoraSourceXMLCacheTest {
+
+	@Test
+	public void testCacheWithMaxSizeZeroKeepsNothing() throws Exception {
+		FedoraSourceXMLCache cache = FedoraSourceXMLCache.usingMaxSize(0);
+		cache.put("id1", FedoraSourceXML.usingXML("<xml/>"));
+		assertFalse(cache.isEnabled());
+		assertNull(cache.get("id1"));
+		assertEquals(cache.getSize(), 0);
+	}
+
+	@Test
+	public void testPutAndGet() throws Exception {
+		FedoraSourceXMLCache cache = FedoraSourceXMLCache.usingMaxSize(2);
+		cache.put("id1", FedoraSourceXML.usingXML("<xml/>"));
+		assertTrue(cache.isEnabled());
+		assertEquals(cache.get("id1").getXML(), "<xml/>");
+		assertEquals(cache.getMaxSize(), 2);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsRemovedWhenFull() throws Exception {
+		FedoraSourceXMLCache cache = FedoraSourceXMLCache.usingMaxSize(2);
+		cache.put("id1", FedoraSourceXML.usingXML("<xml1/>"));
+		cache.put("id2", FedoraSourceXML.usingXML("<xml2/>"));
+		cache.get("id1");
+		cache.put("id3", FedoraSourceXML.usingXML("<xml3/>"));
+
+		assertEquals(cache.getSize(), 2);
+		assertNull(cache.get("id2"));
+		assertEquals(cache.get("id1").getXML(), "<xml1/>");
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		FedoraSourceXMLCache cache = FedoraSourceXMLCache.usingMaxSize(2);
+		cache.put("id1", FedoraSourceXML.usingXML("<xml/>"));
+		cache.invalidate("id1");
+		assertNull(cache.get("id1"));
+	}
+}
@@ -1,28 +1,47 @@
 package se.uu.ub.cora.diva.tocorastorage.fedora;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import se.uu.ub.cora.httphandler.HttpHandler;
 import se.uu.ub.cora.httphandler.HttpHandlerFactory;
 import se.uu.ub.cora.httphandler.HttpMultiPartUploader;
 
 public class HttpHandlerFactorySpy implements HttpHandlerFactory {
-	public List<String> urls = new ArrayList<>();
-	public List<HttpHandlerSpy> factoredHttpHandlers = new ArrayList<>();
+	public List<String> urls = Collections.synchronizedList(new ArrayList<>());
+	public List<HttpHandlerSpy> factoredHttpHandlers = Collections
+			.synchronizedList(new ArrayList<>());
 	public String responseText = "";
 	public int responseCode = 200;
+	public List<String> urlsToThrowExceptionFor = new ArrayList<>();
+	public Map<String, String> responseTextsForUrls = new HashMap<>();
+	public Map<String, Integer> responseCodesForUrls = new HashMap<>();
+	public Map<String, Integer> numberOfExceptionsForUrls = new HashMap<>();
 
 	@Override
-	public HttpHandler factor(String url) {
+	public synchronized HttpHandler factor(String url) {
 		urls.add(url);
 		HttpHandlerSpy httpHandlerSpy = new HttpHandlerSpy();
 		factoredHttpHandlers.add(httpHandlerSpy);
-		httpHandlerSpy.responseText = responseText;
-		httpHandlerSpy.responseCode = responseCode;
+		httpHandlerSpy.responseText = responseTextsForUrls.getOrDefault(url, responseText);
+		httpHandlerSpy.responseCode = responseCodesForUrls.getOrDefault(url, responseCode);
+		httpHandlerSpy.throwExceptionOnRead = urlsToThrowExceptionFor.contains(url)
+				|| useOneExceptionForUrl(url);
 		return httpHandlerSpy;
 	}
 
+	private boolean useOneExceptionForUrl(String url) {
+		int numberOfExceptions = numberOfExceptionsForUrls.getOrDefault(url, 0);
+		if (numberOfExceptions > 0) {
+			numberOfExceptionsForUrls.put(url, numberOfExceptions - 1);
+			return true;
+		}
+		return false;
+	}
+
 	@Override
 	public HttpMultiPartUploader factorHttpMultiPartUploader(String url) {
 		// TODO Auto-generated method stub
@@ -15,6 +15,7 @@ public class HttpHandlerSpy implements HttpHandler {
 	public int responseCode;
 	public Map<String, String> requestProperties = new HashMap<String, String>();
 	public List<String> outputStrings = new ArrayList<String>();
+	public boolean throwExceptionOnRead = false;
 
 	@Override
 	public void setRequestMethod(String requestMetod) {
@@ -23,6 +24,9 @@ public class HttpHandlerSpy implements HttpHandler {
 
 	@Override
 	public String getResponseText() {
+		if (throwExceptionOnRead) {
+			throw new RuntimeException("Error thrown from HttpHandlerSpy");
+		}
 		return responseText;
 	}
 
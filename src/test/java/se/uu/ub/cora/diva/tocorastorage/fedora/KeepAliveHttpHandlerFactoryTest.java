@@ -0,0 +1,216 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import se.uu.ub.cora.diva.tocorastorage.FedoraException;
+import se.uu.ub.cora.diva.tocorastorage.NotImplementedException;
+import se.uu.ub.cora.httphandler.HttpHandler;
+
+public class KeepAliveHttpHandlerFactoryTest {
+	private HttpServer server;
+	private String baseURL;
+	private List<Integer> clientPorts;
+	private List<String> receivedBodies;
+	private KeepAliveHttpHandlerFactory factory;
+
+	@BeforeMethod
+	public void beforeMethod() throws IOException {
+		clientPorts = Collections.synchronizedList(new ArrayList<>());
+		receivedBodies = Collections.synchronizedList(new ArrayList<>());
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/person", exchange -> respond(exchange, 200, "<person>Åsa</person>"));
+		server.createContext("/missing", exchange -> respond(exchange, 404, "not found"));
+		server.createContext("/slow", exchange -> {
+			sleep(500);
+			respond(exchange, 200, "slow");
+		});
+		server.start();
+		baseURL = "http://localhost:" + server.getAddress().getPort() + "/";
+		factory = KeepAliveHttpHandlerFactory.usingConnectTimeoutAndReadTimeoutInMillis(1000,
+				2000);
+	}
+
+	private void respond(HttpExchange exchange, int responseCode, String body) throws IOException {
+		clientPorts.add(exchange.getRemoteAddress().getPort());
+		try (InputStream requestBody = exchange.getRequestBody()) {
+			receivedBodies.add(new String(requestBody.readAllBytes(), StandardCharsets.UTF_8));
+		}
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("someHeader", "someValue");
+		exchange.sendResponseHeaders(responseCode, bytes.length);
+		try (OutputStream responseBody = exchange.getResponseBody()) {
+			responseBody.write(bytes);
+		}
+	}
+
+	private void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testTimeoutsAreSetOnConnection() throws Exception {
+		KeepAliveHttpHandler httpHandler = (KeepAliveHttpHandler) factory
+				.factor(baseURL + "person");
+
+		assertEquals(httpHandler.getURL(), baseURL + "person");
+		assertEquals(httpHandler.getConnectTimeout(), 1000);
+		assertEquals(httpHandler.getReadTimeout(), 2000);
+		assertEquals(factory.getConnectTimeoutInMillis(), 1000);
+		assertEquals(factory.getReadTimeoutInMillis(), 2000);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "connectTimeoutInMillis must not be negative, was: -1")
+	public void testNegativeConnectTimeoutThrowsException() throws Exception {
+		KeepAliveHttpHandlerFactory.usingConnectTimeoutAndReadTimeoutInMillis(-1, 0);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "readTimeoutInMillis must not be negative, was: -2")
+	public void testNegativeReadTimeoutThrowsException() throws Exception {
+		KeepAliveHttpHandlerFactory.usingConnectTimeoutAndReadTimeoutInMillis(0, -2);
+	}
+
+	@Test(expectedExceptions = NotImplementedException.class, expectedExceptionsMessageRegExp = ""
+			+ "factorHttpMultiPartUploader is not implemented")
+	public void testMultiPartUploaderIsNotImplemented() throws Exception {
+		factory.factorHttpMultiPartUploader(baseURL);
+	}
+
+	@Test
+	public void testGetResponseText() throws Exception {
+		HttpHandler httpHandler = factory.factor(baseURL + "person");
+		httpHandler.setRequestMethod("GET");
+
+		assertEquals(httpHandler.getResponseText(), "<person>Åsa</person>");
+		assertEquals(httpHandler.getResponseCode(), 200);
+		assertEquals(httpHandler.getErrorText(), "");
+		assertEquals(httpHandler.getHeaderField("someHeader"), "someValue");
+	}
+
+	@Test
+	public void testOutputIsSent() throws Exception {
+		HttpHandler httpHandler = factory.factor(baseURL + "person");
+		httpHandler.setRequestMethod("PUT");
+		httpHandler.setRequestProperty("Authorization", "Basic someAuth");
+		httpHandler.setOutput("<person>Åsa</person>");
+
+		assertEquals(httpHandler.getResponseCode(), 200);
+		assertEquals(receivedBodies.get(0), "<person>Åsa</person>");
+	}
+
+	@Test
+	public void testStreamOutputIsSent() throws Exception {
+		HttpHandler httpHandler = factory.factor(baseURL + "person");
+		httpHandler.setRequestMethod("PUT");
+		httpHandler.setStreamOutput(
+				new ByteArrayInputStream("<person>Åsa</person>".getBytes(StandardCharsets.UTF_8)));
+
+		assertEquals(httpHandler.getResponseCode(), 200);
+		assertEquals(receivedBodies.get(0), "<person>Åsa</person>");
+	}
+
+	@Test
+	public void testErrorResponse() throws Exception {
+		HttpHandler httpHandler = factory.factor(baseURL + "missing");
+
+		assertEquals(httpHandler.getResponseCode(), 404);
+		assertEquals(httpHandler.getErrorText(), "not found");
+		try {
+			httpHandler.getResponseText();
+			fail("FedoraException should have been thrown");
+		} catch (FedoraException e) {
+			assertEquals(e.getMessage(), "Unable to read response from: " + baseURL
+					+ "missing, with response code: 404");
+		}
+	}
+
+	@Test
+	public void testConnectionIsReusedForSequentialCalls() throws Exception {
+		factory.factor(baseURL + "person").getResponseText();
+		factory.factor(baseURL + "person").getResponseCode();
+		factory.factor(baseURL + "missing").getResponseCode();
+		HttpHandler putHandler = factory.factor(baseURL + "person");
+		putHandler.setRequestMethod("PUT");
+		putHandler.setOutput("<person/>");
+		putHandler.getResponseCode();
+		factory.factor(baseURL + "person").getResponseText();
+
+		assertEquals(clientPorts.size(), 5);
+		assertEquals(new HashSet<>(clientPorts).size(), 1);
+	}
+
+	@Test
+	public void testReadTimeout() throws Exception {
+		KeepAliveHttpHandlerFactory impatientFactory = KeepAliveHttpHandlerFactory
+				.usingConnectTimeoutAndReadTimeoutInMillis(1000, 50);
+		HttpHandler httpHandler = impatientFactory.factor(baseURL + "slow");
+		try {
+			httpHandler.getResponseText();
+			fail("FedoraException should have been thrown");
+		} catch (FedoraException e) {
+			assertEquals(e.getMessage(), "Unable to read response from: " + baseURL + "slow");
+			assertTrue(e.getCause() instanceof SocketTimeoutException);
+		}
+	}
+
+	@Test(expectedExceptions = FedoraException.class, expectedExceptionsMessageRegExp = ""
+			+ "Unable to open connection to: notAnUrl")
+	public void testMalformedUrlThrowsException() throws Exception {
+		factory.factor("notAnUrl");
+	}
+
+	@Test(expectedExceptions = FedoraException.class, expectedExceptionsMessageRegExp = ""
+			+ "Unable to set request method: NOT_A_METHOD")
+	public void testUnknownRequestMethodThrowsException() throws Exception {
+		factory.factor(baseURL + "person").setRequestMethod("NOT_A_METHOD");
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.diva.tocorastorage.metrics.InMemoryMetrics;
+
+public class NoRetryFedoraRetrierTest {
+
+	@Test
+	public void testFailedCallIsNotRetried() throws Exception {
+		NoRetryFedoraRetrier retrier = new NoRetryFedoraRetrier();
+		InMemoryMetrics metrics = InMemoryMetrics.usingSystemNanoTime();
+		List<String> calls = new ArrayList<>();
+
+		try {
+			retrier.callUsingMetricsAndOperation(() -> {
+				calls.add("call");
+				throw new RuntimeException("fedora is down");
+			}, metrics, "readPerson");
+		} catch (RuntimeException e) {
+			assertEquals(e.getMessage(), "fedora is down");
+		}
+
+		assertEquals(calls.size(), 1);
+		assertEquals(metrics.getCounterNames().size(), 0);
+	}
+
+	@Test
+	public void testResultIsReturned() throws Exception {
+		NoRetryFedoraRetrier retrier = new NoRetryFedoraRetrier();
+
+		String result = retrier.callUsingMetricsAndOperation(() -> "someResult",
+				InMemoryMetrics.usingSystemNanoTime(), "readPerson");
+
+		assertEquals(result, "someResult");
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.diva.tocorastorage.FedoraException;
+
+public class ParallelFedoraExecutorTest {
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "maxNumberOfParallelCalls must be at least 1, was: 0")
+	public void testMaxNumberOfParallelCallsMustBeAtLeastOne() throws Exception {
+		ParallelFedoraExecutor.usingMaxNumberOfParallelCalls(0);
+	}
+
+	@Test
+	public void testOneParallelCallRunsInCallingThread() throws Exception {
+		ParallelFedoraExecutor executor = ParallelFedoraExecutor.usingMaxNumberOfParallelCalls(1);
+		Thread callingThread = Thread.currentThread();
+		List<Thread> usedThreads = new ArrayList<>();
+
+		ParallelResult<String> result = executor.executeForAllIds(Arrays.asList("a", "b"), id -> {
+			usedThreads.add(Thread.currentThread());
+			return id + "Read";
+		});
+
+		assertEquals(result.getResults(), Arrays.asList("aRead", "bRead"));
+		assertEquals(usedThreads, Arrays.asList(callingThread, callingThread));
+		assertEquals(executor.getMaxNumberOfParallelCalls(), 1);
+	}
+
+	@Test
+	public void testResultsAreReturnedInOrderOfIds() throws Exception {
+		ParallelFedoraExecutor executor = ParallelFedoraExecutor.usingMaxNumberOfParallelCalls(4);
+		List<String> ids = Arrays.asList("slow", "fast", "medium", "fastest");
+
+		ParallelResult<String> result = executor.executeForAllIds(ids, id -> {
+			sleepForId(id);
+			return id + "Read";
+		});
+
+		assertEquals(result.getResults(),
+				Arrays.asList("slowRead", "fastRead", "mediumRead", "fastestRead"));
+		assertEquals(result.getNumberOfCalls(), 4);
+		assertFalse(result.hasFailures());
+	}
+
+	private void sleepForId(String id) {
+		long sleepTime = id.length() * 10L;
+		try {
+			Thread.sleep(sleepTime);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	public void testCallsAreRunInParallel() throws Exception {
+		ParallelFedoraExecutor executor = ParallelFedoraExecutor.usingMaxNumberOfParallelCalls(3);
+		CountDownLatch allStarted = new CountDownLatch(3);
+
+		ParallelResult<Boolean> result = executor
+				.executeForAllIds(Arrays.asList("id1", "id2", "id3"), id -> {
+					allStarted.countDown();
+					return awaitLatch(allStarted);
+				});
+
+		assertEquals(result.getResults(), Arrays.asList(true, true, true));
+	}
+
+	private boolean awaitLatch(CountDownLatch latch) {
+		try {
+			return latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	@Test
+	public void testNumberOfParallelCallsIsLimited() throws Exception {
+		ParallelFedoraExecutor executor = ParallelFedoraExecutor.usingMaxNumberOfParallelCalls(2);
+		AtomicInteger ongoingCalls = new AtomicInteger();
+		List<Integer> ongoingCallsAtStart = Collections.synchronizedList(new ArrayList<>());
+
+		executor.executeForAllIds(createIds(10), id -> {
+			ongoingCallsAtStart.add(ongoingCalls.incrementAndGet());
+			sleepForId(id);
+			return ongoingCalls.decrementAndGet();
+		});
+
+		assertEquals(ongoingCallsAtStart.size(), 10);
+		assertTrue(Collections.max(ongoingCallsAtStart) <= 2);
+	}
+
+	private List<String> createIds(int numberOfIds) {
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < numberOfIds; i++) {
+			ids.add("someId" + i);
+		}
+		return ids;
+	}
+
+	@Test
+	public void testFailuresAreReportedPerIdAndOtherCallsComplete() throws Exception {
+		ParallelFedoraExecutor executor = ParallelFedoraExecutor.usingMaxNumberOfParallelCalls(3);
+		List<String> ids = Arrays.asList("id1", "brokenId2", "id3", "brokenId4");
+
+		ParallelResult<String> result = executor.executeForAllIds(ids, id -> {
+			if (id.startsWith("broken")) {
+				throw new RuntimeException("Error reading " + id);
+			}
+			return id + "Read";
+		});
+
+		assertTrue(result.hasFailures());
+		assertEquals(result.getResults(), Arrays.asList("id1Read", "id3Read"));
+		assertEquals(result.getNumberOfCalls(), 4);
+		assertEquals(new ArrayList<>(result.getFailures().keySet()),
+				Arrays.asList("brokenId2", "brokenId4"));
+		assertEquals(result.getFailures().get("brokenId2").getMessage(),
+				"Error reading brokenId2");
+	}
+
+	@Test
+	public void testFailuresAreReportedWhenRunInCallingThread() throws Exception {
+		ParallelFedoraExecutor executor = ParallelFedoraExecutor.usingMaxNumberOfParallelCalls(1);
+
+		ParallelResult<String> result = executor
+				.executeForAllIds(Arrays.asList("brokenId", "id2"), id -> {
+					if (id.startsWith("broken")) {
+						throw new RuntimeException("Error reading " + id);
+					}
+					return id + "Read";
+				});
+
+		assertEquals(result.getResults(), Arrays.asList("id2Read"));
+		assertEquals(result.getFailures().get("brokenId").getMessage(),
+				"Error reading brokenId");
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "ids must be unique, found duplicate: id1")
+	public void testDuplicateIdsAreRejected() throws Exception {
+		ParallelFedoraExecutor executor = ParallelFedoraExecutor.usingMaxNumberOfParallelCalls(2);
+
+		executor.executeForAllIds(Arrays.asList("id1", "id2", "id1"), id -> id + "Read");
+	}
+
+	@Test
+	public void testCloseStopsThreads() throws Exception {
+		ParallelFedoraExecutor executor = ParallelFedoraExecutor.usingMaxNumberOfParallelCalls(2);
+		executor.executeForAllIds(Arrays.asList("id1", "id2"), id -> id + "Read");
+		assertFalse(executor.isClosed());
+
+		executor.close();
+
+		assertTrue(executor.isClosed());
+		assertTrue(awaitTermination(executor));
+	}
+
+	private boolean awaitTermination(ParallelFedoraExecutor executor) throws Exception {
+		long giveUpAt = System.currentTimeMillis() + 5000;
+		while (!executor.isTerminated() && System.currentTimeMillis() < giveUpAt) {
+			Thread.sleep(10);
+		}
+		return executor.isTerminated();
+	}
+
+	@Test
+	public void testCloseWithoutThreads() throws Exception {
+		ParallelFedoraExecutor executor = ParallelFedoraExecutor.usingMaxNumberOfParallelCalls(1);
+
+		executor.close();
+
+		assertTrue(executor.isClosed());
+		assertTrue(executor.isTerminated());
+	}
+
+	@Test(expectedExceptions = FedoraException.class, expectedExceptionsMessageRegExp = ""
+			+ "ParallelFedoraExecutor is closed")
+	public void testExecuteAfterCloseThrowsError() throws Exception {
+		ParallelFedoraExecutor executor = ParallelFedoraExecutor.usingMaxNumberOfParallelCalls(2);
+		executor.close();
+
+		executor.executeForAllIds(Arrays.asList("id1"), id -> id + "Read");
+	}
+}
\ No newline at end of file
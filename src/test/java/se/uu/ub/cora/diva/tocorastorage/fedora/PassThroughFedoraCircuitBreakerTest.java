@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+public class PassThroughFedoraCircuitBreakerTest {
+
+	@Test
+	public void testEveryCallIsPassedThrough() throws Exception {
+		PassThroughFedoraCircuitBreaker circuitBreaker = new PassThroughFedoraCircuitBreaker();
+
+		for (int i = 0; i < 5; i++) {
+			callAndIgnoreFailure(circuitBreaker);
+		}
+		String result = circuitBreaker.call(() -> "someResult");
+
+		assertEquals(result, "someResult");
+		FedoraCircuitBreakerStatistics statistics = circuitBreaker.getStatistics();
+		assertEquals(statistics.getState(), FedoraCircuitState.CLOSED);
+		assertEquals(statistics.getFailureCount(), 0);
+	}
+
+	private void callAndIgnoreFailure(PassThroughFedoraCircuitBreaker circuitBreaker) {
+		try {
+			circuitBreaker.call(() -> {
+				throw new RuntimeException("fedora is down");
+			});
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StreamingHttpHandlerFactorySpy implements StreamingHttpHandlerFactory {
+	public List<String> urls = Collections.synchronizedList(new ArrayList<>());
+	public List<StreamingHttpHandlerSpy> factoredHttpHandlers = Collections
+			.synchronizedList(new ArrayList<>());
+	public String responseText = "";
+	public Map<String, String> responseTextsForUrls = new HashMap<>();
+	public Map<String, Integer> numberOfBrokenResponsesForUrls = new HashMap<>();
+
+	@Override
+	public StreamingHttpHandler factor(String url) {
+		urls.add(url);
+		StreamingHttpHandlerSpy httpHandler = new StreamingHttpHandlerSpy(
+				responseTextsForUrls.getOrDefault(url, responseText));
+		httpHandler.responseBroken = isNextResponseBroken(url);
+		factoredHttpHandlers.add(httpHandler);
+		return httpHandler;
+	}
+
+	private synchronized boolean isNextResponseBroken(String url) {
+		int numberOfBrokenResponses = numberOfBrokenResponsesForUrls.getOrDefault(url, 0);
+		numberOfBrokenResponsesForUrls.put(url, numberOfBrokenResponses - 1);
+		return numberOfBrokenResponses > 0;
+	}
+
+	public static class StreamingHttpHandlerSpy implements StreamingHttpHandler {
+		public String requestMethod;
+		public Map<String, String> requestProperties = new HashMap<>();
+		public boolean responseStreamClosed = false;
+		private boolean responseBroken = false;
+		private String responseText;
+
+		StreamingHttpHandlerSpy(String responseText) {
+			this.responseText = responseText;
+		}
+
+		@Override
+		public void setRequestMethod(String requestMethod) {
+			this.requestMethod = requestMethod;
+		}
+
+		@Override
+		public void setRequestProperty(String key, String value) {
+			requestProperties.put(key, value);
+		}
+
+		@Override
+		public int getResponseCode() {
+			return 200;
+		}
+
+		@Override
+		public FedoraResponseBody getResponseBody() {
+			return FedoraResponseBody.usingStream(new ResponseStreamSpy());
+		}
+
+		private final class ResponseStreamSpy extends InputStream {
+			private static final int BYTES_READ_BEFORE_BREAKING = 10;
+			private InputStream bytes = new ByteArrayInputStream(
+					responseText.getBytes(StandardCharsets.UTF_8));
+			private int numberOfReadBytes = 0;
+
+			@Override
+			public int read() throws IOException {
+				if (responseBroken && numberOfReadBytes == BYTES_READ_BEFORE_BREAKING) {
+					throw new IOException("Connection reset in spy");
+				}
+				numberOfReadBytes++;
+				return bytes.read();
+			}
+
+			@Override
+			public void close() {
+				responseStreamClosed = true;
+			}
+		}
+	}
+
+}
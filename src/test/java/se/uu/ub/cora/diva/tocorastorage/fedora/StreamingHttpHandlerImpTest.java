@@ -0,0 +1,160 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import se.uu.ub.cora.diva.tocorastorage.FedoraException;
+
+public class StreamingHttpHandlerImpTest {
+	private HttpServer server;
+	private String baseURL;
+	private List<String> receivedMethods;
+	private List<String> receivedAuthorizations;
+
+	@BeforeMethod
+	public void beforeMethod() throws IOException {
+		receivedMethods = new ArrayList<>();
+		receivedAuthorizations = new ArrayList<>();
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/person", exchange -> respond(exchange, 200, "<person>Åsa</person>"));
+		server.createContext("/missing", exchange -> respond(exchange, 404, "not found"));
+		server.start();
+		baseURL = "http://localhost:" + server.getAddress().getPort() + "/";
+	}
+
+	private void respond(HttpExchange exchange, int responseCode, String body) throws IOException {
+		receivedMethods.add(exchange.getRequestMethod());
+		receivedAuthorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(responseCode, bytes.length);
+		try (OutputStream responseBody = exchange.getResponseBody()) {
+			responseBody.write(bytes);
+		}
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testFactorCreatesHandlerForUrl() throws Exception {
+		StreamingHttpHandlerFactory factory = new StreamingHttpHandlerFactoryImp();
+		StreamingHttpHandlerImp httpHandler = (StreamingHttpHandlerImp) factory
+				.factor(baseURL + "person");
+		assertEquals(httpHandler.getURL(), baseURL + "person");
+		assertEquals(httpHandler.getConnectTimeout(), 0);
+		assertEquals(httpHandler.getReadTimeout(), 0);
+	}
+
+	@Test
+	public void testFactorUsingTimeouts() throws Exception {
+		StreamingHttpHandlerFactoryImp factory = new StreamingHttpHandlerFactoryImp(1000, 2000);
+		StreamingHttpHandlerImp httpHandler = (StreamingHttpHandlerImp) factory
+				.factor(baseURL + "person");
+
+		assertEquals(httpHandler.getConnectTimeout(), 1000);
+		assertEquals(httpHandler.getReadTimeout(), 2000);
+		assertEquals(factory.getConnectTimeoutInMillis(), 1000);
+		assertEquals(factory.getReadTimeoutInMillis(), 2000);
+	}
+
+	@Test
+	public void testResponseIsReadAsStream() throws Exception {
+		StreamingHttpHandler httpHandler = StreamingHttpHandlerImp.usingURL(baseURL + "person");
+		httpHandler.setRequestMethod("GET");
+		httpHandler.setRequestProperty("Authorization", "Basic someAuth");
+
+		try (FedoraResponseBody responseBody = httpHandler.getResponseBody()) {
+			assertFalse(responseBody.isText());
+			assertEquals(readAsString(responseBody.createInputSource().getByteStream()),
+					"<person>Åsa</person>");
+		}
+		assertEquals(httpHandler.getResponseCode(), 200);
+		assertEquals(receivedMethods.get(0), "GET");
+		assertEquals(receivedAuthorizations.get(0), "Basic someAuth");
+	}
+
+	private String readAsString(InputStream stream) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int numberOfReadBytes;
+		while ((numberOfReadBytes = stream.read(buffer)) != -1) {
+			bytes.write(buffer, 0, numberOfReadBytes);
+		}
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testErrorResponseThrowsExceptionWithResponseCode() throws Exception {
+		StreamingHttpHandler httpHandler = StreamingHttpHandlerImp.usingURL(baseURL + "missing");
+		try {
+			httpHandler.getResponseBody();
+			fail("FedoraException should have been thrown");
+		} catch (FedoraException e) {
+			assertEquals(e.getMessage(), "Unable to read response from: " + baseURL
+					+ "missing, with response code: 404");
+			assertEquals(httpHandler.getResponseCode(), 404);
+		}
+	}
+
+	@Test(expectedExceptions = FedoraException.class, expectedExceptionsMessageRegExp = ""
+			+ "Unable to open connection to: notAnUrl")
+	public void testMalformedUrlThrowsException() throws Exception {
+		StreamingHttpHandlerImp.usingURL("notAnUrl");
+	}
+
+	@Test(expectedExceptions = FedoraException.class, expectedExceptionsMessageRegExp = ""
+			+ "Unable to set request method: NOT_A_METHOD")
+	public void testUnknownRequestMethodThrowsException() throws Exception {
+		StreamingHttpHandlerImp.usingURL(baseURL + "person").setRequestMethod("NOT_A_METHOD");
+	}
+
+	@Test
+	public void testClosedServerThrowsException() throws Exception {
+		server.stop(0);
+		StreamingHttpHandler httpHandler = StreamingHttpHandlerImp.usingURL(baseURL + "person");
+		try {
+			httpHandler.getResponseCode();
+			fail("FedoraException should have been thrown");
+		} catch (FedoraException e) {
+			assertTrue(e.getMessage().startsWith("Unable to read response from: " + baseURL));
+		}
+	}
+}
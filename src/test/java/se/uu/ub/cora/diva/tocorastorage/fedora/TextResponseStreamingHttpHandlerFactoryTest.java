@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.fedora;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import javax.xml.stream.XMLStreamReader;
+
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.diva.tocorastorage.metrics.NoOpMetrics;
+
+public class TextResponseStreamingHttpHandlerFactoryTest {
+
+	@Test
+	public void testResponseTextIsReturnedAsTextBody() throws Exception {
+		HttpHandlerFactorySpy httpHandlerFactory = new HttpHandlerFactorySpy();
+		httpHandlerFactory.responseText = "<person>Åsa</person>";
+		httpHandlerFactory.responseCode = 201;
+		TextResponseStreamingHttpHandlerFactory factory = TextResponseStreamingHttpHandlerFactory
+				.usingHttpHandlerFactory(httpHandlerFactory);
+
+		StreamingHttpHandler httpHandler = factory.factor("someUrl");
+		httpHandler.setRequestMethod("GET");
+		httpHandler.setRequestProperty("someKey", "someValue");
+		FedoraResponseBody responseBody = httpHandler.getResponseBody();
+
+		assertSame(factory.getHttpHandlerFactory(), httpHandlerFactory);
+		assertEquals(httpHandlerFactory.urls.get(0), "someUrl");
+		HttpHandlerSpy factoredHttpHandler = httpHandlerFactory.factoredHttpHandlers.get(0);
+		assertEquals(factoredHttpHandler.requestMetod, "GET");
+		assertEquals(factoredHttpHandler.requestProperties.get("someKey"), "someValue");
+		assertTrue(responseBody.isText());
+		assertEquals(XMLXPathParser.forInputSourceUsingMetrics(responseBody.createInputSource(),
+				new NoOpMetrics()).getStringFromDocumentUsingXPath("/person/text()"), "Åsa");
+		assertEquals(httpHandler.getResponseCode(), 201);
+	}
+
+	@Test
+	public void testResponseTextIsNotDecodedUsingEncodingDeclaredInXML() throws Exception {
+		HttpHandlerFactorySpy httpHandlerFactory = new HttpHandlerFactorySpy();
+		httpHandlerFactory.responseText = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>"
+				+ "<person>Åsa Öberg</person>";
+		TextResponseStreamingHttpHandlerFactory factory = TextResponseStreamingHttpHandlerFactory
+				.usingHttpHandlerFactory(httpHandlerFactory);
+
+		try (FedoraResponseBody responseBody = factory.factor("someUrl").getResponseBody()) {
+			XMLStreamReader reader = responseBody.createXMLStreamReader();
+			reader.nextTag();
+
+			assertEquals(reader.getElementText(), "Åsa Öberg");
+		}
+	}
+}
@@ -18,10 +18,22 @@
  */
 package se.uu.ub.cora.diva.tocorastorage.fedora;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.xpath.XPathExpression;
+
 import org.testng.annotations.Test;
 import org.w3c.dom.NodeList;
 
 import se.uu.ub.cora.diva.tocorastorage.ParseException;
+import se.uu.ub.cora.diva.tocorastorage.metrics.InMemoryMetrics;
 
 public class XMLXPathParserTest {
 
@@ -61,4 +73,145 @@ public class XMLXPathParserTest {
 		XMLXPathParser parser = XMLXPathParser.forXML("<pid></pid>");
 		parser.getDocumentAsString("/broken/xpath/string not");
 	}
+
+	@Test
+	public void testCompiledExpressionIsReusedWithinThread() throws Exception {
+		XMLXPathParser parser = XMLXPathParser.forXML("<pid>first</pid>");
+		XMLXPathParser otherParser = XMLXPathParser.forXML("<pid>second</pid>");
+
+		XPathExpression expr = parser.compileUsingCache("/pid/text()");
+
+		assertSame(otherParser.compileUsingCache("/pid/text()"), expr);
+		assertEquals(parser.getStringFromDocumentUsingXPath("/pid/text()"), "first");
+		assertEquals(otherParser.getStringFromDocumentUsingXPath("/pid/text()"), "second");
+	}
+
+	@Test
+	public void testRemoveCachedObjectsForCurrentThreadCompilesExpressionAgain()
+			throws Exception {
+		XMLXPathParser parser = XMLXPathParser.forXML("<pid>first</pid>");
+		XPathExpression expr = parser.compileUsingCache("/pid/text()");
+
+		XMLXPathParser.removeCachedObjectsForCurrentThread();
+
+		assertNotSame(parser.compileUsingCache("/pid/text()"), expr);
+		assertEquals(XMLXPathParser.forXML("<pid>second</pid>")
+				.getStringFromDocumentUsingXPath("/pid/text()"), "second");
+	}
+
+	@Test
+	public void testCompiledExpressionIsNotSharedBetweenThreads() throws Exception {
+		XMLXPathParser parser = XMLXPathParser.forXML("<pid>first</pid>");
+		XPathExpression expr = parser.compileUsingCache("/pid/text()");
+		AtomicReference<XPathExpression> exprInOtherThread = new AtomicReference<>();
+
+		Thread otherThread = new Thread(() -> {
+			try {
+				exprInOtherThread.set(parser.compileUsingCache("/pid/text()"));
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		otherThread.start();
+		otherThread.join();
+
+		assertNotSame(exprInOtherThread.get(), expr);
+	}
+
+	@Test
+	public void testDocumentsParsedInSameThreadAreIndependent() throws Exception {
+		XMLXPathParser parser = XMLXPathParser.forXML("<pid>first</pid>");
+		XMLXPathParser otherParser = XMLXPathParser.forXML("<pid>second</pid>");
+
+		assertEquals(parser.getStringFromDocumentUsingXPath("/pid/text()"), "first");
+		assertEquals(otherParser.getStringFromDocumentUsingXPath("/pid/text()"), "second");
+	}
+
+	@Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = ""
+			+ "Can not read xml: .*DOCTYPE.*")
+	public void testDoctypeIsDisallowedAlsoWhenParserIsReused() throws Exception {
+		XMLXPathParser.forXML("<pid>first</pid>");
+		XMLXPathParser.forXML("<!DOCTYPE pid [<!ENTITY x \"y\">]><pid>&x;</pid>");
+	}
+
+	@Test
+	public void testParsingWorksAfterFailedParseInSameThread() throws Exception {
+		try {
+			XMLXPathParser.forXML("<pid>broken");
+		} catch (ParseException e) {
+			// expected
+		}
+		XMLXPathParser parser = XMLXPathParser.forXML("<pid>working</pid>");
+		assertEquals(parser.getStringFromDocumentUsingXPath("/pid/text()"), "working");
+	}
+
+	@Test
+	public void testGetDocumentAsStringRepeatedlyInSameThread() throws Exception {
+		XMLXPathParser parser = XMLXPathParser.forXML("<pid><name>first åäö</name></pid>");
+		XMLXPathParser otherParser = XMLXPathParser.forXML("<pid><name>second</name></pid>");
+
+		assertEquals(parser.getDocumentAsString("/"), "<pid><name>first åäö</name></pid>");
+		assertEquals(otherParser.getDocumentAsString("/pid/name"), "<name>second</name>");
+		assertEquals(parser.getDocumentAsString("/"), "<pid><name>first åäö</name></pid>");
+	}
+
+	@Test
+	public void testGetDocumentAsStringWorksAfterFailedConversion() throws Exception {
+		XMLXPathParser parser = XMLXPathParser.forXML("<pid></pid>");
+		try {
+			parser.getDocumentAsString("/broken/xpath/string not");
+		} catch (RuntimeException e) {
+			// expected
+		}
+		assertEquals(parser.getDocumentAsString("/"), "<pid/>");
+	}
+
+	@Test
+	public void testParseAndSerializeAreRecordedInMetrics() throws Exception {
+		InMemoryMetrics metrics = InMemoryMetrics.usingSystemNanoTime();
+
+		XMLXPathParser parser = XMLXPathParser
+				.forXMLUsingMetrics("<person><name>Kalle</name></person>", metrics);
+		parser.getDocumentAsString("/");
+
+		assertEquals(metrics.getTimerStatistics("xml.parse").getCount(), 1);
+		assertEquals(metrics.getTimerStatistics("xml.serialize").getCount(), 1);
+	}
+
+	@Test
+	public void testFailedParseIsRecordedInMetrics() throws Exception {
+		InMemoryMetrics metrics = InMemoryMetrics.usingSystemNanoTime();
+		try {
+			XMLXPathParser.forXMLUsingMetrics("<person></notPerson>", metrics);
+		} catch (ParseException e) {
+			assertEquals(metrics.getTimerStatistics("xml.parse").getCount(), 1);
+		}
+	}
+
+	@Test
+	public void testParseFromStreamUsesEncodingInXML() throws Exception {
+		String xml = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><person>Åsa</person>";
+		InputStream stream = new ByteArrayInputStream(xml.getBytes(StandardCharsets.ISO_8859_1));
+
+		XMLXPathParser parser = XMLXPathParser.forXML(stream);
+
+		assertEquals(parser.getStringFromDocumentUsingXPath("/person/text()"), "Åsa");
+	}
+
+	@Test
+	public void testParseFromStreamIsRecordedInMetrics() throws Exception {
+		InMemoryMetrics metrics = InMemoryMetrics.usingSystemNanoTime();
+
+		XMLXPathParser.forXMLUsingMetrics(
+				new ByteArrayInputStream("<person/>".getBytes(StandardCharsets.UTF_8)), metrics);
+
+		assertEquals(metrics.getTimerStatistics("xml.parse").getCount(), 1);
+	}
+
+	@Test(expectedExceptions = ParseException.class, expectedExceptionsMessageRegExp = ""
+			+ "Can not read xml: .*")
+	public void testBrokenXMLInStream() throws Exception {
+		XMLXPathParser.forXML(
+				new ByteArrayInputStream("<person></notPerson>".getBytes(StandardCharsets.UTF_8)));
+	}
 }
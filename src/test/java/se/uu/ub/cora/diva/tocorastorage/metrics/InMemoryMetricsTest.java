@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.diva.tocorastorage.metrics;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.diva.tocorastorage.ConcurrentCallsRunner;
+
+public class InMemoryMetricsTest {
+	private AtomicLong nanoTime;
+	private InMemoryMetrics metrics;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		nanoTime = new AtomicLong(1000);
+		metrics = InMemoryMetrics.usingNanoTimeSupplier(nanoTime::get);
+	}
+
+	@Test
+	public void testTimerRecordsTimeBetweenStartAndStop() throws Exception {
+		MetricsTimer timer = metrics.startTimer("someTimer");
+		nanoTime.addAndGet(250);
+		timer.stop();
+
+		TimerStatistics statistics = metrics.getTimerStatistics("someTimer");
+		assertEquals(statistics.getCount(), 1);
+		assertEquals(statistics.getTotalInNanos(), 250);
+		assertEquals(statistics.getMinInNanos(), 250);
+		assertEquals(statistics.getMaxInNanos(), 250);
+		assertEquals(statistics.getMeanInNanos(), 250.0);
+	}
+
+	@Test
+	public void testStatisticsForSeveralDurations() throws Exception {
+		recordDurations("someTimer", 100, 300, 200);
+
+		TimerStatistics statistics = metrics.getTimerStatistics("someTimer");
+		assertEquals(statistics.getCount(), 3);
+		assertEquals(statistics.getTotalInNanos(), 600);
+		assertEquals(statistics.getMinInNanos(), 100);
+		assertEquals(statistics.getMaxInNanos(), 300);
+		assertEquals(statistics.getMeanInNanos(), 200.0);
+		assertEquals(statistics.toString(), "TimerStatistics [count=3, totalInNanos=600, "
+				+ "minInNanos=100, maxInNanos=300]");
+	}
+
+	private void recordDurations(String name, long... durations) {
+		for (long duration : durations) {
+			MetricsTimer timer = metrics.startTimer(name);
+			nanoTime.addAndGet(duration);
+			timer.stop();
+		}
+	}
+
+	@Test
+	public void testTimersAreKeptPerName() throws Exception {
+		recordDurations("timer1", 10);
+		recordDurations("timer2", 20, 30);
+
+		assertEquals(metrics.getTimerStatistics("timer1").getCount(), 1);
+		assertEquals(metrics.getTimerStatistics("timer2").getCount(), 2);
+		assertEquals(metrics.getTimerNames(), new HashSet<>(Arrays.asList("timer1", "timer2")));
+	}
+
+	@Test
+	public void testStatisticsForUnknownTimerIsEmpty() throws Exception {
+		TimerStatistics statistics = metrics.getTimerStatistics("unknownTimer");
+		assertEquals(statistics.getCount(), 0);
+		assertEquals(statistics.getMeanInNanos(), 0.0);
+		assertEquals(statistics.getPercentileInNanos(99), 0);
+	}
+
+	@Test
+	public void testPercentileIsUpperBoundOfBucket() throws Exception {
+		recordDurations("someTimer", 1, 2, 3, 5, 6, 7, 100, 150, 200, 1000);
+
+		TimerStatistics statistics = metrics.getTimerStatistics("someTimer");
+		assertEquals(statistics.getPercentileInNanos(0), 1);
+		assertEquals(statistics.getPercentileInNanos(10), 1);
+		assertEquals(statistics.getPercentileInNanos(30), 3);
+		assertEquals(statistics.getPercentileInNanos(50), 7);
+		assertEquals(statistics.getPercentileInNanos(90), 255);
+		assertEquals(statistics.getPercentileInNanos(100), 1000);
+	}
+
+	@Test
+	public void testPercentileIsNeverMoreThanMax() throws Exception {
+		recordDurations("someTimer", 130);
+
+		assertEquals(metrics.getTimerStatistics("someTimer").getPercentileInNanos(50), 130);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "percentile must be between 0 and 100, was: 101.0")
+	public void testPercentileOutOfRangeThrowsException() throws Exception {
+		metrics.getTimerStatistics("someTimer").getPercentileInNanos(101);
+	}
+
+	@Test
+	public void testNegativeDurationIsRecordedAsZero() throws Exception {
+		recordDurations("someTimer", -10);
+
+		assertEquals(metrics.getTimerStatistics("someTimer").getMaxInNanos(), 0);
+	}
+
+	@Test
+	public void testBucketsForDurations() throws Exception {
+		assertEquals(TimerHistogram.getBucketForDuration(0), 0);
+		assertEquals(TimerHistogram.getBucketForDuration(1), 1);
+		assertEquals(TimerHistogram.getBucketForDuration(3), 2);
+		assertEquals(TimerHistogram.getBucketForDuration(4), 3);
+		assertEquals(TimerHistogram.getBucketForDuration(Long.MAX_VALUE), 63);
+		assertEquals(TimerHistogram.getUpperBoundForBucket(2), 3);
+		assertEquals(TimerHistogram.getUpperBoundForBucket(63), Long.MAX_VALUE);
+	}
+
+	@Test
+	public void testCounters() throws Exception {
+		metrics.incrementCounter("counter1");
+		metrics.incrementCounter("counter1");
+		metrics.incrementCounter("counter2");
+
+		assertEquals(metrics.getCount("counter1"), 2);
+		assertEquals(metrics.getCount("counter2"), 1);
+		assertEquals(metrics.getCount("unknownCounter"), 0);
+		assertEquals(metrics.getCounterNames(),
+				new HashSet<>(Arrays.asList("counter1", "counter2")));
+	}
+
+	@Test
+	public void testReset() throws Exception {
+		recordDurations("someTimer", 10);
+		metrics.incrementCounter("someCounter");
+
+		metrics.reset();
+
+		assertTrue(metrics.getTimerNames().isEmpty());
+		assertTrue(metrics.getCounterNames().isEmpty());
+	}
+
+	@Test
+	public void testSystemNanoTimeIsUsedByDefault() throws Exception {
+		InMemoryMetrics systemMetrics = InMemoryMetrics.usingSystemNanoTime();
+
+		assertSame(systemMetrics.getNanoTimeSupplier(), InMemoryMetrics.SYSTEM_NANO_TIME);
+	}
+
+	@Test
+	public void testTimersAndCountersFromManyThreads() throws Exception {
+		InMemoryMetrics systemMetrics = InMemoryMetrics.usingSystemNanoTime();
+
+		List<Boolean> results = ConcurrentCallsRunner.runCallsConcurrently(8, 4000,
+				callNumber -> {
+					systemMetrics.startTimer("timer" + callNumber % 4).stop();
+					systemMetrics.incrementCounter("counter");
+					return true;
+				});
+
+		assertEquals(results.size(), 4000);
+		assertEquals(systemMetrics.getCount("counter"), 4000);
+		assertEquals(systemMetrics.getTimerStatistics("timer3").getCount(), 1000);
+	}
+}